@@ -0,0 +1,89 @@
+package ch.epfl.javelo.builder;
+
+import ch.epfl.javelo.data.GraphEdges;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.random.RandomGenerator;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncodedProfileTest {
+
+    private static float[] randomWalk(RandomGenerator rng, int count, int maxStepQ4) {
+        var samples = new float[count];
+        var q = 16 * (300 + rng.nextInt(2000));
+        for (int i = 0; i < count; i += 1) {
+            samples[i] = Math.scalb((float) q, -4);
+            q = Math.min(Math.max(q + rng.nextInt(-maxStepQ4, maxStepQ4 + 1), 0), 16 * 4000);
+        }
+        return samples;
+    }
+
+    private static float[] decode(EncodedProfile profile, int lengthQ4, boolean inverted) {
+        var edges = ByteBuffer.allocate(10);
+        edges.putInt(0, inverted ? ~0 : 0);
+        edges.putShort(4, (short) lengthQ4);
+        var profileIds = IntBuffer.wrap(new int[]{profile.type() << 30});
+        var elevations = ShortBuffer.wrap(profile.elevations());
+        return new GraphEdges(edges, profileIds, elevations).profileSamples(0);
+    }
+
+    @Test
+    void sampleCountMatchesGraphEdges() {
+        assertEquals(1, EncodedProfile.sampleCount(0));
+        assertEquals(2, EncodedProfile.sampleCount(1));
+        assertEquals(2, EncodedProfile.sampleCount(32));
+        assertEquals(3, EncodedProfile.sampleCount(33));
+    }
+
+    @Test
+    void encodedProfileIsNoneWhenASampleIsUnknown() {
+        var profile = EncodedProfile.of(new float[]{400, Float.NaN, 401});
+        assertSame(EncodedProfile.NONE, profile);
+        assertEquals(EncodedProfile.NO_PROFILE, profile.type());
+    }
+
+    @Test
+    void encodedProfileChoosesMostCompactType() {
+        var rng = newRandom();
+        int[][] stepsAndTypes = {{7, 3}, {127, 2}, {4000, 1}};
+        for (int[] stepAndType : stepsAndTypes) {
+            for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+                var lengthQ4 = rng.nextInt(1, 4000);
+                var count = EncodedProfile.sampleCount(lengthQ4);
+                var samples = randomWalk(rng, count, stepAndType[0]);
+                var profile = EncodedProfile.of(samples);
+                assertTrue(profile.type() >= stepAndType[1]);
+            }
+        }
+    }
+
+    @Test
+    void encodedProfileIsDecodedExactlyByGraphEdges() {
+        var rng = newRandom();
+        for (int step : new int[]{7, 127, 4000}) {
+            for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+                var lengthQ4 = rng.nextInt(0, 4000);
+                var samples = randomWalk(rng, EncodedProfile.sampleCount(lengthQ4), step);
+                var profile = EncodedProfile.of(samples);
+                assertArrayEquals(samples, decode(profile, lengthQ4, false));
+
+                var reversed = decode(profile, lengthQ4, true);
+                for (int j = 0; j < samples.length; j += 1)
+                    assertEquals(samples[j], reversed[samples.length - 1 - j]);
+            }
+        }
+    }
+
+    @Test
+    void encodedProfileComputesAscentAndDescent() {
+        var profile = EncodedProfile.of(new float[]{400, 401, 400.5f, 402, 402});
+        assertEquals(16 * 2.5, profile.ascent());
+        assertEquals(16 * 0.5, profile.descent());
+    }
+}
@@ -0,0 +1,169 @@
+package ch.epfl.javelo.builder;
+
+import ch.epfl.javelo.builder.PbfTestWriter.TestWay;
+import ch.epfl.javelo.data.Attribute;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphOsmIds;
+import ch.epfl.javelo.projection.Ch1903;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphBuilderTest {
+
+    // Nœuds : identité OSM, longitude, latitude (en degrés). Le nœud 9 se trouve à Paris.
+    private static final double[][] NODES = {
+            {1, 6.6300, 46.5200},
+            {2, 6.6310, 46.5205},
+            {3, 6.6320, 46.5210},
+            {4, 6.6310, 46.5215},
+            {7, 6.6400, 46.5300},
+            {8, 6.6401, 46.5301},
+            {9, 2.3500, 48.8500},
+    };
+
+    private static final ElevationModel SLOPE = (e, n) -> 400 + 0.05 * (e - 2_538_000);
+
+    private static Path writePbf(Path dir) throws IOException {
+        var pbf = dir.resolve("test.osm.pbf");
+        PbfTestWriter.write(pbf, NODES, List.of(
+                new TestWay(100, Map.of("highway", "residential", "surface", "asphalt"), 1, 2, 3),
+                new TestWay(101, Map.of("highway", "footway"), 2, 4, 9),
+                new TestWay(102, Map.of("building", "yes"), 7, 8)));
+        return pbf;
+    }
+
+    private static Graph buildGraph(Path dir) throws IOException {
+        GraphBuilder.build(writePbf(dir), SLOPE, dir.resolve("graph"), 2);
+        return Graph.loadFrom(dir.resolve("graph"));
+    }
+
+    private static int edgeBetween(Graph graph, int from, int to) {
+        for (int i = 0; i < graph.nodeOutDegree(from); i += 1) {
+            var edgeId = graph.nodeOutEdgeId(from, i);
+            if (graph.edgeTargetNodeId(edgeId) == to) return edgeId;
+        }
+        return -1;
+    }
+
+    @Test
+    void graphBuilderProducesIdenticalFilesFromTheSameInput() throws IOException {
+        //Chaque voie est dans son propre bloc, les blocs étant décodés en parallèle.
+        var nodes = new double[40][];
+        for (int i = 0; i < nodes.length; i += 1)
+            nodes[i] = new double[]{i + 1, 6.62 + 0.001 * (i % 8), 46.51 + 0.001 * (i / 8)};
+        var highways = List.of("residential", "footway", "primary", "track", "cycleway");
+        var ways = new ArrayList<TestWay>();
+        for (int i = 0; i < 200; i += 1) {
+            var from = 1 + i % nodes.length;
+            var to = 1 + (7 * i + 3) % nodes.length;
+            if (from == to) continue;
+            ways.add(new TestWay(1000 + i, Map.of("highway", highways.get(i % highways.size())),
+                    from, to));
+        }
+        var dir = Files.createTempDirectory("javelo");
+        var pbf = dir.resolve("test.osm.pbf");
+        PbfTestWriter.write(pbf, nodes, ways, 1);
+        GraphBuilder.build(pbf, SLOPE, dir.resolve("first"), 8);
+        GraphBuilder.build(pbf, SLOPE, dir.resolve("second"), 8);
+        try (var files = Files.list(dir.resolve("first"))) {
+            for (var file : files.toList()) {
+                assertArrayEquals(Files.readAllBytes(file),
+                        Files.readAllBytes(dir.resolve("second").resolve(file.getFileName())),
+                        file.getFileName().toString());
+            }
+        }
+    }
+
+    @Test
+    void graphBuilderKeepsOnlyHighwayNodesInSwitzerland() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var graph = buildGraph(dir);
+        var osmIds = GraphOsmIds.loadFrom(dir.resolve("graph"));
+        assertEquals(4, graph.nodeCount());
+        for (long osmId : new long[]{1, 2, 3, 4}) assertNotEquals(-1, osmIds.nodeId(osmId));
+        for (long osmId : new long[]{7, 8, 9}) assertEquals(-1, osmIds.nodeId(osmId));
+        assertEquals(GraphOsmIds.sortedNodeIds(osmIds.osmIds()), osmIds.sortedNodeIds());
+    }
+
+    @Test
+    void graphBuilderWritesNodesAtTheirSwissCoordinates() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var graph = buildGraph(dir);
+        var osmIds = GraphOsmIds.loadFrom(dir.resolve("graph"));
+        for (int i = 0; i < 4; i += 1) {
+            var lon = Math.toRadians(NODES[i][1]);
+            var lat = Math.toRadians(NODES[i][2]);
+            var point = graph.nodePoint(osmIds.nodeId((long) NODES[i][0]));
+            assertEquals(Ch1903.e(lon, lat), point.e(), 1d / 16);
+            assertEquals(Ch1903.n(lon, lat), point.n(), 1d / 16);
+            assertEquals(osmIds.nodeId((long) NODES[i][0]), graph.nodeClosestTo(point, 1));
+        }
+    }
+
+    @Test
+    void graphBuilderWritesBothDirectionsOfEachSegment() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var graph = buildGraph(dir);
+        var osmIds = GraphOsmIds.loadFrom(dir.resolve("graph"));
+        int n1 = osmIds.nodeId(1), n2 = osmIds.nodeId(2);
+        int n3 = osmIds.nodeId(3), n4 = osmIds.nodeId(4);
+        assertEquals(1, graph.nodeOutDegree(n1));
+        assertEquals(3, graph.nodeOutDegree(n2));
+        assertEquals(1, graph.nodeOutDegree(n3));
+        assertEquals(1, graph.nodeOutDegree(n4));
+
+        var forward = edgeBetween(graph, n1, n2);
+        var backward = edgeBetween(graph, n2, n1);
+        assertFalse(graph.edgeIsInverted(forward));
+        assertTrue(graph.edgeIsInverted(backward));
+        var length = graph.nodePoint(n1).distanceTo(graph.nodePoint(n2));
+        assertEquals(length, graph.edgeLength(forward), 1d / 16);
+        assertEquals(graph.edgeLength(forward), graph.edgeLength(backward));
+        assertTrue(graph.edgeAttributes(forward).contains(Attribute.HIGHWAY_RESIDENTIAL));
+        assertTrue(graph.edgeAttributes(forward).contains(Attribute.SURFACE_ASPHALT));
+        assertTrue(graph.edgeAttributes(edgeBetween(graph, n2, n4))
+                .contains(Attribute.HIGHWAY_FOOTWAY));
+    }
+
+    @Test
+    void graphBuilderWritesProfilesSampledInTheElevationModel() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var graph = buildGraph(dir);
+        var osmIds = GraphOsmIds.loadFrom(dir.resolve("graph"));
+        int n1 = osmIds.nodeId(1), n2 = osmIds.nodeId(2);
+        var p1 = graph.nodePoint(n1);
+        var p2 = graph.nodePoint(n2);
+        var forward = edgeBetween(graph, n1, n2);
+        var backward = edgeBetween(graph, n2, n1);
+        var length = graph.edgeLength(forward);
+
+        var forwardProfile = graph.edgeProfile(forward);
+        var backwardProfile = graph.edgeProfile(backward);
+        assertEquals(SLOPE.elevationAt(p1.e(), p1.n()), forwardProfile.applyAsDouble(0), 0.1);
+        assertEquals(SLOPE.elevationAt(p2.e(), p2.n()), forwardProfile.applyAsDouble(length), 0.1);
+        assertEquals(SLOPE.elevationAt(p2.e(), p2.n()), backwardProfile.applyAsDouble(0), 0.1);
+
+        var rise = SLOPE.elevationAt(p2.e(), p2.n()) - SLOPE.elevationAt(p1.e(), p1.n());
+        assertEquals(Math.max(rise, 0), graph.edgeElevationGain(forward), 0.1);
+        assertEquals(Math.max(-rise, 0), graph.edgeElevationGain(backward), 0.1);
+    }
+
+    @Test
+    void graphBuilderWritesNoProfileOutsideTheElevationModel() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        GraphBuilder.build(writePbf(dir), (e, n) -> Double.NaN, dir.resolve("graph"), 1);
+        var graph = Graph.loadFrom(dir.resolve("graph"));
+        for (int edgeId = 0; edgeId < 6; edgeId += 1) {
+            assertTrue(Double.isNaN(graph.edgeProfile(edgeId).applyAsDouble(0)));
+            assertEquals(0, graph.edgeElevationGain(edgeId));
+        }
+    }
+}
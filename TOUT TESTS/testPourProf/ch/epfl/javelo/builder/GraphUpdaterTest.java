@@ -0,0 +1,368 @@
+package ch.epfl.javelo.builder;
+
+import ch.epfl.javelo.builder.PbfTestWriter.TestWay;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphOsmIds;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphUpdaterTest {
+
+    private static final ElevationModel SLOPE = (e, n) -> 400 + 0.05 * (e - 2_538_000);
+
+    // Le nœud 6 se trouve dans un autre secteur que les nœuds 1 à 5, les nœuds 20 et 21 à Zurich.
+    private static final double[][] OLD_NODES = {
+            {1, 6.6300, 46.5200},
+            {2, 6.6310, 46.5205},
+            {3, 6.6320, 46.5210},
+            {4, 6.6310, 46.5215},
+            {6, 6.6700, 46.5200},
+            {20, 8.5400, 47.3700},
+            {21, 8.5410, 47.3710},
+    };
+
+    private static final List<TestWay> OLD_WAYS = List.of(
+            new TestWay(100, Map.of("highway", "residential", "surface", "asphalt"), 1, 2, 3),
+            new TestWay(101, Map.of("highway", "footway"), 2, 4),
+            new TestWay(104, Map.of("highway", "cycleway"), 1, 6),
+            new TestWay(110, Map.of("highway", "residential"), 20, 21));
+
+    private static final String CHANGE = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <osmChange version="0.6">
+              <modify>
+                <node id="4" lat="46.5216" lon="6.6312" version="2"/>
+                <way id="100" version="2">
+                  <nd ref="1"/><nd ref="2"/>
+                  <tag k="highway" v="residential"/>
+                </way>
+              </modify>
+              <create>
+                <node id="5" lat="46.5215" lon="6.6330" version="1"/>
+                <way id="103" version="1">
+                  <nd ref="3"/><nd ref="5"/><nd ref="7"/>
+                  <tag k="highway" v="cycleway"/>
+                </way>
+              </create>
+            </osmChange>
+            """;
+
+    // État après application des modifications (le nœud 7 est inconnu).
+    private static final double[][] NEW_NODES = {
+            {1, 6.6300, 46.5200},
+            {2, 6.6310, 46.5205},
+            {3, 6.6320, 46.5210},
+            {4, 6.6312, 46.5216},
+            {5, 6.6330, 46.5215},
+            {6, 6.6700, 46.5200},
+            {20, 8.5400, 47.3700},
+            {21, 8.5410, 47.3710},
+    };
+
+    private static final List<TestWay> NEW_WAYS = List.of(
+            new TestWay(100, Map.of("highway", "residential"), 1, 2),
+            new TestWay(101, Map.of("highway", "footway"), 2, 4),
+            new TestWay(103, Map.of("highway", "cycleway"), 3, 5, 7),
+            new TestWay(104, Map.of("highway", "cycleway"), 1, 6),
+            new TestWay(110, Map.of("highway", "residential"), 20, 21));
+
+    private static Path build(Path dir, double[][] nodes, List<TestWay> ways) throws IOException {
+        Files.createDirectories(dir);
+        var pbf = dir.resolve("test.osm.pbf");
+        PbfTestWriter.write(pbf, nodes, ways);
+        var graphDir = dir.resolve("graph");
+        GraphBuilder.build(pbf, SLOPE, graphDir, 1);
+        return graphDir;
+    }
+
+    private static OsmChange change() throws IOException {
+        return change(CHANGE);
+    }
+
+    private static OsmChange change(String xml) throws IOException {
+        return OsmChange.readFrom(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static IntBuffer intsOf(Path file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file)).asIntBuffer();
+    }
+
+    private static LongBuffer longsOf(Path file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file)).asLongBuffer();
+    }
+
+    private static long edgeCount(Path graphDir) throws IOException {
+        return Files.size(graphDir.resolve("edges.bin")) / GraphBuilder.EDGE_BYTES;
+    }
+
+    // Vérifie que chaque arête du graphe a une jumelle allant en sens contraire.
+    private static void assertEveryEdgeHasATwin(Graph graph) {
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId += 1) {
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i += 1) {
+                var edgeId = graph.nodeOutEdgeId(nodeId, i);
+                var target = graph.edgeTargetNodeId(edgeId);
+                var twins = 0;
+                for (int j = 0; j < graph.nodeOutDegree(target); j += 1) {
+                    var back = graph.nodeOutEdgeId(target, j);
+                    if (graph.edgeTargetNodeId(back) == nodeId
+                            && graph.edgeIsInverted(back) != graph.edgeIsInverted(edgeId))
+                        twins += 1;
+                }
+                assertEquals(1, twins);
+            }
+        }
+    }
+
+    // Description, indépendante des identités des nœuds, des arêtes sortant d'un nœud.
+    private static List<String> outEdges(Graph graph, GraphOsmIds osmIds, int nodeId) {
+        var edges = new ArrayList<String>();
+        for (int i = 0; i < graph.nodeOutDegree(nodeId); i += 1) {
+            var edgeId = graph.nodeOutEdgeId(nodeId, i);
+            var profile = graph.edgeProfile(edgeId);
+            edges.add(osmIds.osmId(graph.edgeTargetNodeId(edgeId)) + " "
+                    + graph.edgeIsInverted(edgeId) + " "
+                    + graph.edgeLength(edgeId) + " "
+                    + graph.edgeElevationGain(edgeId) + " "
+                    + graph.edgeAttributes(edgeId).bits() + " "
+                    + profile.applyAsDouble(0) + " "
+                    + profile.applyAsDouble(graph.edgeLength(edgeId) / 2));
+        }
+        edges.sort(null);
+        return edges;
+    }
+
+    @Test
+    void graphUpdaterMatchesAFullRebuild() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var oldDir = build(dir.resolve("old"), OLD_NODES, OLD_WAYS);
+        var newDir = dir.resolve("updated");
+        GraphUpdater.update(oldDir, change(), SLOPE, newDir);
+        var rebuiltDir = build(dir.resolve("rebuilt"), NEW_NODES, NEW_WAYS);
+
+        var updated = Graph.loadFrom(newDir);
+        var updatedIds = GraphOsmIds.loadFrom(newDir);
+        var rebuilt = Graph.loadFrom(rebuiltDir);
+        var rebuiltIds = GraphOsmIds.loadFrom(rebuiltDir);
+        for (long osmId : new long[]{1, 2, 3, 4, 5, 6, 20, 21}) {
+            var updatedId = updatedIds.nodeId(osmId);
+            var rebuiltId = rebuiltIds.nodeId(osmId);
+            assertNotEquals(-1, updatedId);
+            assertEquals(rebuilt.nodePoint(rebuiltId), updated.nodePoint(updatedId));
+            assertEquals(outEdges(rebuilt, rebuiltIds, rebuiltId),
+                    outEdges(updated, updatedIds, updatedId));
+            assertEquals(updatedId, updated.nodeClosestTo(updated.nodePoint(updatedId), 1));
+        }
+        assertEquals(GraphOsmIds.sortedNodeIds(updatedIds.osmIds()), updatedIds.sortedNodeIds());
+    }
+
+    @Test
+    void graphUpdaterRewritesOnlyAffectedSectors() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var oldDir = build(dir, OLD_NODES, OLD_WAYS);
+        var oldIds = GraphOsmIds.loadFrom(oldDir);
+        var newDir = dir.resolve("updated");
+        var sectorCount = GraphUpdater.update(oldDir, change(), SLOPE, newDir);
+        var newIds = GraphOsmIds.loadFrom(newDir);
+
+        assertTrue(sectorCount >= 1 && sectorCount <= 2);
+        for (long osmId : new long[]{6, 20, 21})
+            assertEquals(oldIds.nodeId(osmId), newIds.nodeId(osmId));
+        for (long osmId : new long[]{1, 2, 3, 4})
+            assertTrue(newIds.nodeId(osmId) >= oldIds.count());
+        assertFalse(Files.exists(dir.resolve("updated.tmp")));
+    }
+
+    @Test
+    void graphUpdaterKeepsTheOldGenerationUnchanged() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var oldDir = build(dir, OLD_NODES, OLD_WAYS);
+        var before = Files.readAllBytes(oldDir.resolve("edges.bin"));
+        GraphUpdater.update(oldDir, change(), SLOPE, dir.resolve("updated"));
+        assertArrayEquals(before, Files.readAllBytes(oldDir.resolve("edges.bin")));
+        assertThrows(IllegalArgumentException.class,
+                () -> GraphUpdater.update(oldDir, change(), SLOPE, dir.resolve("updated")));
+    }
+
+    @Test
+    void graphUpdaterLinksTheFilesItDoesNotModify() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var oldDir = build(dir, OLD_NODES, OLD_WAYS);
+        var files = List.of("nodes.bin", "sectors.bin", "edges.bin", "profile_ids.bin",
+                "elevations.bin", "attributes.bin", "nodes_osmid.bin",
+                GraphBuilder.EDGE_WAY_IDS_FILE, GraphBuilder.SORTED_EDGE_IDS_FILE);
+        var before = new ArrayList<byte[]>();
+        for (var file : files) before.add(Files.readAllBytes(oldDir.resolve(file)));
+        var newDir = dir.resolve("updated");
+        GraphUpdater.update(oldDir, change(), SLOPE, newDir);
+
+        // Les modifications n'utilisent aucun nouvel ensemble d'attributs.
+        assertTrue(Files.isSameFile(oldDir.resolve("attributes.bin"),
+                newDir.resolve("attributes.bin")));
+        assertFalse(Files.isSameFile(oldDir.resolve("edges.bin"), newDir.resolve("edges.bin")));
+        for (int i = 0; i < files.size(); i += 1)
+            assertArrayEquals(before.get(i), Files.readAllBytes(oldDir.resolve(files.get(i))));
+    }
+
+    @Test
+    void graphUpdaterFindsTheEdgesOfChangedWaysAcrossGenerations() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var oldDir = build(dir, OLD_NODES, OLD_WAYS);
+        var firstDir = dir.resolve("first");
+        GraphUpdater.update(oldDir, change(), SLOPE, firstDir);
+        var secondDir = dir.resolve("second");
+        GraphUpdater.update(firstDir, change("""
+                <osmChange version="0.6">
+                  <delete><way id="103"/></delete>
+                </osmChange>
+                """), SLOPE, secondDir);
+
+        var graph = Graph.loadFrom(secondDir);
+        var osmIds = GraphOsmIds.loadFrom(secondDir);
+        // Les nœuds 3 et 5 n'appartenaient plus qu'à la voie 103.
+        assertEquals(-1, osmIds.nodeId(3));
+        assertEquals(-1, osmIds.nodeId(5));
+        var node2 = osmIds.nodeId(2);
+        var neighbors = new ArrayList<Long>();
+        for (int i = 0; i < graph.nodeOutDegree(node2); i += 1)
+            neighbors.add(osmIds.osmId(graph.edgeTargetNodeId(graph.nodeOutEdgeId(node2, i))));
+        neighbors.sort(null);
+        assertEquals(List.of(1L, 4L), neighbors);
+        assertEveryEdgeHasATwin(graph);
+
+        // Les permutations fusionnées sont celles qu'un tri complet donnerait.
+        assertEquals(GraphOsmIds.sortedNodeIds(osmIds.osmIds()), osmIds.sortedNodeIds());
+        var wayIds = longsOf(secondDir.resolve(GraphBuilder.EDGE_WAY_IDS_FILE));
+        assertEquals(GraphOsmIds.sortedNodeIds(wayIds),
+                intsOf(secondDir.resolve(GraphBuilder.SORTED_EDGE_IDS_FILE)));
+    }
+
+    @Test
+    void graphUpdaterKeepsEdgesSymmetricWhenANodeReachesItsMaximalDegree() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var oldDir = build(dir, OLD_NODES, OLD_WAYS);
+        // Le nœud 50 est relié par 16 nouvelles voies à 16 nouveaux nœuds, une de trop.
+        var xml = new StringBuilder("<osmChange version=\"0.6\"><create>");
+        xml.append("<node id=\"50\" lat=\"46.5250\" lon=\"6.6350\"/>");
+        for (int i = 0; i < 16; i += 1) {
+            xml.append("<node id=\"").append(60 + i).append("\" lat=\"")
+                    .append(46.5250 + 0.0002 * Math.sin(i)).append("\" lon=\"")
+                    .append(6.6350 + 0.0002 * Math.cos(i)).append("\"/>");
+            xml.append("<way id=\"").append(200 + i).append("\"><nd ref=\"50\"/><nd ref=\"")
+                    .append(60 + i).append("\"/><tag k=\"highway\" v=\"path\"/></way>");
+        }
+        xml.append("</create></osmChange>");
+        var newDir = dir.resolve("updated");
+        GraphUpdater.update(oldDir, change(xml.toString()), SLOPE, newDir);
+
+        var graph = Graph.loadFrom(newDir);
+        var osmIds = GraphOsmIds.loadFrom(newDir);
+        assertEquals(15, graph.nodeOutDegree(osmIds.nodeId(50)));
+        assertEquals(-1, osmIds.nodeId(75));
+        assertEveryEdgeHasATwin(graph);
+    }
+
+    @Test
+    void graphUpdaterDoesNotGrowTheGraphWhenTheSameChangeIsAppliedTwice() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var oldDir = build(dir, OLD_NODES, OLD_WAYS);
+        var firstDir = dir.resolve("first");
+        GraphUpdater.update(oldDir, change(), SLOPE, firstDir);
+        var secondDir = dir.resolve("second");
+        GraphUpdater.update(firstDir, change(), SLOPE, secondDir);
+
+        var first = Graph.loadFrom(firstDir);
+        var firstIds = GraphOsmIds.loadFrom(firstDir);
+        var second = Graph.loadFrom(secondDir);
+        var secondIds = GraphOsmIds.loadFrom(secondDir);
+        assertEquals(first.nodeCount(), second.nodeCount());
+        assertEquals(edgeCount(firstDir), edgeCount(secondDir));
+        // Les profils des segments recréés à l'identique sont repris.
+        assertEquals(Files.size(firstDir.resolve("elevations.bin")),
+                Files.size(secondDir.resolve("elevations.bin")));
+        for (long osmId : new long[]{1, 2, 3, 4, 5, 6, 20, 21}) {
+            assertEquals(outEdges(first, firstIds, firstIds.nodeId(osmId)),
+                    outEdges(second, secondIds, secondIds.nodeId(osmId)));
+        }
+        assertEveryEdgeHasATwin(second);
+        assertEquals(GraphOsmIds.sortedNodeIds(secondIds.osmIds()), secondIds.sortedNodeIds());
+    }
+
+    @Test
+    void graphUpdaterReusesTheNodesOrphanedByAPreviousUpdate() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var oldDir = build(dir, OLD_NODES, OLD_WAYS);
+        var firstDir = dir.resolve("first");
+        GraphUpdater.update(oldDir, change(), SLOPE, firstDir);
+        var first = Graph.loadFrom(firstDir);
+
+        // Les deux nœuds de la nouvelle voie, à Berne, tiennent dans la plage laissée libre par
+        // l'ancien secteur des nœuds 1 à 4.
+        var secondDir = dir.resolve("second");
+        GraphUpdater.update(firstDir, change("""
+                <osmChange version="0.6">
+                  <create>
+                    <node id="30" lat="46.9480" lon="7.4470"/>
+                    <node id="31" lat="46.9485" lon="7.4480"/>
+                    <way id="120"><nd ref="30"/><nd ref="31"/><tag k="highway" v="path"/></way>
+                  </create>
+                </osmChange>
+                """), SLOPE, secondDir);
+        var second = Graph.loadFrom(secondDir);
+        var secondIds = GraphOsmIds.loadFrom(secondDir);
+        assertEquals(first.nodeCount(), second.nodeCount());
+        // Les arêtes des nœuds 1 à 5 ont repris la plage de celles des nœuds 1 à 4 : aucune
+        // arête n'est libre, et les deux nouvelles sont ajoutées.
+        assertEquals(edgeCount(firstDir) + 2, edgeCount(secondDir));
+        var node30 = secondIds.nodeId(30);
+        assertEquals(1, second.nodeOutDegree(node30));
+        assertEquals(secondIds.nodeId(31),
+                second.edgeTargetNodeId(second.nodeOutEdgeId(node30, 0)));
+        assertEquals(node30, second.nodeClosestTo(second.nodePoint(node30), 1));
+        assertEveryEdgeHasATwin(second);
+
+        var wayIds = longsOf(secondDir.resolve(GraphBuilder.EDGE_WAY_IDS_FILE));
+        assertEquals(GraphOsmIds.sortedNodeIds(wayIds),
+                intsOf(secondDir.resolve(GraphBuilder.SORTED_EDGE_IDS_FILE)));
+        assertEquals(GraphOsmIds.sortedNodeIds(secondIds.osmIds()), secondIds.sortedNodeIds());
+    }
+
+    @Test
+    void graphUpdaterRequiresEdgeWayIds() throws IOException {
+        var dir = Files.createTempDirectory("javelo");
+        var oldDir = build(dir, OLD_NODES, OLD_WAYS);
+        Files.delete(oldDir.resolve(GraphBuilder.EDGE_WAY_IDS_FILE));
+        assertThrows(IOException.class,
+                () -> GraphUpdater.update(oldDir, change(), SLOPE, dir.resolve("updated")));
+    }
+
+    @Test
+    void osmChangeKeepsTheLastVersionOfEachElement() throws IOException {
+        var xml = """
+                <osmChange version="0.6">
+                  <create><node id="1" lat="46.5" lon="6.6"/></create>
+                  <delete><node id="1"/><way id="2"/></delete>
+                  <modify><way id="2"><nd ref="3"/><nd ref="4"/><tag k="highway" v="path"/></way></modify>
+                </osmChange>
+                """;
+        var change = OsmChange.readFrom(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        assertTrue(change.nodes().isEmpty());
+        assertEquals(Set.of(1L), change.deletedNodes());
+        assertTrue(change.deletedWays().isEmpty());
+        assertArrayEquals(new long[]{3, 4}, change.ways().get(2L).nodeIds());
+        assertEquals(Map.of("highway", "path"), change.ways().get(2L).tags());
+    }
+}
@@ -0,0 +1,85 @@
+package ch.epfl.javelo.builder;
+
+import ch.epfl.javelo.builder.PbfTestWriter.TestWay;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OsmPbfReaderTest {
+
+    private static final double[][] NODES = {{1, 6.63, 46.52}, {2, 6.64, 46.53}};
+
+    private static List<TestWay> ways(int count) {
+        var ways = new ArrayList<TestWay>();
+        for (int i = 0; i < count; i += 1)
+            ways.add(new TestWay(1000 + i, Map.of("highway", "residential"), 1, 2));
+        return ways;
+    }
+
+    @Test
+    void osmPbfReaderReadsEveryBlock() throws IOException {
+        var pbf = Files.createTempDirectory("javelo").resolve("test.osm.pbf");
+        PbfTestWriter.write(pbf, NODES, ways(100), 3);
+        var nodeIds = ConcurrentHashMap.<Long>newKeySet();
+        var wayIds = ConcurrentHashMap.<Long>newKeySet();
+        OsmPbfReader.read(pbf, 4, new OsmHandler() {
+            @Override
+            public boolean wantsNodes() {
+                return true;
+            }
+
+            @Override
+            public boolean wantsWays() {
+                return true;
+            }
+
+            @Override
+            public void node(long id, double lon, double lat) {
+                nodeIds.add(id);
+            }
+
+            @Override
+            public void way(long id, long[] refs, Map<String, String> tags) {
+                wayIds.add(id);
+            }
+        });
+        assertEquals(2, nodeIds.size());
+        assertEquals(100, wayIds.size());
+    }
+
+    @Test
+    void osmPbfReaderDeliversElementsInFileOrderWhenAsked() throws IOException {
+        var pbf = Files.createTempDirectory("javelo").resolve("test.osm.pbf");
+        PbfTestWriter.write(pbf, NODES, ways(500), 1);
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            var wayIds = new ArrayList<Long>();
+            var thread = Thread.currentThread();
+            OsmPbfReader.read(pbf, threads, new OsmHandler() {
+                @Override
+                public boolean wantsWays() {
+                    return true;
+                }
+
+                @Override
+                public boolean wantsFileOrder() {
+                    return true;
+                }
+
+                @Override
+                public void way(long id, long[] refs, Map<String, String> tags) {
+                    assertSame(thread, Thread.currentThread());
+                    wayIds.add(id);
+                }
+            });
+            assertEquals(500, wayIds.size());
+            for (int i = 0; i < wayIds.size(); i += 1) assertEquals(1000 + i, wayIds.get(i));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ch.epfl.javelo.builder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+// Écriture de petits fichiers OSM PBF pour les tests.
+final class PbfTestWriter {
+    private PbfTestWriter() {}
+
+    record TestWay(long id, Map<String, String> tags, long... refs) {}
+
+    // Écriture minimale de messages Protocol Buffers.
+    private static final class Proto {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Proto varint(int field, long value) {
+            tag(field, 0);
+            raw(value);
+            return this;
+        }
+
+        Proto bytes(int field, byte[] value) {
+            tag(field, 2);
+            raw(value.length);
+            out.writeBytes(value);
+            return this;
+        }
+
+        Proto string(int field, String value) {
+            return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Proto packed(int field, long[] values, boolean signed) {
+            var packed = new Proto();
+            for (long v : values) packed.raw(signed ? (v << 1) ^ (v >> 63) : v);
+            return bytes(field, packed.toBytes());
+        }
+
+        private void tag(int field, int wireType) {
+            raw((long) field << 3 | wireType);
+        }
+
+        private void raw(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        byte[] toBytes() {
+            return out.toByteArray();
+        }
+    }
+
+    private static long[] deltas(long[] values) {
+        var deltas = new long[values.length];
+        for (int i = 0; i < values.length; i += 1)
+            deltas[i] = values[i] - (i == 0 ? 0 : values[i - 1]);
+        return deltas;
+    }
+
+    private static void writeBlob(DataOutputStream out, String type, byte[] data) throws IOException {
+        var deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        var compressed = new byte[data.length + 64];
+        var size = deflater.deflate(compressed);
+        deflater.end();
+        var blob = new Proto()
+                .varint(2, data.length)
+                .bytes(3, Arrays.copyOf(compressed, size))
+                .toBytes();
+        var header = new Proto().string(1, type).varint(3, blob.length).toBytes();
+        out.writeInt(header.length);
+        out.write(header);
+        out.write(blob);
+    }
+
+    // Nœuds : identité OSM, longitude, latitude (en degrés).
+    static void write(Path pbf, double[][] nodes, List<TestWay> ways) throws IOException {
+        write(pbf, nodes, ways, Math.max(1, ways.size()));
+    }
+
+    // Comme write, mais en répartissant les voies sur plusieurs blocs d'au plus waysPerBlock
+    // voies chacun ; les nœuds sont dans le premier bloc.
+    static void write(Path pbf, double[][] nodes, List<TestWay> ways, int waysPerBlock)
+            throws IOException {
+        var ids = new long[nodes.length];
+        var lats = new long[nodes.length];
+        var lons = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i += 1) {
+            ids[i] = (long) nodes[i][0];
+            lons[i] = Math.round(nodes[i][1] * 1e7);
+            lats[i] = Math.round(nodes[i][2] * 1e7);
+        }
+        var dense = new Proto()
+                .packed(1, deltas(ids), true)
+                .packed(8, deltas(lats), true)
+                .packed(9, deltas(lons), true);
+
+        var headerBlock = new Proto()
+                .string(4, "OsmSchema-V0.6")
+                .string(4, "DenseNodes")
+                .toBytes();
+
+        try (var out = new DataOutputStream(Files.newOutputStream(pbf))) {
+            writeBlob(out, "OSMHeader", headerBlock);
+            var first = 0;
+            do {
+                var last = Math.min(ways.size(), first + waysPerBlock);
+                var nodeGroup = first == 0 ? dense : null;
+                writeBlob(out, "OSMData", block(nodeGroup, ways.subList(first, last)));
+                first = last;
+            } while (first < ways.size());
+        }
+    }
+
+    private static byte[] block(Proto dense, List<TestWay> ways) {
+        var strings = new ArrayList<>(List.of(""));
+        var wayGroup = new Proto();
+        for (TestWay way : ways) {
+            var keys = new long[way.tags().size()];
+            var values = new long[way.tags().size()];
+            var i = 0;
+            for (var tag : way.tags().entrySet()) {
+                for (String s : List.of(tag.getKey(), tag.getValue()))
+                    if (!strings.contains(s)) strings.add(s);
+                keys[i] = strings.indexOf(tag.getKey());
+                values[i] = strings.indexOf(tag.getValue());
+                i += 1;
+            }
+            wayGroup.bytes(3, new Proto()
+                    .varint(1, way.id())
+                    .packed(2, keys, false)
+                    .packed(3, values, false)
+                    .packed(8, deltas(way.refs()), true)
+                    .toBytes());
+        }
+        var stringTable = new Proto();
+        for (String s : strings) stringTable.string(1, s);
+
+        var block = new Proto().bytes(1, stringTable.toBytes());
+        if (dense != null) block.bytes(2, new Proto().bytes(2, dense.toBytes()).toBytes());
+        return block.bytes(2, wayGroup.toBytes()).toBytes();
+    }
+}
@@ -0,0 +1,76 @@
+package ch.epfl.javelo.data;
+
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.RouteComputer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompositeGraphTest {
+
+    private static final Path LAUSANNE = Path.of("lausanne");
+
+    @Test
+    void compositeGraphThrowsOnEmptyRegionList() {
+        assertThrows(IllegalArgumentException.class, () -> CompositeGraph.loadFrom(List.of()));
+    }
+
+    @Test
+    void compositeGraphOfOneRegionBehavesLikeTheRegion() throws IOException {
+        var graph = Graph.loadFrom(LAUSANNE);
+        var composite = CompositeGraph.loadFrom(List.of(LAUSANNE));
+        assertEquals(graph.nodeCount(), composite.nodeCount());
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var nodeId = rng.nextInt(graph.nodeCount());
+            assertEquals(graph.nodePoint(nodeId), composite.nodePoint(nodeId));
+            assertEquals(graph.nodeOutDegree(nodeId), composite.nodeOutDegree(nodeId));
+            for (int j = 0; j < graph.nodeOutDegree(nodeId); j += 1) {
+                var edgeId = graph.nodeOutEdgeId(nodeId, j);
+                assertEquals(edgeId, composite.nodeOutEdgeId(nodeId, j));
+                assertEquals(graph.edgeTargetNodeId(edgeId), composite.edgeTargetNodeId(edgeId));
+                assertEquals(graph.edgeLength(edgeId), composite.edgeLength(edgeId));
+                assertEquals(graph.edgeAttributes(edgeId), composite.edgeAttributes(edgeId));
+            }
+        }
+    }
+
+    @Test
+    void compositeGraphLoadsRegionsLazily() throws IOException {
+        var composite = CompositeGraph.loadFrom(List.of(LAUSANNE, LAUSANNE));
+        assertEquals(0, composite.loadedRegionCount());
+        assertEquals(-1, composite.nodeClosestTo(new PointCh(2_800_000, 1_100_000), 100));
+        assertEquals(0, composite.loadedRegionCount());
+    }
+
+    @Test
+    void compositeGraphMergesBorderNodes() throws IOException {
+        var graph = Graph.loadFrom(LAUSANNE);
+        var composite = CompositeGraph.loadFrom(List.of(LAUSANNE, LAUSANNE));
+        assertEquals(2 * graph.nodeCount(), composite.nodeCount());
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var nodeId = rng.nextInt(graph.nodeCount());
+            assertEquals(nodeId, composite.canonicalNodeId(graph.nodeCount() + nodeId));
+            assertEquals(2 * graph.nodeOutDegree(nodeId), composite.nodeOutDegree(nodeId));
+        }
+        var point = new PointCh(2_532_697, 1_152_350);
+        assertEquals(graph.nodeClosestTo(point, 100), composite.nodeClosestTo(point, 100));
+    }
+
+    @Test
+    void compositeGraphRoutesLikeTheRegion() throws IOException {
+        var composite = CompositeGraph.loadFrom(List.of(LAUSANNE, LAUSANNE));
+        var rc = new RouteComputer(composite, new CityBikeCF(composite));
+        var route = rc.bestRouteBetween(159049, 117669);
+        assertNotNull(route);
+        assertEquals(9588.5625, route.length(), 1);
+    }
+}
@@ -0,0 +1,116 @@
+package ch.epfl.javelo.data;
+
+import ch.epfl.javelo.Functions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EdgeProfileCacheTest {
+
+    private static DoubleUnaryOperator profile(int edgeId) {
+        return Functions.constant(edgeId);
+    }
+
+    @Test
+    void edgeProfileCacheReturnsCachedProfiles() {
+        var cache = new EdgeProfileCache(1000, 4);
+        assertNull(cache.get(3));
+        var profile = profile(3);
+        cache.put(3, profile, 10);
+        assertSame(profile, cache.get(3));
+        assertEquals(10, cache.cachedSamples());
+    }
+
+    @Test
+    void edgeProfileCacheStaysWithinItsBudget() {
+        var rng = newRandom();
+        var cache = new EdgeProfileCache(4 * 100, 4);
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var edgeId = rng.nextInt(10_000);
+            if (cache.get(edgeId) == null) cache.put(edgeId, profile(edgeId), rng.nextInt(2, 50));
+            assertTrue(cache.cachedSamples() <= 4 * 100);
+            var cached = cache.get(edgeId);
+            if (cached != null) assertEquals(edgeId, cached.applyAsDouble(0));
+        }
+    }
+
+    @Test
+    void edgeProfileCacheFindsEveryEntryItKeeps() {
+        var rng = newRandom();
+        var large = new EdgeProfileCache(1_000_000, 1);
+        for (int edgeId = 0; edgeId < 50_000; edgeId += 7) large.put(edgeId, profile(edgeId), 1);
+        for (int edgeId = 0; edgeId < 50_000; edgeId += 1) {
+            var cached = large.get(edgeId);
+            if (edgeId % 7 == 0) assertEquals(edgeId, cached.applyAsDouble(0));
+            else assertNull(cached);
+        }
+
+        //Les évictions fréquentes retirent des entrées de la table de la bande.
+        var small = new EdgeProfileCache(64, 1);
+        var edgeIds = new int[10 * RANDOM_ITERATIONS];
+        for (int i = 0; i < edgeIds.length; i += 1) {
+            var edgeId = rng.nextInt(Integer.MAX_VALUE);
+            edgeIds[i] = edgeId;
+            small.put(edgeId, profile(edgeId), 1 + rng.nextInt(8));
+            assertEquals(edgeId, small.get(edgeId).applyAsDouble(0));
+            var earlierId = edgeIds[rng.nextInt(i + 1)];
+            var earlier = small.get(earlierId);
+            if (earlier != null) assertEquals(earlierId, earlier.applyAsDouble(0));
+        }
+    }
+
+    @Test
+    void edgeProfileCacheGivesReferencedEntriesASecondChance() {
+        var cache = new EdgeProfileCache(30, 1);
+        cache.put(1, profile(1), 10);
+        cache.put(2, profile(2), 10);
+        cache.put(3, profile(3), 10);
+        cache.get(1);
+        cache.put(4, profile(4), 10);
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(4));
+    }
+
+    @Test
+    void edgeProfileCacheIgnoresProfilesLargerThanAStripe() {
+        var cache = new EdgeProfileCache(40, 4);
+        cache.put(1, profile(1), 11);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.cachedSamples());
+        var disabled = new EdgeProfileCache(0, 1);
+        disabled.put(1, profile(1), 2);
+        assertNull(disabled.get(1));
+    }
+
+    @Test
+    void edgeProfileCacheConstructorThrowsOnInvalidStripeCount() {
+        assertThrows(IllegalArgumentException.class, () -> new EdgeProfileCache(10, 3));
+        assertThrows(IllegalArgumentException.class, () -> new EdgeProfileCache(-1, 1));
+    }
+
+    @Test
+    void graphEdgeProfileIsDecodedOnlyOnce() {
+        var edges = ByteBuffer.allocate(10);
+        edges.putShort(4, (short) 32);
+        var profileIds = IntBuffer.wrap(new int[]{1 << 30});
+        var elevations = ShortBuffer.wrap(new short[]{(short) 0x180C, (short) 0x180D});
+        var graphEdges = new GraphEdges(edges, profileIds, elevations);
+        var graph = new Graph(null, null, graphEdges, List.of(new AttributeSet(0)));
+        var profile = graph.edgeProfile(0);
+        assertSame(profile, graph.edgeProfile(0));
+        assertEquals(384.75, profile.applyAsDouble(0));
+
+        var uncached = new Graph(null, null, graphEdges, List.of(new AttributeSet(0)), 0);
+        assertNotSame(uncached.edgeProfile(0), uncached.edgeProfile(0));
+        assertEquals(384.8125, uncached.edgeProfile(0).applyAsDouble(1000));
+    }
+}
@@ -264,6 +264,73 @@ class GraphEdgesTest {
         }
     }
 
+    // Décodage de référence, échantillon par échantillon.
+    private static float[] referenceSamples(int type, short[] elevations, int count, boolean inverted) {
+        var samples = new float[count];
+        for (int i = 0; i < count; i += 1) {
+            if (type == 1 || i == 0) {
+                samples[i] = Short.toUnsignedInt(elevations[i == 0 ? 0 : i]) / 16f;
+            } else {
+                var perShort = type == 2 ? 2 : 4;
+                var bits = 16 / perShort;
+                var packed = elevations[1 + (i - 1) / perShort];
+                var shift = 16 - bits * (1 + (i - 1) % perShort);
+                var delta = (packed << (32 - shift - bits)) >> (32 - bits);
+                samples[i] = samples[i - 1] + delta / 16f;
+            }
+        }
+        if (inverted) {
+            for (int i = 0, j = count - 1; i < j; i += 1, j -= 1) {
+                var t = samples[i];
+                samples[i] = samples[j];
+                samples[j] = t;
+            }
+        }
+        return samples;
+    }
+
+    @Test
+    void graphEdgesProfileSamplesIntoBufferWorksOnRandomValues() {
+        var rng = newRandom();
+        var edgesBuffer = ByteBuffer.allocate(10);
+        var buffer = new float[200];
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var type = rng.nextInt(1, 4);
+            var lengthQ4 = rng.nextInt(0, 32 * 150);
+            var count = 1 + (lengthQ4 + 31) / 32;
+            var elevations = new short[count];
+            for (int j = 0; j < count; j += 1) elevations[j] = (short) rng.nextInt(1 << 16);
+            elevations[0] = (short) rng.nextInt(16 * 500, 16 * 3000);
+            var inverted = rng.nextBoolean();
+            edgesBuffer.putInt(0, inverted ? ~0 : 0);
+            edgesBuffer.putShort(4, (short) lengthQ4);
+            var profileIds = IntBuffer.wrap(new int[]{type << 30});
+            var graphEdges = new GraphEdges(edgesBuffer, profileIds, ShortBuffer.wrap(elevations));
+
+            Arrays.fill(buffer, -1);
+            var expected = referenceSamples(type, elevations, count, inverted);
+            assertEquals(count, graphEdges.sampleCount(0));
+            assertEquals(count, graphEdges.profileSamples(0, buffer));
+            assertArrayEquals(expected, Arrays.copyOf(buffer, count));
+            assertEquals(-1, buffer[count]);
+            assertArrayEquals(expected, graphEdges.profileSamples(0));
+        }
+    }
+
+    @Test
+    void graphEdgesProfileSamplesIntoBufferHandlesMissingProfilesAndSmallBuffers() {
+        var edgesBuffer = ByteBuffer.allocate(10);
+        edgesBuffer.putShort(4, (short) (32 * 3));
+        var elevations = ShortBuffer.wrap(new short[]{0x2a0f, (short) 0xeff0});
+        var noProfile = new GraphEdges(edgesBuffer, IntBuffer.wrap(new int[]{0}), elevations);
+        assertEquals(0, noProfile.sampleCount(0));
+        assertEquals(0, noProfile.profileSamples(0, new float[0]));
+
+        var graphEdges = new GraphEdges(edgesBuffer, IntBuffer.wrap(new int[]{3 << 30}), elevations);
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> graphEdges.profileSamples(0, new float[3]));
+    }
+
     private record TestCase(short[] compressed, float[] uncompressed) {
         public float[] uncompressedInverted() {
             float[] array = uncompressed();
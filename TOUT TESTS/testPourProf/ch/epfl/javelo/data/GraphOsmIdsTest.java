@@ -0,0 +1,107 @@
+package ch.epfl.javelo.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphOsmIdsTest {
+
+    private static GraphOsmIds newOsmIds(long... osmIds) {
+        var buffer = LongBuffer.wrap(osmIds);
+        return new GraphOsmIds(buffer, GraphOsmIds.sortedNodeIds(buffer));
+    }
+
+    @Test
+    void graphOsmIdsWorksOnGivenExample() {
+        var osmIds = newOsmIds(1684019323L, 1277263684L, 9286942145L, 2226769L);
+        assertEquals(4, osmIds.count());
+        assertEquals(9286942145L, osmIds.osmId(2));
+        assertEquals(0, osmIds.nodeId(1684019323L));
+        assertEquals(3, osmIds.nodeId(2226769L));
+        assertEquals(-1, osmIds.nodeId(42));
+        assertEquals(-1, osmIds.nodeId(Long.MAX_VALUE));
+    }
+
+    @Test
+    void graphOsmIdsSortedNodeIdsThrowsOnNegativeOsmId() {
+        assertThrows(IllegalArgumentException.class, () -> newOsmIds(1, -1));
+    }
+
+    @Test
+    void graphOsmIdsConstructorThrowsOnDifferentSizes() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new GraphOsmIds(LongBuffer.allocate(2), IntBuffer.allocate(3)));
+    }
+
+    @Test
+    void graphOsmIdsWorksOnRandomIds() {
+        var rng = newRandom();
+        var count = 10_000;
+        var ids = new long[count];
+        for (int i = 0; i < count; i += 1) ids[i] = 2 * (rng.nextLong(1L << 33) / 2);
+        var osmIds = newOsmIds(ids);
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var nodeId = rng.nextInt(count);
+            assertEquals(ids[nodeId], osmIds.osmId(osmIds.nodeId(ids[nodeId])));
+            assertEquals(-1, osmIds.nodeId(ids[nodeId] + 1));
+        }
+    }
+
+    @Test
+    void graphOsmIdsSortedNodeIdsIsADirectSortedPermutation() {
+        var rng = newRandom();
+        var ids = new long[10_000];
+        for (int i = 0; i < ids.length; i += 1) ids[i] = rng.nextLong(1L << 34);
+        var sorted = GraphOsmIds.sortedNodeIds(LongBuffer.wrap(ids));
+        assertTrue(sorted.isDirect());
+        var seen = new boolean[ids.length];
+        for (int i = 0; i < ids.length; i += 1) {
+            var nodeId = sorted.get(i);
+            assertFalse(seen[nodeId]);
+            seen[nodeId] = true;
+            if (i > 0) {
+                var previous = sorted.get(i - 1);
+                assertTrue(ids[previous] < ids[nodeId]
+                        || ids[previous] == ids[nodeId] && previous < nodeId);
+            }
+        }
+        assertEquals(0, GraphOsmIds.sortedNodeIds(LongBuffer.allocate(0)).capacity());
+    }
+
+    @Test
+    void graphOsmIdsBatchLookupsMatchSingleLookups() {
+        var rng = newRandom();
+        var count = 10_000;
+        var ids = new long[count];
+        for (int i = 0; i < count; i += 1) ids[i] = 2 * (rng.nextLong(1L << 33) / 2);
+        var osmIds = newOsmIds(ids);
+        var queries = new long[1_000];
+        for (int i = 0; i < queries.length; i += 1)
+            queries[i] = rng.nextBoolean() ? ids[rng.nextInt(count)] : 2 * rng.nextLong(1L << 32) + 1;
+        var nodeIds = osmIds.nodeIds(queries);
+        for (int i = 0; i < queries.length; i += 1) {
+            assertEquals(osmIds.nodeId(queries[i]), nodeIds[i]);
+        }
+        var foundNodeIds = Arrays.stream(nodeIds).filter(n -> n != -1).toArray();
+        var foundOsmIds = osmIds.osmIds(foundNodeIds);
+        for (int i = 0; i < foundNodeIds.length; i += 1)
+            assertEquals(foundNodeIds[i], osmIds.nodeId(foundOsmIds[i]));
+    }
+
+    @Test
+    void graphOsmIdsLoadFromWorksOnLausanneData() throws IOException {
+        var graph = Graph.loadFrom(Path.of("lausanne"));
+        var osmIds = GraphOsmIds.loadFrom(Path.of("lausanne"));
+        assertEquals(graph.nodeCount(), osmIds.count());
+        assertEquals(1684019323L, osmIds.osmId(0));
+        assertEquals(0, osmIds.nodeId(1684019323L));
+    }
+}
@@ -0,0 +1,187 @@
+package ch.epfl.javelo.gui;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskTileCacheTest {
+
+    private static final Duration DAY = Duration.ofDays(1);
+
+    private static TileManager.TileId tile(int y) {
+        return new TileManager.TileId(19, 271725, y);
+    }
+
+    private static byte[] data(int size, int value) {
+        var data = new byte[size];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    void diskTileCacheReadsWhatItWrites() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var cache = new DiskTileCache(directory, 1000, DAY,
+                    DiskTileCache.EvictionPolicy.LRU);
+            assertFalse(cache.contains(tile(1)));
+            assertNull(cache.read(tile(1)));
+            cache.write(tile(1), data(100, 1), null);
+            assertTrue(cache.contains(tile(1)));
+            assertArrayEquals(data(100, 1), cache.read(tile(1)));
+            assertTrue(Files.exists(directory.resolve("19/271725/1.png")));
+
+            cache.write(tile(1), data(50, 2), null);
+            assertArrayEquals(data(50, 2), cache.read(tile(1)));
+            assertEquals(1, cache.size());
+            assertEquals(50, cache.usedBytes());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void diskTileCacheIndexesExistingFilesAtStartup() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var cache = new DiskTileCache(directory, 1000, DAY,
+                    DiskTileCache.EvictionPolicy.LRU);
+            for (int y = 0; y < 3; y += 1) cache.write(tile(y), data(10 * (y + 1), y), null);
+            var tileDirectory = directory.resolve("19/271725");
+            Files.write(tileDirectory.resolve("7.png.123.tmp"), data(10, 0));
+            Files.write(tileDirectory.resolve("notes.txt"), data(10, 0));
+            Files.write(directory.resolve("3.png"), data(10, 0));
+
+            var reopened = new DiskTileCache(directory, 1000, DAY,
+                    DiskTileCache.EvictionPolicy.LRU);
+            assertEquals(3, reopened.size());
+            assertEquals(60, reopened.usedBytes());
+            for (int y = 0; y < 3; y += 1)
+                assertArrayEquals(data(10 * (y + 1), y), reopened.read(tile(y)));
+            assertFalse(Files.exists(tileDirectory.resolve("7.png.123.tmp")));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void diskTileCacheEvictsLeastRecentlyUsedTiles() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var cache = new DiskTileCache(directory, 1000, DAY,
+                    DiskTileCache.EvictionPolicy.LRU);
+            for (int y = 0; y < 10; y += 1) cache.write(tile(y), data(100, y), null);
+            assertEquals(1000, cache.usedBytes());
+            cache.read(tile(0));
+            cache.write(tile(10), data(100, 10), null);
+            //L'éviction ramène le cache à 90 % de son budget.
+            assertEquals(900, cache.usedBytes());
+            assertTrue(cache.contains(tile(0)));
+            assertFalse(cache.contains(tile(1)));
+            assertFalse(cache.contains(tile(2)));
+            for (int y = 3; y <= 10; y += 1) assertTrue(cache.contains(tile(y)));
+            assertFalse(Files.exists(directory.resolve("19/271725/1.png")));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void diskTileCacheEvictsLeastFrequentlyUsedTiles() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var cache = new DiskTileCache(directory, 1000, DAY,
+                    DiskTileCache.EvictionPolicy.LFU);
+            for (int y = 0; y < 10; y += 1) cache.write(tile(y), data(100, y), null);
+            for (int y = 0; y < 10; y += 1) {
+                if (y == 4 || y == 7) continue;
+                cache.read(tile(y));
+                cache.read(tile(y));
+            }
+            cache.write(tile(10), data(100, 10), null);
+            assertEquals(900, cache.usedBytes());
+            assertFalse(cache.contains(tile(4)));
+            assertFalse(cache.contains(tile(7)));
+            assertTrue(cache.contains(tile(10)));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void diskTileCacheEnforcesItsBudgetAtStartup() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var cache = new DiskTileCache(directory, 1000, DAY,
+                    DiskTileCache.EvictionPolicy.LRU);
+            for (int y = 0; y < 10; y += 1) cache.write(tile(y), data(100, y), null);
+            var reopened = new DiskTileCache(directory, 500, DAY,
+                    DiskTileCache.EvictionPolicy.LRU);
+            assertEquals(400, reopened.usedBytes());
+            assertEquals(4, reopened.size());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void diskTileCacheTracksExpiry() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var cache = new DiskTileCache(directory, 1000, DAY,
+                    DiskTileCache.EvictionPolicy.LRU);
+            cache.write(tile(0), data(100, 0), null);
+            cache.write(tile(1), data(100, 1), null);
+            assertFalse(cache.isExpired(tile(0)));
+            assertFalse(cache.isExpired(tile(2)));
+            assertEquals(0, cache.lastFetched(tile(2)));
+
+            var file = directory.resolve("19/271725/0.png");
+            var twoDaysAgo = System.currentTimeMillis() - 2 * DAY.toMillis();
+            Files.setLastModifiedTime(file, FileTime.fromMillis(twoDaysAgo));
+            var reopened = new DiskTileCache(directory, 1000, DAY,
+                    DiskTileCache.EvictionPolicy.LRU);
+            assertTrue(reopened.isExpired(tile(0)));
+            assertFalse(reopened.isExpired(tile(1)));
+            assertEquals(twoDaysAgo / 1000, reopened.lastFetched(tile(0)) / 1000);
+
+            reopened.refresh(tile(0));
+            assertFalse(reopened.isExpired(tile(0)));
+            assertTrue(Files.getLastModifiedTime(file).toMillis() > twoDaysAgo);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void diskTileCacheForgetsTilesDeletedBehindItsBack() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var cache = new DiskTileCache(directory, 1000, DAY,
+                    DiskTileCache.EvictionPolicy.LRU);
+            cache.write(tile(0), data(100, 0), null);
+            Files.delete(directory.resolve("19/271725/0.png"));
+            assertNull(cache.read(tile(0)));
+            assertFalse(cache.contains(tile(0)));
+            assertEquals(0, cache.usedBytes());
+        } finally {
+            delete(directory);
+        }
+    }
+}
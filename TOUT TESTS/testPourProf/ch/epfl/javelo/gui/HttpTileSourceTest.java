@@ -0,0 +1,115 @@
+package ch.epfl.javelo.gui;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpTileSourceTest {
+
+    private static final TileManager.TileId TILE = new TileManager.TileId(19, 271725, 185422);
+    private static final byte[] DATA = {1, 2, 3, 4, 5};
+
+    private static Path tileDirectory() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        var file = directory.resolve("19/271725/185422.png");
+        Files.createDirectories(file.getParent());
+        Files.write(file, DATA);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_600_000_000_000L));
+        return directory;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    private static HttpTileSource source(LocalTileServer server) {
+        return new HttpTileSource(server.baseUri(), 2, Duration.ofSeconds(5), 3,
+                Duration.ofMillis(1));
+    }
+
+    @Test
+    void httpTileSourceFetchesTilesWithTheirEtag() throws IOException {
+        var directory = tileDirectory();
+        try (var server = LocalTileServer.start(directory, 0)) {
+            var tile = source(server).fetch(TILE, null, 0);
+            assertArrayEquals(DATA, tile.data());
+            assertNotNull(tile.etag());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void httpTileSourceReturnsNullWhenEtagMatches() throws IOException {
+        var directory = tileDirectory();
+        try (var server = LocalTileServer.start(directory, 0)) {
+            var source = source(server);
+            var etag = source.fetch(TILE, null, 0).etag();
+            assertNull(source.fetch(TILE, etag, 0));
+            assertNotNull(source.fetch(TILE, "\"other\"", 0));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void httpTileSourceReturnsNullWhenNotModifiedSince() throws IOException {
+        var directory = tileDirectory();
+        try (var server = LocalTileServer.start(directory, 0)) {
+            var source = source(server);
+            assertNull(source.fetch(TILE, null, 1_600_000_000_000L));
+            assertNotNull(source.fetch(TILE, null, 1_500_000_000_000L));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void httpTileSourceFailsOnMissingTile() throws IOException {
+        var directory = tileDirectory();
+        try (var server = LocalTileServer.start(directory, 0)) {
+            var source = source(server);
+            assertThrows(IOException.class,
+                    () -> source.fetch(new TileManager.TileId(19, 0, 0), null, 0));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void httpTileSourceRejectsInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new HttpTileSource("http://localhost", 0, Duration.ofSeconds(1), 1,
+                        Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () ->
+                new HttpTileSource("http://localhost", 1, Duration.ZERO, 1, Duration.ZERO));
+    }
+
+    @Test
+    void directoryTileSourceWorks() throws IOException {
+        var directory = tileDirectory();
+        try {
+            var source = new DirectoryTileSource(directory);
+            var tile = source.fetch(TILE, null, 0);
+            assertArrayEquals(DATA, tile.data());
+            assertNull(source.fetch(TILE, tile.etag(), 0));
+            assertNull(source.fetch(TILE, null, 1_600_000_000_500L));
+            assertNotNull(source.fetch(TILE, null, 1_599_999_999_000L));
+            assertThrows(IOException.class,
+                    () -> source.fetch(new TileManager.TileId(19, 0, 0), null, 0));
+        } finally {
+            delete(directory);
+        }
+    }
+}
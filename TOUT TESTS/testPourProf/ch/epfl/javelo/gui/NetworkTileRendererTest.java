@@ -0,0 +1,140 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphEdges;
+import ch.epfl.javelo.data.GraphNodes;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.javelo.routing.CityBikeCF;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+import static ch.epfl.javelo.data.Attribute.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkTileRendererTest {
+
+    private static final PointCh LAUSANNE = new PointCh(2_538_000, 1_152_500);
+
+    private static TileManager.TileId tileAt(PointCh point, int zoomLevel) {
+        var p = PointWebMercator.ofPointCh(point);
+        return new TileManager.TileId(zoomLevel,
+                (int) (p.xAtZoomLevel(zoomLevel) / NetworkTileRenderer.TILE_SIZE),
+                (int) (p.yAtZoomLevel(zoomLevel) / NetworkTileRenderer.TILE_SIZE));
+    }
+
+    private static int opaquePixels(int[] pixels) {
+        int count = 0;
+        for (int pixel : pixels) if ((pixel >>> 24) != 0) count += 1;
+        return count;
+    }
+
+    private static int sectorOf(int e, int n) {
+        int x = (int) ((e - SwissBounds.MIN_E) / (SwissBounds.WIDTH / 128));
+        int y = (int) ((n - SwissBounds.MIN_N) / (SwissBounds.HEIGHT / 128));
+        return y * 128 + x;
+    }
+
+    //Graphe formé d'une seule voie horizontale de 1 km partant de LAUSANNE, ayant les attributs
+    //donnés, et de ses deux arêtes : 0 du nœud 0 au nœud 1, et 1, inversée, en sens contraire.
+    private static Graph segmentGraph(AttributeSet attributes) {
+        int e = (int) LAUSANNE.e(), n = (int) LAUSANNE.n(), length = 1000;
+        var nodes = IntBuffer.wrap(new int[]{
+                16 * e, 16 * n, 1 << 28,
+                16 * (e + length), 16 * n, 1 << 28 | 1});
+        var edges = ByteBuffer.allocate(2 * 10);
+        edges.putInt(0, 1).putShort(4, (short) (16 * length));
+        edges.putInt(10, ~0).putShort(14, (short) (16 * length));
+        var sectors = ByteBuffer.allocate(128 * 128 * 6);
+        int sector0 = sectorOf(e, n), sector1 = sectorOf(e + length, n);
+        sectors.putInt(6 * sector0, 0).putShort(6 * sector0 + 4, (short) 1);
+        int count1 = sector0 == sector1 ? 2 : 1;
+        sectors.putInt(6 * sector1, 2 - count1).putShort(6 * sector1 + 4, (short) count1);
+        return new Graph(new GraphNodes(nodes), new GraphSectors(sectors),
+                new GraphEdges(edges, IntBuffer.allocate(2), ShortBuffer.allocate(0)),
+                List.of(attributes));
+    }
+
+    private static int[] renderSegment(AttributeSet attributes, int zoomLevel) {
+        var graph = segmentGraph(attributes);
+        var middle = new PointCh(LAUSANNE.e() + 500, LAUSANNE.n());
+        return new NetworkTileRenderer(graph, new CityBikeCF(graph))
+                .render(tileAt(middle, zoomLevel));
+    }
+
+    @Test
+    void networkTileRendererDrawsEdgesInsideTheGraph() throws IOException {
+        var graph = Graph.loadFrom(Path.of("lausanne"));
+        var renderer = new NetworkTileRenderer(graph, new CityBikeCF(graph));
+        for (int zoom = 11; zoom <= 16; zoom += 1) {
+            var pixels = renderer.render(tileAt(LAUSANNE, zoom));
+            assertNotNull(pixels);
+            assertEquals(NetworkTileRenderer.TILE_SIZE * NetworkTileRenderer.TILE_SIZE,
+                    pixels.length);
+            assertTrue(opaquePixels(pixels) > 0);
+        }
+    }
+
+    @Test
+    void networkTileRendererReturnsNullOutsideTheGraph() throws IOException {
+        var graph = Graph.loadFrom(Path.of("lausanne"));
+        var renderer = new NetworkTileRenderer(graph, new CityBikeCF(graph));
+        assertNull(renderer.render(new TileManager.TileId(14, 0, 0)));
+        assertNull(renderer.render(tileAt(new PointCh(2_800_000, 1_250_000), 14)));
+    }
+
+    @Test
+    void networkTileRendererSkipsMinorEdgesAtLowZoomLevels() {
+        assertEquals(0, NetworkTileRenderer.minZoomLevel(AttributeSet.of(HIGHWAY_PRIMARY)));
+        assertEquals(0, NetworkTileRenderer.minZoomLevel(
+                AttributeSet.of(HIGHWAY_RESIDENTIAL, RCN_YES)));
+        assertEquals(11, NetworkTileRenderer.minZoomLevel(AttributeSet.of(HIGHWAY_TERTIARY)));
+        assertEquals(13, NetworkTileRenderer.minZoomLevel(AttributeSet.of(HIGHWAY_RESIDENTIAL)));
+        assertEquals(14, NetworkTileRenderer.minZoomLevel(AttributeSet.of(HIGHWAY_FOOTWAY)));
+        assertEquals(14, NetworkTileRenderer.minZoomLevel(AttributeSet.of()));
+    }
+
+    @Test
+    void networkTileRendererColorsOneWayStreetsByTheirOpenDirection() {
+        //Seule l'arête inversée d'une voie à sens unique inversé est praticable ; la voie ne
+        //doit pas être dessinée en gris, couleur des arêtes interdites.
+        for (var oneWay : List.of(ONEWAY_M1, ONEWAY_YES)) {
+            var pixels = renderSegment(AttributeSet.of(HIGHWAY_PRIMARY, oneWay), 15);
+            assertNotNull(pixels);
+            assertTrue(opaquePixels(pixels) > 0);
+            for (int pixel : pixels) {
+                if ((pixel >>> 24) == 0) continue;
+                int red = (pixel >> 16) & 0xFF, green = (pixel >> 8) & 0xFF, blue = pixel & 0xFF;
+                assertFalse(red == green && green == blue,
+                        oneWay + " drawn in " + Integer.toHexString(pixel));
+            }
+        }
+    }
+
+    @Test
+    void networkTileRendererDashesOneWayStreets() {
+        int twoWay = opaquePixels(renderSegment(AttributeSet.of(HIGHWAY_PRIMARY), 15));
+        int oneWay = opaquePixels(renderSegment(AttributeSet.of(HIGHWAY_PRIMARY, ONEWAY_M1), 15));
+        assertTrue(0 < oneWay && oneWay < twoWay);
+    }
+
+    @Test
+    void networkTileRendererDrawsOnlyVisibleCategoriesAtEveryZoomLevel() {
+        for (int zoom = 8; zoom <= 16; zoom += 1) {
+            assertNotNull(renderSegment(AttributeSet.of(HIGHWAY_PRIMARY), zoom));
+            var tertiary = renderSegment(AttributeSet.of(HIGHWAY_TERTIARY), zoom);
+            assertEquals(zoom >= 11, tertiary != null);
+            var footway = renderSegment(AttributeSet.of(HIGHWAY_FOOTWAY), zoom);
+            assertEquals(zoom >= 14, footway != null);
+        }
+    }
+}
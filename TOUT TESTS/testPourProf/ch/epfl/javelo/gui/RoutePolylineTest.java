@@ -0,0 +1,120 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.routing.Edge;
+import ch.epfl.javelo.routing.SingleRoute;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutePolylineTest {
+
+    private static final double ORIGIN_E = 2_600_000;
+    private static final double ORIGIN_N = 1_200_000;
+
+    private static SingleRoute route(List<PointCh> points) {
+        var edges = new ArrayList<Edge>();
+        for (int i = 0; i < points.size() - 1; i += 1) {
+            var from = points.get(i);
+            var to = points.get(i + 1);
+            edges.add(new Edge(i, i + 1, from, to, from.distanceTo(to), x -> Double.NaN));
+        }
+        return new SingleRoute(edges);
+    }
+
+    private static List<PointCh> zigZag(int count, double amplitude) {
+        var points = new ArrayList<PointCh>();
+        for (int i = 0; i < count; i += 1)
+            points.add(new PointCh(ORIGIN_E + 100 * i, ORIGIN_N + (i % 2) * amplitude));
+        return points;
+    }
+
+    private static double distanceToSegment(double x, double y, double x1, double y1,
+                                            double x2, double y2) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double squaredLength = dx * dx + dy * dy;
+        double t = squaredLength == 0
+                ? 0
+                : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / squaredLength));
+        return Math.hypot(x1 + t * dx - x, y1 + t * dy - y);
+    }
+
+    @Test
+    void routePolylineKeepsOnlyEndpointsOfStraightRoutes() {
+        var points = new ArrayList<PointCh>();
+        for (int i = 0; i < 100; i += 1)
+            points.add(new PointCh(ORIGIN_E + 10 * i, ORIGIN_N + 5 * i));
+        var polyline = new RoutePolyline(route(points));
+        assertEquals(100, polyline.pointCount());
+        for (int zoom = 0; zoom <= 20; zoom += 1) {
+            var coordinates = polyline.coordinatesAt(zoom);
+            assertEquals(4, coordinates.length);
+            var first = PointWebMercator.ofPointCh(points.get(0));
+            var last = PointWebMercator.ofPointCh(points.get(99));
+            assertEquals(first.xAtZoomLevel(zoom), coordinates[0], 1e-6);
+            assertEquals(first.yAtZoomLevel(zoom), coordinates[1], 1e-6);
+            assertEquals(last.xAtZoomLevel(zoom), coordinates[2], 1e-6);
+            assertEquals(last.yAtZoomLevel(zoom), coordinates[3], 1e-6);
+        }
+    }
+
+    @Test
+    void routePolylineSimplifiesMoreAtLowerZoomLevels() {
+        var polyline = new RoutePolyline(route(zigZag(101, 10)));
+        assertEquals(2 * 101, polyline.coordinatesAt(19).length);
+        assertEquals(4, polyline.coordinatesAt(8).length);
+        int previousLength = Integer.MAX_VALUE;
+        for (int zoom = 20; zoom >= 0; zoom -= 1) {
+            int length = polyline.coordinatesAt(zoom).length;
+            assertTrue(length <= previousLength);
+            previousLength = length;
+        }
+    }
+
+    @Test
+    void routePolylineStaysWithinHalfAPixelOfTheRoute() {
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS / 10; i += 1) {
+            var points = new ArrayList<PointCh>();
+            double e = ORIGIN_E, n = ORIGIN_N;
+            for (int j = 0; j < 200; j += 1) {
+                points.add(new PointCh(e, n));
+                e += rng.nextDouble(-50, 50);
+                n += rng.nextDouble(-50, 50);
+            }
+            var polyline = new RoutePolyline(route(points));
+            int zoom = rng.nextInt(8, 20);
+            var coordinates = polyline.coordinatesAt(zoom);
+            for (PointCh point : points) {
+                var p = PointWebMercator.ofPointCh(point);
+                double x = p.xAtZoomLevel(zoom), y = p.yAtZoomLevel(zoom);
+                double distance = Double.POSITIVE_INFINITY;
+                for (int k = 2; k < coordinates.length; k += 2) {
+                    distance = Math.min(distance, distanceToSegment(x, y,
+                            coordinates[k - 2], coordinates[k - 1],
+                            coordinates[k], coordinates[k + 1]));
+                }
+                assertTrue(distance <= 0.5 + 1e-6);
+            }
+        }
+    }
+
+    @Test
+    void routePolylineCachesSimplifiedLines() {
+        var polyline = new RoutePolyline(route(zigZag(50, 10)));
+        assertSame(polyline.coordinatesAt(12), polyline.coordinatesAt(12));
+    }
+
+    @Test
+    void routePolylineThrowsOnInvalidZoomLevel() {
+        var polyline = new RoutePolyline(route(zigZag(3, 10)));
+        assertThrows(IllegalArgumentException.class, () -> polyline.coordinatesAt(-1));
+        assertThrows(IllegalArgumentException.class, () -> polyline.coordinatesAt(21));
+    }
+}
@@ -0,0 +1,196 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.projection.WebMercator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileArchiveTest {
+
+    private static byte[] content(TileManager.TileId tileId) {
+        var size = 1 + (tileId.xTile() * 31 + tileId.yTile() * 7 + tileId.zoomLevel()) % 300;
+        var content = new byte[size];
+        for (int i = 0; i < size; i += 1) content[i] = (byte) (i * tileId.yTile() + tileId.xTile());
+        return content;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static List<TileManager.TileId> writeTiles(Path directory) throws IOException {
+        var rng = newRandom();
+        var tiles = new ArrayList<TileManager.TileId>();
+        for (int i = 0; i < 200; i += 1) {
+            var zoom = rng.nextInt(8, 13);
+            var tileId = new TileManager.TileId(zoom, rng.nextInt(1 << zoom),
+                    rng.nextInt(1 << zoom));
+            if (tiles.contains(tileId)) continue;
+            tiles.add(tileId);
+            var file = directory.resolve(tileId.zoomLevel() + "/" + tileId.xTile() + "/"
+                    + tileId.yTile() + ".png");
+            Files.createDirectories(file.getParent());
+            Files.write(file, content(tileId));
+        }
+        return tiles;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    void tileArchiveContainsImportedTiles() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var tiles = writeTiles(directory.resolve("osm-cache"));
+            Files.write(directory.resolve("osm-cache/readme.txt"), new byte[10]);
+            var file = directory.resolve("tiles.jvta");
+            assertEquals(tiles.size(), TileArchive.importDirectory(directory.resolve("osm-cache"),
+                    file));
+
+            var archive = TileArchive.open(file);
+            assertEquals(tiles.size(), archive.size());
+            for (var tileId : tiles) {
+                assertTrue(archive.contains(tileId));
+                assertArrayEquals(content(tileId), bytes(archive.tileData(tileId)));
+            }
+            var missing = new TileManager.TileId(14, 1, 1);
+            assertFalse(archive.contains(missing));
+            assertNull(archive.tileData(missing));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void tileArchiveTileDataIsReadOnly() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var tiles = writeTiles(directory.resolve("osm-cache"));
+            var file = directory.resolve("tiles.jvta");
+            TileArchive.importDirectory(directory.resolve("osm-cache"), file);
+            var data = TileArchive.open(file).tileData(tiles.get(0));
+            assertTrue(data.isReadOnly());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void tileArchiveExportsTilesInBoundsAndZoomRange() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var tiles = writeTiles(directory.resolve("osm-cache"));
+            var file = directory.resolve("tiles.jvta");
+            TileArchive.importDirectory(directory.resolve("osm-cache"), file);
+            var archive = TileArchive.open(file);
+
+            var topLeft = new PointWebMercator(0.25, 0.3);
+            var bottomRight = new PointWebMercator(0.6, 0.7);
+            var exported = directory.resolve("export.jvta");
+            var count = archive.export(exported, topLeft, bottomRight, 9, 11);
+            var subset = TileArchive.open(exported);
+            assertEquals(count, subset.size());
+
+            var expected = 0;
+            for (var tileId : tiles) {
+                int zoom = tileId.zoomLevel();
+                double scale = 1 << zoom;
+                boolean inside = zoom >= 9 && zoom <= 11
+                        && tileId.xTile() >= (int) Math.floor(0.25 * scale)
+                        && tileId.xTile() <= (int) Math.floor(0.6 * scale)
+                        && tileId.yTile() >= (int) Math.floor(0.3 * scale)
+                        && tileId.yTile() <= (int) Math.floor(0.7 * scale);
+                assertEquals(inside, subset.contains(tileId));
+                if (inside) {
+                    expected += 1;
+                    assertArrayEquals(content(tileId), bytes(subset.tileData(tileId)));
+                }
+            }
+            assertEquals(expected, count);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void tileArchiveExportThrowsOnInvalidRanges() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var file = directory.resolve("tiles.jvta");
+            TileArchive.importDirectory(directory, file);
+            var archive = TileArchive.open(file);
+            assertEquals(0, archive.size());
+            var point = new PointWebMercator(0.5, 0.5);
+            assertThrows(IllegalArgumentException.class, () ->
+                    archive.export(directory.resolve("e"), point, point, 12, 11));
+            assertThrows(IllegalArgumentException.class, () ->
+                    archive.export(directory.resolve("e"), point,
+                            new PointWebMercator(0.4, 0.6), 11, 12));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void tileArchiveRejectsInvalidFiles() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var file = directory.resolve("tiles.jvta");
+            Files.write(file, new byte[]{1, 2, 3});
+            assertThrows(IOException.class, () -> TileArchive.open(file));
+
+            writeTiles(directory.resolve("osm-cache"));
+            TileArchive.importDirectory(directory.resolve("osm-cache"), file);
+            var bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+            assertThrows(IOException.class, () -> TileArchive.open(file));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void tileArchiveMainImportsAndExportsArchives() throws IOException {
+        var directory = Files.createTempDirectory("tiles");
+        try {
+            var tiles = writeTiles(directory.resolve("osm-cache"));
+            var file = directory.resolve("tiles.jvta");
+            TileArchive.main(new String[]{"import", directory.resolve("osm-cache").toString(),
+                    file.toString()});
+            var archive = TileArchive.open(file);
+            assertEquals(tiles.size(), archive.size());
+
+            // Rectangle de longitudes -90° à 45° et de latitudes -60° à 30°.
+            var exported = directory.resolve("export.jvta");
+            TileArchive.main(new String[]{"export", file.toString(), exported.toString(),
+                    "-90", "-60", "45", "30", "9", "11"});
+            var topLeft = new PointWebMercator(0.25, WebMercator.y(Math.toRadians(30)));
+            var bottomRight = new PointWebMercator(0.625, WebMercator.y(Math.toRadians(-60)));
+            var expected = directory.resolve("expected.jvta");
+            var count = archive.export(expected, topLeft, bottomRight, 9, 11);
+            assertTrue(count > 0);
+            assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(exported));
+        } finally {
+            delete(directory);
+        }
+    }
+}
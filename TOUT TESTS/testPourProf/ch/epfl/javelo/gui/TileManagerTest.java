@@ -0,0 +1,210 @@
+package ch.epfl.javelo.gui;
+
+import javafx.scene.image.Image;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileManagerTest {
+
+    // Nombre de fils de chargement du gestionnaire, tous occupés par occupyLoaders.
+    private static final int LOADER_THREAD_COUNT = 4;
+
+    private static final byte[] PNG = png();
+
+    private static byte[] png() {
+        try {
+            var out = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB), "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Source enregistrant les tuiles demandées, dans l'ordre, et bloquant chaque demande
+    // jusqu'à ce qu'une autorisation soit donnée.
+    private static final class StubSource implements TileSource {
+        private final BlockingQueue<TileManager.TileId> fetched = new LinkedBlockingQueue<>();
+        private final Semaphore permits = new Semaphore(0);
+
+        @Override
+        public Tile fetch(TileManager.TileId tileId, String etag, long lastFetched) {
+            fetched.add(tileId);
+            permits.acquireUninterruptibly();
+            return new Tile(PNG, null);
+        }
+
+        private TileManager.TileId nextFetch() throws InterruptedException {
+            var tileId = fetched.poll(5, TimeUnit.SECONDS);
+            assertNotNull(tileId, "no tile fetched");
+            return tileId;
+        }
+    }
+
+    private static TileManager manager(StubSource source) throws IOException {
+        return new TileManager(Files.createTempDirectory("tiles"), source, 1 << 20,
+                DiskTileCache.EvictionPolicy.LRU);
+    }
+
+    // Occupe tous les fils de chargement avec des tuiles affichées, de sorte que les
+    // chargements suivants restent en file jusqu'à ce que des autorisations soient données.
+    private static void occupyLoaders(TileManager manager, StubSource source)
+            throws InterruptedException {
+        for (int i = 0; i < LOADER_THREAD_COUNT; i += 1)
+            manager.imageFutureForTileAt(new TileManager.TileId(19, 1000, i));
+        for (int i = 0; i < LOADER_THREAD_COUNT; i += 1) source.nextFetch();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void tileManagerLoadsATileOnceForConcurrentRequests() throws Exception {
+        var source = new StubSource();
+        var manager = manager(source);
+        var tileId = new TileManager.TileId(5, 3, 4);
+        var futures = new ArrayList<CompletableFuture<Image>>();
+        for (int i = 0; i < 4; i += 1) futures.add(manager.imageFutureForTileAt(tileId));
+        assertEquals(tileId, source.nextFetch());
+
+        // Annuler un des futurs n'annule pas le chargement partagé.
+        futures.get(0).cancel(false);
+        source.permits.release(100);
+        var image = futures.get(1).get(5, TimeUnit.SECONDS);
+        for (var future : futures.subList(2, futures.size()))
+            assertSame(image, future.get(5, TimeUnit.SECONDS));
+        assertNull(source.fetched.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, manager.statistics().networkLoads());
+    }
+
+    @Test
+    void tileManagerLoadsVisibleTilesBeforePrefetches() throws Exception {
+        var source = new StubSource();
+        var manager = manager(source);
+        occupyLoaders(manager, source);
+        manager.prefetch(new MapViewParameters(1, 0, 0), 512, 512, 0, 0);
+        var first = new TileManager.TileId(19, 2000, 0);
+        var second = new TileManager.TileId(19, 2000, 1);
+        manager.imageFutureForTileAt(first);
+        manager.imageFutureForTileAt(second);
+        assertTrue(manager.statistics().prefetchesQueued() > 0);
+
+        // Une autorisation à la fois : chaque fil libéré prend la tâche suivante de la file.
+        source.permits.release();
+        assertEquals(first, source.nextFetch());
+        source.permits.release();
+        assertEquals(second, source.nextFetch());
+        source.permits.release();
+        assertTrue(source.nextFetch().zoomLevel() <= 2);
+        source.permits.release(100);
+    }
+
+    @Test
+    void tileManagerPromotesAPrefetchToVisiblePriority() throws Exception {
+        var source = new StubSource();
+        var manager = manager(source);
+        occupyLoaders(manager, source);
+        // La tuile de niveau 0 est la dernière tuile préchargée pour cette vue.
+        manager.prefetch(new MapViewParameters(1, 0, 0), 512, 512, 0, 0);
+        var root = new TileManager.TileId(0, 0, 0);
+        var future = manager.imageFutureForTileAt(root);
+
+        source.permits.release();
+        assertEquals(root, source.nextFetch());
+        source.permits.release(100);
+        assertNotNull(future.get(5, TimeUnit.SECONDS));
+        // La tuile a été demandée pour être affichée avant d'être chargée.
+        assertEquals(0, manager.statistics().prefetchHits());
+    }
+
+    @Test
+    void tileManagerDropsPrefetchesThatLeftTheView() throws Exception {
+        var source = new StubSource();
+        var manager = manager(source);
+        occupyLoaders(manager, source);
+        manager.prefetch(new MapViewParameters(1, 0, 0), 512, 512, 0, 0);
+        var dropped = manager.statistics().prefetchesQueued();
+        assertTrue(dropped > 0);
+        // La vue se déplace au niveau 10 : les préchargements des niveaux 0 à 2 sont inutiles.
+        manager.prefetch(new MapViewParameters(10, 100_000, 100_000), 256, 256, 0, 0);
+
+        source.permits.release(1000);
+        await(() -> manager.statistics().prefetchesCancelled() == dropped);
+        var fetchedZoomLevels = new HashSet<Integer>();
+        for (var tileId : source.fetched) fetchedZoomLevels.add(tileId.zoomLevel());
+        assertTrue(fetchedZoomLevels.stream().allMatch(zoom -> zoom >= 9),
+                fetchedZoomLevels::toString);
+    }
+
+    @Test
+    void tileManagerCountsItsStatistics() throws Exception {
+        var source = new StubSource();
+        source.permits.release(1000);
+        var directory = Files.createTempDirectory("tiles");
+        var manager = new TileManager(directory, source, 1 << 20,
+                DiskTileCache.EvictionPolicy.LRU);
+        var tileId = new TileManager.TileId(5, 1, 1);
+        manager.imageForTileAt(tileId);
+        manager.imageForTileAt(tileId);
+        var statistics = manager.statistics();
+        assertEquals(2, statistics.requests());
+        assertEquals(1, statistics.memoryHits());
+        assertEquals(1, statistics.networkLoads());
+        assertEquals(0.5, statistics.hitRate());
+
+        // Une tuile préchargée puis affichée compte comme satisfaite par le préchargement.
+        var root = new TileManager.TileId(0, 0, 0);
+        manager.prefetch(new MapViewParameters(0, 0, 0), 256, 256, 0, 0);
+        await(() -> manager.cachedImageForTileAt(root) != null);
+        assertNotNull(manager.imageForTileAtIfLoaded(root, () -> {}));
+        assertEquals(1, manager.statistics().prefetchHits());
+
+        // Un nouveau gestionnaire lit la tuile dans le cache disque.
+        var otherSource = new StubSource();
+        var reopened = new TileManager(directory, otherSource, 1 << 20,
+                DiskTileCache.EvictionPolicy.LRU);
+        reopened.imageForTileAt(tileId);
+        assertEquals(1, reopened.statistics().diskLoads());
+        assertEquals(0, reopened.statistics().networkLoads());
+        assertTrue(otherSource.fetched.isEmpty());
+    }
+
+    @Test
+    void tileManagerReturnsTheCoveredPartOfTheNearestCachedAncestor() throws Exception {
+        var source = new StubSource();
+        source.permits.release(1000);
+        var manager = manager(source);
+        var ancestor = manager.imageForTileAt(new TileManager.TileId(3, 2, 5));
+
+        assertNull(manager.ancestorPartForTileAt(new TileManager.TileId(4, 0, 0)));
+        var part = manager.ancestorPartForTileAt(new TileManager.TileId(5, 9, 22));
+        assertNotNull(part);
+        assertSame(ancestor, part.image());
+        assertEquals(List.of(64, 128, 64), List.of(part.x(), part.y(), part.size()));
+        // Plus de quatre niveaux au-dessus, l'ancêtre n'est pas utilisé.
+        assertNull(manager.ancestorPartForTileAt(new TileManager.TileId(8, 2 << 5, 5 << 5)));
+    }
+}
@@ -0,0 +1,121 @@
+package ch.epfl.javelo.gui;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileMemoryCacheTest {
+
+    private static TileManager.TileId tile(int y) {
+        return new TileManager.TileId(19, 271725, y);
+    }
+
+    @Test
+    void tileMemoryCacheConstructorThrowsOnInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new TileMemoryCache<Long>(-1, 1, v -> v, t -> {}));
+        assertThrows(IllegalArgumentException.class, () ->
+                new TileMemoryCache<Long>(100, 3, v -> v, t -> {}));
+        assertThrows(IllegalArgumentException.class, () ->
+                new TileMemoryCache<Long>(100, 0, v -> v, t -> {}));
+    }
+
+    @Test
+    void tileMemoryCacheReturnsCachedValues() {
+        var cache = new TileMemoryCache<Long>(1000, 4, v -> v, t -> {});
+        assertNull(cache.get(tile(1)));
+        cache.put(tile(1), 10L);
+        assertEquals(10, (long) cache.get(tile(1)));
+        assertEquals(10, (long) cache.peek(tile(1)));
+        cache.put(tile(1), 20L);
+        assertEquals(20, (long) cache.get(tile(1)));
+        assertEquals(20, cache.usedBytes());
+        assertEquals(1, cache.size());
+
+        assertFalse(cache.putIfAbsent(tile(1), 30L));
+        assertEquals(20, (long) cache.get(tile(1)));
+        assertTrue(cache.putIfAbsent(tile(2), 30L));
+        assertEquals(30, (long) cache.get(tile(2)));
+    }
+
+    @Test
+    void tileMemoryCacheEvictsLeastRecentlyUsedValues() {
+        var evicted = new ArrayList<TileManager.TileId>();
+        var cache = new TileMemoryCache<Long>(100, 1, v -> v, evicted::add);
+        for (int y = 0; y < 10; y += 1) cache.put(tile(y), 10L);
+        cache.get(tile(0));
+        cache.peek(tile(1));
+        cache.put(tile(10), 25L);
+        assertEquals(95, cache.usedBytes());
+        assertEquals(List.of(tile(1), tile(2), tile(3)), evicted);
+        assertNotNull(cache.peek(tile(0)));
+        assertNull(cache.peek(tile(1)));
+    }
+
+    @Test
+    void tileMemoryCacheKeepsValuesLargerThanItsBudget() {
+        var cache = new TileMemoryCache<Long>(100, 1, v -> v, t -> {});
+        cache.put(tile(0), 10L);
+        cache.put(tile(1), 500L);
+        assertNull(cache.peek(tile(0)));
+        assertEquals(500, (long) cache.get(tile(1)));
+    }
+
+    @Test
+    void tileMemoryCacheStaysWithinItsBudget() {
+        var rng = newRandom();
+        var cache = new TileMemoryCache<Long>(8 * 100, 8, v -> v, t -> {});
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var tileId = tile(rng.nextInt(10_000));
+            var value = (long) rng.nextInt(1, 50);
+            cache.put(tileId, value);
+            assertTrue(cache.usedBytes() <= 8 * 100);
+            assertEquals(value, (long) cache.peek(tileId));
+        }
+    }
+
+    @Test
+    void tileMemoryCacheWorksWithConcurrentAccesses() throws InterruptedException {
+        var evicted = ConcurrentHashMap.<TileManager.TileId>newKeySet();
+        var cache = new TileMemoryCache<Long>(8 * 1000, 8, v -> v, evicted::add);
+        var failures = new AtomicInteger();
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t += 1) {
+            var seed = t;
+            threads.add(new Thread(() -> {
+                var rng = new Random(seed);
+                for (int i = 0; i < 20_000; i += 1) {
+                    var y = rng.nextInt(2_000);
+                    var value = cache.get(tile(y));
+                    if (value != null && value != y % 40 + 1) failures.incrementAndGet();
+                    if (value == null) cache.put(tile(y), (long) (y % 40 + 1));
+                }
+            }));
+        }
+        for (var thread : threads) thread.start();
+        for (var thread : threads) thread.join();
+        assertEquals(0, failures.get());
+        assertTrue(cache.usedBytes() <= 8 * 1000);
+
+        long total = 0;
+        Set<TileManager.TileId> cached = new HashSet<>();
+        for (int y = 0; y < 2_000; y += 1) {
+            var value = cache.peek(tile(y));
+            if (value == null) continue;
+            total += value;
+            cached.add(tile(y));
+        }
+        assertEquals(total, cache.usedBytes());
+        assertEquals(cached.size(), cache.size());
+    }
+}
@@ -0,0 +1,85 @@
+package ch.epfl.javelo.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.DoubleUnaryOperator;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClimbDetectorTest {
+    private static final double STEP = 5;
+
+    private static ElevationProfile profile(double length, DoubleUnaryOperator elevation) {
+        var samples = new float[(int) Math.ceil(length / STEP) + 1];
+        for (int i = 0; i < samples.length; i += 1)
+            samples[i] = (float) elevation.applyAsDouble(i * length / (samples.length - 1));
+        return new ElevationProfile(length, samples);
+    }
+
+    private static double roadBookElevation(double x) {
+        if (x < 2_000) return 500;
+        if (x < 12_000) return 500 + 0.08 * (x - 2_000);
+        if (x < 14_000) return 1_300 - 0.06 * (x - 12_000);
+        if (x < 15_000) return 1_180;
+        if (x < 15_100) return 1_180 + 0.03 * (x - 15_000);
+        if (x < 15_200) return 1_183 - 0.03 * (x - 15_100);
+        if (x < 16_000) return 1_180;
+        if (x < 19_000) return 1_180 + 0.05 * (x - 16_000);
+        return 1_330;
+    }
+
+    @Test
+    void climbDetectorFindsNoClimbOnFlatOrDescendingProfiles() {
+        assertTrue(ClimbDetector.climbs(profile(10_000, x -> 400)).isEmpty());
+        assertTrue(ClimbDetector.climbs(profile(10_000, x -> 1_000 - 0.07 * x)).isEmpty());
+    }
+
+    @Test
+    void climbDetectorIgnoresSmallBumps() {
+        // 9 m bumps every kilometre, on a flat profile
+        var climbs = ClimbDetector.climbs(
+                profile(20_000, x -> 600 + 9 * Math.max(0, Math.sin(x / 1_000 * 2 * Math.PI))));
+        assertTrue(climbs.isEmpty());
+    }
+
+    @Test
+    void climbDetectorFindsAndCategorisesClimbs() {
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS / 100; i += 1) {
+            // Noise must be smoothed away rather than cut climbs into pieces
+            var profile = profile(20_000, x -> roadBookElevation(x) + rng.nextDouble(-0.5, 0.5));
+            var climbs = ClimbDetector.climbs(profile);
+            assertEquals(2, climbs.size());
+
+            var first = climbs.get(0);
+            assertEquals(2_000, first.startPosition(), 100);
+            assertEquals(12_000, first.endPosition(), 100);
+            assertEquals(10_000, first.length(), 200);
+            assertEquals(800, first.elevationGain(), 10);
+            assertEquals(0.08, first.averageGradient(), 0.002);
+            assertEquals(0.08, first.maxGradient(), 0.005);
+            assertEquals(Climb.Category.FIRST, first.category());
+
+            var second = climbs.get(1);
+            assertEquals(16_000, second.startPosition(), 100);
+            assertEquals(19_000, second.endPosition(), 100);
+            assertEquals(150, second.elevationGain(), 10);
+            assertEquals(0.05, second.averageGradient(), 0.003);
+            assertEquals(Climb.Category.FOURTH, second.category());
+        }
+    }
+
+    @Test
+    void climbCategoryDependsOnScore() {
+        assertEquals(null, Climb.Category.of(249));
+        assertEquals(Climb.Category.FOURTH, Climb.Category.of(250));
+        assertEquals(Climb.Category.THIRD, Climb.Category.of(1_000));
+        assertEquals(Climb.Category.SECOND, Climb.Category.of(3_999));
+        assertEquals(Climb.Category.FIRST, Climb.Category.of(4_000));
+        assertEquals(Climb.Category.HORS_CATEGORIE, Climb.Category.of(10_000));
+        assertEquals("HC", Climb.Category.HORS_CATEGORIE.label());
+    }
+}
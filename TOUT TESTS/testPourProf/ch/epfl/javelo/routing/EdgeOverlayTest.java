@@ -0,0 +1,184 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphEdges;
+import ch.epfl.javelo.data.GraphNodes;
+import ch.epfl.javelo.data.GraphSectors;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EdgeOverlayTest {
+    private static final int ORIGIN_N = 1_200_000;
+    private static final int ORIGIN_E = 2_600_000;
+
+    @Test
+    void edgeOverlayIsInitiallyEmpty() {
+        var snapshot = new EdgeOverlay().snapshot();
+        assertTrue(snapshot.isEmpty());
+        assertFalse(snapshot.isClosed(0));
+        assertFalse(snapshot.isClosed(1_000_000));
+        assertEquals(1, snapshot.costMultiplier(42));
+    }
+
+    @Test
+    void edgeOverlayCloseAndReopenWork() {
+        var overlay = new EdgeOverlay();
+        overlay.close(3, 64, 1000);
+        var closed = overlay.snapshot();
+        assertTrue(closed.isClosed(3));
+        assertTrue(closed.isClosed(64));
+        assertTrue(closed.isClosed(1000));
+        assertFalse(closed.isClosed(4));
+        assertFalse(closed.isClosed(67));
+
+        overlay.reopen(64);
+        assertFalse(overlay.snapshot().isClosed(64));
+        assertTrue(overlay.snapshot().isClosed(3));
+        //Les instantanés déjà obtenus ne changent pas.
+        assertTrue(closed.isClosed(64));
+
+        overlay.reopen(3, 1000);
+        assertTrue(overlay.snapshot().isEmpty());
+    }
+
+    @Test
+    void edgeOverlayCostMultipliersWork() {
+        var overlay = new EdgeOverlay();
+        var rng = newRandom();
+        var expected = new double[1000];
+        Arrays.fill(expected, 1);
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var edgeId = rng.nextInt(expected.length);
+            var multiplier = rng.nextBoolean() ? 1 : 1 + rng.nextDouble(10);
+            overlay.setCostMultiplier(edgeId, multiplier);
+            expected[edgeId] = multiplier;
+        }
+        var snapshot = overlay.snapshot();
+        for (int edgeId = 0; edgeId < expected.length; edgeId += 1)
+            assertEquals(expected[edgeId], snapshot.costMultiplier(edgeId));
+
+        overlay.clear();
+        assertTrue(overlay.snapshot().isEmpty());
+    }
+
+    @Test
+    void edgeOverlayThrowsOnInvalidArguments() {
+        var overlay = new EdgeOverlay();
+        assertThrows(IllegalArgumentException.class, () -> overlay.setCostMultiplier(1, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> overlay.setCostMultiplier(-1, 2));
+        assertThrows(IllegalArgumentException.class, () -> overlay.close(-1));
+    }
+
+    @Test
+    void edgeOverlaySupportsConcurrentUpdates() throws InterruptedException {
+        var overlay = new EdgeOverlay();
+        var executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t += 1) {
+            var offset = t;
+            executor.execute(() -> {
+                for (int i = 0; i < 1000; i += 1) overlay.close(4 * i + offset);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        for (int edgeId = 0; edgeId < 4000; edgeId += 1)
+            assertTrue(overlay.snapshot().isClosed(edgeId));
+    }
+
+    // Carré de côté 100 m dont les nœuds 0, 1, 2 et 3 sont reliés, dans les deux sens, à
+    // leurs deux voisins ; le nœud i a pour arêtes sortantes 2i (vers le nœud i + 1) et 2i + 1
+    // (vers le nœud i - 1), modulo 4.
+    private static Graph squareGraph() {
+        int[][] corners = {{0, 0}, {100, 0}, {100, 100}, {0, 100}};
+        var nodes = IntBuffer.allocate(3 * corners.length);
+        var edges = ByteBuffer.allocate(10 * 2 * corners.length);
+        for (int i = 0; i < corners.length; i += 1) {
+            nodes.put(16 * (ORIGIN_E + corners[i][0]))
+                    .put(16 * (ORIGIN_N + corners[i][1]))
+                    .put(2 << 28 | 2 * i);
+            edges.putInt(10 * (2 * i), (i + 1) % corners.length);
+            edges.putShort(10 * (2 * i) + 4, (short) (16 * 100));
+            edges.putInt(10 * (2 * i + 1), (i + corners.length - 1) % corners.length);
+            edges.putShort(10 * (2 * i + 1) + 4, (short) (16 * 100));
+        }
+        return new Graph(new GraphNodes(nodes.rewind()), new GraphSectors(ByteBuffer.allocate(0)),
+                new GraphEdges(edges, IntBuffer.allocate(2 * corners.length),
+                        ShortBuffer.allocate(0)),
+                List.of(new AttributeSet(0)));
+    }
+
+    @Test
+    void routeComputerAvoidsClosedEdges() {
+        var graph = squareGraph();
+        var overlay = new EdgeOverlay();
+        var rc = new RouteComputer(graph, (nodeId, edgeId) -> 1, overlay);
+        var route = rc.bestRouteBetween(0, 1);
+        assertEquals(1, route.edges().size());
+        assertEquals(100, route.length());
+
+        //Ferme l'arête reliant directement les nœuds 0 et 1, dans les deux sens ; le seul
+        //itinéraire restant fait le tour du carré.
+        overlay.close(0, 3);
+        var detour = rc.bestRouteBetween(0, 1);
+        assertNotNull(detour);
+        assertEquals(300, detour.length());
+        assertEquals(List.of(3, 2, 1),
+                detour.edges().stream().map(Edge::toNodeId).toList());
+
+        //Fermer aussi l'arête allant du nœud 3 au nœud 2 coupe le détour.
+        overlay.close(7);
+        assertNull(rc.bestRouteBetween(0, 1));
+
+        overlay.clear();
+        assertEquals(100, rc.bestRouteBetween(0, 1).length());
+    }
+
+    // Nœuds 0 et 1 distants de 100 m, reliés de 0 vers 1 par deux arêtes parallèles : l'arête 0,
+    // longue de 100 m, et l'arête 1, longue de 150 m ; l'arête 2 relie le nœud 1 au nœud 0.
+    private static Graph parallelEdgesGraph() {
+        var nodes = IntBuffer.wrap(new int[]{
+                16 * ORIGIN_E, 16 * ORIGIN_N, 2 << 28,
+                16 * (ORIGIN_E + 100), 16 * ORIGIN_N, 1 << 28 | 2});
+        var edges = ByteBuffer.allocate(10 * 3);
+        int[] lengths = {100, 150, 100};
+        int[] targets = {1, 1, 0};
+        for (int i = 0; i < lengths.length; i += 1) {
+            edges.putInt(10 * i, targets[i]);
+            edges.putShort(10 * i + 4, (short) (16 * lengths[i]));
+        }
+        return new Graph(new GraphNodes(nodes), new GraphSectors(ByteBuffer.allocate(0)),
+                new GraphEdges(edges, IntBuffer.allocate(3), ShortBuffer.allocate(0)),
+                List.of(new AttributeSet(0)));
+    }
+
+    @Test
+    void routeComputerUsesTheCheapestOfParallelEdges() {
+        var graph = parallelEdgesGraph();
+        var overlay = new EdgeOverlay();
+        var rc = new RouteComputer(graph, (nodeId, edgeId) -> 1, overlay);
+        assertEquals(100, rc.bestRouteBetween(0, 1).length());
+
+        //Pénaliser l'arête la plus courte fait passer l'itinéraire par l'arête parallèle.
+        overlay.setCostMultiplier(0, 10);
+        var route = rc.bestRouteBetween(0, 1);
+        assertEquals(1, route.edges().size());
+        assertEquals(150, route.length());
+
+        //De même si la fonction de coût interdit l'arête la plus courte.
+        var forbidding = new RouteComputer(graph,
+                (nodeId, edgeId) -> edgeId == 0 ? Double.POSITIVE_INFINITY : 1);
+        assertEquals(150, forbidding.bestRouteBetween(0, 1).length());
+    }
+}
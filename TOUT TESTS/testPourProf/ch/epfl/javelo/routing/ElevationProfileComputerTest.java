@@ -1,5 +1,6 @@
 package ch.epfl.javelo.routing;
 
+import ch.epfl.javelo.Math2;
 import ch.epfl.javelo.projection.PointCh;
 import org.junit.jupiter.api.Test;
 
@@ -130,6 +131,56 @@ class ElevationProfileComputerTestjuzhg {
         }
     }
 
+    @Test
+    void elevationProfileComputerMatchesPerSampleEvaluationOnLongRoutes() {
+        var rng = newRandom();
+        for (int i = 0; i < 50; i += 1) {
+            var edges = new ArrayList<Edge>();
+            var from = new PointCh(2_600_000, 1_200_000);
+            for (int j = 0; j < 1 + rng.nextInt(300); j += 1) {
+                var to = new PointCh(from.e() + rng.nextInt(0, 300), from.n() + rng.nextInt(0, 300));
+                var start = rng.nextDouble(200, 1_000);
+                var slope = rng.nextDouble(-0.1, 0.1);
+                // Edges without profile are frequent, and sometimes consecutive
+                DoubleUnaryOperator profile = rng.nextInt(3) == 0 ? x -> Double.NaN : x -> start + slope * x;
+                edges.add(new Edge(j, j + 1, from, to, from.distanceTo(to), profile));
+                from = to;
+            }
+            var route = new SingleRoute(edges);
+            var maxStepLength = rng.nextDouble(1, 50);
+            var expected = perSampleProfile(route, maxStepLength);
+            var actual = elevationProfile(route, maxStepLength);
+            assertEquals(expected.length(), actual.length());
+            for (int j = 0; j < RANDOM_ITERATIONS; j += 1) {
+                var p = rng.nextDouble(0, route.length());
+                assertEquals(expected.elevationAt(p), actual.elevationAt(p));
+            }
+        }
+    }
+
+    private static ElevationProfile perSampleProfile(Route route, double maxStepLength) {
+        var samplesCount = (int) Math.ceil(route.length() / maxStepLength) + 1;
+        var stepLength = route.length() / (samplesCount - 1d);
+        var samples = new float[samplesCount];
+        for (int i = 0; i < samplesCount; i += 1)
+            samples[i] = (float) route.elevationAt(stepLength * i);
+        var lastKnown = -1;
+        for (int i = 0; i < samplesCount; i += 1) {
+            if (Float.isNaN(samples[i])) continue;
+            if (lastKnown < 0) {
+                for (int j = 0; j < i; j += 1) samples[j] = samples[i];
+            } else {
+                for (int j = lastKnown + 1; j < i; j += 1)
+                    samples[j] = (float) Math2.interpolate(
+                            samples[lastKnown], samples[i], (double) (j - lastKnown) / (i - lastKnown));
+            }
+            lastKnown = i;
+        }
+        for (int i = lastKnown + 1; i < samplesCount; i += 1)
+            samples[i] = lastKnown < 0 ? 0 : samples[lastKnown];
+        return new ElevationProfile(route.length(), samples);
+    }
+
     private static final class FakeRoute implements Route {
         private static final double ORIGIN_E = 2_600_000;
         private static final double ORIGIN_N = 1_200_000;
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.DoubleSummaryStatistics;
 import java.util.random.RandomGenerator;
 
@@ -12,6 +13,7 @@ import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
 import static ch.epfl.test.TestRandomizer.newRandom;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ElevationProfileTest {
 
@@ -142,4 +144,128 @@ class ElevationProfileTest {
         var expected7 = 294.125;
         assertEquals(expected7, actual7);
     }
-}
\ No newline at end of file
+
+    @Test
+    void elevationProfileRangeStatisticsMatchWholeProfileStatistics() {
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var elevationSamples = randomSamples(rng, rng.nextInt(2, 1000));
+            var length = rng.nextDouble(1, 10_000);
+            var profile = new ElevationProfile(length, elevationSamples);
+            assertEquals(profile.totalAscent(), profile.ascent(0, length));
+            assertEquals(profile.totalDescent(), profile.descent(-1, length + 1));
+            assertEquals(profile.minElevation(), profile.minElevation(0, length));
+            assertEquals(profile.maxElevation(), profile.maxElevation(0, length));
+        }
+    }
+
+    @Test
+    void elevationProfileRangeStatisticsWorkOnRandomRanges() {
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var sampleCount = rng.nextInt(2, 500);
+            var elevationSamples = randomSamples(rng, sampleCount);
+            var length = rng.nextDouble(1, 10_000);
+            var profile = new ElevationProfile(length, elevationSamples);
+            var spacing = length / (sampleCount - 1);
+            var p1 = rng.nextDouble(0, length);
+            var p2 = rng.nextDouble(0, length);
+            var from = Math.min(p1, p2);
+            var to = Math.max(p1, p2);
+
+            // Elevations at both ends and at every sample in between
+            var elevations = new ArrayList<Double>();
+            elevations.add(profile.elevationAt(from));
+            var maxGradient = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < sampleCount; j += 1) {
+                if (from < j * spacing && j * spacing < to) elevations.add((double) elevationSamples[j]);
+                if (j + 1 < sampleCount && from < (j + 1) * spacing && j * spacing < to) {
+                    var gradient = ((double) elevationSamples[j + 1] - elevationSamples[j]) / spacing;
+                    maxGradient = Math.max(maxGradient, gradient);
+                }
+            }
+            elevations.add(profile.elevationAt(to));
+
+            var ascent = 0d;
+            var descent = 0d;
+            var stats = new DoubleSummaryStatistics();
+            for (int j = 0; j < elevations.size(); j += 1) {
+                stats.accept(elevations.get(j));
+                if (j == 0) continue;
+                var d = elevations.get(j) - elevations.get(j - 1);
+                if (d > 0) ascent += d;
+                else descent -= d;
+            }
+            assertEquals(ascent, profile.ascent(from, to), 1e-6);
+            assertEquals(descent, profile.descent(from, to), 1e-6);
+            assertEquals(stats.getMin(), profile.minElevation(from, to), 1e-6);
+            assertEquals(stats.getMax(), profile.maxElevation(from, to), 1e-6);
+            assertEquals(maxGradient, profile.maxGradient(from, to), 1e-9);
+        }
+    }
+
+    @Test
+    void elevationProfileRangeStatisticsWorkOnKnownValues() {
+        var samples = new float[]{
+                100.00f, 123.25f, 375.50f, 212.75f, 220.00f, 210.25f
+        };
+        var profile = new ElevationProfile(1000, samples);
+        assertEquals(23.25 / 2 + 252.25, profile.ascent(100, 500), 1e-9);
+        assertEquals((375.5 - 212.75) / 2 + 0.5 * 9.75, profile.descent(500, 900), 1e-9);
+        assertEquals(111.625, profile.minElevation(100, 300), 1e-9);
+        assertEquals(375.5, profile.maxElevation(100, 900));
+        assertEquals(252.25 / 200, profile.maxGradient(0, 1000));
+        assertEquals(7.25 / 200, profile.maxGradient(700, 700));
+        assertThrows(IllegalArgumentException.class, () -> profile.ascent(2, 1));
+    }
+
+    @Test
+    void elevationProfileEnvelopeKeepsPeaksAndValleys() {
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS / 10; i += 1) {
+            var sampleCount = rng.nextInt(2, 20_000);
+            var elevationSamples = randomSamples(rng, sampleCount);
+            var length = rng.nextDouble(100, 100_000);
+            var profile = new ElevationProfile(length, elevationSamples);
+            var columns = rng.nextInt(1, 2_000);
+            var mins = new double[columns];
+            var maxs = new double[columns];
+            profile.envelope(0, length, mins, maxs);
+
+            var spacing = length / (sampleCount - 1);
+            var columnWidth = length / columns;
+            var stats = new DoubleSummaryStatistics();
+            for (int c = 0; c < columns; c += 1) {
+                stats.accept(mins[c]);
+                stats.accept(maxs[c]);
+                assertTrue(mins[c] <= maxs[c]);
+                // Each column stays within the profile extremes over itself and its neighbours
+                var from = (c - 1) * columnWidth;
+                var to = (c + 2) * columnWidth;
+                assertTrue(profile.minElevation(Math.max(0, from), Math.min(length, to)) <= mins[c]);
+                assertTrue(maxs[c] <= profile.maxElevation(Math.max(0, from), Math.min(length, to)));
+            }
+            if (columnWidth >= spacing) {
+                assertEquals(profile.minElevation(), stats.getMin());
+                assertEquals(profile.maxElevation(), stats.getMax());
+            }
+        }
+    }
+
+    @Test
+    void elevationProfileEnvelopeInterpolatesNarrowColumns() {
+        var samples = new float[]{
+                100.00f, 123.25f, 375.50f, 212.75f, 220.00f, 210.25f
+        };
+        var profile = new ElevationProfile(1000, samples);
+        var mins = new double[10];
+        var maxs = new double[10];
+        profile.envelope(0, 1000, mins, maxs);
+        for (int c = 0; c < 10; c += 1) {
+            assertEquals(profile.elevationAt(c * 100 + 50), mins[c]);
+            assertEquals(profile.elevationAt(c * 100 + 50), maxs[c]);
+        }
+        assertThrows(IllegalArgumentException.class, () -> profile.envelope(1, 1, mins, maxs));
+        assertThrows(IllegalArgumentException.class, () -> profile.envelope(0, 1, mins, new double[3]));
+    }
+}
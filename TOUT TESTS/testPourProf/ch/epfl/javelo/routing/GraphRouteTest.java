@@ -0,0 +1,126 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphEdges;
+import ch.epfl.javelo.data.GraphNodes;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.projection.PointCh;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphRouteTest {
+    private static final int ORIGIN_N = 1_200_000;
+    private static final int ORIGIN_E = 2_600_000;
+
+    // Chemin de nodeCount nœuds, l'arête i allant du nœud i au nœud i + 1 ; une arête sur
+    // trois (dont la première), ainsi que les arêtes de longueur nulle, n'ont pas de profil.
+    private static Graph pathGraph(RandomGenerator rng, int nodeCount) {
+        var nodes = IntBuffer.allocate(3 * nodeCount);
+        var edges = ByteBuffer.allocate(10 * (nodeCount - 1));
+        var profileIds = IntBuffer.allocate(nodeCount - 1);
+        var elevations = new ArrayList<Short>();
+        int e = 16 * ORIGIN_E, n = 16 * ORIGIN_N;
+        for (int i = 0; i < nodeCount; i += 1) {
+            nodes.put(e).put(n).put(i < nodeCount - 1 ? 1 << 28 | i : 0);
+            if (i == nodeCount - 1) break;
+            var de = rng.nextInt(-16 * 200, 16 * 200);
+            var dn = rng.nextInt(-16 * 200, 16 * 200);
+            e += de;
+            n += dn;
+            var lengthQ4 = i % 7 == 5 ? 0 : (int) Math.round(Math.hypot(de, dn));
+            edges.putInt(10 * i, i + 1);
+            edges.putShort(10 * i + 4, (short) lengthQ4);
+            if (i % 3 != 0 && lengthQ4 > 0) {
+                profileIds.put(i, 1 << 30 | elevations.size());
+                for (int s = 0; s < 1 + (lengthQ4 + 31) / 32; s += 1)
+                    elevations.add((short) rng.nextInt(16 * 400, 16 * 600));
+            }
+        }
+        var elevationBuffer = ShortBuffer.allocate(elevations.size());
+        for (short s : elevations) elevationBuffer.put(s);
+        return new Graph(new GraphNodes(nodes.rewind()), new GraphSectors(ByteBuffer.allocate(0)),
+                new GraphEdges(edges, profileIds, elevationBuffer.rewind()),
+                List.of(new AttributeSet(0)));
+    }
+
+    private static int[] allEdges(int nodeCount) {
+        var edgeIds = new int[nodeCount - 1];
+        for (int i = 0; i < edgeIds.length; i += 1) edgeIds[i] = i;
+        return edgeIds;
+    }
+
+    private static SingleRoute singleRoute(Graph graph, int nodeCount) {
+        var edges = new ArrayList<Edge>();
+        for (int i = 0; i < nodeCount - 1; i += 1) edges.add(Edge.of(graph, i, i, i + 1));
+        return new SingleRoute(edges);
+    }
+
+    @Test
+    void graphRouteConstructorThrowsOnEmptyEdgeList() {
+        var graph = pathGraph(newRandom(), 2);
+        assertThrows(IllegalArgumentException.class, () -> new GraphRoute(graph, 0, new int[0]));
+    }
+
+    @Test
+    void graphRouteEdgesAndPointsMatchSingleRoute() {
+        var rng = newRandom();
+        var graph = pathGraph(rng, 50);
+        var expected = singleRoute(graph, 50);
+        var actual = new GraphRoute(graph, 0, allEdges(50));
+        assertEquals(expected.length(), actual.length());
+        assertEquals(expected.edges(), actual.edges());
+        assertEquals(expected.points(), actual.points());
+        assertEquals(0, actual.indexOfSegmentAt(actual.length() / 2));
+        assertSame(actual.points(), actual.points());
+        assertEquals(expected.pointCount(), actual.pointCount());
+        for (int i = 0; i < actual.pointCount(); i += 1) {
+            assertEquals(expected.pointE(i), actual.pointE(i));
+            assertEquals(expected.pointN(i), actual.pointN(i));
+        }
+        assertThrows(UnsupportedOperationException.class, () -> actual.edges().remove(0));
+    }
+
+    @Test
+    void graphRoutePositionLookupsMatchSingleRoute() {
+        var rng = newRandom();
+        var graph = pathGraph(rng, 50);
+        var expected = singleRoute(graph, 50);
+        var actual = new GraphRoute(graph, 0, allEdges(50));
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var position = rng.nextDouble(-100, actual.length() + 100);
+            assertEquals(expected.pointAt(position), actual.pointAt(position));
+            assertEquals(expected.elevationAt(position), actual.elevationAt(position));
+            assertEquals(expected.nodeClosestTo(position), actual.nodeClosestTo(position));
+        }
+        var points = expected.points();
+        for (int i = 0; i < points.size(); i += 1) {
+            var position = i == 0 ? 0 : expected.length() * i / (points.size() - 1);
+            assertEquals(expected.elevationAt(position), actual.elevationAt(position));
+        }
+    }
+
+    @Test
+    void graphRoutePointClosestToMatchesSingleRoute() {
+        var rng = newRandom();
+        var graph = pathGraph(rng, 50);
+        var expected = singleRoute(graph, 50);
+        var actual = new GraphRoute(graph, 0, allEdges(50));
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var point = new PointCh(
+                    ORIGIN_E + rng.nextDouble(-5000, 5000),
+                    ORIGIN_N + rng.nextDouble(-5000, 5000));
+            assertEquals(expected.pointClosestTo(point), actual.pointClosestTo(point));
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.random.RandomGenerator;
 
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
 import static ch.epfl.test.TestRandomizer.newRandom;
@@ -68,6 +69,70 @@ class MultiRouteTest {
         assertEquals(5, m.indexOfSegmentAt(10000));
     }
 
+    @Test
+    void multiRouteIndexOfSegmentAtAssignsBoundariesToThePreviousSegment() {
+        var m = new MultiRoute(List.of(
+                new SingleRoute(List.of(horizontalEdge1K(0))),
+                new MultiRoute(List.of(
+                        new SingleRoute(List.of(horizontalEdge1K(1))),
+                        new SingleRoute(List.of(horizontalEdge1K(2))))),
+                new SingleRoute(List.of(horizontalEdge1K(3)))));
+        assertEquals(0, m.indexOfSegmentAt(-5));
+        assertEquals(0, m.indexOfSegmentAt(0));
+        for (int i = 1; i <= 4; i += 1)
+            assertEquals(i - 1, m.indexOfSegmentAt(i * 1000));
+    }
+
+    // Découpe les arêtes données en un itinéraire multiple, imbriqué aléatoirement.
+    private static Route randomlyNested(RandomGenerator rng, List<Edge> edges) {
+        if (edges.size() <= 2 || rng.nextInt(4) == 0) return new SingleRoute(edges);
+        var segments = new ArrayList<Route>();
+        var start = 0;
+        while (start < edges.size()) {
+            var end = Math.min(edges.size(), start + 1 + rng.nextInt(Math.max(1, edges.size() / 2)));
+            segments.add(randomlyNested(rng, edges.subList(start, end)));
+            start = end;
+        }
+        return new MultiRoute(segments);
+    }
+
+    @Test
+    void multiRouteOfNestedRoutesBehavesLikeASingleRoute() {
+        var rng = newRandom();
+        var edges = sawToothEdges(40);
+        var single = new SingleRoute(edges);
+        for (int i = 0; i < 20; i += 1) {
+            var nested = new MultiRoute(List.of(randomlyNested(rng, edges)));
+            assertEquals(single.length(), nested.length(), 1e-7);
+            assertEquals(single.points(), nested.points());
+            assertEquals(single.edges(), nested.edges());
+            for (int j = 0; j < RANDOM_ITERATIONS / 20; j += 1) {
+                var position = rng.nextDouble(-100, single.length() + 100);
+                var expected = single.pointAt(position);
+                var actual = nested.pointAt(position);
+                assertEquals(expected.e(), actual.e(), 1e-6);
+                assertEquals(expected.n(), actual.n(), 1e-6);
+                assertEquals(single.elevationAt(position), nested.elevationAt(position), 1e-6);
+                assertEquals(single.nodeClosestTo(position), nested.nodeClosestTo(position));
+            }
+        }
+    }
+
+    @Test
+    void multiRoutePointsAndEdgesAreComputedOnce() {
+        var route = new MultiRoute(List.of(
+                new SingleRoute(sawToothEdges(3)),
+                new MultiRoute(List.of(new SingleRoute(verticalEdges(2))))));
+        assertSame(route.points(), route.points());
+        assertSame(route.edges(), route.edges());
+        var points = route.points();
+        assertEquals(points.size(), route.pointCount());
+        for (int i = 0; i < points.size(); i += 1) {
+            assertEquals(points.get(i).e(), route.pointE(i));
+            assertEquals(points.get(i).n(), route.pointN(i));
+        }
+    }
+
     @Test
     void multiRouteLengthReturnsTotalLength() {
         for (int i = 1; i < 10; i += 1) {
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,6 +40,18 @@ class RouteComputerTest {
         assertNull(rc.bestRouteBetween(149195, 153181));
     }
 
+    @Test
+    void routeComputerThrowsWhenThreadIsInterrupted() {
+        var rc = newLausanneRouteComputer();
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(CancellationException.class, () -> rc.bestRouteBetween(159049, 117669));
+        } finally {
+            Thread.interrupted();
+        }
+        assertNotNull(rc.bestRouteBetween(159049, 117669));
+    }
+
     @Test
     void routeComputerComputesCorrectRouteForGivenExample() {
         var rc = newLausanneRouteComputer();
@@ -1,5 +1,6 @@
 package ch.epfl.javelo.routing;
 
+import ch.epfl.javelo.Math2;
 import ch.epfl.javelo.projection.PointCh;
 import org.junit.jupiter.api.Test;
 
@@ -231,6 +232,42 @@ class SingleRouteTestuz {
         }
     }
 
+    @Test
+    void singleRoutePointClosestToMatchesLinearScanOnLongRoutes() {
+        var rng = newRandom();
+        for (int i = 0; i < 20; i += 1) {
+            // Random walk that folds back on itself, with some zero-length edges
+            var edges = new ArrayList<Edge>();
+            var from = new PointCh(ORIGIN_E, ORIGIN_N);
+            for (int j = 0; j < 1 + rng.nextInt(400); j += 1) {
+                var to = rng.nextInt(10) == 0
+                        ? from
+                        : new PointCh(from.e() + rng.nextInt(-200, 201), from.n() + rng.nextInt(-200, 201));
+                edges.add(new Edge(j, j + 1, from, to, from.distanceTo(to), x -> Double.NaN));
+                from = to;
+            }
+            var route = new SingleRoute(edges);
+            for (int j = 0; j < RANDOM_ITERATIONS / 20; j += 1) {
+                var reference = new PointCh(
+                        ORIGIN_E + rng.nextDouble(-5_000, 5_000),
+                        ORIGIN_N + rng.nextDouble(-5_000, 5_000));
+                var expected = RoutePoint.NONE;
+                var previousLengths = 0d;
+                for (var edge : edges) {
+                    var position = Math2.clamp(0, edge.positionClosestTo(reference), edge.length());
+                    var point = edge.pointAt(position);
+                    expected = expected.min(point, previousLengths + position, point.distanceTo(reference));
+                    previousLengths += edge.length();
+                }
+                assertEquals(expected, route.pointClosestTo(reference));
+            }
+            // Points on the route itself
+            for (var edge : edges) {
+                assertEquals(0, route.pointClosestTo(edge.toPoint()).distanceToReference());
+            }
+        }
+    }
+
     private static List<Edge> verticalEdges(int edgesCount) {
         var edges = new ArrayList<Edge>(edgesCount);
         for (int i = 0; i < edgesCount; i += 1) {
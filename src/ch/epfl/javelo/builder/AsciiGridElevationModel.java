@@ -0,0 +1,190 @@
+package ch.epfl.javelo.builder;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * AsciiGridElevationModel
+ * <p>
+ * Classe représentant un modèle numérique de terrain lu depuis un fichier au format ESRI ASCII
+ * Grid (.asc), exprimé en coordonnées suisses (MN95), format dans lequel swisstopo distribue
+ * ses modèles. Le fichier texte est converti une seule fois en un tableau de float stocké dans
+ * un fichier temporaire projeté en mémoire, de sorte que même un modèle couvrant tout le pays
+ * n'occupe pas le tas. L'altitude d'un point est interpolée bilinéairement entre les centres
+ * des quatre cellules qui l'entourent.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public final class AsciiGridElevationModel implements ElevationModel {
+
+    //Taille du tampon utilisé lors de la conversion.
+    private static final int COPY_BUFFER_FLOATS = 1 << 16;
+
+    /**
+     * Attributs représentant les dimensions de la grille, la position du centre de la cellule
+     * en bas à gauche, la taille d'une cellule, et les tranches de lignes projetées en mémoire.
+     */
+    private final int columns;
+    private final int rows;
+    private final double minE;
+    private final double minN;
+    private final double cellSize;
+    private final int rowsPerChunk;
+    private final FloatBuffer[] chunks;
+
+    /**
+     * Constructeur privé, les modèles étant créés par la méthode loadFrom.
+     */
+    private AsciiGridElevationModel(int columns, int rows, double minE, double minN,
+                                    double cellSize, int rowsPerChunk, FloatBuffer[] chunks) {
+        this.columns = columns;
+        this.rows = rows;
+        this.minE = minE;
+        this.minN = minN;
+        this.cellSize = cellSize;
+        this.rowsPerChunk = rowsPerChunk;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Retourne le modèle obtenu à partir du fichier ESRI ASCII Grid donné.
+     * @param path Chemin d'accès au fichier .asc.
+     * @return Le modèle numérique de terrain.
+     * @throws IOException En cas d'erreur d'entrée/sortie ou de fichier mal formé.
+     */
+    public static AsciiGridElevationModel loadFrom(Path path) throws IOException {
+        try (Tokenizer tokens = new Tokenizer(Files.newInputStream(path))) {
+            //Lecture de l'en-tête : paires (mot-clé, valeur), jusqu'à la première valeur.
+            Map<String, Double> header = new HashMap<>();
+            String token = tokens.next();
+            while (token != null && Character.isLetter(token.charAt(0))) {
+                header.put(token.toLowerCase(Locale.ROOT), Double.parseDouble(tokens.next()));
+                token = tokens.next();
+            }
+            Preconditions.checkArgument(header.containsKey("ncols")
+                    && header.containsKey("nrows") && header.containsKey("cellsize"));
+            int columns = header.get("ncols").intValue();
+            int rows = header.get("nrows").intValue();
+            double cellSize = header.get("cellsize");
+            double noData = header.getOrDefault("nodata_value", Double.NaN);
+            //Position du centre de la cellule en bas à gauche.
+            double minE = header.containsKey("xllcenter") ? header.get("xllcenter")
+                    : header.get("xllcorner") + cellSize / 2;
+            double minN = header.containsKey("yllcenter") ? header.get("yllcenter")
+                    : header.get("yllcorner") + cellSize / 2;
+
+            //Les lignes sont réparties en tranches de moins de 2 Go chacune.
+            int rowsPerChunk = Math.max(1, Integer.MAX_VALUE / (columns * Float.BYTES));
+            int chunkCount = (rows + rowsPerChunk - 1) / rowsPerChunk;
+            Path grid = Files.createTempFile("javelo-dem", ".bin");
+            try (FileChannel channel = FileChannel.open(grid, READ, WRITE, CREATE,
+                    DELETE_ON_CLOSE)) {
+                //Le fichier commence par la ligne la plus au nord.
+                ByteBuffer copy = ByteBuffer.allocate(COPY_BUFFER_FLOATS * Float.BYTES);
+                for (long i = 0; i < (long) columns * rows; i++) {
+                    Preconditions.checkArgument(token != null);
+                    double value = Double.parseDouble(token);
+                    copy.putFloat(value == noData ? Float.NaN : (float) value);
+                    if (!copy.hasRemaining()) {
+                        channel.write(copy.flip());
+                        copy.clear();
+                    }
+                    token = tokens.next();
+                }
+                channel.write(copy.flip());
+
+                FloatBuffer[] chunks = new FloatBuffer[chunkCount];
+                for (int c = 0; c < chunkCount; c++) {
+                    long start = (long) c * rowsPerChunk * columns * Float.BYTES;
+                    long size = (long) Math.min(rowsPerChunk, rows - c * rowsPerChunk)
+                            * columns * Float.BYTES;
+                    //La projection reste valide après la fermeture du canal.
+                    chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, size)
+                            .asFloatBuffer();
+                }
+                return new AsciiGridElevationModel(columns, rows, minE, minN, cellSize,
+                        rowsPerChunk, chunks);
+            }
+        }
+    }
+
+    @Override
+    public double elevationAt(double e, double n) {
+        double x = (e - minE) / cellSize;
+        double y = (n - minN) / cellSize;
+        if (!(0 <= x && x <= columns - 1 && 0 <= y && y <= rows - 1)) return Double.NaN;
+        int x0 = Math.min((int) x, Math.max(columns - 2, 0));
+        int y0 = Math.min((int) y, Math.max(rows - 2, 0));
+        int x1 = Math.min(x0 + 1, columns - 1);
+        int y1 = Math.min(y0 + 1, rows - 1);
+        double dx = x - x0, dy = y - y0;
+        //Interpolation bilinéaire ; NaN se propage si une des cellules est sans donnée.
+        double bottom = cell(x0, y0) * (1 - dx) + cell(x1, y0) * dx;
+        double top = cell(x0, y1) * (1 - dx) + cell(x1, y1) * dx;
+        return bottom * (1 - dy) + top * dy;
+    }
+
+    /**
+     * Méthode privée retournant la valeur de la cellule donnée, la ligne 0 étant la plus au
+     * sud.
+     * @param x Colonne de la cellule.
+     * @param y Ligne de la cellule, depuis le sud.
+     * @return L'altitude de la cellule, ou NaN.
+     */
+    private double cell(int x, int y) {
+        int row = rows - 1 - y;
+        return chunks[row / rowsPerChunk].get((row % rowsPerChunk) * columns + x);
+    }
+
+    /**
+     * Classe privée découpant un flot d'octets ASCII en mots séparés par des blancs.
+     */
+    private static final class Tokenizer implements AutoCloseable {
+
+        private final InputStream input;
+        private final StringBuilder token = new StringBuilder();
+
+        private Tokenizer(InputStream input) {
+            this.input = new BufferedInputStream(input);
+        }
+
+        /**
+         * Retourne le mot suivant, ou null à la fin du flot.
+         * @return Le mot suivant, ou null.
+         * @throws IOException En cas d'erreur d'entrée/sortie.
+         */
+        private String next() throws IOException {
+            token.setLength(0);
+            int c = input.read();
+            while (c != -1 && Character.isWhitespace(c)) c = input.read();
+            while (c != -1 && !Character.isWhitespace(c)) {
+                token.append((char) c);
+                c = input.read();
+            }
+            return token.length() == 0 ? null : token.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
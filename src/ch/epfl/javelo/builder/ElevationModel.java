@@ -0,0 +1,24 @@
+package ch.epfl.javelo.builder;
+
+/**
+ * ElevationModel
+ * <p>
+ * Interface fonctionnelle représentant un modèle numérique de terrain, utilisé par le
+ * constructeur de graphe pour échantillonner le profil en long des arêtes.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+@FunctionalInterface
+public interface ElevationModel {
+
+    /**
+     * Retourne l'altitude (en mètres) du point de coordonnées suisses données, ou Double.NaN
+     * si le modèle ne la connaît pas.
+     * @param e Coordonnée Est du point.
+     * @param n Coordonnée Nord du point.
+     * @return L'altitude du point, ou Double.NaN.
+     */
+    double elevationAt(double e, double n);
+}
@@ -0,0 +1,104 @@
+package ch.epfl.javelo.builder;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Q28_4;
+
+/**
+ * EncodedProfile
+ * <p>
+ * Enregistrement représentant le profil en long d'une arête sous la forme stockée dans le
+ * fichier elevations.bin : son type (0 s'il n'existe pas, 1 non compressé, 2 compressé en
+ * différences Q4.4, 3 compressé en différences Q0.4), les valeurs de 16 bits qui le codent, et
+ * les dénivelés positif et négatif (en Q12.4) des échantillons tels qu'ils seront décodés par
+ * GraphEdges.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public record EncodedProfile(int type, short[] elevations, int ascent, int descent) {
+
+    //Constantes représentant les types de profils.
+    public static final int NO_PROFILE = 0;
+    public static final int UNCOMPRESSED = 1;
+    public static final int COMPRESSED_Q4_4 = 2;
+    public static final int COMPRESSED_Q0_4 = 3;
+
+    //Constante représentant le profil inexistant.
+    public static final EncodedProfile NONE = new EncodedProfile(NO_PROFILE, new short[0], 0, 0);
+
+    //Intervalles (en Q12.4) des différences représentables par les types compressés.
+    private static final int MIN_Q4_4 = -(1 << 7), MAX_Q4_4 = (1 << 7) - 1;
+    private static final int MIN_Q0_4 = -(1 << 3), MAX_Q0_4 = (1 << 3) - 1;
+
+    //Valeur maximale d'un entier non signé de 16 bits.
+    private static final int MAX_U16 = (1 << Short.SIZE) - 1;
+
+    //Distance maximale (en mètres) entre deux échantillons d'un profil.
+    private static final int SAMPLE_SPACING = 2;
+
+    /**
+     * Retourne le nombre d'échantillons du profil d'une arête de longueur donnée (en Q12.4),
+     * selon la formule utilisée par GraphEdges.
+     * @param lengthQ4 Longueur de l'arête, en Q12.4.
+     * @return Le nombre d'échantillons.
+     */
+    public static int sampleCount(int lengthQ4) {
+        return 1 + Math2.ceilDiv(lengthQ4, Q28_4.ofInt(SAMPLE_SPACING));
+    }
+
+    /**
+     * Retourne le profil codé correspondant aux échantillons donnés, ou NONE si l'un d'entre
+     * eux est inconnu (NaN). Le type le plus compact capable de représenter exactement les
+     * échantillons, arrondis au seizième de mètre, est choisi.
+     * @param samples Échantillons du profil.
+     * @return Le profil codé.
+     */
+    public static EncodedProfile of(float[] samples) {
+        int count = samples.length;
+        int[] q = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (Float.isNaN(samples[i])) return NONE;
+            q[i] = Math2.clamp(0, Math.round(Math.scalb(samples[i], 4)), MAX_U16);
+        }
+        int minDelta = 0, maxDelta = 0, ascent = 0, descent = 0;
+        for (int i = 1; i < count; i++) {
+            int delta = q[i] - q[i - 1];
+            minDelta = Math.min(minDelta, delta);
+            maxDelta = Math.max(maxDelta, delta);
+            if (delta > 0) ascent += delta;
+            else descent -= delta;
+        }
+        ascent = Math.min(ascent, MAX_U16);
+        descent = Math.min(descent, MAX_U16);
+
+        if (MIN_Q0_4 <= minDelta && maxDelta <= MAX_Q0_4)
+            return new EncodedProfile(COMPRESSED_Q0_4, pack(q, 4), ascent, descent);
+        if (MIN_Q4_4 <= minDelta && maxDelta <= MAX_Q4_4)
+            return new EncodedProfile(COMPRESSED_Q4_4, pack(q, 8), ascent, descent);
+        short[] raw = new short[count];
+        for (int i = 0; i < count; i++) raw[i] = (short) q[i];
+        return new EncodedProfile(UNCOMPRESSED, raw, ascent, descent);
+    }
+
+    /**
+     * Méthode privée codant les échantillons donnés sous la forme d'une première valeur
+     * complète suivie des différences successives, chacune sur le nombre de bits donné et
+     * rangées depuis les bits de poids fort de chaque valeur de 16 bits.
+     * @param q Échantillons, en Q12.4.
+     * @param bits Nombre de bits de chaque différence (4 ou 8).
+     * @return Les valeurs de 16 bits codant le profil.
+     */
+    private static short[] pack(int[] q, int bits) {
+        int perShort = Short.SIZE / bits;
+        int deltas = q.length - 1;
+        short[] packed = new short[1 + (deltas + perShort - 1) / perShort];
+        packed[0] = (short) q[0];
+        int mask = (1 << bits) - 1;
+        for (int j = 0; j < deltas; j++) {
+            int shift = Short.SIZE - bits * (1 + j % perShort);
+            packed[1 + j / perShort] |= (short) (((q[j + 1] - q[j]) & mask) << shift);
+        }
+        return packed;
+    }
+}
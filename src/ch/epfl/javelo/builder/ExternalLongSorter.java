@@ -0,0 +1,150 @@
+package ch.epfl.javelo.builder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * ExternalLongSorter
+ * <p>
+ * Classe représentant un tri externe d'entiers de type long, utilisé pour dédupliquer les
+ * identités des nœuds OSM référencés par les voies sans les garder toutes en mémoire. Les
+ * valeurs sont accumulées dans un tableau de taille fixe ; chaque fois qu'il est plein, il est
+ * trié et écrit dans un fichier temporaire (une « série »), puis les séries sont fusionnées.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class ExternalLongSorter {
+
+    /**
+     * Attributs représentant le répertoire des séries, le tableau en cours de remplissage et
+     * les séries déjà écrites.
+     */
+    private final Path tempDir;
+    private final long[] chunk;
+    private int size;
+    private final List<Path> runs = new ArrayList<>();
+
+    /**
+     * Constructeur créant un trieur dont les séries sont écrites dans le répertoire donné et
+     * contiennent au plus le nombre de valeurs donné.
+     * @param tempDir Répertoire des fichiers temporaires.
+     * @param chunkSize Nombre maximal de valeurs gardées en mémoire.
+     */
+    ExternalLongSorter(Path tempDir, int chunkSize) {
+        this.tempDir = tempDir;
+        this.chunk = new long[chunkSize];
+    }
+
+    /**
+     * Ajoute les valeurs données.
+     * @param values Valeurs à ajouter.
+     * @throws IOException En cas d'erreur d'entrée/sortie lors de l'écriture d'une série.
+     */
+    synchronized void addAll(long[] values) throws IOException {
+        for (long value : values) {
+            if (size == chunk.length) flush();
+            chunk[size++] = value;
+        }
+    }
+
+    /**
+     * Écrit dans le fichier donné les valeurs ajoutées, triées et sans doublons, puis supprime
+     * les séries et retourne le nombre de valeurs écrites.
+     * @param output Fichier de sortie.
+     * @return Le nombre de valeurs distinctes.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    synchronized long sortUniqueTo(Path output) throws IOException {
+        flush();
+        PriorityQueue<Run> queue = new PriorityQueue<>();
+        long count = 0;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(output)))) {
+            for (Path path : runs) {
+                Run run = new Run(path);
+                if (run.advance()) queue.add(run);
+            }
+            boolean first = true;
+            long previous = 0;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                if (first || run.head != previous) {
+                    out.writeLong(run.head);
+                    previous = run.head;
+                    first = false;
+                    count++;
+                }
+                if (run.advance()) queue.add(run);
+            }
+        } finally {
+            for (Path path : runs) Files.deleteIfExists(path);
+            runs.clear();
+        }
+        return count;
+    }
+
+    /**
+     * Méthode privée triant les valeurs en mémoire et les écrivant (sans doublons) dans une
+     * nouvelle série.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private void flush() throws IOException {
+        Arrays.sort(chunk, 0, size);
+        Path path = Files.createTempFile(tempDir, "run", ".bin");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || chunk[i] != chunk[i - 1]) out.writeLong(chunk[i]);
+            }
+        }
+        runs.add(path);
+        size = 0;
+    }
+
+    /**
+     * Classe privée représentant la lecture d'une série lors de la fusion, ordonnée par sa
+     * valeur courante.
+     */
+    private static final class Run implements Comparable<Run> {
+
+        private final DataInputStream input;
+        private long head;
+
+        private Run(Path path) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+        }
+
+        /**
+         * Lit la valeur suivante de la série et retourne vrai, ou ferme la série et retourne
+         * faux si elle est épuisée.
+         * @return Vrai si et seulement si une valeur a été lue.
+         * @throws IOException En cas d'erreur d'entrée/sortie.
+         */
+        private boolean advance() throws IOException {
+            try {
+                head = input.readLong();
+                return true;
+            } catch (EOFException e) {
+                input.close();
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(Run that) {
+            return Long.compare(head, that.head);
+        }
+    }
+}
@@ -0,0 +1,743 @@
+package ch.epfl.javelo.builder;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.Q28_4;
+import ch.epfl.javelo.data.Attribute;
+import ch.epfl.javelo.data.GraphOsmIds;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.SwissBounds;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * GraphBuilder
+ * <p>
+ * Classe représentant le constructeur des fichiers binaires d'un graphe JaVelo (nodes.bin,
+ * edges.bin, sectors.bin, attributes.bin, profile_ids.bin, elevations.bin, nodes_osmid.bin et
+ * nodes_osmid_sorted.bin) à partir d'un fichier OSM PBF et d'un modèle numérique de terrain.
+ * Le fichier edges_osmway.bin, qui donne l'identité de la voie OSM dont provient chaque arête,
+ * est aussi écrit, avec la permutation des arêtes triées par voie (edges_osmway_sorted.bin) ;
+ * ils permettent à GraphUpdater d'appliquer des fichiers de modifications OSM.
+ * <p>
+ * La construction se fait en plusieurs passes, chacune lisant ses données séquentiellement :
+ * <ol>
+ *     <li>les voies routières du fichier PBF sont copiées dans un fichier temporaire, et les
+ *     identités des nœuds qu'elles référencent sont triées par un tri externe ;</li>
+ *     <li>les nœuds du fichier PBF sont lus, et les coordonnées de ceux qui sont référencés
+ *     sont rangées dans un fichier projeté en mémoire ;</li>
+ *     <li>les nœuds sont numérotés par secteur, puis les voies sont relues pour compter les
+ *     arêtes sortant de chaque nœud ;</li>
+ *     <li>les voies sont relues une dernière fois pour écrire les arêtes, dont les profils
+ *     sont échantillonnés et codés en parallèle, par lots.</li>
+ * </ol>
+ * Toutes les structures proportionnelles à la taille du graphe sont stockées dans des fichiers
+ * projetés en mémoire, le tas ne contenant que des tampons de taille fixe.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public final class GraphBuilder {
+
+    //Nom du fichier contenant l'identité de la voie OSM dont provient chaque arête.
+    public static final String EDGE_WAY_IDS_FILE = "edges_osmway.bin";
+
+    //Nom du fichier contenant la permutation des arêtes triées par identité de voie OSM.
+    public static final String SORTED_EDGE_IDS_FILE = "edges_osmway_sorted.bin";
+
+    //Tailles (en octets) d'un nœud, d'une arête et d'un secteur dans les fichiers du graphe.
+    static final int NODE_BYTES = 3 * Integer.BYTES;
+    static final int EDGE_BYTES = Integer.BYTES + 3 * Short.BYTES;
+    static final int SECTOR_BYTES = Integer.BYTES + Short.BYTES;
+
+    //Nombre de secteurs par côté de la grille des secteurs.
+    static final int SECTORS_PER_SIDE = 128;
+
+    //Degré sortant maximal d'un nœud (4 bits), et nombre de bits de l'identité de la première
+    //arête d'un nœud.
+    static final int MAX_OUT_DEGREE = (1 << 4) - 1;
+    static final int EDGE_ID_BITS = 28;
+
+    //Nombre de bits de l'index du premier échantillon d'un profil.
+    static final int PROFILE_INDEX_BITS = 30;
+
+    //Valeur maximale d'un entier non signé de 16 bits.
+    static final int MAX_U16 = (1 << Short.SIZE) - 1;
+
+    //Nombre d'identités de nœuds triées en mémoire à la fois lors du tri externe.
+    private static final int SORT_CHUNK_SIZE = 1 << 22;
+
+    //Nombre (approximatif) de segments de voies traités par lot lors de l'écriture des arêtes.
+    private static final int SEGMENT_BATCH_SIZE = 1 << 16;
+
+    //Clé OSM des attributs identifiant les voies routières.
+    private static final String HIGHWAY_KEY = "highway";
+
+    //Attributs JaVelo regroupés par clé OSM, puis par valeur.
+    private static final Map<String, Map<String, Attribute>> ATTRIBUTES_BY_KEY = new HashMap<>();
+
+    static {
+        for (Attribute attribute : Attribute.ALL) {
+            ATTRIBUTES_BY_KEY.computeIfAbsent(attribute.key(), k -> new HashMap<>())
+                    .put(attribute.value(), attribute);
+        }
+    }
+
+    /**
+     * Attributs représentant le modèle de terrain, le répertoire de sortie, son répertoire
+     * temporaire, et le nombre de fils d'exécution.
+     */
+    private final ElevationModel elevationModel;
+    private final Path outputDir;
+    private final Path tempDir;
+    private final int threads;
+
+    /**
+     * Constructeur privé, la construction étant lancée par la méthode build.
+     */
+    private GraphBuilder(ElevationModel elevationModel, Path outputDir, Path tempDir,
+                         int threads) {
+        this.elevationModel = elevationModel;
+        this.outputDir = outputDir;
+        this.tempDir = tempDir;
+        this.threads = threads;
+    }
+
+    /**
+     * Construit le graphe. Usage : GraphBuilder fichier.osm.pbf modèle.asc répertoire [fils].
+     * @param args Arguments de la ligne de commande.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: GraphBuilder <fichier.osm.pbf> <modèle.asc> "
+                    + "<répertoire> [fils]");
+            System.exit(1);
+        }
+        int threads = args.length > 3
+                ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+        build(Path.of(args[0]), AsciiGridElevationModel.loadFrom(Path.of(args[1])),
+                Path.of(args[2]), threads);
+    }
+
+    /**
+     * Construit les fichiers du graphe correspondant au fichier PBF et au modèle de terrain
+     * donnés, dans le répertoire donné (créé au besoin).
+     * @param pbf Chemin d'accès au fichier OSM PBF.
+     * @param elevationModel Modèle numérique de terrain.
+     * @param outputDir Répertoire de sortie.
+     * @param threads Nombre de fils d'exécution.
+     * @throws IOException En cas d'erreur d'entrée/sortie ou de données invalides.
+     */
+    public static void build(Path pbf, ElevationModel elevationModel, Path outputDir,
+                             int threads) throws IOException {
+        Preconditions.checkArgument(threads > 0);
+        Files.createDirectories(outputDir);
+        Path tempDir = Files.createTempDirectory(outputDir, "build");
+        try {
+            new GraphBuilder(elevationModel, outputDir, tempDir, threads).run(pbf);
+        } finally {
+            try (Stream<Path> files = Files.walk(tempDir)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList())
+                    Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Retourne l'ensemble des attributs JaVelo (sous forme de bits, voir AttributeSet)
+     * correspondant aux attributs OSM donnés, ou 0 si ceux-ci ne décrivent pas une voie
+     * routière connue.
+     * @param tags Attributs OSM (clé, valeur).
+     * @return Les bits de l'ensemble des attributs, ou 0.
+     */
+    static long attributeBits(Map<String, String> tags) {
+        Attribute highway = ATTRIBUTES_BY_KEY.get(HIGHWAY_KEY).get(tags.get(HIGHWAY_KEY));
+        if (highway == null) return 0;
+        long bits = 0;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            Map<String, Attribute> values = ATTRIBUTES_BY_KEY.get(tag.getKey());
+            Attribute attribute = values == null ? null : values.get(tag.getValue());
+            if (attribute != null) bits |= 1L << attribute.ordinal();
+        }
+        return bits;
+    }
+
+    /**
+     * Retourne le profil codé de la ligne droite allant du point (e1, n1) au point (e2, n2),
+     * de longueur donnée (en Q12.4), échantillonné dans le modèle de terrain donné.
+     * @param model Modèle numérique de terrain.
+     * @param e1 Coordonnée Est du point de départ.
+     * @param n1 Coordonnée Nord du point de départ.
+     * @param e2 Coordonnée Est du point d'arrivée.
+     * @param n2 Coordonnée Nord du point d'arrivée.
+     * @param lengthQ4 Longueur du segment, en Q12.4.
+     * @return Le profil codé.
+     */
+    static EncodedProfile profile(ElevationModel model, double e1, double n1, double e2,
+                                  double n2, int lengthQ4) {
+        int count = EncodedProfile.sampleCount(lengthQ4);
+        float[] samples = new float[count];
+        for (int i = 0; i < count; i++) {
+            double t = count == 1 ? 0 : (double) i / (count - 1);
+            samples[i] = (float) model.elevationAt(Math2.interpolate(e1, e2, t),
+                    Math2.interpolate(n1, n2, t));
+        }
+        return EncodedProfile.of(samples);
+    }
+
+    /**
+     * Retourne l'index du secteur contenant le point donné, selon le découpage de GraphSectors.
+     * @param e Coordonnée Est du point.
+     * @param n Coordonnée Nord du point.
+     * @return L'index du secteur.
+     */
+    static int sectorIndex(double e, double n) {
+        int x = Math2.clamp(0, (int) ((e - SwissBounds.MIN_E)
+                / (SwissBounds.WIDTH / SECTORS_PER_SIDE)), SECTORS_PER_SIDE - 1);
+        int y = Math2.clamp(0, (int) ((n - SwissBounds.MIN_N)
+                / (SwissBounds.HEIGHT / SECTORS_PER_SIDE)), SECTORS_PER_SIDE - 1);
+        return y * SECTORS_PER_SIDE + x;
+    }
+
+    /**
+     * Méthode privée exécutant les passes de la construction.
+     * @param pbf Chemin d'accès au fichier OSM PBF.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private void run(Path pbf) throws IOException {
+        //Passe 1 : voies routières et identités des nœuds qu'elles référencent.
+        Path ways = tempDir.resolve("ways.bin");
+        Path usedIds = tempDir.resolve("used_ids.bin");
+        long usedCount = collectWays(pbf, ways, usedIds);
+        Preconditions.checkArgument(usedCount < 1L << EDGE_ID_BITS);
+        LongBuffer osmIds = open(usedIds).asLongBuffer();
+
+        //Passe 2 : coordonnées des nœuds référencés (0 si inconnues ou hors de Suisse).
+        IntBuffer coordinates = create(tempDir.resolve("coordinates.bin"),
+                usedCount * 2 * Integer.BYTES).asIntBuffer();
+        collectNodes(pbf, osmIds, coordinates);
+
+        //Passe 3 : numérotation des nœuds par secteur, puis comptage des arêtes.
+        IntBuffer nodeIds = create(tempDir.resolve("node_ids.bin"),
+                usedCount * Integer.BYTES).asIntBuffer();
+        int nodeCount = numberNodes(osmIds, coordinates, nodeIds);
+        IntBuffer nodes = create(outputDir.resolve("nodes.bin"),
+                (long) nodeCount * NODE_BYTES).asIntBuffer();
+        for (int i = 0; i < usedCount; i++) {
+            int nodeId = nodeIds.get(i);
+            if (nodeId < 0) continue;
+            nodes.put(3 * nodeId, coordinates.get(2 * i));
+            nodes.put(3 * nodeId + 1, coordinates.get(2 * i + 1));
+        }
+        Path segments = tempDir.resolve("segments.bin");
+        IntBuffer degrees = create(tempDir.resolve("degrees.bin"),
+                (long) nodeCount * Integer.BYTES).asIntBuffer();
+        List<Long> attributeSets = new ArrayList<>();
+        translateWays(ways, osmIds, nodeIds, segments, degrees, attributeSets);
+        long edgeCount = 0;
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            int degree = degrees.get(nodeId);
+            nodes.put(3 * nodeId + 2, degree << EDGE_ID_BITS | (int) edgeCount);
+            edgeCount += degree;
+            degrees.put(nodeId, 0);
+        }
+        Preconditions.checkArgument(edgeCount < 1L << EDGE_ID_BITS);
+
+        //Passe 4 : écriture des arêtes et de leurs profils.
+        writeEdges(segments, nodes, degrees, (int) edgeCount);
+        try (DataOutputStream out = output("attributes.bin")) {
+            for (long bits : attributeSets) out.writeLong(bits);
+        }
+    }
+
+    /**
+     * Méthode privée copiant les voies routières du fichier PBF dans le fichier temporaire
+     * donné (identité de la voie, bits des attributs, nombre de nœuds, identités OSM des
+     * nœuds), et écrivant les
+     * identités des nœuds référencés, triées et sans doublons, dans le fichier donné. Les voies
+     * sont copiées dans l'ordre du fichier PBF, afin que les identités des arêtes, des
+     * ensembles d'attributs et des profils ne dépendent pas de l'ordonnancement des fils de
+     * décodage : deux constructions à partir des mêmes données sont identiques.
+     * @param pbf Fichier PBF.
+     * @param ways Fichier temporaire des voies.
+     * @param usedIds Fichier des identités des nœuds référencés.
+     * @return Le nombre de nœuds référencés.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private long collectWays(Path pbf, Path ways, Path usedIds) throws IOException {
+        ExternalLongSorter sorter = new ExternalLongSorter(tempDir, SORT_CHUNK_SIZE);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(ways)))) {
+            OsmPbfReader.read(pbf, threads, new OsmHandler() {
+                @Override
+                public boolean wantsWays() {
+                    return true;
+                }
+
+                @Override
+                public boolean wantsFileOrder() {
+                    return true;
+                }
+
+                @Override
+                public void way(long id, long[] nodeIds, Map<String, String> tags) {
+                    long bits = attributeBits(tags);
+                    if (bits == 0 || nodeIds.length < 2) return;
+                    try {
+                        //Les voies sont transmises une à une par le fil lisant le fichier.
+                        out.writeLong(id);
+                        out.writeLong(bits);
+                        out.writeInt(nodeIds.length);
+                        for (long nodeId : nodeIds) out.writeLong(nodeId);
+                        sorter.addAll(nodeIds);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+        return sorter.sortUniqueTo(usedIds);
+    }
+
+    /**
+     * Méthode privée lisant les nœuds du fichier PBF et rangeant les coordonnées suisses (en
+     * Q28.4) de ceux dont l'identité figure dans le tableau trié donné, à l'index
+     * correspondant. Les nœuds situés hors de Suisse sont ignorés.
+     * @param pbf Fichier PBF.
+     * @param osmIds Identités triées des nœuds référencés.
+     * @param coordinates Coordonnées des nœuds référencés (E et N, entrelacées).
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private void collectNodes(Path pbf, LongBuffer osmIds, IntBuffer coordinates)
+            throws IOException {
+        OsmPbfReader.read(pbf, threads, new OsmHandler() {
+            @Override
+            public boolean wantsNodes() {
+                return true;
+            }
+
+            @Override
+            public void node(long id, double lon, double lat) {
+                int index = indexOf(osmIds, id);
+                if (index < 0) return;
+                double e = Ch1903.e(lon, lat), n = Ch1903.n(lon, lat);
+                if (!SwissBounds.containsEN(e, n)) return;
+                //Chaque nœud est écrit à sa propre position : aucune synchronisation n'est
+                //nécessaire.
+                coordinates.put(2 * index, (int) Math.round(Math.scalb(e, 4)));
+                coordinates.put(2 * index + 1, (int) Math.round(Math.scalb(n, 4)));
+            }
+        });
+    }
+
+    /**
+     * Méthode privée numérotant les nœuds connus par secteur croissant puis par identité OSM
+     * croissante, et écrivant les fichiers sectors.bin, nodes_osmid.bin et
+     * nodes_osmid_sorted.bin.
+     * @param osmIds Identités triées des nœuds référencés.
+     * @param coordinates Coordonnées des nœuds référencés.
+     * @param nodeIds Identités JaVelo attribuées aux nœuds référencés (-1 si inconnus).
+     * @return Le nombre de nœuds du graphe.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private int numberNodes(LongBuffer osmIds, IntBuffer coordinates, IntBuffer nodeIds)
+            throws IOException {
+        int usedCount = osmIds.capacity();
+        int[] sectorStarts = new int[SECTORS_PER_SIDE * SECTORS_PER_SIDE + 1];
+        for (int i = 0; i < usedCount; i++) {
+            if (coordinates.get(2 * i) != 0) sectorStarts[sectorOf(coordinates, i) + 1]++;
+        }
+        try (DataOutputStream out = output("sectors.bin")) {
+            for (int s = 0; s < SECTORS_PER_SIDE * SECTORS_PER_SIDE; s++) {
+                Preconditions.checkArgument(sectorStarts[s + 1] <= MAX_U16);
+                out.writeInt(sectorStarts[s]);
+                out.writeShort(sectorStarts[s + 1]);
+                sectorStarts[s + 1] += sectorStarts[s];
+            }
+        }
+        int nodeCount = sectorStarts[SECTORS_PER_SIDE * SECTORS_PER_SIDE];
+
+        //Les index étant parcourus par identité OSM croissante, les nœuds de chaque secteur
+        //sont numérotés dans cet ordre, et leur liste dans l'ordre des index est précisément
+        //la permutation triée utilisée par GraphOsmIds.
+        LongBuffer nodeOsmIds = create(outputDir.resolve("nodes_osmid.bin"),
+                (long) nodeCount * Long.BYTES).asLongBuffer();
+        try (DataOutputStream sorted = output(GraphOsmIds.SORTED_NODE_IDS_FILE)) {
+            for (int i = 0; i < usedCount; i++) {
+                if (coordinates.get(2 * i) == 0) {
+                    nodeIds.put(i, -1);
+                    continue;
+                }
+                int nodeId = sectorStarts[sectorOf(coordinates, i)]++;
+                nodeIds.put(i, nodeId);
+                nodeOsmIds.put(nodeId, osmIds.get(i));
+                sorted.writeInt(nodeId);
+            }
+        }
+        return nodeCount;
+    }
+
+    /**
+     * Méthode privée traduisant les voies du fichier temporaire donné en suites d'identités de
+     * nœuds JaVelo (-1 pour les nœuds inconnus) précédées de l'identité de la voie et de
+     * l'index de son ensemble d'attributs, et comptant les arêtes sortant de chaque nœud. Un
+     * segment n'est conservé que si ses deux nœuds sont connus et distincts, et n'ont pas déjà
+     * atteint le degré maximal ; writeEdges rejoue exactement les mêmes décisions.
+     * @param ways Fichier temporaire des voies.
+     * @param osmIds Identités triées des nœuds référencés.
+     * @param nodeIds Identités JaVelo des nœuds référencés.
+     * @param segments Fichier temporaire des voies traduites.
+     * @param degrees Degrés sortants des nœuds, remplis par cette méthode.
+     * @param attributeSets Ensembles d'attributs distincts, remplis par cette méthode.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private void translateWays(Path ways, LongBuffer osmIds, IntBuffer nodeIds, Path segments,
+                               IntBuffer degrees, List<Long> attributeSets) throws IOException {
+        Map<Long, Integer> attributeIndices = new HashMap<>();
+        try (DataInputStream in = input(ways);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(segments)))) {
+            while (true) {
+                long wayId;
+                try {
+                    wayId = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                long bits = in.readLong();
+                int attributesIndex = attributeIndices.computeIfAbsent(bits, b -> {
+                    attributeSets.add(b);
+                    return attributeSets.size() - 1;
+                });
+                Preconditions.checkArgument(attributesIndex <= MAX_U16);
+                int count = in.readInt();
+                out.writeLong(wayId);
+                out.writeInt(attributesIndex);
+                out.writeInt(count);
+                int previous = -1;
+                for (int i = 0; i < count; i++) {
+                    int index = indexOf(osmIds, in.readLong());
+                    int nodeId = index < 0 ? -1 : nodeIds.get(index);
+                    out.writeInt(nodeId);
+                    if (isKept(previous, nodeId, degrees)) {
+                        degrees.put(previous, degrees.get(previous) + 1);
+                        degrees.put(nodeId, degrees.get(nodeId) + 1);
+                    }
+                    previous = nodeId;
+                }
+            }
+        }
+    }
+
+    /**
+     * Enregistrement privé représentant un segment de voie conservé, qui donne les arêtes
+     * d'identités forward (dans le sens de la voie) et backward (inversée).
+     */
+    private record Segment(long wayId, int attributesIndex, int from, int to, int forward,
+                           int backward) {}
+
+    /**
+     * Méthode privée écrivant les fichiers edges.bin, profile_ids.bin, elevations.bin,
+     * edges_osmway.bin et edges_osmway_sorted.bin à partir des voies traduites. Chaque segment
+     * de voie donne deux arêtes (une dans le sens de la voie, une inversée) partageant le même
+     * profil. Les voies sont traitées par lots : les profils d'un lot sont calculés en
+     * parallèle, puis écrits dans l'ordre.
+     * @param segments Fichier temporaire des voies traduites.
+     * @param nodes Nœuds du graphe, dont les identités des premières arêtes sont connues.
+     * @param cursors Nombre d'arêtes déjà écrites pour chaque nœud (initialement 0).
+     * @param edgeCount Nombre total d'arêtes.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private void writeEdges(Path segments, IntBuffer nodes, IntBuffer cursors, int edgeCount)
+            throws IOException {
+        ByteBuffer edges = create(outputDir.resolve("edges.bin"), (long) edgeCount * EDGE_BYTES);
+        IntBuffer profileIds = create(outputDir.resolve("profile_ids.bin"),
+                (long) edgeCount * Integer.BYTES).asIntBuffer();
+        LongBuffer edgeWayIds = create(outputDir.resolve(EDGE_WAY_IDS_FILE),
+                (long) edgeCount * Long.BYTES).asLongBuffer();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long elevationCount = 0;
+        try (DataInputStream in = input(segments);
+             DataOutputStream elevations = output("elevations.bin")) {
+            boolean done = false;
+            while (!done) {
+                //Lecture d'un lot de segments conservés.
+                List<Segment> batch = new ArrayList<>();
+                while (batch.size() < SEGMENT_BATCH_SIZE) {
+                    long wayId;
+                    try {
+                        wayId = in.readLong();
+                    } catch (EOFException e) {
+                        done = true;
+                        break;
+                    }
+                    int attributesIndex = in.readInt();
+                    int count = in.readInt();
+                    int previous = -1;
+                    for (int i = 0; i < count; i++) {
+                        int nodeId = in.readInt();
+                        if (isKept(previous, nodeId, cursors)) {
+                            int forward = firstEdgeId(nodes, previous) + cursors.get(previous);
+                            int backward = firstEdgeId(nodes, nodeId) + cursors.get(nodeId);
+                            cursors.put(previous, cursors.get(previous) + 1);
+                            cursors.put(nodeId, cursors.get(nodeId) + 1);
+                            batch.add(new Segment(wayId, attributesIndex, previous, nodeId,
+                                    forward, backward));
+                        }
+                        previous = nodeId;
+                    }
+                }
+
+                EncodedProfile[] profiles = profiles(pool, nodes, batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    Segment segment = batch.get(i);
+                    EncodedProfile profile = profiles[i];
+                    int lengthQ4 = lengthQ4(nodes, segment.from(), segment.to());
+                    int profileId = 0;
+                    if (profile.type() != EncodedProfile.NO_PROFILE) {
+                        profileId = profileId(profile.type(), elevationCount);
+                        for (short value : profile.elevations()) elevations.writeShort(value);
+                        elevationCount += profile.elevations().length;
+                    }
+                    putEdge(edges, segment.forward(), segment.to(), lengthQ4,
+                            profile.ascent(), segment.attributesIndex());
+                    putEdge(edges, segment.backward(), ~segment.from(), lengthQ4,
+                            profile.descent(), segment.attributesIndex());
+                    profileIds.put(segment.forward(), profileId);
+                    profileIds.put(segment.backward(), profileId);
+                    edgeWayIds.put(segment.forward(), segment.wayId());
+                    edgeWayIds.put(segment.backward(), segment.wayId());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        //Les arêtes d'une voie sont ainsi trouvées par recherche dichotomique ; la permutation
+        //se calcule comme celle des nœuds triés par identité OSM.
+        IntBuffer sortedEdgeIds = GraphOsmIds.sortedNodeIds(edgeWayIds);
+        try (DataOutputStream out = output(SORTED_EDGE_IDS_FILE)) {
+            for (int i = 0; i < edgeCount; i++) out.writeInt(sortedEdgeIds.get(i));
+        }
+    }
+
+    /**
+     * Méthode privée calculant en parallèle les profils des segments du lot donné.
+     * @param pool Groupe de fils d'exécution.
+     * @param nodes Nœuds du graphe.
+     * @param batch Lot de segments.
+     * @return Les profils codés, dans l'ordre du lot.
+     * @throws IOException Si le calcul est interrompu.
+     */
+    private EncodedProfile[] profiles(ForkJoinPool pool, IntBuffer nodes, List<Segment> batch)
+            throws IOException {
+        try {
+            return pool.submit(() -> IntStream.range(0, batch.size()).parallel()
+                    .mapToObj(i -> {
+                        int from = batch.get(i).from(), to = batch.get(i).to();
+                        return profile(elevationModel,
+                                Q28_4.asDouble(nodes.get(3 * from)),
+                                Q28_4.asDouble(nodes.get(3 * from + 1)),
+                                Q28_4.asDouble(nodes.get(3 * to)),
+                                Q28_4.asDouble(nodes.get(3 * to + 1)),
+                                lengthQ4(nodes, from, to));
+                    })
+                    .toArray(EncodedProfile[]::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Méthode privée retournant vrai si et seulement si le segment allant du nœud from au
+     * nœud to doit donner des arêtes, compte tenu des degrés donnés.
+     * @param from Identité du nœud de départ (-1 si inconnu).
+     * @param to Identité du nœud d'arrivée (-1 si inconnu).
+     * @param degrees Degrés courants des nœuds.
+     * @return Vrai si et seulement si le segment est conservé.
+     */
+    private static boolean isKept(int from, int to, IntBuffer degrees) {
+        return from >= 0 && to >= 0 && from != to
+                && degrees.get(from) < MAX_OUT_DEGREE && degrees.get(to) < MAX_OUT_DEGREE;
+    }
+
+    /**
+     * Retourne l'identité de profil (type et index du premier échantillon) stockée dans le
+     * fichier profile_ids.bin.
+     * @param type Type du profil.
+     * @param firstSampleIndex Index du premier échantillon dans elevations.bin.
+     * @return L'identité de profil.
+     */
+    static int profileId(int type, long firstSampleIndex) {
+        Preconditions.checkArgument(firstSampleIndex < 1L << PROFILE_INDEX_BITS);
+        return type << PROFILE_INDEX_BITS | (int) firstSampleIndex;
+    }
+
+    /**
+     * Écrit une arête à la position donnée du tampon des arêtes.
+     * @param edges Tampon des arêtes.
+     * @param edgeId Identité de l'arête.
+     * @param target Identité du nœud destination, complémentée si l'arête est inversée.
+     * @param lengthQ4 Longueur de l'arête, en Q12.4.
+     * @param elevationGain Dénivelé positif de l'arête, en Q12.4.
+     * @param attributesIndex Index de l'ensemble d'attributs de l'arête.
+     */
+    static void putEdge(ByteBuffer edges, int edgeId, int target, int lengthQ4,
+                                int elevationGain, int attributesIndex) {
+        int offset = edgeId * EDGE_BYTES;
+        edges.putInt(offset, target);
+        edges.putShort(offset + Integer.BYTES, (short) lengthQ4);
+        edges.putShort(offset + Integer.BYTES + Short.BYTES, (short) elevationGain);
+        edges.putShort(offset + Integer.BYTES + 2 * Short.BYTES, (short) attributesIndex);
+    }
+
+    /**
+     * Méthode privée retournant la longueur (en Q12.4, limitée à 16 bits) du segment reliant
+     * les deux nœuds donnés.
+     * @param nodes Nœuds du graphe.
+     * @param from Identité du premier nœud.
+     * @param to Identité du second nœud.
+     * @return La longueur du segment, en Q12.4.
+     */
+    private static int lengthQ4(IntBuffer nodes, int from, int to) {
+        return lengthQ4(nodes.get(3 * from), nodes.get(3 * from + 1),
+                nodes.get(3 * to), nodes.get(3 * to + 1));
+    }
+
+    /**
+     * Retourne la longueur (en Q12.4, limitée à 16 bits) du segment reliant les deux points
+     * de coordonnées données, en Q28.4.
+     * @param e1 Coordonnée Est du premier point.
+     * @param n1 Coordonnée Nord du premier point.
+     * @param e2 Coordonnée Est du second point.
+     * @param n2 Coordonnée Nord du second point.
+     * @return La longueur du segment, en Q12.4.
+     */
+    static int lengthQ4(int e1, int n1, int e2, int n2) {
+        double length = Math2.norm(Q28_4.asDouble(e2 - e1), Q28_4.asDouble(n2 - n1));
+        return (int) Math.min(Math.round(Math.scalb(length, 4)), MAX_U16);
+    }
+
+    /**
+     * Méthode privée retournant l'identité de la première arête sortant du nœud donné.
+     * @param nodes Nœuds du graphe.
+     * @param nodeId Identité du nœud.
+     * @return L'identité de sa première arête.
+     */
+    private static int firstEdgeId(IntBuffer nodes, int nodeId) {
+        return nodes.get(3 * nodeId + 2) & ((1 << EDGE_ID_BITS) - 1);
+    }
+
+    /**
+     * Méthode privée retournant le secteur du index-ième nœud référencé.
+     * @param coordinates Coordonnées des nœuds référencés.
+     * @param index Index du nœud.
+     * @return L'index de son secteur.
+     */
+    private static int sectorOf(IntBuffer coordinates, int index) {
+        return sectorIndex(Q28_4.asDouble(coordinates.get(2 * index)),
+                Q28_4.asDouble(coordinates.get(2 * index + 1)));
+    }
+
+    /**
+     * Méthode privée retournant l'index de l'identité OSM donnée dans le tableau trié donné,
+     * ou -1 si elle n'y figure pas.
+     * @param osmIds Identités OSM triées.
+     * @param osmId Identité recherchée.
+     * @return L'index de l'identité, ou -1.
+     */
+    private static int indexOf(LongBuffer osmIds, long osmId) {
+        int low = 0, high = osmIds.capacity() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = osmIds.get(middle);
+            if (value < osmId) low = middle + 1;
+            else if (value > osmId) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Méthode privée projetant en mémoire, en lecture seule, le fichier existant donné.
+     * @param path Chemin d'accès au fichier.
+     * @return Le tampon projeté.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static MappedByteBuffer open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            Preconditions.checkArgument(channel.size() <= Integer.MAX_VALUE);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Méthode privée créant (ou vidant) le fichier donné et le projetant en mémoire, en
+     * lecture et écriture, avec la taille donnée. Son contenu initial est nul.
+     * @param path Chemin d'accès au fichier.
+     * @param size Taille du fichier, en octets.
+     * @return Le tampon projeté.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static MappedByteBuffer create(Path path, long size) throws IOException {
+        Preconditions.checkArgument(size <= Integer.MAX_VALUE);
+        try (FileChannel channel = FileChannel.open(path, READ, WRITE, CREATE,
+                TRUNCATE_EXISTING)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Méthode privée ouvrant en écriture le fichier de sortie de nom donné.
+     * @param name Nom du fichier.
+     * @return Le flot de sortie.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private DataOutputStream output(String name) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                outputDir.resolve(name), CREATE, WRITE, TRUNCATE_EXISTING)));
+    }
+
+    /**
+     * Méthode privée ouvrant en lecture le fichier donné.
+     * @param path Chemin d'accès au fichier.
+     * @return Le flot d'entrée.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static DataInputStream input(Path path) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+    }
+}
@@ -0,0 +1,926 @@
+package ch.epfl.javelo.builder;
+
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.GraphOsmIds;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.SwissBounds;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * GraphUpdater
+ * <p>
+ * Classe représentant la mise à jour incrémentale d'un graphe JaVelo construit par
+ * GraphBuilder, à partir d'un fichier de modifications OSM (.osc). Seuls les secteurs touchés
+ * par les modifications sont réécrits :
+ * <ul>
+ *     <li>les anciens nœuds de ces secteurs et leurs arêtes deviennent orphelins (degré nul et
+ *     identité OSM 0 pour les nœuds, identité de voie 0 pour les arêtes) ;</li>
+ *     <li>les nœuds de chacun de ces secteurs sont réécrits, avec leurs arêtes, au début de
+ *     l'ancienne plage du secteur s'ils y tiennent, sinon dans la plus petite plage orpheline
+ *     suffisante, et seulement à défaut à la fin des fichiers nodes.bin et edges.bin ;</li>
+ *     <li>les arêtes des autres secteurs qui menaient à des nœuds déplacés sont redirigées sur
+ *     place ;</li>
+ *     <li>seuls les profils des arêtes dont une extrémité a bougé, ou dont le segment est
+ *     nouveau, sont recalculés.</li>
+ * </ul>
+ * Le travail effectué est proportionnel à la taille des modifications plutôt qu'à celle du
+ * graphe : les arêtes des voies modifiées sont trouvées par recherche dichotomique dans la
+ * permutation des arêtes triées par voie, et les permutations triées de la nouvelle génération
+ * sont obtenues par fusion des anciennes avec les nœuds et arêtes modifiés, sans nouveau tri.
+ * <p>
+ * La nouvelle génération des fichiers est écrite dans un répertoire temporaire, puis renommée
+ * atomiquement, de sorte qu'elle n'est jamais visible dans un état incohérent. Ses fichiers
+ * sont d'abord des liens physiques vers ceux de l'ancienne génération, et seuls ceux que la
+ * mise à jour modifie sont recopiés, juste avant leur modification.
+ * <p>
+ * Les plages orphelines, qui se trouvent au début des permutations triées, sont réutilisées
+ * par les mises à jour suivantes : les fichiers ne grandissent que si un secteur réécrit ne
+ * tient ni dans sa plage ni dans une plage orpheline, et appliquer deux fois les mêmes
+ * modifications ne change pas la taille du graphe.
+ * Seuls les échantillons des profils recalculés s'accumulent dans elevations.bin jusqu'à la
+ * prochaine reconstruction complète.
+ * <p>
+ * Comme lors de la construction, un nouveau segment n'est ajouté que si ses deux extrémités
+ * n'ont pas encore atteint le degré sortant maximal, afin que chaque arête garde sa jumelle
+ * allant en sens contraire.
+ * <p>
+ * Une voie devenant routière peut référencer des nœuds qui ne figurent ni dans le graphe ni
+ * dans le fichier de modifications ; leur position étant inconnue, les segments concernés sont
+ * ignorés jusqu'à la prochaine reconstruction complète.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public final class GraphUpdater {
+
+    //Nombre total de secteurs.
+    private static final int SECTOR_COUNT =
+            GraphBuilder.SECTORS_PER_SIDE * GraphBuilder.SECTORS_PER_SIDE;
+
+    //Masque de l'identité de la première arête d'un nœud.
+    private static final int EDGE_ID_MASK = (1 << GraphBuilder.EDGE_ID_BITS) - 1;
+
+    //Fichiers du graphe repris (liés, ou recopiés s'ils sont modifiés) dans la nouvelle génération.
+    private static final List<String> GRAPH_FILES = List.of("nodes.bin", "sectors.bin",
+            "edges.bin", "profile_ids.bin", "elevations.bin", "attributes.bin",
+            "nodes_osmid.bin", GraphBuilder.EDGE_WAY_IDS_FILE);
+
+    /**
+     * Attributs représentant les données de l'ancienne génération.
+     */
+    private final IntBuffer nodes;
+    private final ByteBuffer sectors;
+    private final ByteBuffer edges;
+    private final IntBuffer profileIds;
+    private final LongBuffer edgeWayIds;
+    private final IntBuffer sortedEdgeIds;
+    private final LongBuffer attributes;
+    private final GraphOsmIds osmIds;
+    private final long elevationCount;
+
+    /**
+     * Attributs représentant les modifications à appliquer et le modèle de terrain.
+     */
+    private final OsmChange change;
+    private final ElevationModel elevationModel;
+
+    /**
+     * Constructeur privé, la mise à jour étant lancée par la méthode update.
+     */
+    private GraphUpdater(Path graphDir, OsmChange change, ElevationModel elevationModel)
+            throws IOException {
+        if (!Files.exists(graphDir.resolve(GraphBuilder.EDGE_WAY_IDS_FILE)))
+            throw new IOException(GraphBuilder.EDGE_WAY_IDS_FILE + " manquant : le graphe doit "
+                    + "être construit par GraphBuilder");
+        this.nodes = open(graphDir.resolve("nodes.bin")).asIntBuffer();
+        this.sectors = open(graphDir.resolve("sectors.bin"));
+        this.edges = open(graphDir.resolve("edges.bin"));
+        this.profileIds = open(graphDir.resolve("profile_ids.bin")).asIntBuffer();
+        this.edgeWayIds = open(graphDir.resolve(GraphBuilder.EDGE_WAY_IDS_FILE)).asLongBuffer();
+        Path sortedEdgeIdsPath = graphDir.resolve(GraphBuilder.SORTED_EDGE_IDS_FILE);
+        this.sortedEdgeIds = Files.exists(sortedEdgeIdsPath)
+                ? open(sortedEdgeIdsPath).asIntBuffer()
+                : GraphOsmIds.sortedNodeIds(edgeWayIds);
+        this.attributes = open(graphDir.resolve("attributes.bin")).asLongBuffer();
+        this.osmIds = GraphOsmIds.loadFrom(graphDir);
+        this.elevationCount = Files.size(graphDir.resolve("elevations.bin")) / Short.BYTES;
+        this.change = change;
+        this.elevationModel = elevationModel;
+    }
+
+    /**
+     * Met à jour un graphe. Usage : GraphUpdater répertoire modifications.osc modèle.asc
+     * nouveau-répertoire.
+     * @param args Arguments de la ligne de commande.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("usage: GraphUpdater <répertoire> <modifications.osc> "
+                    + "<modèle.asc> <nouveau répertoire>");
+            System.exit(1);
+        }
+        int sectorCount = update(Path.of(args[0]), OsmChange.readFrom(Path.of(args[1])),
+                AsciiGridElevationModel.loadFrom(Path.of(args[2])), Path.of(args[3]));
+        System.out.println(sectorCount + " secteurs réécrits");
+    }
+
+    /**
+     * Écrit dans le répertoire donné (qui ne doit pas exister) la nouvelle génération du graphe
+     * du répertoire donné, à laquelle les modifications données ont été appliquées, et
+     * retourne le nombre de secteurs réécrits.
+     * @param graphDir Répertoire du graphe existant, construit par GraphBuilder.
+     * @param change Modifications OSM à appliquer.
+     * @param elevationModel Modèle numérique de terrain.
+     * @param newGraphDir Répertoire de la nouvelle génération.
+     * @return Le nombre de secteurs réécrits.
+     * @throws IOException En cas d'erreur d'entrée/sortie ou de graphe incomplet.
+     */
+    public static int update(Path graphDir, OsmChange change, ElevationModel elevationModel,
+                             Path newGraphDir) throws IOException {
+        Preconditions.checkArgument(!Files.exists(newGraphDir));
+        return new GraphUpdater(graphDir, change, elevationModel).run(graphDir, newGraphDir);
+    }
+
+    /**
+     * Enregistrement privé représentant une arête de la nouvelle génération, avant
+     * l'attribution des identités des nœuds.
+     * @param targetOsmId Identité OSM du nœud destination.
+     * @param inverted Vrai si l'arête va dans le sens contraire de sa voie.
+     * @param oldEdgeId Identité de l'arête dans l'ancienne génération, ou -1 si elle est
+     * nouvelle.
+     * @param wayId Identité OSM de sa voie.
+     * @param attributesIndex Index de son ensemble d'attributs.
+     */
+    private record PendingEdge(long targetOsmId, boolean inverted, int oldEdgeId, long wayId,
+                               int attributesIndex) {}
+
+    /**
+     * Classe privée représentant les plages libres d'index (de nœuds ou d'arêtes) d'un
+     * fichier, attribuées aux secteurs réécrits avant d'agrandir le fichier.
+     */
+    private static final class FreeRanges {
+        //Plages libres, associant leur longueur à leur premier index.
+        private final TreeMap<Integer, Integer> ranges = new TreeMap<>();
+        private int end;
+
+        /**
+         * Constructeur initialisant les plages libres formées par les index donnés.
+         * @param end Nombre d'index du fichier.
+         * @param freeIndices Index libres, triés.
+         */
+        private FreeRanges(int end, int[] freeIndices) {
+            this.end = end;
+            for (int i = 0; i < freeIndices.length; ) {
+                int start = freeIndices[i], length = 1;
+                while (i + length < freeIndices.length
+                        && freeIndices[i + length] == start + length) length++;
+                ranges.put(start, length);
+                i += length;
+            }
+        }
+
+        /**
+         * Retire des plages libres la plage donnée, qui doit être entièrement libre.
+         * @param start Premier index de la plage.
+         * @param length Longueur de la plage.
+         */
+        private void take(int start, int length) {
+            if (length == 0) return;
+            Map.Entry<Integer, Integer> range = ranges.floorEntry(start);
+            Preconditions.checkArgument(range != null
+                    && start + length <= range.getKey() + range.getValue());
+            int rangeEnd = range.getKey() + range.getValue();
+            ranges.remove(range.getKey());
+            if (range.getKey() < start) ranges.put(range.getKey(), start - range.getKey());
+            if (start + length < rangeEnd) ranges.put(start + length, rangeEnd - start - length);
+        }
+
+        /**
+         * Attribue une plage de la longueur donnée : le début de la plus petite plage libre
+         * suffisante (la première en cas d'égalité), ou, à défaut, la fin du fichier.
+         * @param length Longueur de la plage.
+         * @return Le premier index de la plage attribuée.
+         */
+        private int allocate(int length) {
+            Map.Entry<Integer, Integer> best = null;
+            for (Map.Entry<Integer, Integer> range : ranges.entrySet()) {
+                if (range.getValue() >= length
+                        && (best == null || range.getValue() < best.getValue())) best = range;
+            }
+            if (best == null) {
+                end += length;
+                return end - length;
+            }
+            int start = best.getKey();
+            take(start, length);
+            return start;
+        }
+
+        /**
+         * Retourne le nombre d'index du fichier, plages ajoutées comprises.
+         * @return Le nombre d'index du fichier.
+         */
+        private int end() {
+            return end;
+        }
+    }
+
+    /**
+     * Méthode privée appliquant les modifications et écrivant la nouvelle génération.
+     * @param graphDir Répertoire de l'ancienne génération.
+     * @param newGraphDir Répertoire de la nouvelle génération.
+     * @return Le nombre de secteurs réécrits.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private int run(Path graphDir, Path newGraphDir) throws IOException {
+        //Nouvelles positions (en Q28.4) des nœuds créés ou modifiés ; null s'ils sortent de
+        //Suisse.
+        Map<Long, int[]> newPositions = new HashMap<>();
+        change.nodes().forEach((osmId, node) -> {
+            double e = Ch1903.e(node.lon(), node.lat()), n = Ch1903.n(node.lon(), node.lat());
+            newPositions.put(osmId, SwissBounds.containsEN(e, n)
+                    ? new int[]{toQ28_4(e), toQ28_4(n)} : null);
+        });
+        for (long osmId : change.deletedNodes()) newPositions.put(osmId, null);
+
+        //Nœuds dont les arêtes changent : extrémités des arêtes des voies modifiées ou
+        //supprimées, nœuds déplacés et leurs voisins, nœuds des nouveaux segments.
+        Set<Long> affected = new HashSet<>();
+        Set<Integer> removedEdges = removedEdges(affected);
+        Set<Long> moved = new HashSet<>();
+        for (Map.Entry<Long, int[]> entry : newPositions.entrySet()) {
+            int nodeId = osmIds.nodeId(entry.getKey());
+            if (nodeId < 0) continue;
+            int[] position = entry.getValue();
+            if (position != null && position[0] == nodes.get(3 * nodeId)
+                    && position[1] == nodes.get(3 * nodeId + 1)) continue;
+            moved.add(entry.getKey());
+            affected.add(entry.getKey());
+            for (int edgeId : oldEdges(nodeId)) affected.add(osmIds.osmId(targetOf(edgeId)));
+        }
+
+        Map<Long, Integer> attributeIndices = new HashMap<>();
+        List<Long> newAttributeSets = new ArrayList<>();
+        for (int i = 0; i < attributes.capacity(); i++) attributeIndices.put(attributes.get(i), i);
+        Map<Long, List<PendingEdge>> newSegmentEdges = new HashMap<>();
+        Map<Long, Integer> degrees = new HashMap<>();
+        new TreeMap<>(change.ways()).forEach((wayId, way) -> {
+            long bits = GraphBuilder.attributeBits(way.tags());
+            if (bits == 0) return;
+            int attributesIndex = attributeIndices.computeIfAbsent(bits, b -> {
+                newAttributeSets.add(b);
+                return attributes.capacity() + newAttributeSets.size() - 1;
+            });
+            Preconditions.checkArgument(attributesIndex <= GraphBuilder.MAX_U16);
+            long[] wayNodes = way.nodeIds();
+            for (int i = 1; i < wayNodes.length; i++) {
+                long from = wayNodes[i - 1], to = wayNodes[i];
+                if (from == to || position(from, newPositions) == null
+                        || position(to, newPositions) == null) continue;
+                //Comme dans GraphBuilder, le segment n'est gardé que si ses deux extrémités
+                //peuvent encore recevoir une arête.
+                int fromDegree = degrees.computeIfAbsent(from,
+                        osmId -> keptDegree(osmId, removedEdges, newPositions));
+                int toDegree = degrees.computeIfAbsent(to,
+                        osmId -> keptDegree(osmId, removedEdges, newPositions));
+                if (fromDegree >= GraphBuilder.MAX_OUT_DEGREE
+                        || toDegree >= GraphBuilder.MAX_OUT_DEGREE) continue;
+                degrees.put(from, fromDegree + 1);
+                degrees.put(to, toDegree + 1);
+                newSegmentEdges.computeIfAbsent(from, k -> new ArrayList<>())
+                        .add(new PendingEdge(to, false, -1, wayId, attributesIndex));
+                newSegmentEdges.computeIfAbsent(to, k -> new ArrayList<>())
+                        .add(new PendingEdge(from, true, -1, wayId, attributesIndex));
+                affected.add(from);
+                affected.add(to);
+            }
+        });
+
+        //Secteurs touchés : anciens et nouveaux secteurs des nœuds concernés.
+        Set<Integer> affectedSectors = new HashSet<>();
+        for (long osmId : affected) {
+            int nodeId = osmIds.nodeId(osmId);
+            if (nodeId >= 0) affectedSectors.add(oldSectorOf(nodeId));
+            int[] position = position(osmId, newPositions);
+            if (position != null) affectedSectors.add(sectorOf(position));
+        }
+
+        //Nœuds de la nouvelle génération des secteurs touchés, triés par identité OSM, et
+        //anciens nœuds de ces secteurs, qui deviennent orphelins avec leurs arêtes.
+        TreeMap<Integer, TreeMap<Long, List<PendingEdge>>> placed = new TreeMap<>();
+        for (int sector : affectedSectors) placed.put(sector, new TreeMap<>());
+        List<Integer> orphans = new ArrayList<>();
+        List<Integer> orphanEdges = new ArrayList<>();
+        Set<Long> candidates = new HashSet<>(affected);
+        for (int sector : affectedSectors) {
+            int start = sectorStart(sector);
+            for (int nodeId = start; nodeId < start + sectorCount(sector); nodeId++) {
+                orphans.add(nodeId);
+                for (int edgeId : oldEdges(nodeId)) orphanEdges.add(edgeId);
+                candidates.add(osmIds.osmId(nodeId));
+            }
+        }
+        for (long osmId : candidates) {
+            int[] position = position(osmId, newPositions);
+            if (position == null) continue;
+            List<PendingEdge> pending = new ArrayList<>();
+            List<Integer> replaced = new ArrayList<>();
+            int nodeId = osmIds.nodeId(osmId);
+            if (nodeId >= 0) {
+                for (int edgeId : oldEdges(nodeId)) {
+                    if (!isKept(edgeId, removedEdges, newPositions)) {
+                        if (removedEdges.contains(edgeId)) replaced.add(edgeId);
+                        continue;
+                    }
+                    long target = osmIds.osmId(targetOf(edgeId));
+                    pending.add(new PendingEdge(target, isInverted(edgeId), edgeId,
+                            edgeWayIds.get(edgeId), Short.toUnsignedInt(edges.getShort(edgeId
+                            * GraphBuilder.EDGE_BYTES + Integer.BYTES + 2 * Short.BYTES))));
+                }
+            }
+            for (PendingEdge added : newSegmentEdges.getOrDefault(osmId, List.of()))
+                pending.add(reusingProfile(added, replaced));
+            if (pending.isEmpty()) continue;
+            Preconditions.checkArgument(pending.size() <= GraphBuilder.MAX_OUT_DEGREE);
+            placed.get(sectorOf(position)).put(osmId, pending);
+        }
+
+        //Emplacement des secteurs réécrits : un secteur reprend le début de sa propre plage de
+        //nœuds (resp. d'arêtes) s'il y tient, sinon la plus petite plage libre suffisante, et
+        //n'est ajouté à la fin du fichier qu'à défaut. Appliquer deux fois les mêmes
+        //modifications ne fait donc pas grandir le graphe.
+        FreeRanges freeNodes = new FreeRanges(nodes.capacity() / 3,
+                freeIndices(osmIds.sortedNodeIds(), osmIds.osmIds(), orphans));
+        FreeRanges freeEdges = new FreeRanges(profileIds.capacity(),
+                freeIndices(sortedEdgeIds, edgeWayIds, orphanEdges));
+        Map<Integer, Integer> nodeStarts = new HashMap<>();
+        Map<Integer, Integer> edgeStarts = new HashMap<>();
+        for (Map.Entry<Integer, TreeMap<Long, List<PendingEdge>>> sector : placed.entrySet()) {
+            int start = sectorStart(sector.getKey()), count = sectorCount(sector.getKey());
+            int size = sector.getValue().size(), degree = degreeOf(sector.getValue());
+            Preconditions.checkArgument(size <= GraphBuilder.MAX_U16);
+            if (size <= count) {
+                freeNodes.take(start, size);
+                nodeStarts.put(sector.getKey(), start);
+            }
+            //Les arêtes des nœuds d'un secteur sont contiguës s'ils ont été écrits par
+            //GraphBuilder ou par une mise à jour précédente.
+            int[] edgeRange = oldEdgeRange(start, count);
+            if (edgeRange != null && degree <= edgeRange[1]) {
+                freeEdges.take(edgeRange[0], degree);
+                edgeStarts.put(sector.getKey(), edgeRange[0]);
+            }
+        }
+        Map<Long, Integer> newIds = new HashMap<>();
+        for (Map.Entry<Integer, TreeMap<Long, List<PendingEdge>>> sector : placed.entrySet()) {
+            int nodeStart = nodeStarts.computeIfAbsent(sector.getKey(),
+                    s -> freeNodes.allocate(sector.getValue().size()));
+            edgeStarts.computeIfAbsent(sector.getKey(),
+                    s -> freeEdges.allocate(degreeOf(sector.getValue())));
+            for (long osmId : sector.getValue().keySet()) newIds.put(osmId, nodeStart++);
+        }
+        Preconditions.checkArgument(freeNodes.end() <= EDGE_ID_MASK
+                && freeEdges.end() <= EDGE_ID_MASK);
+
+        //Redirection des arêtes des secteurs non touchés qui menaient aux nœuds orphelins.
+        Map<Integer, Integer> retargeted = new HashMap<>();
+        for (int orphan : orphans) {
+            Integer newId = newIds.get(osmIds.osmId(orphan));
+            if (newId == null || newId == orphan) continue;
+            for (int edgeId : oldEdges(orphan)) {
+                int neighbor = targetOf(edgeId);
+                if (newIds.containsKey(osmIds.osmId(neighbor))) continue;
+                for (int back : oldEdges(neighbor)) {
+                    if (targetOf(back) == orphan)
+                        retargeted.put(back, isInverted(back) ? ~newId : newId);
+                }
+            }
+        }
+
+        //Écriture de la nouvelle génération dans un répertoire temporaire, puis renommage. Les
+        //fichiers y sont d'abord des liens vers ceux de l'ancienne génération, et ne sont
+        //recopiés que s'ils sont modifiés.
+        Path tempDir = newGraphDir.resolveSibling(newGraphDir.getFileName() + ".tmp");
+        deleteRecursively(tempDir);
+        Files.createDirectories(tempDir);
+        for (String file : GRAPH_FILES) link(graphDir.resolve(file), tempDir.resolve(file));
+
+        //Nouvelles identités OSM des index de nœuds et de voies des index d'arêtes modifiés,
+        //nulles pour les index orphelins qui ne sont pas réutilisés.
+        Map<Integer, Long> changedNodeIds = new HashMap<>();
+        Map<Integer, Long> changedWayIds = new HashMap<>();
+        for (int orphan : orphans) changedNodeIds.put(orphan, 0L);
+        for (int edgeId : orphanEdges) changedWayIds.put(edgeId, 0L);
+        newIds.forEach((osmId, nodeId) -> changedNodeIds.put(nodeId, osmId));
+
+        ByteArrayOutputStream elevationBytes = new ByteArrayOutputStream();
+        DataOutputStream elevationOut = new DataOutputStream(elevationBytes);
+        long newElevationCount = elevationCount;
+        if (!affectedSectors.isEmpty()) {
+            try (FileChannel nodesFile = writable(graphDir, tempDir, "nodes.bin");
+                 FileChannel osmIdsFile = writable(graphDir, tempDir, "nodes_osmid.bin");
+                 FileChannel sectorsFile = writable(graphDir, tempDir, "sectors.bin");
+                 FileChannel edgesFile = writable(graphDir, tempDir, "edges.bin");
+                 FileChannel profileIdsFile = writable(graphDir, tempDir, "profile_ids.bin");
+                 FileChannel wayIdsFile = writable(graphDir, tempDir,
+                         GraphBuilder.EDGE_WAY_IDS_FILE)) {
+                //Les index orphelins sont effacés avant que les secteurs réécrits ne les
+                //réutilisent.
+                for (int orphan : orphans) {
+                    write(nodesFile, (long) orphan * GraphBuilder.NODE_BYTES + 2 * Integer.BYTES,
+                            ByteBuffer.allocate(Integer.BYTES).putInt(0));
+                    write(osmIdsFile, (long) orphan * Long.BYTES,
+                            ByteBuffer.allocate(Long.BYTES).putLong(0));
+                }
+                for (int edgeId : orphanEdges) {
+                    write(wayIdsFile, (long) edgeId * Long.BYTES,
+                            ByteBuffer.allocate(Long.BYTES).putLong(0));
+                }
+                for (Map.Entry<Integer, Integer> entry : retargeted.entrySet()) {
+                    write(edgesFile, (long) entry.getKey() * GraphBuilder.EDGE_BYTES,
+                            ByteBuffer.allocate(Integer.BYTES).putInt(entry.getValue()));
+                }
+
+                for (Map.Entry<Integer, TreeMap<Long, List<PendingEdge>>> sector
+                        : placed.entrySet()) {
+                    int size = sector.getValue().size(), degree = degreeOf(sector.getValue());
+                    int nodeStart = nodeStarts.get(sector.getKey());
+                    int edgeStart = edgeStarts.get(sector.getKey());
+                    ByteBuffer nodeBlock = ByteBuffer.allocate(size * GraphBuilder.NODE_BYTES);
+                    ByteBuffer osmIdBlock = ByteBuffer.allocate(size * Long.BYTES);
+                    ByteBuffer edgeBlock = ByteBuffer.allocate(degree * GraphBuilder.EDGE_BYTES);
+                    ByteBuffer profileIdBlock = ByteBuffer.allocate(degree * Integer.BYTES);
+                    ByteBuffer wayIdBlock = ByteBuffer.allocate(degree * Long.BYTES);
+                    int edgeIndex = 0;
+                    for (Map.Entry<Long, List<PendingEdge>> node : sector.getValue().entrySet()) {
+                        long osmId = node.getKey();
+                        int[] position = position(osmId, newPositions);
+                        int firstEdge = edgeStart + edgeIndex;
+                        for (PendingEdge pending : node.getValue()) {
+                            int target = newIds.containsKey(pending.targetOsmId())
+                                    ? newIds.get(pending.targetOsmId())
+                                    : osmIds.nodeId(pending.targetOsmId());
+                            int[] targetPosition = position(pending.targetOsmId(), newPositions);
+                            int lengthQ4, elevationGain, profileId;
+                            if (pending.oldEdgeId() >= 0 && !moved.contains(osmId)
+                                    && !moved.contains(pending.targetOsmId())) {
+                                //Géométrie inchangée : longueur et profil sont repris tels
+                                //quels.
+                                int offset = pending.oldEdgeId() * GraphBuilder.EDGE_BYTES;
+                                lengthQ4 = Short.toUnsignedInt(
+                                        edges.getShort(offset + Integer.BYTES));
+                                elevationGain = Short.toUnsignedInt(
+                                        edges.getShort(offset + Integer.BYTES + Short.BYTES));
+                                profileId = profileIds.get(pending.oldEdgeId());
+                            } else {
+                                //Le profil est échantillonné dans le sens de la voie.
+                                int[] from = pending.inverted() ? targetPosition : position;
+                                int[] to = pending.inverted() ? position : targetPosition;
+                                lengthQ4 = GraphBuilder.lengthQ4(from[0], from[1], to[0], to[1]);
+                                EncodedProfile profile = GraphBuilder.profile(elevationModel,
+                                        asDouble(from[0]), asDouble(from[1]),
+                                        asDouble(to[0]), asDouble(to[1]), lengthQ4);
+                                elevationGain = pending.inverted()
+                                        ? profile.descent() : profile.ascent();
+                                profileId = 0;
+                                if (profile.type() != EncodedProfile.NO_PROFILE) {
+                                    profileId = GraphBuilder.profileId(profile.type(),
+                                            newElevationCount);
+                                    for (short value : profile.elevations())
+                                        elevationOut.writeShort(value);
+                                    newElevationCount += profile.elevations().length;
+                                }
+                            }
+                            GraphBuilder.putEdge(edgeBlock, edgeIndex,
+                                    pending.inverted() ? ~target : target,
+                                    lengthQ4, elevationGain, pending.attributesIndex());
+                            profileIdBlock.putInt(profileId);
+                            wayIdBlock.putLong(pending.wayId());
+                            changedWayIds.put(edgeStart + edgeIndex, pending.wayId());
+                            edgeIndex++;
+                        }
+                        nodeBlock.putInt(position[0]).putInt(position[1])
+                                .putInt(node.getValue().size() << GraphBuilder.EDGE_ID_BITS
+                                        | firstEdge);
+                        osmIdBlock.putLong(osmId);
+                    }
+                    write(nodesFile, (long) nodeStart * GraphBuilder.NODE_BYTES, nodeBlock);
+                    write(osmIdsFile, (long) nodeStart * Long.BYTES, osmIdBlock);
+                    write(edgesFile, (long) edgeStart * GraphBuilder.EDGE_BYTES, edgeBlock);
+                    write(profileIdsFile, (long) edgeStart * Integer.BYTES, profileIdBlock);
+                    write(wayIdsFile, (long) edgeStart * Long.BYTES, wayIdBlock);
+                    write(sectorsFile, (long) sector.getKey() * GraphBuilder.SECTOR_BYTES,
+                            ByteBuffer.allocate(GraphBuilder.SECTOR_BYTES)
+                                    .putInt(nodeStart).putShort((short) size));
+                }
+            }
+        }
+        append(graphDir, tempDir, "elevations.bin", elevationBytes.toByteArray());
+        ByteArrayOutputStream attributeBytes = new ByteArrayOutputStream();
+        DataOutputStream attributeOut = new DataOutputStream(attributeBytes);
+        for (long bits : newAttributeSets) attributeOut.writeLong(bits);
+        append(graphDir, tempDir, "attributes.bin", attributeBytes.toByteArray());
+
+        //Permutations triées de la nouvelle génération, fusionnées à partir des anciennes.
+        writeMerged(tempDir.resolve(GraphOsmIds.SORTED_NODE_IDS_FILE), osmIds.sortedNodeIds(),
+                osmIds.osmIds(), changedNodeIds);
+        writeMerged(tempDir.resolve(GraphBuilder.SORTED_EDGE_IDS_FILE), sortedEdgeIds,
+                edgeWayIds, changedWayIds);
+
+        Files.move(tempDir, newGraphDir, StandardCopyOption.ATOMIC_MOVE);
+        return affectedSectors.size();
+    }
+
+    /**
+     * Méthode privée retournant les identités des anciennes arêtes provenant des voies
+     * modifiées ou supprimées, et ajoutant leurs extrémités à l'ensemble donné. Les deux arêtes
+     * d'un segment provenant de la même voie, les destinations des arêtes d'une voie sont
+     * exactement les extrémités de ses segments.
+     * @param affected Ensemble des identités OSM des nœuds touchés.
+     * @return Les identités des arêtes à supprimer.
+     */
+    private Set<Integer> removedEdges(Set<Long> affected) {
+        Set<Long> changedWays = new HashSet<>(change.ways().keySet());
+        changedWays.addAll(change.deletedWays());
+        Set<Integer> removed = new HashSet<>();
+        for (long wayId : changedWays) {
+            for (int i = firstEdgeIndexOf(wayId); i < sortedEdgeIds.capacity()
+                    && edgeWayIds.get(sortedEdgeIds.get(i)) == wayId; i++) {
+                int edgeId = sortedEdgeIds.get(i);
+                removed.add(edgeId);
+                affected.add(osmIds.osmId(targetOf(edgeId)));
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Méthode privée retournant, par recherche dichotomique, le plus petit index de la
+     * permutation des arêtes triées par voie dont l'identité de voie est supérieure ou égale à
+     * celle donnée.
+     * @param wayId Identité OSM de la voie.
+     * @return L'index trouvé.
+     */
+    private int firstEdgeIndexOf(long wayId) {
+        int low = 0, high = sortedEdgeIds.capacity();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (edgeWayIds.get(sortedEdgeIds.get(middle)) < wayId) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Méthode privée retournant vrai si et seulement si l'ancienne arête donnée est gardée dans
+     * la nouvelle génération, c.-à-d. si sa voie n'a pas changé et si sa destination existe
+     * encore.
+     * @param edgeId Identité de l'arête.
+     * @param removedEdges Identités des arêtes des voies modifiées ou supprimées.
+     * @param newPositions Positions des nœuds créés, modifiés ou supprimés.
+     * @return Vrai si et seulement si l'arête est gardée.
+     */
+    private boolean isKept(int edgeId, Set<Integer> removedEdges,
+                           Map<Long, int[]> newPositions) {
+        return !removedEdges.contains(edgeId)
+                && position(osmIds.osmId(targetOf(edgeId)), newPositions) != null;
+    }
+
+    /**
+     * Méthode privée retournant le nombre d'arêtes de l'ancien nœud OSM donné qui sont gardées
+     * dans la nouvelle génération (0 s'il est nouveau).
+     * @param osmId Identité OSM du nœud.
+     * @param removedEdges Identités des arêtes des voies modifiées ou supprimées.
+     * @param newPositions Positions des nœuds créés, modifiés ou supprimés.
+     * @return Le nombre d'arêtes gardées.
+     */
+    private int keptDegree(long osmId, Set<Integer> removedEdges,
+                           Map<Long, int[]> newPositions) {
+        int nodeId = osmIds.nodeId(osmId);
+        if (nodeId < 0) return 0;
+        int degree = 0;
+        for (int edgeId : oldEdges(nodeId)) {
+            if (isKept(edgeId, removedEdges, newPositions)) degree++;
+        }
+        return degree;
+    }
+
+    /**
+     * Méthode privée retournant les identités des arêtes sortant de l'ancien nœud donné.
+     * @param nodeId Identité du nœud dans l'ancienne génération.
+     * @return Les identités de ses arêtes.
+     */
+    private int[] oldEdges(int nodeId) {
+        int packed = nodes.get(3 * nodeId + 2);
+        int[] edgeIds = new int[packed >>> GraphBuilder.EDGE_ID_BITS];
+        for (int i = 0; i < edgeIds.length; i++) edgeIds[i] = (packed & EDGE_ID_MASK) + i;
+        return edgeIds;
+    }
+
+    /**
+     * Méthode privée retournant l'identité du premier nœud de l'ancien secteur donné.
+     * @param sector Index du secteur.
+     * @return L'identité de son premier nœud.
+     */
+    private int sectorStart(int sector) {
+        return sectors.getInt(sector * GraphBuilder.SECTOR_BYTES);
+    }
+
+    /**
+     * Méthode privée retournant le nombre de nœuds de l'ancien secteur donné.
+     * @param sector Index du secteur.
+     * @return Son nombre de nœuds.
+     */
+    private int sectorCount(int sector) {
+        return Short.toUnsignedInt(
+                sectors.getShort(sector * GraphBuilder.SECTOR_BYTES + Integer.BYTES));
+    }
+
+    /**
+     * Méthode privée retournant la plage des arêtes des anciens nœuds donnés, sous la forme
+     * {première arête, nombre d'arêtes}, ou null si ces arêtes ne sont pas contiguës.
+     * @param start Identité du premier nœud.
+     * @param count Nombre de nœuds.
+     * @return La plage de leurs arêtes, ou null.
+     */
+    private int[] oldEdgeRange(int start, int count) {
+        int firstEdge = count == 0 ? 0 : nodes.get(3 * start + 2) & EDGE_ID_MASK;
+        int edgeCount = 0;
+        for (int nodeId = start; nodeId < start + count; nodeId++) {
+            int packed = nodes.get(3 * nodeId + 2);
+            if ((packed & EDGE_ID_MASK) != firstEdge + edgeCount) return null;
+            edgeCount += packed >>> GraphBuilder.EDGE_ID_BITS;
+        }
+        return new int[]{firstEdge, edgeCount};
+    }
+
+    /**
+     * Méthode privée retournant l'arête donnée d'un nouveau segment, reprenant l'ancienne
+     * arête remplacée de même destination et de même sens s'il en existe une, afin de réutiliser
+     * son profil si la géométrie du segment n'a pas changé.
+     * @param added Arête du nouveau segment.
+     * @param replaced Anciennes arêtes remplacées du même nœud, dont celle reprise est retirée.
+     * @return L'arête, éventuellement associée à une ancienne arête.
+     */
+    private PendingEdge reusingProfile(PendingEdge added, List<Integer> replaced) {
+        for (int i = 0; i < replaced.size(); i++) {
+            int edgeId = replaced.get(i);
+            if (osmIds.osmId(targetOf(edgeId)) == added.targetOsmId()
+                    && isInverted(edgeId) == added.inverted()) {
+                replaced.remove(i);
+                return new PendingEdge(added.targetOsmId(), added.inverted(), edgeId,
+                        added.wayId(), added.attributesIndex());
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Méthode privée retournant le nombre total d'arêtes des nœuds donnés.
+     * @param sectorNodes Nœuds d'un secteur de la nouvelle génération et leurs arêtes.
+     * @return Leur nombre total d'arêtes.
+     */
+    private static int degreeOf(Map<Long, List<PendingEdge>> sectorNodes) {
+        int degree = 0;
+        for (List<PendingEdge> pending : sectorNodes.values()) degree += pending.size();
+        return degree;
+    }
+
+    /**
+     * Méthode privée retournant, triés, les index libres de la nouvelle génération : index
+     * d'identité nulle de l'ancienne génération, qui se trouvent au début de sa permutation
+     * triée, et index devenus orphelins.
+     * @param sorted Permutation triée de l'ancienne génération.
+     * @param ids Identités OSM de l'ancienne génération, indexées par index.
+     * @param orphaned Index devenus orphelins.
+     * @return Les index libres, triés.
+     */
+    private static int[] freeIndices(IntBuffer sorted, LongBuffer ids, List<Integer> orphaned) {
+        List<Integer> free = new ArrayList<>(orphaned);
+        for (int i = 0; i < sorted.capacity() && ids.get(sorted.get(i)) == 0; i++)
+            free.add(sorted.get(i));
+        return free.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * Méthode privée retournant vrai si et seulement si l'ancienne arête donnée est inversée.
+     * @param edgeId Identité de l'arête.
+     * @return Vrai si et seulement si l'arête est inversée.
+     */
+    private boolean isInverted(int edgeId) {
+        return edges.getInt(edgeId * GraphBuilder.EDGE_BYTES) < 0;
+    }
+
+    /**
+     * Méthode privée retournant l'identité du nœud destination de l'ancienne arête donnée.
+     * @param edgeId Identité de l'arête.
+     * @return L'identité de son nœud destination.
+     */
+    private int targetOf(int edgeId) {
+        int target = edges.getInt(edgeId * GraphBuilder.EDGE_BYTES);
+        return target < 0 ? ~target : target;
+    }
+
+    /**
+     * Méthode privée retournant le secteur de l'ancien nœud donné.
+     * @param nodeId Identité du nœud dans l'ancienne génération.
+     * @return L'index de son secteur.
+     */
+    private int oldSectorOf(int nodeId) {
+        return sectorOf(new int[]{nodes.get(3 * nodeId), nodes.get(3 * nodeId + 1)});
+    }
+
+    /**
+     * Méthode privée retournant la position (en Q28.4) du nœud OSM donné dans la nouvelle
+     * génération, ou null s'il a été supprimé ou est inconnu.
+     * @param osmId Identité OSM du nœud.
+     * @param newPositions Positions des nœuds créés, modifiés ou supprimés.
+     * @return La position du nœud, ou null.
+     */
+    private int[] position(long osmId, Map<Long, int[]> newPositions) {
+        if (newPositions.containsKey(osmId)) return newPositions.get(osmId);
+        int nodeId = osmIds.nodeId(osmId);
+        return nodeId < 0 ? null : new int[]{nodes.get(3 * nodeId), nodes.get(3 * nodeId + 1)};
+    }
+
+    /**
+     * Méthode privée retournant le secteur contenant la position donnée.
+     * @param position Position, en Q28.4.
+     * @return L'index du secteur.
+     */
+    private static int sectorOf(int[] position) {
+        return GraphBuilder.sectorIndex(asDouble(position[0]), asDouble(position[1]));
+    }
+
+    /**
+     * Méthode privée convertissant une coordonnée en Q28.4.
+     * @param coordinate Coordonnée, en mètres.
+     * @return La coordonnée en Q28.4.
+     */
+    private static int toQ28_4(double coordinate) {
+        return (int) Math.round(Math.scalb(coordinate, 4));
+    }
+
+    /**
+     * Méthode privée convertissant une coordonnée Q28.4 en mètres.
+     * @param q28_4 Coordonnée en Q28.4.
+     * @return La coordonnée, en mètres.
+     */
+    private static double asDouble(int q28_4) {
+        return Math.scalb((double) q28_4, -4);
+    }
+
+    /**
+     * Méthode privée projetant en mémoire, en lecture seule, le fichier donné.
+     * @param path Chemin d'accès au fichier.
+     * @return Le tampon projeté.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static ByteBuffer open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Méthode privée écrivant entièrement le tampon donné (depuis son début) à la position
+     * donnée du fichier.
+     * @param channel Canal du fichier.
+     * @param position Position dans le fichier.
+     * @param buffer Tampon à écrire.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static void write(FileChannel channel, long position, ByteBuffer buffer)
+            throws IOException {
+        buffer.position(0);
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+
+    /**
+     * Méthode privée ajoutant les octets donnés, s'il y en a, à la fin du fichier donné de la
+     * nouvelle génération.
+     * @param graphDir Répertoire de l'ancienne génération.
+     * @param tempDir Répertoire de la nouvelle génération.
+     * @param file Nom du fichier.
+     * @param bytes Octets à ajouter.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static void append(Path graphDir, Path tempDir, String file, byte[] bytes)
+            throws IOException {
+        if (bytes.length == 0) return;
+        try (FileChannel channel = writable(graphDir, tempDir, file)) {
+            write(channel, channel.size(), ByteBuffer.wrap(bytes));
+        }
+    }
+
+    /**
+     * Méthode privée créant un lien physique vers le fichier donné, ou une copie si le système
+     * de fichiers ne permet pas de lien.
+     * @param source Fichier de l'ancienne génération.
+     * @param target Fichier de la nouvelle génération.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static void link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target);
+        }
+    }
+
+    /**
+     * Méthode privée ouvrant en écriture le fichier donné de la nouvelle génération, après
+     * l'avoir remplacé par une copie s'il s'agit encore d'un lien vers celui de l'ancienne
+     * génération, qui ne doit pas être modifié.
+     * @param graphDir Répertoire de l'ancienne génération.
+     * @param tempDir Répertoire de la nouvelle génération.
+     * @param file Nom du fichier.
+     * @return Le canal du fichier, ouvert en lecture et écriture.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static FileChannel writable(Path graphDir, Path tempDir, String file)
+            throws IOException {
+        Path source = graphDir.resolve(file), target = tempDir.resolve(file);
+        if (Files.isSameFile(source, target)) {
+            Files.delete(target);
+            Files.copy(source, target);
+        }
+        return FileChannel.open(target, READ, WRITE);
+    }
+
+    /**
+     * Méthode privée écrivant la permutation des index de la nouvelle génération triés par
+     * identité OSM puis par index, obtenue par fusion de celle de l'ancienne génération avec
+     * les index modifiés, orphelins (d'identité nulle), réutilisés ou ajoutés.
+     * @param path Chemin d'accès au fichier à écrire.
+     * @param oldSorted Permutation triée de l'ancienne génération.
+     * @param oldIds Identités OSM de l'ancienne génération, indexées par index.
+     * @param changed Nouvelles identités des index modifiés.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static void writeMerged(Path path, IntBuffer oldSorted, LongBuffer oldIds,
+                                    Map<Integer, Long> changed) throws IOException {
+        int[] changedIndices = changed.keySet().stream().mapToInt(Integer::intValue)
+                .sorted().toArray();
+        //Les index modifiés sont triés en mémoire, empaquetés avec leur identité comme dans
+        //GraphOsmIds ; leur nombre est proportionnel aux modifications.
+        long[] added = new long[changedIndices.length];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = changed.get(changedIndices[i]) << GraphBuilder.EDGE_ID_BITS
+                    | changedIndices[i];
+        }
+        Arrays.sort(added);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+            int a = 0;
+            for (int i = 0; i < oldSorted.capacity(); i++) {
+                int index = oldSorted.get(i);
+                if (Arrays.binarySearch(changedIndices, index) >= 0) continue;
+                long key = oldIds.get(index) << GraphBuilder.EDGE_ID_BITS | index;
+                while (a < added.length && added[a] < key)
+                    out.writeInt((int) (added[a++] & EDGE_ID_MASK));
+                out.writeInt(index);
+            }
+            while (a < added.length) out.writeInt((int) (added[a++] & EDGE_ID_MASK));
+        }
+    }
+
+    /**
+     * Méthode privée supprimant le répertoire donné et son contenu, s'il existe.
+     * @param dir Répertoire à supprimer.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList())
+                Files.deleteIfExists(path);
+        }
+    }
+}
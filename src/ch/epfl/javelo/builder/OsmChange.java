@@ -0,0 +1,151 @@
+package ch.epfl.javelo.builder;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * OsmChange
+ * <p>
+ * Enregistrement représentant le contenu d'un fichier de modifications OSM (.osc, éventuellement
+ * compressé en .osc.gz, https://wiki.openstreetmap.org/wiki/OsmChange) réduit à ce qui
+ * intéresse JaVelo : les nœuds et voies créés ou modifiés (dans leur nouvel état complet), et
+ * les identités des nœuds et voies supprimés. Lorsqu'un même élément apparaît plusieurs fois,
+ * seule sa dernière version est gardée.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public record OsmChange(Map<Long, Node> nodes, Set<Long> deletedNodes, Map<Long, Way> ways,
+                        Set<Long> deletedWays) {
+
+    /**
+     * Enregistrement représentant la nouvelle position d'un nœud.
+     * @param lon Longitude, en radians.
+     * @param lat Latitude, en radians.
+     */
+    public record Node(double lon, double lat) {}
+
+    /**
+     * Enregistrement représentant le nouvel état d'une voie.
+     * @param nodeIds Identités OSM de ses nœuds, dans l'ordre.
+     * @param tags Attributs (clé, valeur) de la voie.
+     */
+    public record Way(long[] nodeIds, Map<String, String> tags) {}
+
+    /**
+     * Retourne les modifications contenues dans le fichier donné.
+     * @param path Chemin d'accès au fichier .osc ou .osc.gz.
+     * @return Les modifications.
+     * @throws IOException En cas d'erreur d'entrée/sortie ou de fichier mal formé.
+     */
+    public static OsmChange readFrom(Path path) throws IOException {
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(path))) {
+            boolean compressed = path.toString().endsWith(".gz");
+            return readFrom(compressed ? new GZIPInputStream(stream) : stream);
+        }
+    }
+
+    /**
+     * Retourne les modifications contenues dans le flot XML donné.
+     * @param stream Flot contenant le document osmChange.
+     * @return Les modifications.
+     * @throws IOException En cas d'erreur d'entrée/sortie ou de document mal formé.
+     */
+    public static OsmChange readFrom(InputStream stream) throws IOException {
+        OsmChange change = new OsmChange(new HashMap<>(), new HashSet<>(), new HashMap<>(),
+                new HashSet<>());
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(stream);
+            boolean deleting = false;
+            long wayId = 0;
+            long[] wayNodes = null;
+            int wayNodeCount = 0;
+            Map<String, String> wayTags = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "create", "modify" -> deleting = false;
+                        case "delete" -> deleting = true;
+                        case "node" -> {
+                            long id = Long.parseLong(attribute(reader, "id"));
+                            if (deleting) {
+                                change.nodes.remove(id);
+                                change.deletedNodes.add(id);
+                            } else {
+                                change.deletedNodes.remove(id);
+                                double lon = Double.parseDouble(attribute(reader, "lon"));
+                                double lat = Double.parseDouble(attribute(reader, "lat"));
+                                change.nodes.put(id,
+                                        new Node(Math.toRadians(lon), Math.toRadians(lat)));
+                            }
+                        }
+                        case "way" -> {
+                            wayId = Long.parseLong(attribute(reader, "id"));
+                            wayNodes = new long[16];
+                            wayNodeCount = 0;
+                            wayTags = new HashMap<>();
+                        }
+                        case "nd" -> {
+                            if (wayNodes != null) {
+                                if (wayNodeCount == wayNodes.length)
+                                    wayNodes = Arrays.copyOf(wayNodes, 2 * wayNodeCount);
+                                wayNodes[wayNodeCount++] = Long.parseLong(attribute(reader, "ref"));
+                            }
+                        }
+                        case "tag" -> {
+                            if (wayTags != null)
+                                wayTags.put(attribute(reader, "k"), attribute(reader, "v"));
+                        }
+                        default -> {}
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT
+                        && reader.getLocalName().equals("way")) {
+                    if (deleting) {
+                        change.ways.remove(wayId);
+                        change.deletedWays.add(wayId);
+                    } else {
+                        change.deletedWays.remove(wayId);
+                        change.ways.put(wayId, new Way(
+                                Arrays.copyOf(wayNodes, wayNodeCount), wayTags));
+                    }
+                    wayNodes = null;
+                    wayTags = null;
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException(e);
+        }
+        return change;
+    }
+
+    /**
+     * Méthode privée retournant la valeur de l'attribut XML de nom donné, ou lève
+     * NumberFormatException s'il est absent.
+     * @param reader Lecteur positionné sur un élément.
+     * @param name Nom de l'attribut.
+     * @return Sa valeur.
+     */
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) throw new NumberFormatException("attribut manquant : " + name);
+        return value;
+    }
+}
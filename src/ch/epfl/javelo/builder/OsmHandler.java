@@ -0,0 +1,62 @@
+package ch.epfl.javelo.builder;
+
+import java.util.Map;
+
+/**
+ * OsmHandler
+ * <p>
+ * Interface représentant un récepteur des éléments OSM (nœuds et voies) lus par OsmPbfReader.
+ * Les blocs du fichier étant décodés en parallèle, ses méthodes peuvent être appelées depuis
+ * plusieurs fils d'exécution à la fois, et dans un ordre quelconque, à moins que le récepteur
+ * ne demande l'ordre du fichier (voir wantsFileOrder).
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public interface OsmHandler {
+
+    /**
+     * Retourne vrai si et seulement si le récepteur s'intéresse aux nœuds ; dans le cas
+     * contraire, leur décodage est évité.
+     * @return Vrai si et seulement si les nœuds doivent être transmis.
+     */
+    default boolean wantsNodes() {
+        return false;
+    }
+
+    /**
+     * Retourne vrai si et seulement si le récepteur s'intéresse aux voies ; dans le cas
+     * contraire, leur décodage est évité.
+     * @return Vrai si et seulement si les voies doivent être transmises.
+     */
+    default boolean wantsWays() {
+        return false;
+    }
+
+    /**
+     * Retourne vrai si et seulement si le récepteur veut recevoir les éléments dans l'ordre du
+     * fichier ; ils lui sont alors transmis par un seul fil d'exécution, les blocs restant
+     * décodés en parallèle.
+     * @return Vrai si et seulement si les éléments doivent être transmis dans l'ordre.
+     */
+    default boolean wantsFileOrder() {
+        return false;
+    }
+
+    /**
+     * Reçoit un nœud OSM.
+     * @param id Identité OSM du nœud.
+     * @param lon Longitude du nœud, en radians.
+     * @param lat Latitude du nœud, en radians.
+     */
+    default void node(long id, double lon, double lat) {}
+
+    /**
+     * Reçoit une voie OSM.
+     * @param id Identité OSM de la voie.
+     * @param nodeIds Identités OSM des nœuds de la voie, dans l'ordre.
+     * @param tags Attributs (clé, valeur) de la voie.
+     */
+    default void way(long id, long[] nodeIds, Map<String, String> tags) {}
+}
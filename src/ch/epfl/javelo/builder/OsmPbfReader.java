@@ -0,0 +1,489 @@
+package ch.epfl.javelo.builder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * OsmPbfReader
+ * <p>
+ * Classe représentant un lecteur de fichiers OSM au format PBF
+ * (https://wiki.openstreetmap.org/wiki/PBF_Format). Le fichier est lu séquentiellement, bloc
+ * par bloc ; chaque bloc est ensuite décompressé et décodé par un groupe de fils d'exécution. Le
+ * nombre de blocs en attente de décodage est borné, si bien que la mémoire utilisée ne dépend
+ * pas de la taille du fichier. Si le récepteur le demande, les éléments décodés de chaque bloc
+ * sont mis en attente puis transmis bloc après bloc, dans l'ordre du fichier, par le fil
+ * lisant celui-ci ; le résultat ne dépend alors plus de l'ordonnancement des fils.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public final class OsmPbfReader {
+
+    //Taille maximale (en octets) d'un en-tête et d'un bloc, fixées par le format.
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    //Fonctionnalités requises que ce lecteur sait traiter.
+    private static final Set<String> SUPPORTED_FEATURES = Set.of("OsmSchema-V0.6", "DenseNodes");
+
+    //Facteur de conversion des coordonnées, exprimées en nanodegrés.
+    private static final double NANO = 1e-9;
+
+    //Granularité par défaut des coordonnées (en nanodegrés).
+    private static final int DEFAULT_GRANULARITY = 100;
+
+    /**
+     * Constructeur privé, car cette classe n'est pas censée être instantiable.
+     */
+    private OsmPbfReader() {}
+
+    /**
+     * Lit le fichier PBF donné et transmet ses nœuds et voies au récepteur donné, en décodant
+     * les blocs avec le nombre de fils d'exécution donné.
+     * @param path Chemin d'accès au fichier PBF.
+     * @param threads Nombre de fils d'exécution utilisés pour le décodage.
+     * @param handler Récepteur des éléments.
+     * @throws IOException En cas d'erreur d'entrée/sortie ou de fichier mal formé.
+     */
+    public static void read(Path path, int threads, OsmHandler handler) throws IOException {
+        try (InputStream stream = Files.newInputStream(path)) {
+            read(stream, threads, handler);
+        }
+    }
+
+    /**
+     * Lit le flot PBF donné et transmet ses nœuds et voies au récepteur donné, en décodant les
+     * blocs avec le nombre de fils d'exécution donné.
+     * @param stream Flot contenant les données PBF.
+     * @param threads Nombre de fils d'exécution utilisés pour le décodage.
+     * @param handler Récepteur des éléments.
+     * @throws IOException En cas d'erreur d'entrée/sortie ou de fichier mal formé.
+     */
+    public static void read(InputStream stream, int threads, OsmHandler handler)
+            throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        //Au plus deux blocs en attente par fil d'exécution.
+        Semaphore inFlight = new Semaphore(2 * threads);
+        List<Future<?>> pending = new ArrayList<>();
+        //Blocs décodés ou en cours de décodage dont les éléments doivent être transmis dans
+        //l'ordre du fichier, du plus ancien au plus récent.
+        Deque<Future<ElementBuffer>> ordered = new ArrayDeque<>();
+        try {
+            int headerSize;
+            while ((headerSize = readHeaderSize(input)) >= 0) {
+                if (headerSize > MAX_HEADER_SIZE) throw new IOException("en-tête trop grand");
+                byte[] header = new byte[headerSize];
+                input.readFully(header);
+                String type = null;
+                int blobSize = 0;
+                ProtoReader headerReader = new ProtoReader(ByteBuffer.wrap(header));
+                while (headerReader.next()) {
+                    switch (headerReader.field()) {
+                        case 1 -> type = utf8(headerReader.bytes());
+                        case 3 -> blobSize = (int) headerReader.varint();
+                        default -> headerReader.skip();
+                    }
+                }
+                if (blobSize > MAX_BLOB_SIZE) throw new IOException("bloc trop grand");
+                byte[] blob = new byte[blobSize];
+                input.readFully(blob);
+
+                if ("OSMHeader".equals(type)) {
+                    checkHeader(inflate(blob));
+                } else if ("OSMData".equals(type) && handler.wantsFileOrder()) {
+                    //Tant qu'aucune autorisation n'est libre, le plus ancien bloc est attendu
+                    //et transmis, ce qui libère la sienne.
+                    while (!inFlight.tryAcquire()) deliver(ordered.remove(), handler, inFlight);
+                    ordered.add(executor.submit(() -> {
+                        ElementBuffer buffer = new ElementBuffer(handler);
+                        readBlock(inflate(blob), buffer);
+                        return buffer;
+                    }));
+                    while (!ordered.isEmpty() && ordered.peek().isDone())
+                        deliver(ordered.remove(), handler, inFlight);
+                } else if ("OSMData".equals(type)) {
+                    acquire(inFlight);
+                    pending.add(executor.submit(() -> {
+                        try {
+                            readBlock(inflate(blob), handler);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                    //Propage au plus tôt les erreurs des blocs déjà décodés.
+                    for (Iterator<Future<?>> it = pending.iterator(); it.hasNext(); ) {
+                        Future<?> future = it.next();
+                        if (future.isDone()) {
+                            join(future);
+                            it.remove();
+                        }
+                    }
+                }
+            }
+            for (Future<?> future : pending) join(future);
+            while (!ordered.isEmpty()) deliver(ordered.remove(), handler, inFlight);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Méthode privée lisant la taille de l'en-tête du bloc suivant, ou retournant -1 à la fin
+     * du flot.
+     * @param input Flot d'entrée.
+     * @return La taille de l'en-tête, ou -1.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    private static int readHeaderSize(DataInputStream input) throws IOException {
+        try {
+            return input.readInt();
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Méthode privée décompressant le bloc (message Blob) donné.
+     * @param blob Octets du bloc.
+     * @return Le contenu décompressé du bloc.
+     * @throws IOException Si le bloc utilise une compression non prise en charge ou est
+     * corrompu.
+     */
+    private static ByteBuffer inflate(byte[] blob) throws IOException {
+        ProtoReader reader = new ProtoReader(ByteBuffer.wrap(blob));
+        ByteBuffer raw = null, zlib = null;
+        int rawSize = 0;
+        while (reader.next()) {
+            switch (reader.field()) {
+                case 1 -> raw = reader.bytes();
+                case 2 -> rawSize = (int) reader.varint();
+                case 3 -> zlib = reader.bytes();
+                default -> throw new IOException("compression non prise en charge");
+            }
+        }
+        if (raw != null) return raw;
+        if (zlib == null || rawSize > MAX_BLOB_SIZE) throw new IOException("bloc invalide");
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            ByteBuffer output = ByteBuffer.allocate(rawSize);
+            while (output.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(output) == 0 && inflater.needsInput())
+                    throw new IOException("bloc tronqué");
+            }
+            return output.flip();
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Méthode privée vérifiant que toutes les fonctionnalités requises par l'en-tête du
+     * fichier (message HeaderBlock) sont prises en charge.
+     * @param header Contenu de l'en-tête.
+     * @throws IOException Si une fonctionnalité requise n'est pas prise en charge.
+     */
+    private static void checkHeader(ByteBuffer header) throws IOException {
+        ProtoReader reader = new ProtoReader(header);
+        while (reader.next()) {
+            if (reader.field() == 4) {
+                String feature = utf8(reader.bytes());
+                if (!SUPPORTED_FEATURES.contains(feature))
+                    throw new IOException("fonctionnalité non prise en charge : " + feature);
+            } else {
+                reader.skip();
+            }
+        }
+    }
+
+    /**
+     * Méthode privée décodant un bloc de données (message PrimitiveBlock) et transmettant ses
+     * éléments au récepteur. La granularité et les décalages pouvant suivre les groupes
+     * d'éléments, ceux-ci ne sont décodés qu'après la lecture complète du bloc.
+     * @param block Contenu du bloc.
+     * @param handler Récepteur des éléments.
+     */
+    private static void readBlock(ByteBuffer block, OsmHandler handler) {
+        ProtoReader reader = new ProtoReader(block);
+        List<ByteBuffer> strings = new ArrayList<>();
+        List<ByteBuffer> groups = new ArrayList<>();
+        long granularity = DEFAULT_GRANULARITY, latOffset = 0, lonOffset = 0;
+        while (reader.next()) {
+            switch (reader.field()) {
+                case 1 -> {
+                    ProtoReader table = new ProtoReader(reader.bytes());
+                    while (table.next()) {
+                        if (table.field() == 1) strings.add(table.bytes());
+                        else table.skip();
+                    }
+                }
+                case 2 -> groups.add(reader.bytes());
+                case 17 -> granularity = reader.varint();
+                case 19 -> latOffset = reader.varint();
+                case 20 -> lonOffset = reader.varint();
+                default -> reader.skip();
+            }
+        }
+        Block context = new Block(strings, granularity, latOffset, lonOffset, handler);
+        for (ByteBuffer group : groups) {
+            ProtoReader groupReader = new ProtoReader(group);
+            while (groupReader.next()) {
+                switch (groupReader.field()) {
+                    case 1 -> {
+                        if (handler.wantsNodes()) context.readNode(groupReader.bytes());
+                        else groupReader.skip();
+                    }
+                    case 2 -> {
+                        if (handler.wantsNodes()) context.readDenseNodes(groupReader.bytes());
+                        else groupReader.skip();
+                    }
+                    case 3 -> {
+                        if (handler.wantsWays()) context.readWay(groupReader.bytes());
+                        else groupReader.skip();
+                    }
+                    default -> groupReader.skip();
+                }
+            }
+        }
+    }
+
+    /**
+     * Enregistrement privé représentant le contexte de décodage d'un bloc : sa table de
+     * chaînes (décodées à la demande), sa granularité et ses décalages.
+     */
+    private record Block(List<ByteBuffer> strings, long granularity, long latOffset,
+                         long lonOffset, OsmHandler handler) {
+
+        /**
+         * Retourne la chaîne d'index donné de la table.
+         * @param index Index de la chaîne.
+         * @return La chaîne correspondante.
+         */
+        private String string(long index) {
+            return utf8(strings.get((int) index).duplicate());
+        }
+
+        /**
+         * Retourne l'angle (en radians) correspondant à la coordonnée donnée du bloc.
+         * @param offset Décalage du bloc.
+         * @param value Coordonnée, en unités de granularité.
+         * @return L'angle en radians.
+         */
+        private double angle(long offset, long value) {
+            return Math.toRadians(NANO * (offset + granularity * value));
+        }
+
+        /**
+         * Décode un nœud isolé (message Node).
+         * @param node Contenu du message.
+         */
+        private void readNode(ByteBuffer node) {
+            ProtoReader reader = new ProtoReader(node);
+            long id = 0, lat = 0, lon = 0;
+            while (reader.next()) {
+                switch (reader.field()) {
+                    case 1 -> id = reader.signedVarint();
+                    case 8 -> lat = reader.signedVarint();
+                    case 9 -> lon = reader.signedVarint();
+                    default -> reader.skip();
+                }
+            }
+            handler.node(id, angle(lonOffset, lon), angle(latOffset, lat));
+        }
+
+        /**
+         * Décode un groupe de nœuds denses (message DenseNodes), dont les identités et
+         * coordonnées sont codées par différences successives.
+         * @param dense Contenu du message.
+         */
+        private void readDenseNodes(ByteBuffer dense) {
+            ProtoReader reader = new ProtoReader(dense);
+            long[] ids = new long[0], lats = new long[0], lons = new long[0];
+            while (reader.next()) {
+                switch (reader.field()) {
+                    case 1 -> ids = reader.packedVarints(true);
+                    case 8 -> lats = reader.packedVarints(true);
+                    case 9 -> lons = reader.packedVarints(true);
+                    default -> reader.skip();
+                }
+            }
+            long id = 0, lat = 0, lon = 0;
+            for (int i = 0; i < ids.length; i++) {
+                id += ids[i];
+                lat += lats[i];
+                lon += lons[i];
+                handler.node(id, angle(lonOffset, lon), angle(latOffset, lat));
+            }
+        }
+
+        /**
+         * Décode une voie (message Way), dont les identités des nœuds sont codées par
+         * différences successives.
+         * @param way Contenu du message.
+         */
+        private void readWay(ByteBuffer way) {
+            ProtoReader reader = new ProtoReader(way);
+            long id = 0;
+            long[] keys = new long[0], values = new long[0], refs = new long[0];
+            while (reader.next()) {
+                switch (reader.field()) {
+                    case 1 -> id = reader.varint();
+                    case 2 -> keys = reader.packedVarints(false);
+                    case 3 -> values = reader.packedVarints(false);
+                    case 8 -> refs = reader.packedVarints(true);
+                    default -> reader.skip();
+                }
+            }
+            Map<String, String> tags = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) tags.put(string(keys[i]), string(values[i]));
+            for (int i = 1; i < refs.length; i++) refs[i] += refs[i - 1];
+            handler.way(id, refs, tags);
+        }
+    }
+
+    /**
+     * Méthode privée décodant la chaîne UTF-8 contenue dans le tampon donné.
+     * @param bytes Tampon contenant la chaîne.
+     * @return La chaîne décodée.
+     */
+    private static String utf8(ByteBuffer bytes) {
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+
+    /**
+     * Méthode privée acquérant une autorisation du sémaphore donné, en propageant une
+     * interruption sous forme d'IOException.
+     * @param semaphore Sémaphore.
+     * @throws IOException Si le fil d'exécution est interrompu.
+     */
+    private static void acquire(Semaphore semaphore) throws IOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Méthode privée attendant la fin du décodage du bloc donné, puis transmettant ses
+     * éléments au récepteur donné, dans leur ordre d'origine.
+     * @param future Décodage du bloc.
+     * @param handler Récepteur des éléments.
+     * @param inFlight Sémaphore des blocs en attente, dont l'autorisation du bloc est libérée.
+     * @throws IOException Si le décodage a échoué sur une erreur d'entrée/sortie ou a été
+     * interrompu.
+     */
+    private static void deliver(Future<ElementBuffer> future, OsmHandler handler,
+                                Semaphore inFlight) throws IOException {
+        ElementBuffer buffer;
+        try {
+            buffer = join(future);
+        } finally {
+            inFlight.release();
+        }
+        buffer.replayTo(handler);
+    }
+
+    /**
+     * Méthode privée attendant la fin de la tâche donnée et retournant son résultat, ou
+     * propageant son éventuelle erreur.
+     * @param future Tâche.
+     * @param <T> Type du résultat de la tâche.
+     * @return Le résultat de la tâche.
+     * @throws IOException Si la tâche a échoué sur une erreur d'entrée/sortie ou a été
+     * interrompue.
+     */
+    private static <T> T join(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException i) throw i;
+            if (e.getCause() instanceof UncheckedIOException u) throw u.getCause();
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Classe privée représentant un récepteur mettant en attente les éléments d'un bloc, afin
+     * qu'ils soient transmis plus tard au récepteur final, dans leur ordre d'origine.
+     */
+    private static final class ElementBuffer implements OsmHandler {
+
+        /**
+         * Attribut représentant le récepteur final, dont les préférences sont reprises.
+         */
+        private final OsmHandler handler;
+
+        /**
+         * Attribut représentant les éléments en attente, sous forme d'appels au récepteur.
+         */
+        private final List<Consumer<OsmHandler>> elements = new ArrayList<>();
+
+        private ElementBuffer(OsmHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean wantsNodes() {
+            return handler.wantsNodes();
+        }
+
+        @Override
+        public boolean wantsWays() {
+            return handler.wantsWays();
+        }
+
+        @Override
+        public void node(long id, double lon, double lat) {
+            elements.add(h -> h.node(id, lon, lat));
+        }
+
+        @Override
+        public void way(long id, long[] nodeIds, Map<String, String> tags) {
+            elements.add(h -> h.way(id, nodeIds, tags));
+        }
+
+        /**
+         * Transmet les éléments en attente au récepteur donné, dans leur ordre d'origine.
+         * @param target Récepteur.
+         */
+        private void replayTo(OsmHandler target) {
+            for (Consumer<OsmHandler> element : elements) element.accept(target);
+        }
+    }
+}
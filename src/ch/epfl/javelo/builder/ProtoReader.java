@@ -0,0 +1,139 @@
+package ch.epfl.javelo.builder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ProtoReader
+ * <p>
+ * Classe représentant un lecteur minimal de messages Protocol Buffers, suffisant pour décoder
+ * les blocs d'un fichier OSM PBF sans dépendre d'une bibliothèque externe. Le lecteur parcourt
+ * les champs d'un message les uns après les autres ; le contenu des champs de longueur variable
+ * (sous-messages, chaînes, tableaux compactés) est retourné sous forme de vues sur le même
+ * tableau d'octets, sans copie.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class ProtoReader {
+
+    //Constantes représentant les types de codage des champs (wire types).
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    //Nombre de bits réservés au type de codage dans l'étiquette d'un champ.
+    private static final int WIRE_TYPE_BITS = 3;
+
+    /**
+     * Attributs représentant le message en cours de lecture, ainsi que le numéro et le type de
+     * codage du dernier champ lu.
+     */
+    private final ByteBuffer buffer;
+    private int fieldNumber;
+    private int wireType;
+
+    /**
+     * Constructeur lisant le message contenu entre la position et la limite du tampon
+     * donné.
+     * @param buffer Tampon contenant le message.
+     */
+    ProtoReader(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+    }
+
+    /**
+     * Avance jusqu'au champ suivant et retourne vrai, ou retourne faux si le message est
+     * terminé.
+     * @return Vrai si et seulement si un nouveau champ a été lu.
+     */
+    boolean next() {
+        if (!buffer.hasRemaining()) return false;
+        long tag = varint();
+        fieldNumber = (int) (tag >>> WIRE_TYPE_BITS);
+        wireType = (int) (tag & ((1 << WIRE_TYPE_BITS) - 1));
+        return true;
+    }
+
+    /**
+     * Retourne le numéro du dernier champ lu.
+     * @return Le numéro du champ.
+     */
+    int field() {
+        return fieldNumber;
+    }
+
+    /**
+     * Retourne le type de codage du dernier champ lu.
+     * @return Le type de codage du champ.
+     */
+    int wireType() {
+        return wireType;
+    }
+
+    /**
+     * Lit et retourne un entier codé en varint.
+     * @return L'entier lu.
+     */
+    long varint() {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalStateException("varint trop long");
+    }
+
+    /**
+     * Lit et retourne un entier signé codé en zigzag (types sint32 et sint64).
+     * @return L'entier lu.
+     */
+    long signedVarint() {
+        long value = varint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Lit et retourne le contenu d'un champ de longueur variable, sous forme de vue sur le
+     * tampon du message.
+     * @return Le contenu du champ.
+     */
+    ByteBuffer bytes() {
+        int length = (int) varint();
+        ByteBuffer content = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return content;
+    }
+
+    /**
+     * Lit un tableau compacté d'entiers varint, ou une seule valeur si le champ n'est pas
+     * compacté, et le retourne.
+     * @param signed Vrai si les valeurs sont codées en zigzag.
+     * @return Le tableau des valeurs lues.
+     */
+    long[] packedVarints(boolean signed) {
+        if (wireType != LENGTH_DELIMITED) return new long[]{signed ? signedVarint() : varint()};
+        ProtoReader packed = new ProtoReader(bytes());
+        long[] values = new long[packed.buffer.remaining()];
+        int count = 0;
+        while (packed.buffer.hasRemaining())
+            values[count++] = signed ? packed.signedVarint() : packed.varint();
+        return Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Ignore le contenu du dernier champ lu.
+     */
+    void skip() {
+        switch (wireType) {
+            case VARINT -> varint();
+            case FIXED64 -> buffer.position(buffer.position() + Long.BYTES);
+            case LENGTH_DELIMITED -> bytes();
+            case FIXED32 -> buffer.position(buffer.position() + Integer.BYTES);
+            default -> throw new IllegalStateException("type de codage inconnu : " + wireType);
+        }
+    }
+}
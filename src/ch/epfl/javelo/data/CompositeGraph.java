@@ -0,0 +1,378 @@
+package ch.epfl.javelo.data;
+
+import ch.epfl.javelo.projection.PointCh;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * CompositeGraph
+ * <p>
+ * Classe représentant un graphe JaVelo obtenu en assemblant plusieurs répertoires de données
+ * (régions), sans reconstruire de graphe monolithique. Les nœuds frontières, présents dans
+ * plusieurs régions, sont identifiés grâce à leur identité OSM (fichier nodes_osmid.bin) et
+ * fusionnés en un seul nœud. Les régions ne sont chargées que lorsqu'une requête les touche.
+ * <p>
+ * L'espace d'identités est global : les nœuds (resp. arêtes) de la région r ont les identités
+ * nodeOffsets[r] + identité locale (resp. edgeOffsets[r] + identité locale).
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public final class CompositeGraph implements RoutingGraph {
+
+    //Constantes représentant la taille (en octets) d'un nœud, d'une arête et d'un secteur.
+    private static final int NODE_BYTES = 3 * Integer.BYTES;
+    private static final int EDGE_BYTES = Integer.BYTES + 3 * Short.BYTES;
+    private static final int SECTOR_BYTES = Integer.BYTES + Short.BYTES;
+
+    //Constante représentant le nombre total de secteurs.
+    private static final int SECTORS_COUNT = 128 * 128;
+
+    /**
+     * Attribut représentant les répertoires des différentes régions.
+     */
+    private final List<Path> basePaths;
+
+    /**
+     * Attribut représentant les graphes des régions, chargés paresseusement (null tant que la
+     * région n'a pas été touchée). Une région chargée est lue sans verrou, ce qui évite toute
+     * contention entre les fils de calcul d'itinéraire et de rendu.
+     */
+    private final AtomicReferenceArray<Graph> regions;
+
+    /**
+     * Attribut représentant les secteurs de chaque région, toujours chargés car ils permettent
+     * de savoir quelles régions sont concernées par une recherche.
+     */
+    private final GraphSectors[] sectors;
+
+    /**
+     * Attributs représentant la première identité globale des nœuds et des arêtes de chaque
+     * région (le dernier élément est le nombre total de nœuds, resp. d'arêtes).
+     */
+    private final int[] nodeOffsets;
+    private final int[] edgeOffsets;
+
+    /**
+     * Attribut représentant l'ensemble des nœuds (globaux) présents dans plusieurs régions.
+     */
+    private final BitSet borderNodes;
+
+    /**
+     * Attribut associant à chaque nœud frontière le groupe trié de toutes ses copies ; la
+     * première copie est le représentant canonique du nœud.
+     */
+    private final Map<Integer, int[]> twins;
+
+    /**
+     * Constructeur privé, les instances sont obtenues via loadFrom.
+     * @param basePaths Répertoires des régions.
+     * @param sectors Secteurs de chaque région.
+     * @param nodeOffsets Décalages des identités de nœuds.
+     * @param edgeOffsets Décalages des identités d'arêtes.
+     * @param twins Groupes de nœuds frontières.
+     */
+    private CompositeGraph(List<Path> basePaths, GraphSectors[] sectors, int[] nodeOffsets,
+                           int[] edgeOffsets, Map<Integer, int[]> twins) {
+        this.basePaths = List.copyOf(basePaths);
+        this.regions = new AtomicReferenceArray<>(basePaths.size());
+        this.sectors = sectors;
+        this.nodeOffsets = nodeOffsets;
+        this.edgeOffsets = edgeOffsets;
+        this.twins = Map.copyOf(twins);
+        this.borderNodes = new BitSet(nodeOffsets[nodeOffsets.length - 1]);
+        for (int nodeId : twins.keySet()) borderNodes.set(nodeId);
+    }
+
+    /**
+     * Retourne le graphe composite obtenu à partir des répertoires donnés. Seuls les fichiers
+     * sectors.bin, ainsi que les identités OSM des nœuds se trouvant dans des secteurs communs à
+     * plusieurs régions, sont lus à ce moment-là.
+     * @param basePaths Répertoires des régions, non vide.
+     * @return Le graphe composite obtenu à partir des répertoires donnés.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    public static CompositeGraph loadFrom(List<Path> basePaths) throws IOException {
+        if (basePaths.isEmpty()) throw new IllegalArgumentException();
+        int regionCount = basePaths.size();
+        GraphSectors[] sectors = new GraphSectors[regionCount];
+        int[] nodeOffsets = new int[regionCount + 1];
+        int[] edgeOffsets = new int[regionCount + 1];
+
+        //Taille de chaque région, obtenue sans projeter ses fichiers en mémoire.
+        for (int r = 0; r < regionCount; r++) {
+            Path basePath = basePaths.get(r);
+            sectors[r] = new GraphSectors(Graph.mappedBuffer(basePath.resolve("sectors.bin")));
+            nodeOffsets[r + 1] = nodeOffsets[r]
+                    + (int) (Files.size(basePath.resolve("nodes.bin")) / NODE_BYTES);
+            edgeOffsets[r + 1] = edgeOffsets[r]
+                    + (int) (Files.size(basePath.resolve("edges.bin")) / EDGE_BYTES);
+        }
+
+        //Deux copies d'un même nœud OSM ont la même position, donc le même secteur : il suffit
+        //de comparer les identités OSM des nœuds des secteurs non vides dans plusieurs régions.
+        LongBuffer[] osmIds = new LongBuffer[regionCount];
+        Map<Integer, int[]> twins = new HashMap<>();
+        Map<Long, List<Integer>> copiesInSector = new HashMap<>();
+        List<Integer> regionsInSector = new ArrayList<>();
+        for (int s = 0; s < SECTORS_COUNT; s++) {
+            regionsInSector.clear();
+            for (int r = 0; r < regionCount; r++) {
+                if (sectorNodeCount(sectors[r].buffer(), s) > 0) regionsInSector.add(r);
+            }
+            if (regionsInSector.size() < 2) continue;
+
+            copiesInSector.clear();
+            for (int r : regionsInSector) {
+                if (osmIds[r] == null) osmIds[r] = Graph.mappedBuffer(
+                        basePaths.get(r).resolve("nodes_osmid.bin")).asLongBuffer();
+                int startNode = sectors[r].buffer().getInt(s * SECTOR_BYTES);
+                int endNode = startNode + sectorNodeCount(sectors[r].buffer(), s);
+                for (int n = startNode; n < endNode; n++) {
+                    copiesInSector.computeIfAbsent(osmIds[r].get(n), k -> new ArrayList<>(2))
+                            .add(nodeOffsets[r] + n);
+                }
+            }
+            for (List<Integer> copies : copiesInSector.values()) {
+                if (copies.size() < 2) continue;
+                int[] group = copies.stream().mapToInt(Integer::intValue).sorted().toArray();
+                for (int nodeId : group) twins.put(nodeId, group);
+            }
+        }
+        return new CompositeGraph(basePaths, sectors, nodeOffsets, edgeOffsets, twins);
+    }
+
+    /**
+     * Méthode privée retournant le nombre de nœuds du secteur d'index donné.
+     * @param sectorsBuffer Contenu du fichier sectors.bin.
+     * @param sectorIndex Index du secteur.
+     * @return Le nombre de nœuds du secteur.
+     */
+    private static int sectorNodeCount(ByteBuffer sectorsBuffer, int sectorIndex) {
+        return Short.toUnsignedInt(sectorsBuffer.getShort(sectorIndex * SECTOR_BYTES
+                + Integer.BYTES));
+    }
+
+    /**
+     * Méthode privée retournant l'index de la région contenant l'identité globale donnée,
+     * c'est-à-dire le plus grand index r tel que offsets[r] <= id (les régions vides sont
+     * ainsi ignorées).
+     * @param offsets Décalages des identités (de nœuds ou d'arêtes).
+     * @param id Identité globale.
+     * @return L'index de la région.
+     */
+    private static int regionOf(int[] offsets, int id) {
+        int low = 0, high = offsets.length - 2;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (offsets[middle] <= id) low = middle;
+            else high = middle - 1;
+        }
+        return low;
+    }
+
+    /**
+     * Méthode privée retournant le graphe de la région d'index donné, en le chargeant si
+     * nécessaire. Le verrou n'est pris que tant que la région n'est pas chargée.
+     * @param regionIndex Index de la région.
+     * @return Le graphe de la région.
+     */
+    private Graph region(int regionIndex) {
+        Graph region = regions.get(regionIndex);
+        return region != null ? region : loadRegion(regionIndex);
+    }
+
+    /**
+     * Méthode privée chargeant le graphe de la région d'index donné, une seule fois même si
+     * plusieurs fils le demandent simultanément.
+     * @param regionIndex Index de la région.
+     * @return Le graphe de la région.
+     */
+    private synchronized Graph loadRegion(int regionIndex) {
+        Graph region = regions.get(regionIndex);
+        if (region == null) {
+            try {
+                region = Graph.loadFrom(basePaths.get(regionIndex));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            regions.set(regionIndex, region);
+        }
+        return region;
+    }
+
+    /**
+     * Retourne le nombre de régions assemblées.
+     * @return Le nombre de régions assemblées.
+     */
+    public int regionCount() {
+        return regions.length();
+    }
+
+    /**
+     * Retourne le nombre de régions effectivement chargées jusqu'à présent.
+     * @return Le nombre de régions chargées.
+     */
+    public int loadedRegionCount() {
+        int count = 0;
+        for (int r = 0; r < regions.length(); r++) {
+            if (regions.get(r) != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Retourne l'identité canonique du nœud donné, c'est-à-dire celle de sa première copie s'il
+     * s'agit d'un nœud frontière, et elle-même sinon.
+     * @param nodeId Identité globale du nœud.
+     * @return L'identité canonique du nœud.
+     */
+    public int canonicalNodeId(int nodeId) {
+        return borderNodes.get(nodeId) ? twins.get(nodeId)[0] : nodeId;
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeOffsets[nodeOffsets.length - 1];
+    }
+
+    @Override
+    public PointCh nodePoint(int nodeId) {
+        int r = regionOf(nodeOffsets, nodeId);
+        return region(r).nodePoint(nodeId - nodeOffsets[r]);
+    }
+
+    /**
+     * Retourne le nombre d'arêtes sortant du nœud d'identité donné ; pour un nœud frontière,
+     * les arêtes sortant de toutes ses copies sont comptées.
+     * @param nodeId Identité du nœud donné.
+     * @return Le nombre d'arêtes sortant du nœud d'identité donné.
+     */
+    @Override
+    public int nodeOutDegree(int nodeId) {
+        if (!borderNodes.get(nodeId)) return localOutDegree(nodeId);
+        int degree = 0;
+        for (int copy : twins.get(nodeId)) degree += localOutDegree(copy);
+        return degree;
+    }
+
+    @Override
+    public int nodeOutEdgeId(int nodeId, int edgeIndex) {
+        if (!borderNodes.get(nodeId)) return localOutEdgeId(nodeId, edgeIndex);
+        //Parcourt les copies jusqu'à celle possédant la edgeIndex-ième arête.
+        for (int copy : twins.get(nodeId)) {
+            int degree = localOutDegree(copy);
+            if (edgeIndex < degree) return localOutEdgeId(copy, edgeIndex);
+            edgeIndex -= degree;
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    /**
+     * Méthode privée retournant le nombre d'arêtes sortant du nœud donné dans sa seule région.
+     * @param nodeId Identité globale du nœud.
+     * @return Le nombre d'arêtes sortant du nœud dans sa région.
+     */
+    private int localOutDegree(int nodeId) {
+        int r = regionOf(nodeOffsets, nodeId);
+        return region(r).nodeOutDegree(nodeId - nodeOffsets[r]);
+    }
+
+    /**
+     * Méthode privée retournant l'identité globale de la edgeIndex-ième arête sortant du nœud
+     * donné dans sa seule région.
+     * @param nodeId Identité globale du nœud.
+     * @param edgeIndex Index de l'arête.
+     * @return L'identité globale de l'arête.
+     */
+    private int localOutEdgeId(int nodeId, int edgeIndex) {
+        int r = regionOf(nodeOffsets, nodeId);
+        return edgeOffsets[r] + region(r).nodeOutEdgeId(nodeId - nodeOffsets[r], edgeIndex);
+    }
+
+    /**
+     * Retourne l'identité du nœud le plus proche du point donné ; seules les régions ayant des
+     * nœuds dans la zone de recherche sont chargées. L'identité retournée est canonique.
+     * @param point          Point donné.
+     * @param searchDistance Distance maximale de recherche donnée.
+     * @return L'identité du nœud le plus proche, ou -1 si aucun nœud ne correspond.
+     */
+    @Override
+    public int nodeClosestTo(PointCh point, double searchDistance) {
+        int nodeId = -1;
+        double min = Double.POSITIVE_INFINITY;
+        for (int r = 0; r < regions.length(); r++) {
+            boolean touched = false;
+            for (GraphSectors.Sector sector : sectors[r].sectorsInArea(point, searchDistance)) {
+                if (sector.startNodeId() < sector.endNodeId()) {
+                    touched = true;
+                    break;
+                }
+            }
+            if (!touched) continue;
+
+            int localId = region(r).nodeClosestTo(point, searchDistance);
+            if (localId == -1) continue;
+            double squaredDistance = point.squaredDistanceTo(region(r).nodePoint(localId));
+            if (squaredDistance < min) {
+                min = squaredDistance;
+                nodeId = nodeOffsets[r] + localId;
+            }
+        }
+        return nodeId == -1 ? -1 : canonicalNodeId(nodeId);
+    }
+
+    /**
+     * Retourne l'identité (canonique) du nœud destination de l'arête d'identité donnée.
+     * @param edgeId Identité de l'arête donnée.
+     * @return L'identité du nœud destination de l'arête d'identité donnée.
+     */
+    @Override
+    public int edgeTargetNodeId(int edgeId) {
+        int r = regionOf(edgeOffsets, edgeId);
+        return canonicalNodeId(nodeOffsets[r] + region(r).edgeTargetNodeId(edgeId - edgeOffsets[r]));
+    }
+
+    @Override
+    public boolean edgeIsInverted(int edgeId) {
+        int r = regionOf(edgeOffsets, edgeId);
+        return region(r).edgeIsInverted(edgeId - edgeOffsets[r]);
+    }
+
+    @Override
+    public AttributeSet edgeAttributes(int edgeId) {
+        int r = regionOf(edgeOffsets, edgeId);
+        return region(r).edgeAttributes(edgeId - edgeOffsets[r]);
+    }
+
+    @Override
+    public double edgeLength(int edgeId) {
+        int r = regionOf(edgeOffsets, edgeId);
+        return region(r).edgeLength(edgeId - edgeOffsets[r]);
+    }
+
+    @Override
+    public double edgeElevationGain(int edgeId) {
+        int r = regionOf(edgeOffsets, edgeId);
+        return region(r).edgeElevationGain(edgeId - edgeOffsets[r]);
+    }
+
+    @Override
+    public DoubleUnaryOperator edgeProfile(int edgeId) {
+        int r = regionOf(edgeOffsets, edgeId);
+        return region(r).edgeProfile(edgeId - edgeOffsets[r]);
+    }
+}
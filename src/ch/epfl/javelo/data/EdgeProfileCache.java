@@ -0,0 +1,298 @@
+package ch.epfl.javelo.data;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * EdgeProfileCache
+ * <p>
+ * Classe représentant un cache des profils décodés des arêtes, indexé par identité d'arête et
+ * borné en nombre total d'échantillons. Le cache est découpé en bandes indépendantes, chacune
+ * protégée par son propre verrou et gérant son éviction selon l'algorithme CLOCK (seconde
+ * chance) : une entrée lue depuis le dernier passage de l'aiguille est épargnée une fois.
+ * Consulter le cache n'alloue aucun objet, les identités d'arêtes n'étant jamais emballées.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class EdgeProfileCache {
+
+    /**
+     * Attribut représentant les bandes du cache.
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * Constructeur initialisant un cache pouvant contenir au plus le nombre d'échantillons
+     * donné, réparti en le nombre de bandes donné ; lève IllegalArgumentException si le nombre
+     * d'échantillons est négatif, ou si le nombre de bandes n'est pas une puissance de deux.
+     * @param maxSamples Nombre maximal total d'échantillons gardés en cache.
+     * @param stripeCount Nombre de bandes, puissance de deux.
+     */
+    EdgeProfileCache(long maxSamples, int stripeCount) {
+        Preconditions.checkArgument(maxSamples >= 0 && stripeCount > 0
+                && Integer.bitCount(stripeCount) == 1);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe((int) Math.min(maxSamples / stripeCount, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Retourne le profil de l'arête d'identité donnée s'il est en cache, ou null sinon.
+     * @param edgeId Identité de l'arête.
+     * @return Le profil en cache, ou null.
+     */
+    DoubleUnaryOperator get(int edgeId) {
+        return stripeOf(edgeId).get(edgeId);
+    }
+
+    /**
+     * Ajoute au cache le profil de l'arête d'identité donnée, en évinçant au besoin d'autres
+     * profils ; un profil trop grand pour sa bande n'est pas gardé.
+     * @param edgeId Identité de l'arête.
+     * @param profile Profil décodé de l'arête.
+     * @param sampleCount Nombre d'échantillons du profil.
+     */
+    void put(int edgeId, DoubleUnaryOperator profile, int sampleCount) {
+        stripeOf(edgeId).put(edgeId, profile, sampleCount);
+    }
+
+    /**
+     * Retourne le nombre total d'échantillons actuellement en cache.
+     * @return Le nombre total d'échantillons en cache.
+     */
+    long cachedSamples() {
+        long total = 0;
+        for (Stripe stripe : stripes) total += stripe.usedSamples();
+        return total;
+    }
+
+    /**
+     * Méthode privée retournant la bande de l'arête d'identité donnée ; les identités sont
+     * mélangées afin que les arêtes voisines, souvent consultées ensemble, soient réparties sur
+     * des bandes différentes.
+     * @param edgeId Identité de l'arête.
+     * @return Sa bande.
+     */
+    private Stripe stripeOf(int edgeId) {
+        int hash = edgeId * 0x9E3779B9;
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Classe privée représentant une bande du cache. Les entrées occupent les cases
+     * [0, count) de tableaux parallèles, l'aiguille de l'algorithme CLOCK les parcourant
+     * circulairement.
+     */
+    private static final class Stripe {
+
+        /**
+         * Attribut représentant le nombre maximal d'échantillons de la bande.
+         */
+        private final int maxSamples;
+
+        /**
+         * Attribut associant à chaque identité d'arête en cache sa case.
+         */
+        private final SlotTable slots = new SlotTable();
+
+        /**
+         * Attributs représentant le contenu des cases.
+         */
+        private int[] edgeIds = new int[16];
+        private DoubleUnaryOperator[] profiles = new DoubleUnaryOperator[16];
+        private int[] sampleCounts = new int[16];
+        private boolean[] referenced = new boolean[16];
+
+        /**
+         * Attributs représentant le nombre de cases occupées, la position de l'aiguille et le
+         * nombre d'échantillons en cache.
+         */
+        private int count;
+        private int hand;
+        private int usedSamples;
+
+        Stripe(int maxSamples) {
+            this.maxSamples = maxSamples;
+        }
+
+        synchronized DoubleUnaryOperator get(int edgeId) {
+            int slot = slots.get(edgeId);
+            if (slot < 0) return null;
+            referenced[slot] = true;
+            return profiles[slot];
+        }
+
+        synchronized void put(int edgeId, DoubleUnaryOperator profile, int sampleCount) {
+            if (sampleCount > maxSamples || slots.get(edgeId) >= 0) return;
+            while (usedSamples + sampleCount > maxSamples) evict();
+            if (count == edgeIds.length) {
+                edgeIds = Arrays.copyOf(edgeIds, 2 * count);
+                profiles = Arrays.copyOf(profiles, 2 * count);
+                sampleCounts = Arrays.copyOf(sampleCounts, 2 * count);
+                referenced = Arrays.copyOf(referenced, 2 * count);
+            }
+            edgeIds[count] = edgeId;
+            profiles[count] = profile;
+            sampleCounts[count] = sampleCount;
+            referenced[count] = false;
+            slots.put(edgeId, count);
+            count++;
+            usedSamples += sampleCount;
+        }
+
+        synchronized int usedSamples() {
+            return usedSamples;
+        }
+
+        /**
+         * Méthode privée évinçant la première entrée non référencée rencontrée par l'aiguille,
+         * en effaçant au passage la marque des entrées référencées.
+         */
+        private void evict() {
+            while (true) {
+                if (hand >= count) hand = 0;
+                if (!referenced[hand]) break;
+                referenced[hand] = false;
+                hand++;
+            }
+            //La dernière case prend la place de l'entrée évincée.
+            slots.remove(edgeIds[hand]);
+            usedSamples -= sampleCounts[hand];
+            int last = --count;
+            if (hand != last) {
+                edgeIds[hand] = edgeIds[last];
+                profiles[hand] = profiles[last];
+                sampleCounts[hand] = sampleCounts[last];
+                referenced[hand] = referenced[last];
+                slots.put(edgeIds[hand], hand);
+            }
+            profiles[last] = null;
+        }
+    }
+
+    /**
+     * Classe privée représentant une table associant des identités d'arêtes, positives ou
+     * nulles, à des cases, par adressage ouvert et sondage linéaire dans des tableaux d'entiers.
+     * La table est agrandie dès qu'elle est à moitié pleine, et une suppression décale les
+     * entrées suivantes plutôt que de laisser une marque, afin que les recherches restent
+     * courtes.
+     */
+    private static final class SlotTable {
+
+        //Constante représentant une case vide de la table.
+        private static final int EMPTY = -1;
+
+        //Constante représentant la capacité initiale de la table.
+        private static final int INITIAL_CAPACITY = 32;
+
+        /**
+         * Attributs représentant les clés et valeurs de la table, de capacité puissance de deux.
+         */
+        private int[] keys = emptyKeys(INITIAL_CAPACITY);
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        /**
+         * Attributs représentant le nombre d'entrées et le décalage donnant la position d'une
+         * clé à partir de son hachage.
+         */
+        private int size;
+        private int shift = Integer.SIZE - Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+
+        /**
+         * Retourne la valeur associée à la clé donnée, ou -1 si elle n'est pas dans la table.
+         * @param key Clé, positive ou nulle.
+         * @return La valeur associée, ou -1.
+         */
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int i = home(key); keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+            }
+            return -1;
+        }
+
+        /**
+         * Associe la valeur donnée à la clé donnée, en remplaçant l'éventuelle valeur
+         * précédente.
+         * @param key Clé, positive ou nulle.
+         * @param value Valeur.
+         */
+        void put(int key, int value) {
+            int mask = keys.length - 1;
+            int i = home(key);
+            while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                size++;
+            }
+            values[i] = value;
+            if (2 * size > keys.length) resize();
+        }
+
+        /**
+         * Retire la clé donnée de la table ; ne fait rien si elle n'y est pas.
+         * @param key Clé, positive ou nulle.
+         */
+        void remove(int key) {
+            int mask = keys.length - 1;
+            int i = home(key);
+            while (keys[i] != key) {
+                if (keys[i] == EMPTY) return;
+                i = (i + 1) & mask;
+            }
+            size--;
+            //Décale vers la case libérée les entrées suivantes qui ne sont pas à leur position
+            //d'origine, jusqu'à la prochaine case vide.
+            for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+                int h = home(keys[j]);
+                boolean reachable = i <= j ? (i < h && h <= j) : (i < h || h <= j);
+                if (reachable) continue;
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+            keys[i] = EMPTY;
+        }
+
+        /**
+         * Méthode privée retournant la position d'origine de la clé donnée.
+         * @param key Clé.
+         * @return Sa position d'origine.
+         */
+        private int home(int key) {
+            //Hachage multiplicatif, dont les bits de poids fort diffèrent de ceux utilisés
+            //pour choisir la bande.
+            return (key * 0x85EBCA6B) >>> shift;
+        }
+
+        /**
+         * Méthode privée doublant la capacité de la table.
+         */
+        private void resize() {
+            int[] oldKeys = keys, oldValues = values;
+            keys = emptyKeys(2 * oldKeys.length);
+            values = new int[2 * oldKeys.length];
+            shift--;
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        /**
+         * Méthode privée retournant un tableau de clés vides de la capacité donnée.
+         * @param capacity Capacité.
+         * @return Le tableau de clés vides.
+         */
+        private static int[] emptyKeys(int capacity) {
+            int[] keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+}
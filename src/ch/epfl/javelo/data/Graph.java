@@ -20,13 +20,24 @@ import java.util.function.DoubleUnaryOperator;
  * Graph
  * <p>
  * Classe offrant une méthode statique permettant de charger le graphe depuis
- * un répertoire.
+ * un répertoire. Implémente RoutingGraph.
  *
  * @author Jean Nordmann (344692)
  * @author Maxime Ducourau (329544)
  */
 
-public final class Graph {
+public final class Graph implements RoutingGraph {
+
+    /**
+     * Nombre maximal d'échantillons de profils gardés en cache par défaut (16 Mo de float).
+     */
+    public static final int DEFAULT_PROFILE_CACHE_SAMPLES = 1 << 22;
+
+    //Nombre de bandes du cache de profils.
+    private static final int PROFILE_CACHE_STRIPES = 16;
+
+    //Profil des arêtes qui n'en possèdent pas.
+    private static final DoubleUnaryOperator NO_PROFILE = Functions.constant(Double.NaN);
 
     /**
      * Attribut représentant les nœuds du graphe.
@@ -48,9 +59,14 @@ public final class Graph {
      */
     private final List<AttributeSet> attributeSets;
 
+    /**
+     * Attribut représentant le cache des profils décodés des arêtes.
+     */
+    private final EdgeProfileCache profileCache;
+
     /**
      * Constructeur public initialisant les attributs de la classe à leurs valeurs passées en
-     * paramètres.
+     * paramètres, avec un cache de profils de taille par défaut.
      * @param nodes Nœuds donnés.
      * @param sectors Secteurs donnés.
      * @param edges Arêtes données.
@@ -58,15 +74,30 @@ public final class Graph {
      */
     public Graph(GraphNodes nodes, GraphSectors sectors, GraphEdges edges,
                  List<AttributeSet> attributeSets) {
+        this(nodes, sectors, edges, attributeSets, DEFAULT_PROFILE_CACHE_SAMPLES);
+    }
+
+    /**
+     * Constructeur public initialisant les attributs de la classe à leurs valeurs passées en
+     * paramètres, avec un cache de profils pouvant contenir au plus le nombre d'échantillons
+     * donné (0 le désactive).
+     * @param nodes Nœuds donnés.
+     * @param sectors Secteurs donnés.
+     * @param edges Arêtes données.
+     * @param attributeSets Ensemble d'attributs donnés.
+     * @param profileCacheSamples Nombre maximal d'échantillons de profils gardés en cache.
+     */
+    public Graph(GraphNodes nodes, GraphSectors sectors, GraphEdges edges,
+                 List<AttributeSet> attributeSets, long profileCacheSamples) {
         this.nodes = nodes;
         this.sectors = sectors;
         this.edges = edges;
         this.attributeSets = List.copyOf(attributeSets);
-
+        this.profileCache = new EdgeProfileCache(profileCacheSamples, PROFILE_CACHE_STRIPES);
     }
 
     /**
-     * Méthode privée pour éviter la répétition de code.
+     * Méthode pour éviter la répétition de code (aussi utilisée par CompositeGraph).
      * Elle permet de lire un fichier bin et de le retourner en ByteBuffer.
      * ATTENTION à ensuite "recast" en Buffer du type voulu (int/short...)
      *
@@ -75,7 +106,7 @@ public final class Graph {
      * @throws IOException En cas d'erreur d'entrée/sortie.
      */
 
-    private static ByteBuffer mappedBuffer(Path basePath) throws IOException {
+    static ByteBuffer mappedBuffer(Path basePath) throws IOException {
         try (FileChannel channel = FileChannel.open(basePath)) {
             return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
         }
@@ -125,6 +156,7 @@ public final class Graph {
      * @return Le nombre total de nœuds dans le graphe.
      */
 
+    @Override
     public int nodeCount() {
         return nodes.count();
     }
@@ -135,6 +167,7 @@ public final class Graph {
      * @return La position géographique du nœud donné.
      */
 
+    @Override
     public PointCh nodePoint(int nodeId) {
         return new PointCh(nodes.nodeE(nodeId), nodes.nodeN(nodeId));
     }
@@ -145,6 +178,7 @@ public final class Graph {
      * @return Retourne le nombre d'arêtes sortant du nœud d'identité donné.
      */
 
+    @Override
     public int nodeOutDegree(int nodeId) {
         return nodes.outDegree(nodeId);
     }
@@ -158,6 +192,7 @@ public final class Graph {
      * d'identité donné.
      */
 
+    @Override
     public int nodeOutEdgeId(int nodeId, int edgeIndex) {
         return nodes.edgeId(nodeId, edgeIndex);
     }
@@ -173,6 +208,7 @@ public final class Graph {
      * correspond à ces critères.
      */
 
+    @Override
     public int nodeClosestTo(PointCh point, double searchDistance) {
         List<GraphSectors.Sector> sectorList = sectors.sectorsInArea(point, searchDistance);
         double min = searchDistance * searchDistance;
@@ -193,12 +229,26 @@ public final class Graph {
         return nodeId;
     }
 
+    /**
+     * Retourne la liste des secteurs ayant une intersection avec le carré centré au point donné
+     * et de côté égal au double de la distance donnée ; les nœuds de ces secteurs, et les
+     * arêtes qui en partent, sont ainsi obtenus sans parcourir tout le graphe.
+     * @param center Centre du carré.
+     * @param distance Demi-côté du carré (en mètres).
+     * @return La liste des secteurs ayant une intersection avec le carré.
+     */
+
+    public List<GraphSectors.Sector> sectorsInArea(PointCh center, double distance) {
+        return sectors.sectorsInArea(center, distance);
+    }
+
     /**
      * Retourne l'identité du nœud destination de l'arête d'identité donnée.
      * @param edgeId Identité de l'arête donnée.
      * @return Retourne l'identité du nœud destination de l'arête d'identité donnée.
      */
 
+    @Override
     public int edgeTargetNodeId(int edgeId) {
         return edges.targetNodeId(edgeId);
     }
@@ -211,6 +261,7 @@ public final class Graph {
      * sens contraire de la voie OSM dont elle provient.
      */
 
+    @Override
     public boolean edgeIsInverted(int edgeId) {
         return edges.isInverted(edgeId);
     }
@@ -221,6 +272,7 @@ public final class Graph {
      * @return Retourne l'ensemble des attributs OSM attachés à l'arête d'identité donnée.
      */
 
+    @Override
     public AttributeSet edgeAttributes(int edgeId) {
         return attributeSets.get(edges.attributesIndex(edgeId));
     }
@@ -231,6 +283,7 @@ public final class Graph {
      * @return La longueur de l'arête d'identité donnée.
      */
 
+    @Override
     public double edgeLength(int edgeId) {
         return edges.length(edgeId);
     }
@@ -241,6 +294,7 @@ public final class Graph {
      * @return Retourne le dénivelé positif total de l'arête donnée.
      */
 
+    @Override
     public double edgeElevationGain(int edgeId) {
         return edges.elevationGain(edgeId);
     }
@@ -255,8 +309,16 @@ public final class Graph {
      * retourner Double.NaN pour n'importe quel argument.
      */
 
+    @Override
     public DoubleUnaryOperator edgeProfile(int edgeId) {
-        return edges.hasProfile(edgeId) ? Functions.sampled(edges.profileSamples(edgeId),
-                edgeLength(edgeId)) : Functions.constant(Double.NaN);
+        if (!edges.hasProfile(edgeId)) return NO_PROFILE;
+        //Les profils décodés sont immuables, et peuvent donc être partagés via le cache.
+        DoubleUnaryOperator profile = profileCache.get(edgeId);
+        if (profile == null) {
+            float[] samples = edges.profileSamples(edgeId);
+            profile = Functions.sampled(samples, edgeLength(edgeId));
+            profileCache.put(edgeId, profile, samples.length);
+        }
+        return profile;
     }
 }
@@ -7,6 +7,7 @@ import ch.epfl.javelo.Q28_4;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
+import java.util.Objects;
 
 import static java.lang.Math.scalb;
 
@@ -95,6 +96,21 @@ public record GraphEdges(ByteBuffer edgesBuffer, IntBuffer profileIds, ShortBuff
         return profilByte != 0;
     }
 
+    /**
+     * Retourne le nombre d'échantillons du profil de l'arête d'identité donnée, qui est nul si
+     * l'arête ne possède pas de profil.
+     * @param edgeId Identité de l'arête donnée.
+     * @return Retourne le nombre d'échantillons du profil de l'arête d'identité donnée.
+     */
+
+    public int sampleCount(int edgeId) {
+        if (!hasProfile(edgeId)) return 0;
+        //Calcule le nombre d'échantillons en fonction de la formule donnée.
+        int lengthQ4 = Short.toUnsignedInt(edgesBuffer.getShort(
+                edgeId * EDGE_INTS + OFFSET_EDGE_LENGTH));
+        return 1 + Math2.ceilDiv(lengthQ4, Q28_4.ofInt(2));
+    }
+
     /**
      * Retourne le tableau des échantillons du profil de l'arête d'identité donnée,
      * qui est vide si l'arête ne possède pas de profil.
@@ -104,104 +120,69 @@ public record GraphEdges(ByteBuffer edgesBuffer, IntBuffer profileIds, ShortBuff
      */
 
     public float[] profileSamples(int edgeId) {
-        if (!hasProfile(edgeId)) return new float[]{};
-        //Calcule le nombre d'échantillons en fonction de la formule donnée.
-        int numberSamples = 1 + Math2.ceilDiv((int) (scalb(length(edgeId), 4)), Q28_4.ofInt(2));
-        float[] toReturn = new float[numberSamples];
-        int firstAltiId = Bits.extractUnsigned(profileIds.get(edgeId), 0, 30);
-        //Récupère le type de profil (les deux bits de poids fort).
-        byte profilType = (byte) Bits.extractUnsigned(profileIds.get(edgeId), 30, 2);
-
-        //Traite les différents types de profil.
-        switch (profilType) {
-            case (byte) 1:
-                for (int i = 0; i < numberSamples; i++) {
-                    toReturn[i] = asFloat16(Short.toUnsignedInt(elevations.get(firstAltiId + i)));
-                }
-                break;
-
-            case (byte) 2:
-                samplesForType2Profile(numberSamples, toReturn, firstAltiId);
-                break;
-
-            case (byte) 3:
-                samplesForType3Profile(numberSamples, toReturn, firstAltiId);
-        }
-        //Inverse le tableau si l'arête est inversée.
-        if (isInverted(edgeId)) {
-            for (int i = 0; i < Math2.ceilDiv(numberSamples,2); i++) {
-                float tempFloatToSwap = toReturn[i];
-                toReturn[i] = toReturn[numberSamples - 1 - i];
-                toReturn[numberSamples - 1 - i] = tempFloatToSwap;
-            }
-        }
+        float[] toReturn = new float[sampleCount(edgeId)];
+        profileSamples(edgeId, toReturn);
         return toReturn;
     }
 
     /**
-     * Méthode privée extrayant le profil d'une arête avec un profil de type 2, et le mettant
-     * dans un tableau passé en paramètre.
-     * @param numberSamples Nombre d'échantillons du profil.
-     * @param toReturn Tableau dans lequel les valeurs du profil de l'arête sont mises.
-     * @param firstAltiId Identité de la première altitude donnée.
-     */
-    private void samplesForType2Profile(int numberSamples, float[] toReturn, int firstAltiId) {
-        int shortsToRead2 = numberSamples / OFFSET_CASE_2;
-        toReturn[0] = asFloat16(Short.toUnsignedInt(elevations.get(firstAltiId)));
-        for (int i = 1; i <= shortsToRead2; i++) {
-            //Première altitude.
-            int extractShort = Short.toUnsignedInt(elevations.get(firstAltiId + i));
-
-            float firstShift = asFloat16(Bits.extractSigned(extractShort, 8, 8));
-            toReturn[OFFSET_CASE_2 * i - 1] = toReturn[OFFSET_CASE_2 * (i - 1)]
-                    + firstShift;
-
-            //Pour éviter OutOfBoundException si les 8 derniers bits du short sont inutiles.
-            if (numberSamples - 1 < OFFSET_CASE_2 * i) break;
-
-            //Remplit les valeurs en fonction de la précédente, et du shift.
-            float secondShift = asFloat16(Bits.extractSigned(extractShort, 0, 8));
-            toReturn[OFFSET_CASE_2 * i] = toReturn[OFFSET_CASE_2 * i - 1] + secondShift;
-        }
-    }
-
-    /**
-     * Méthode privée extrayant le profil d'une arête avec un profil de type 3, et le mettant
-     * dans un tableau passé en paramètre.
-     * @param numberSamples Nombre d'échantillons du profil.
-     * @param toReturn Tableau dans lequel les valeurs du profil de l'arête sont mises.
-     * @param firstAltiId Identité de la première altitude donnée.
+     * Décode les échantillons du profil de l'arête d'identité donnée, dans le sens de l'arête,
+     * au début du tableau donné, et retourne leur nombre (nul si l'arête ne possède pas de
+     * profil) ; lève IndexOutOfBoundsException si le tableau est trop petit.
+     * <p>
+     * Les différences compressées sont accumulées en entiers Q12.4, exactement comme le ferait
+     * une addition de float, et chaque échantillon est écrit directement à sa place, ce qui
+     * évite de retourner le tableau des arêtes inversées.
+     * @param edgeId Identité de l'arête donnée.
+     * @param samples Tableau dans lequel les échantillons sont écrits.
+     * @return Le nombre d'échantillons écrits.
      */
-    private void samplesForType3Profile(int numberSamples, float[] toReturn, int firstAltiId) {
-        //Nombre de shorts à lire après le premier short, sachant qu'un short contient
-        //4 nibble.
-        int shortsToRead4 = (numberSamples + 2) / OFFSET_CASE_3;
-        toReturn[0] = asFloat16(Short.toUnsignedInt(elevations.get(firstAltiId)));
-        for (int i = 1; i <= shortsToRead4; i++) {
-            int extractShort = Short.toUnsignedInt(elevations.get(firstAltiId + i));
 
-            float firstShift = asFloat8(Bits.extractSigned(extractShort, 12, 4));
-            toReturn[OFFSET_CASE_3 * i - 3] = toReturn[OFFSET_CASE_3 * i - 4] + firstShift;
-
-            //Pour éviter OutOfBoundException si les 8 derniers bits du short sont inutiles
-            if (numberSamples + 1 < OFFSET_CASE_3 * i) break;
-
-            float secondShift = asFloat8(Bits.extractSigned(extractShort, 8, 4));
-            toReturn[OFFSET_CASE_3 * i - 2] = toReturn[OFFSET_CASE_3 * i - 3] + secondShift;
-
-            //Pour éviter OutOfBoundException si les 8 derniers bits du short sont inutiles
-            if (numberSamples < OFFSET_CASE_3 * i) break;
-
-            float thirdShift = asFloat8(Bits.extractSigned(extractShort, 4, 4));
-            toReturn[OFFSET_CASE_3 * i - 1] = toReturn[OFFSET_CASE_3 * i - 2] + thirdShift;
-
-            //Pour éviter OutOfBoundException si les 8 derniers bits du short sont inutiles
-            if (numberSamples - 1 < OFFSET_CASE_3 * i) break;
+    public int profileSamples(int edgeId, float[] samples) {
+        int count = sampleCount(edgeId);
+        if (count == 0) return 0;
+        Objects.checkIndex(count - 1, samples.length);
+        int firstAltiId = Bits.extractUnsigned(profileIds.get(edgeId), 0, 30);
+        //Récupère le type de profil (les deux bits de poids fort).
+        int profilType = profileIds.get(edgeId) >>> 30;
+        //Position et pas d'écriture, en fonction du sens de l'arête.
+        int step = isInverted(edgeId) ? -1 : 1;
+        int position = step > 0 ? 0 : count - 1;
+
+        if (profilType == 1) {
+            for (int i = 0; i < count; i++, position += step) {
+                samples[position] =
+                        asFloat16(Short.toUnsignedInt(elevations.get(firstAltiId + i)));
+            }
+            return count;
+        }
 
-            //Ajoute les valeurs en fonction du shift et de la valeur précédente.
-            float fourthShift = asFloat8(Bits.extractSigned(extractShort, 0, 4));
-            toReturn[OFFSET_CASE_3 * i] = toReturn[OFFSET_CASE_3 * i - 1] + fourthShift;
+        int q12_4 = Short.toUnsignedInt(elevations.get(firstAltiId));
+        samples[position] = asFloat16(q12_4);
+        //Nombre de différences par short, et nombre de shorts entièrement utilisés.
+        int deltasPerShort = profilType == 2 ? OFFSET_CASE_2 : OFFSET_CASE_3;
+        int deltaBits = Short.SIZE / deltasPerShort;
+        int fullShorts = (count - 1) / deltasPerShort;
+        int index = firstAltiId + 1;
+        for (int i = 0; i < fullShorts; i++) {
+            //Le short, étendu à 32 bits, est décalé de sorte que chaque différence occupe à
+            //son tour les bits de poids fort, puis extraite par décalage arithmétique.
+            int packed = elevations.get(index++) << Short.SIZE;
+            for (int shift = 0; shift < Short.SIZE; shift += deltaBits) {
+                q12_4 += (packed << shift) >> (Integer.SIZE - deltaBits);
+                samples[position += step] = asFloat16(q12_4);
+            }
+        }
+        //Différences restantes, dans le dernier short partiellement utilisé.
+        int remaining = (count - 1) - fullShorts * deltasPerShort;
+        if (remaining > 0) {
+            int packed = elevations.get(index) << Short.SIZE;
+            for (int k = 0; k < remaining; k++) {
+                q12_4 += (packed << (k * deltaBits)) >> (Integer.SIZE - deltaBits);
+                samples[position += step] = asFloat16(q12_4);
+            }
         }
+        return count;
     }
 
     /**
@@ -215,17 +196,6 @@ public record GraphEdges(ByteBuffer edgesBuffer, IntBuffer profileIds, ShortBuff
         return scalb((float) q12_4, -4);
     }
 
-    /**
-     * Méthode privée retournant la valeur de type float correspondant à la valeur
-     * Q4.4 donnée.
-     * @param q4_4 Valeur de type float donnée.
-     * @return La valeur de type float correspondant à la valeur Q4.4 donnée.
-     */
-
-    private static float asFloat8(int q4_4) {
-        return scalb((float) q4_4, -4);
-    }
-
     /**
      * Retourne l'identité de l'ensemble d'attributs attaché à l'arête d'identité donnée.
      * @param edgeId Identité de l'arête donnée.
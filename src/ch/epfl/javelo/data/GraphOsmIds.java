@@ -0,0 +1,231 @@
+package ch.epfl.javelo.data;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * GraphOsmIds
+ * <p>
+ * Enregistrement représentant l'index liant les identités des nœuds JaVelo à celles des nœuds
+ * OSM dont ils proviennent (fichier nodes_osmid.bin), dans les deux sens. Le passage d'un nœud
+ * JaVelo à son identité OSM est direct ; le passage inverse se fait par recherche dichotomique
+ * dans la permutation des nœuds triés par identité OSM. Les deux tableaux restent hors du tas.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public record GraphOsmIds(LongBuffer osmIds, IntBuffer sortedNodeIds) {
+
+    //Nom du fichier (optionnel) contenant la permutation des nœuds triés par identité OSM.
+    public static final String SORTED_NODE_IDS_FILE = "nodes_osmid_sorted.bin";
+
+    //Nombre de bits réservés à l'identité du nœud lors du tri (une identité de nœud JaVelo
+    //tient sur 28 bits, voir GraphNodes).
+    private static final int NODE_ID_BITS = 28;
+
+    //Identité OSM maximale (exclue) pouvant être triée avec une identité de nœud JaVelo.
+    private static final long MAX_OSM_ID = 1L << (Long.SIZE - 1 - NODE_ID_BITS);
+
+    //Nombre de bits et nombre de valeurs des chiffres du tri par base.
+    private static final int RADIX_BITS = 16;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    /**
+     * Constructeur compact vérifiant que les deux tableaux ont la même taille.
+     */
+    public GraphOsmIds {
+        Preconditions.checkArgument(osmIds.capacity() == sortedNodeIds.capacity());
+    }
+
+    /**
+     * Retourne l'index obtenu à partir du fichier nodes_osmid.bin du répertoire donné. Si le
+     * répertoire contient aussi la permutation triée, elle est projetée en mémoire ; sinon elle
+     * est calculée une fois et stockée hors du tas.
+     * @param basePath Chemin d'accès au répertoire.
+     * @return L'index des identités OSM du graphe.
+     * @throws IOException En cas d'erreur d'entrée/sortie.
+     */
+    public static GraphOsmIds loadFrom(Path basePath) throws IOException {
+        LongBuffer osmIds = Graph.mappedBuffer(basePath.resolve("nodes_osmid.bin")).asLongBuffer();
+        Path sortedPath = basePath.resolve(SORTED_NODE_IDS_FILE);
+        IntBuffer sortedNodeIds = Files.exists(sortedPath)
+                ? Graph.mappedBuffer(sortedPath).asIntBuffer()
+                : sortedNodeIds(osmIds);
+        return new GraphOsmIds(osmIds, sortedNodeIds);
+    }
+
+    /**
+     * Retourne la permutation des identités de nœuds triées par identité OSM croissante, dans
+     * un tampon direct (hors du tas). Le tri se fait lui aussi hors du tas, par base entre deux
+     * tampons directs de 8 octets par nœud libérés ensuite ; seuls les compteurs du tri, de
+     * taille indépendante du nombre de nœuds, sont alloués sur le tas.
+     * @param osmIds Identités OSM des nœuds, indexées par identité de nœud.
+     * @return La permutation triée des identités de nœuds.
+     */
+    public static IntBuffer sortedNodeIds(LongBuffer osmIds) {
+        int count = osmIds.capacity();
+        //Chaque paire (identité OSM, identité de nœud) est empaquetée dans un long positif, ce
+        //qui permet un tri primitif sans objets intermédiaires.
+        LongBuffer packed = directLongs(count), buffer = directLongs(count);
+        for (int nodeId = 0; nodeId < count; nodeId++) {
+            long osmId = osmIds.get(nodeId);
+            Preconditions.checkArgument(0 <= osmId && osmId < MAX_OSM_ID);
+            packed.put(nodeId, osmId << NODE_ID_BITS | nodeId);
+        }
+
+        //Tri par base stable, du chiffre de poids faible au chiffre de poids fort.
+        int[] starts = new int[RADIX + 1];
+        for (int shift = 0; shift < Long.SIZE && count > 0; shift += RADIX_BITS) {
+            Arrays.fill(starts, 0);
+            for (int i = 0; i < count; i++) starts[digit(packed.get(i), shift) + 1]++;
+            //Un chiffre commun à toutes les paires ne change pas leur ordre.
+            if (starts[digit(packed.get(0), shift) + 1] == count) continue;
+            for (int d = 0; d < RADIX; d++) starts[d + 1] += starts[d];
+            for (int i = 0; i < count; i++) {
+                long value = packed.get(i);
+                buffer.put(starts[digit(value, shift)]++, value);
+            }
+            LongBuffer swap = packed;
+            packed = buffer;
+            buffer = swap;
+        }
+
+        IntBuffer sorted = ByteBuffer.allocateDirect(count * Integer.BYTES).asIntBuffer();
+        for (int i = 0; i < count; i++) {
+            sorted.put(i, (int) (packed.get(i) & ((1 << NODE_ID_BITS) - 1)));
+        }
+        return sorted;
+    }
+
+    /**
+     * Retourne le nombre de nœuds indexés.
+     * @return Le nombre de nœuds indexés.
+     */
+    public int count() {
+        return osmIds.capacity();
+    }
+
+    /**
+     * Retourne l'identité OSM du nœud d'identité donnée.
+     * @param nodeId Identité du nœud JaVelo.
+     * @return L'identité OSM du nœud.
+     */
+    public long osmId(int nodeId) {
+        return osmIds.get(nodeId);
+    }
+
+    /**
+     * Retourne l'identité du nœud JaVelo provenant du nœud OSM d'identité donnée, ou -1 si
+     * aucun nœud n'en provient.
+     * @param osmId Identité OSM.
+     * @return L'identité du nœud JaVelo, ou -1.
+     */
+    public int nodeId(long osmId) {
+        int index = lowerBound(osmId, 0);
+        return index < count() && osmIdAt(index) == osmId ? sortedNodeIds.get(index) : -1;
+    }
+
+    /**
+     * Retourne les identités OSM des nœuds d'identités données.
+     * @param nodeIds Identités des nœuds JaVelo.
+     * @return Le tableau des identités OSM, dans le même ordre.
+     */
+    public long[] osmIds(int[] nodeIds) {
+        long[] result = new long[nodeIds.length];
+        for (int i = 0; i < nodeIds.length; i++) result[i] = osmId(nodeIds[i]);
+        return result;
+    }
+
+    /**
+     * Retourne les identités des nœuds JaVelo provenant des nœuds OSM d'identités données (-1
+     * pour ceux dont aucun nœud ne provient). Les requêtes sont traitées par ordre croissant,
+     * chaque recherche reprenant là où la précédente s'est arrêtée.
+     * @param osmIds Identités OSM.
+     * @return Le tableau des identités de nœuds, dans le même ordre.
+     */
+    public int[] nodeIds(long[] osmIds) {
+        int[] result = new int[osmIds.length];
+        int[] order = new int[osmIds.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        sortIndicesByValue(order, osmIds);
+        int from = 0;
+        for (int i : order) {
+            from = lowerBound(osmIds[i], from);
+            result[i] = from < count() && osmIdAt(from) == osmIds[i]
+                    ? sortedNodeIds.get(from) : -1;
+        }
+        return result;
+    }
+
+    /**
+     * Méthode privée retournant l'identité OSM du index-ième nœud de la permutation triée.
+     * @param index Index dans la permutation.
+     * @return L'identité OSM correspondante.
+     */
+    private long osmIdAt(int index) {
+        return osmIds.get(sortedNodeIds.get(index));
+    }
+
+    /**
+     * Méthode privée retournant le plus petit index, supérieur ou égal à from, de la
+     * permutation triée dont l'identité OSM est supérieure ou égale à celle donnée. La
+     * recherche est exponentielle depuis from, puis dichotomique.
+     * @param osmId Identité OSM recherchée.
+     * @param from Index de départ de la recherche.
+     * @return L'index trouvé (count() si toutes les identités sont plus petites).
+     */
+    private int lowerBound(long osmId, int from) {
+        int low = from, step = 1, high = from;
+        while (high < count() && osmIdAt(high) < osmId) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high, count());
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (osmIdAt(middle) < osmId) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Méthode privée retournant un tampon direct de la taille donnée.
+     * @param count Nombre de longs du tampon.
+     * @return Le tampon direct.
+     */
+    private static LongBuffer directLongs(int count) {
+        return ByteBuffer.allocateDirect(count * Long.BYTES).asLongBuffer();
+    }
+
+    /**
+     * Méthode privée retournant le chiffre du tri par base commençant au bit donné.
+     * @param value Valeur triée.
+     * @param shift Index du premier bit du chiffre.
+     * @return Le chiffre.
+     */
+    private static int digit(long value, int shift) {
+        return (int) (value >>> shift) & (RADIX - 1);
+    }
+
+    /**
+     * Méthode privée triant les index donnés par valeur croissante du tableau de valeurs.
+     * @param indices Index à trier.
+     * @param values Valeurs associées aux index.
+     */
+    private static void sortIndicesByValue(int[] indices, long[] values) {
+        Integer[] boxed = new Integer[indices.length];
+        for (int i = 0; i < indices.length; i++) boxed[i] = indices[i];
+        Arrays.sort(boxed, (a, b) -> Long.compare(values[a], values[b]));
+        for (int i = 0; i < indices.length; i++) indices[i] = boxed[i];
+    }
+}
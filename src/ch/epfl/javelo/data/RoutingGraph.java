@@ -0,0 +1,111 @@
+package ch.epfl.javelo.data;
+
+import ch.epfl.javelo.projection.PointCh;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * RoutingGraph
+ * <p>
+ * Interface représentant un graphe JaVelo tel que le voient le calculateur d'itinéraire et la
+ * fonction de coût. Implémentée par Graph (un seul répertoire de données) et par CompositeGraph
+ * (plusieurs répertoires assemblés).
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public interface RoutingGraph {
+
+    /**
+     * Retourne le nombre total de nœuds dans le graphe.
+     * @return Le nombre total de nœuds dans le graphe.
+     */
+
+    int nodeCount();
+
+    /**
+     * Retourne la position géographique du nœud donné.
+     * @param nodeId Identité du nœud donné.
+     * @return La position géographique du nœud donné.
+     */
+
+    PointCh nodePoint(int nodeId);
+
+    /**
+     * Retourne le nombre d'arêtes sortant du nœud d'identité donné.
+     * @param nodeId Identité du nœud donné.
+     * @return Le nombre d'arêtes sortant du nœud d'identité donné.
+     */
+
+    int nodeOutDegree(int nodeId);
+
+    /**
+     * Retourne l'identité de la edgeIndex-ième arête sortant du nœud d'identité donné.
+     * @param nodeId    Identité du nœud donné.
+     * @param edgeIndex Index de l'arête vis-à-vis de la première arête du nœud.
+     * @return L'identité de la edgeIndex-ième arête sortant du nœud d'identité donné.
+     */
+
+    int nodeOutEdgeId(int nodeId, int edgeIndex);
+
+    /**
+     * Retourne l'identité du nœud se trouvant le plus proche du point donné, à la distance
+     * maximale donnée (en mètres), ou -1 si aucun nœud ne correspond à ces critères.
+     * @param point          Point donné.
+     * @param searchDistance Distance maximale de recherche donnée.
+     * @return L'identité du nœud le plus proche, ou -1 si aucun nœud ne correspond.
+     */
+
+    int nodeClosestTo(PointCh point, double searchDistance);
+
+    /**
+     * Retourne l'identité du nœud destination de l'arête d'identité donnée.
+     * @param edgeId Identité de l'arête donnée.
+     * @return L'identité du nœud destination de l'arête d'identité donnée.
+     */
+
+    int edgeTargetNodeId(int edgeId);
+
+    /**
+     * Retourne vrai si et seulement si l'arête d'identité donnée va dans le sens contraire de
+     * la voie OSM dont elle provient.
+     * @param edgeId Identité de l'arête donnée.
+     * @return Vrai si et seulement si l'arête est inversée.
+     */
+
+    boolean edgeIsInverted(int edgeId);
+
+    /**
+     * Retourne l'ensemble des attributs OSM attachés à l'arête d'identité donnée.
+     * @param edgeId Identité de l'arête donnée.
+     * @return L'ensemble des attributs OSM attachés à l'arête d'identité donnée.
+     */
+
+    AttributeSet edgeAttributes(int edgeId);
+
+    /**
+     * Retourne la longueur de l'arête d'identité donnée.
+     * @param edgeId Identité de l'arête donnée.
+     * @return La longueur de l'arête d'identité donnée.
+     */
+
+    double edgeLength(int edgeId);
+
+    /**
+     * Retourne le dénivelé positif total de l'arête donnée.
+     * @param edgeId Identité de l'arête donnée.
+     * @return Le dénivelé positif total de l'arête donnée.
+     */
+
+    double edgeElevationGain(int edgeId);
+
+    /**
+     * Retourne le profil en long de l'arête d'identité donnée, sous la forme d'une fonction qui
+     * retourne Double.NaN pour n'importe quel argument si l'arête ne possède pas de profil.
+     * @param edgeId Identité de l'arête donnée.
+     * @return Le profil en long de l'arête d'identité donnée.
+     */
+
+    DoubleUnaryOperator edgeProfile(int edgeId);
+}
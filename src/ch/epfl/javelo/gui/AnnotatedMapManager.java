@@ -3,7 +3,10 @@ package ch.epfl.javelo.gui;
 import ch.epfl.javelo.data.Graph;
 import ch.epfl.javelo.projection.PointCh;
 import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.CostFunction;
 import javafx.beans.binding.Bindings;
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleDoubleProperty;
@@ -18,7 +21,8 @@ import java.util.function.Consumer;
  * AnnotatedMapManager
  * <p>
  * Classe gérant l'affichage de la carte "annotée", soit le fond de carte au-dessus duquel sont
- * superposés l'itinéraire et les points de passage.
+ * superposés l'itinéraire et les points de passage, ainsi qu'une couche, invisible par défaut,
+ * montrant les arêtes du graphe colorées selon leur coût.
  *
  * @author Jean Nordmann (344692)
  * @author Maxime Ducourau (329544)
@@ -41,6 +45,11 @@ public final class AnnotatedMapManager {
      */
     private final ObjectProperty<MapViewParameters> mapViewParametersP;
 
+    /**
+     * Attribut représentant la couche des arêtes du graphe.
+     */
+    private final NetworkOverlayManager networkOverlayManager;
+
     /**
      * Attribut représentant une propriété sur la position de la souris sur la route.
      */
@@ -62,6 +71,21 @@ public final class AnnotatedMapManager {
      */
     public AnnotatedMapManager(Graph graph, TileManager tileManager, RouteBean bean,
                                Consumer<String> consumer) {
+        this(graph, tileManager, bean, consumer, new CityBikeCF(graph));
+    }
+
+    /**
+     * Constructeur public prenant en arguments un graphe, un gestionnaire de tuiles, le bean de
+     * l'itinéraire, un consommateur d'erreurs et la fonction de coût selon laquelle la couche
+     * des arêtes du graphe est colorée.
+     * @param graph Graphe donné.
+     * @param tileManager Gestionnaire de tuiles OpenStreetMap donné.
+     * @param bean Bean donné de l'itinéraire.
+     * @param consumer Consommateur d'erreurs donné.
+     * @param costFunction Fonction de coût donnée.
+     */
+    public AnnotatedMapManager(Graph graph, TileManager tileManager, RouteBean bean,
+                               Consumer<String> consumer, CostFunction costFunction) {
 
         mapViewParametersP =
                 new SimpleObjectProperty<>(new MapViewParameters(INITIAL_ZOOM_LEVEL,
@@ -75,8 +99,13 @@ public final class AnnotatedMapManager {
 
         RouteManager routeManager = new RouteManager(bean, mapViewParametersP);
 
-        //Construction du panneau avec les trois sous-panneaux.
-        pane = new StackPane(baseMapManager.pane(), waypointsManager.pane(), routeManager.pane());
+        networkOverlayManager =
+                new NetworkOverlayManager(graph, costFunction, mapViewParametersP);
+
+        //Construction du panneau avec les quatre sous-panneaux, la couche des arêtes étant juste
+        //au-dessus du fond de carte.
+        pane = new StackPane(baseMapManager.pane(), networkOverlayManager.pane(),
+                waypointsManager.pane(), routeManager.pane());
         //Ajout de la feuille de style.
         pane.getStylesheets().add("map.css");
 
@@ -131,6 +160,15 @@ public final class AnnotatedMapManager {
         return mousePositionOnRouteProperty;
     }
 
+    /**
+     * Méthode publique retournant la propriété indiquant si la couche des arêtes du graphe est
+     * visible.
+     * @return La propriété de la visibilité de la couche des arêtes.
+     */
+    public BooleanProperty networkOverlayVisibleProperty() {
+        return networkOverlayManager.visibleProperty();
+    }
+
     /**
      * Méthode privée configurant les gestionnaires d'évènements liés aux mouvements de la
      * souris, et de sa sortie du panneau.
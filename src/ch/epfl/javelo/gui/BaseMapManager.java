@@ -9,9 +9,9 @@ import javafx.beans.property.SimpleObjectProperty;
 import javafx.geometry.Point2D;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
 import javafx.scene.layout.Pane;
-
-import java.io.IOException;
+import javafx.scene.paint.Color;
 
 /**
  * 8.3.2
@@ -38,6 +38,18 @@ public final class BaseMapManager {
     //roulettes, pour être comptabilisé.
     private static final int MIN_TIME_BETWEEN_TWO_SCROLLS_MS = 200;
 
+    //Constante représentant la couleur dessinée à la place d'une tuile pas encore chargée et
+    //sans ancêtre en cache.
+    private static final Color PLACEHOLDER_COLOR = Color.gray(0.9);
+
+    //Constante représentant le poids de la dernière vitesse mesurée dans la vitesse lissée du
+    //déplacement de la carte.
+    private static final double VELOCITY_SMOOTHING = 0.5;
+
+    //Constante représentant la durée, en nanosecondes, sans déplacement au-delà de laquelle la
+    //carte est considérée comme immobile.
+    private static final long PAN_IDLE_NS = 200_000_000L;
+
     /**
      * Attribut représentant le gestionnaire de tuiles.
      */
@@ -74,6 +86,12 @@ public final class BaseMapManager {
      */
     private final ObjectProperty<Point2D> previousCoordsOnScreen;
 
+    /**
+     * Attributs représentant la vitesse lissée du déplacement de la carte, en pixels par
+     * seconde, et l'instant, en nanosecondes, de son dernier déplacement.
+     */
+    private double panVelocityX, panVelocityY;
+    private long lastPanTime;
 
     /**
      * Constructeur public du BaseMapManager gérant l'interaction avec le fond de carte, et
@@ -142,19 +160,71 @@ public final class BaseMapManager {
             //Position X de destination du coin haut-gauche de la tuile à dessiner sur le canevas.
             int destinationX = (int) - topLeft.getX() % TILE_SIZE;
             for (int x = xMin; x <= xMax; x++) {
-                try {
-                    //Dessine la tuile actuelle, au niveau de zoom demandé, et à partir du pixel
-                    //du bord du canevas, ce qui permet d'avoir des bouts de tuile, et non seulement
-                    //des tuiles entières.
-                    gc.drawImage(tileManager.imageForTileAt(new TileManager.TileId(zoomLevel, x, y)),
-                            destinationX, destinationY);
-                } catch (IOException ignored) {} //Exception ignorée.
+                //Dessine la tuile actuelle, au niveau de zoom demandé, et à partir du pixel
+                //du bord du canevas, ce qui permet d'avoir des bouts de tuile, et non seulement
+                //des tuiles entières. Une tuile pas encore chargée l'est en arrière-plan, la
+                //carte étant redessinée dès qu'elle est prête.
+                TileManager.TileId tileId = new TileManager.TileId(zoomLevel, x, y);
+                Image image = tileManager.imageForTileAtIfLoaded(tileId,
+                        () -> Platform.runLater(this::redrawOnNextPulse));
+                if (image != null) gc.drawImage(image, destinationX, destinationY);
+                else drawPlaceholder(gc, tileId, destinationX, destinationY);
 
                 //Incrémente les positions des valeurs X et Y de la longueur/largeur des tuiles.
                 destinationX += TILE_SIZE;
             }
             destinationY += TILE_SIZE;
         }
+
+        //Précharge les tuiles qui seront probablement affichées prochainement.
+        boolean idle = System.nanoTime() - lastPanTime > PAN_IDLE_NS;
+        tileManager.prefetch(actualMVP, canvas.getWidth(), canvas.getHeight(),
+                idle ? 0 : panVelocityX, idle ? 0 : panVelocityY);
+    }
+
+    /**
+     * Méthode privée mettant à jour la vitesse lissée du déplacement de la carte lors d'un
+     * changement de ses paramètres ; un changement de niveau de zoom la remet à zéro.
+     * @param oldParameters Anciens paramètres de la carte.
+     * @param newParameters Nouveaux paramètres de la carte.
+     */
+    private void updatePanVelocity(MapViewParameters oldParameters,
+                                   MapViewParameters newParameters) {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastPanTime) / 1e9;
+        if (oldParameters.zoomLevel() != newParameters.zoomLevel()) {
+            panVelocityX = 0;
+            panVelocityY = 0;
+        } else if (elapsedSeconds > 0) {
+            //Un déplacement après une pause ne tient pas compte de la vitesse précédente.
+            double weight = now - lastPanTime > PAN_IDLE_NS ? 1 : VELOCITY_SMOOTHING;
+            panVelocityX = Math2.interpolate(panVelocityX,
+                    (newParameters.x() - oldParameters.x()) / elapsedSeconds, weight);
+            panVelocityY = Math2.interpolate(panVelocityY,
+                    (newParameters.y() - oldParameters.y()) / elapsedSeconds, weight);
+        }
+        lastPanTime = now;
+    }
+
+    /**
+     * Méthode privée dessinant, à la place d'une tuile pas encore chargée, la partie
+     * correspondante de sa plus proche tuile ancêtre présente dans le cache mémoire, agrandie
+     * lors du dessin, ou à défaut un rectangle uni.
+     * @param gc Contexte graphique du canevas.
+     * @param tileId Identité de la tuile manquante.
+     * @param destinationX Position X du coin haut-gauche de la tuile sur le canevas.
+     * @param destinationY Position Y du coin haut-gauche de la tuile sur le canevas.
+     */
+    private void drawPlaceholder(GraphicsContext gc, TileManager.TileId tileId,
+                                 int destinationX, int destinationY) {
+        TileManager.AncestorPart part = tileManager.ancestorPartForTileAt(tileId);
+        if (part != null) {
+            gc.drawImage(part.image(), part.x(), part.y(), part.size(), part.size(),
+                    destinationX, destinationY, TILE_SIZE, TILE_SIZE);
+        } else {
+            gc.setFill(PLACEHOLDER_COLOR);
+            gc.fillRect(destinationX, destinationY, TILE_SIZE, TILE_SIZE);
+        }
     }
 
     /**
@@ -174,7 +244,10 @@ public final class BaseMapManager {
 
         //Ajoute l'auditeur demandant un nouveau dessin si les paramètres de vue de la carte
         //changent.
-        mapViewParameters.addListener((p, oldS, newS) -> redrawOnNextPulse());
+        mapViewParameters.addListener((p, oldS, newS) -> {
+            updatePanVelocity(oldS, newS);
+            redrawOnNextPulse();
+        });
     }
 
     /**
@@ -0,0 +1,60 @@
+package ch.epfl.javelo.gui;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * DirectoryTileSource
+ * <p>
+ * Classe représentant une source de tuiles stockées dans un répertoire local, organisé comme
+ * le cache disque (zoom/x/y.png), par exemple pour utiliser des cartes hors ligne. L'étiquette
+ * de version d'une tuile est formée de la taille et de la date de modification de son fichier.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class DirectoryTileSource implements TileSource {
+
+    /**
+     * Attribut représentant le répertoire des tuiles.
+     */
+    private final Path directory;
+
+    /**
+     * Constructeur initialisant une source de tuiles stockées dans le répertoire donné.
+     * @param directory Répertoire des tuiles.
+     */
+    DirectoryTileSource(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Retourne la tuile donnée, ou null si elle n'a pas changé : si une étiquette est donnée,
+     * la tuile n'a pas changé si son étiquette est la même, sinon si la date de modification de
+     * son fichier, à la seconde près comme en HTTP, n'est pas postérieure à la date donnée.
+     * @param tileId Identité de la tuile.
+     * @param etag Étiquette de la version connue de la tuile, ou null.
+     * @param lastFetched Date, en millisecondes depuis l'époque, à laquelle la version connue
+     *                    a été obtenue, ou 0.
+     * @return La tuile, ou null si la version connue est toujours valide.
+     * @throws IOException Si le fichier de la tuile n'existe pas ou ne peut pas être lu.
+     */
+    @Override
+    public Tile fetch(TileManager.TileId tileId, String etag, long lastFetched)
+            throws IOException {
+        Path file = directory.resolve(Integer.toString(tileId.zoomLevel()))
+                .resolve(Integer.toString(tileId.xTile()))
+                .resolve(tileId.yTile() + ".png");
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        String currentEtag = "\"" + Long.toHexString(attributes.size()) + "-"
+                + Long.toHexString(modified) + "\"";
+        boolean notModified = etag != null
+                ? etag.equals(currentEtag)
+                : lastFetched > 0 && modified / 1000 <= lastFetched / 1000;
+        return notModified ? null : new Tile(Files.readAllBytes(file), currentEtag);
+    }
+}
@@ -0,0 +1,442 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * DiskTileCache
+ * <p>
+ * Classe représentant le cache disque des tuiles, dont chaque tuile est stockée dans le fichier
+ * zoom/x/y.png de son répertoire. Le cache est borné en octets : lorsqu'une écriture dépasse ce
+ * budget, les tuiles les moins récemment ou les moins fréquemment utilisées, selon la politique
+ * choisie, sont supprimées jusqu'à ce que le cache n'en occupe plus que 90 %.
+ * <p>
+ * Un index en mémoire, construit au démarrage en parcourant le répertoire une seule fois,
+ * associe à chaque tuile sa taille, ses statistiques d'utilisation, la date de son dernier
+ * téléchargement, qui est celle de modification de son fichier, et l'étiquette de version
+ * donnée par le serveur si ce téléchargement a eu lieu depuis le démarrage ; savoir si une
+ * tuile est en cache, ou si elle est périmée et doit être revalidée auprès du serveur, ne
+ * nécessite donc aucun accès au disque. Les méthodes de cette classe peuvent être appelées
+ * depuis plusieurs fils d'exécution à la fois.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class DiskTileCache {
+
+    //Constante représentant la fraction du budget occupée après une éviction.
+    private static final double EVICTION_TARGET = 0.9;
+
+    //Constante représentant l'extension des fichiers de tuiles.
+    private static final String TILE_EXTENSION = ".png";
+
+    //Constante représentant l'extension des fichiers en cours d'écriture.
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    /**
+     * Type énuméré représentant la politique d'éviction du cache.
+     */
+    enum EvictionPolicy {
+        //Les tuiles lues ou écrites le moins récemment sont évincées en premier.
+        LRU(Comparator.comparingLong(Candidate::lastAccess)),
+        //Les tuiles les moins lues sont évincées en premier, la moins récemment utilisée en
+        //cas d'égalité.
+        LFU(Comparator.comparingLong(Candidate::accessCount)
+                .thenComparingLong(Candidate::lastAccess));
+
+        private final Comparator<Candidate> evictionOrder;
+
+        EvictionPolicy(Comparator<Candidate> evictionOrder) {
+            this.evictionOrder = evictionOrder;
+        }
+    }
+
+    /**
+     * Attribut représentant le répertoire du cache.
+     */
+    private final Path directory;
+
+    /**
+     * Attribut représentant le nombre maximal d'octets occupés par les tuiles.
+     */
+    private final long maxBytes;
+
+    /**
+     * Attribut représentant la durée, en millisecondes, après laquelle une tuile est périmée.
+     */
+    private final long timeToLiveMillis;
+
+    /**
+     * Attribut représentant la politique d'éviction.
+     */
+    private final EvictionPolicy policy;
+
+    /**
+     * Attribut représentant l'index des tuiles en cache, protégé par le verrou du cache.
+     */
+    private final Map<TileManager.TileId, Entry> index = new HashMap<>();
+
+    /**
+     * Attribut représentant le nombre total d'octets des tuiles en cache.
+     */
+    private long usedBytes;
+
+    /**
+     * Attribut représentant le dernier instant d'accès attribué, en millisecondes.
+     */
+    private long lastTick;
+
+    /**
+     * Booléen dont la valeur représente si une éviction est en cours, protégé par le verrou du
+     * cache.
+     */
+    private boolean evicting;
+
+    /**
+     * Constructeur initialisant le cache stocké dans le répertoire donné, en construisant son
+     * index à partir des fichiers qui s'y trouvent ; les fichiers temporaires laissés par une
+     * écriture interrompue sont supprimés, et les tuiles dépassant le budget sont évincées.
+     * Lève IllegalArgumentException si le budget est négatif ou la durée de validité négative.
+     * @param directory Répertoire du cache.
+     * @param maxBytes Nombre maximal d'octets occupés par les tuiles.
+     * @param timeToLive Durée après laquelle une tuile téléchargée est périmée.
+     * @param policy Politique d'éviction.
+     * @throws IOException En cas d'erreur lors du parcours du répertoire.
+     */
+    DiskTileCache(Path directory, long maxBytes, Duration timeToLive, EvictionPolicy policy)
+            throws IOException {
+        Preconditions.checkArgument(maxBytes >= 0 && !timeToLive.isNegative());
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.timeToLiveMillis = timeToLive.toMillis();
+        this.policy = policy;
+
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.walk(directory, 3)) {
+            files.forEach(this::indexFile);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Retourne vrai si et seulement si la tuile donnée est dans le cache.
+     * @param tileId Identité de la tuile.
+     * @return Vrai si la tuile est en cache.
+     */
+    synchronized boolean contains(TileManager.TileId tileId) {
+        return index.containsKey(tileId);
+    }
+
+    /**
+     * Retourne le contenu du fichier de la tuile donnée, ou null si elle n'est pas en cache,
+     * en comptant cette lecture pour la politique d'éviction.
+     * @param tileId Identité de la tuile.
+     * @return Le contenu du fichier de la tuile, ou null.
+     * @throws IOException En cas d'erreur de lecture.
+     */
+    byte[] read(TileManager.TileId tileId) throws IOException {
+        synchronized (this) {
+            Entry entry = index.get(tileId);
+            if (entry == null) return null;
+            entry.lastAccess = tick();
+            entry.accessCount++;
+        }
+        try {
+            return Files.readAllBytes(fileOf(tileId));
+        } catch (NoSuchFileException e) {
+            //Le fichier a été supprimé, par une éviction ou de l'extérieur, depuis la
+            //consultation de l'index.
+            synchronized (this) {
+                Entry entry = index.remove(tileId);
+                if (entry != null) usedBytes -= entry.size;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Écrit dans le cache le contenu donné pour la tuile donnée, en remplaçant l'éventuel
+     * contenu précédent et en évinçant au besoin d'autres tuiles. Le fichier est d'abord écrit
+     * sous un nom temporaire puis renommé, afin qu'une lecture concurrente ou une interruption
+     * ne laisse jamais une tuile partielle.
+     * @param tileId Identité de la tuile.
+     * @param data Contenu du fichier de la tuile.
+     * @param etag Étiquette de version de la tuile donnée par le serveur, ou null.
+     * @throws IOException En cas d'erreur d'écriture.
+     */
+    void write(TileManager.TileId tileId, byte[] data, String etag) throws IOException {
+        Path file = fileOf(tileId);
+        Files.createDirectories(file.getParent());
+        Path temporary = Files.createTempFile(file.getParent(),
+                tileId.yTile() + TILE_EXTENSION, TEMPORARY_EXTENSION);
+        try {
+            Files.write(temporary, data);
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = index.get(tileId);
+            if (entry == null) {
+                entry = new Entry(tileId);
+                index.put(tileId, entry);
+            } else {
+                usedBytes -= entry.size;
+            }
+            entry.size = data.length;
+            entry.etag = etag;
+            entry.fetched = now;
+            entry.lastAccess = tick();
+            usedBytes += data.length;
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Retourne vrai si et seulement si la tuile donnée est en cache depuis plus longtemps que
+     * la durée de validité, et doit donc être revalidée auprès du serveur.
+     * @param tileId Identité de la tuile.
+     * @return Vrai si la tuile est en cache et périmée.
+     */
+    synchronized boolean isExpired(TileManager.TileId tileId) {
+        Entry entry = index.get(tileId);
+        return entry != null && System.currentTimeMillis() - entry.fetched > timeToLiveMillis;
+    }
+
+    /**
+     * Retourne la date, en millisecondes depuis l'époque, du dernier téléchargement de la
+     * tuile donnée, ou 0 si elle n'est pas en cache.
+     * @param tileId Identité de la tuile.
+     * @return La date du dernier téléchargement de la tuile, ou 0.
+     */
+    synchronized long lastFetched(TileManager.TileId tileId) {
+        Entry entry = index.get(tileId);
+        return entry == null ? 0 : entry.fetched;
+    }
+
+    /**
+     * Retourne l'étiquette de version de la tuile donnée, ou null si elle n'est pas en cache ou
+     * si son étiquette n'est pas connue.
+     * @param tileId Identité de la tuile.
+     * @return L'étiquette de version de la tuile, ou null.
+     */
+    synchronized String etag(TileManager.TileId tileId) {
+        Entry entry = index.get(tileId);
+        return entry == null ? null : entry.etag;
+    }
+
+    /**
+     * Marque la tuile donnée comme à nouveau valide, le serveur ayant indiqué qu'elle n'a pas
+     * changé ; ne fait rien si elle n'est pas en cache.
+     * @param tileId Identité de la tuile.
+     * @throws IOException En cas d'erreur lors de la mise à jour du fichier.
+     */
+    void refresh(TileManager.TileId tileId) throws IOException {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = index.get(tileId);
+            if (entry == null) return;
+            entry.fetched = now;
+        }
+        try {
+            Files.setLastModifiedTime(fileOf(tileId), FileTime.fromMillis(now));
+        } catch (NoSuchFileException e) {
+            //La tuile a été évincée entre-temps.
+        }
+    }
+
+    /**
+     * Retourne le nombre de tuiles en cache.
+     * @return Le nombre de tuiles en cache.
+     */
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Retourne le nombre total d'octets des tuiles en cache.
+     * @return Le nombre d'octets en cache.
+     */
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Méthode privée retournant le fichier de la tuile donnée.
+     * @param tileId Identité de la tuile.
+     * @return Le chemin du fichier de la tuile.
+     */
+    private Path fileOf(TileManager.TileId tileId) {
+        return directory.resolve(Integer.toString(tileId.zoomLevel()))
+                .resolve(Integer.toString(tileId.xTile()))
+                .resolve(tileId.yTile() + TILE_EXTENSION);
+    }
+
+    /**
+     * Méthode privée ajoutant à l'index le fichier donné s'il s'agit d'une tuile, ou le
+     * supprimant s'il s'agit d'un fichier temporaire ; les autres fichiers sont ignorés.
+     * @param file Fichier du répertoire du cache.
+     */
+    private void indexFile(Path file) {
+        try {
+            String fileName = file.getFileName().toString();
+            if (fileName.endsWith(TEMPORARY_EXTENSION)) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            TileManager.TileId tileId = tileIdOf(directory, file);
+            if (tileId == null) return;
+            BasicFileAttributes attributes = Files.readAttributes(file,
+                    BasicFileAttributes.class);
+            Entry entry = new Entry(tileId);
+            entry.size = attributes.size();
+            entry.fetched = attributes.lastModifiedTime().toMillis();
+            entry.lastAccess = Math.max(entry.fetched, attributes.lastAccessTime().toMillis());
+            synchronized (this) {
+                index.put(tileId, entry);
+                usedBytes += entry.size;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Retourne l'identité de la tuile stockée dans le fichier donné d'un répertoire organisé
+     * comme celui du cache (zoom/x/y.png), ou null si ce fichier n'est pas celui d'une tuile
+     * valide.
+     * @param directory Répertoire du cache.
+     * @param file Fichier de ce répertoire.
+     * @return L'identité de la tuile, ou null.
+     */
+    static TileManager.TileId tileIdOf(Path directory, Path file) {
+        Path relative = directory.relativize(file);
+        if (relative.getNameCount() != 3) return null;
+        String fileName = relative.getName(2).toString();
+        if (!fileName.endsWith(TILE_EXTENSION)) return null;
+        try {
+            int zoomLevel = Integer.parseInt(relative.getName(0).toString());
+            int x = Integer.parseInt(relative.getName(1).toString());
+            int y = Integer.parseInt(fileName.substring(0,
+                    fileName.length() - TILE_EXTENSION.length()));
+            return TileManager.TileId.isValid(zoomLevel, x, y)
+                    ? new TileManager.TileId(zoomLevel, x, y)
+                    : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Méthode privée retournant l'instant d'un accès, strictement postérieur à celui de l'accès
+     * précédent afin que l'ordre des accès soit total même au sein d'une milliseconde.
+     * @return L'instant de l'accès, en millisecondes.
+     */
+    private long tick() {
+        lastTick = Math.max(lastTick + 1, System.currentTimeMillis());
+        return lastTick;
+    }
+
+    /**
+     * Méthode privée supprimant, si le cache dépasse son budget, des tuiles dans l'ordre de la
+     * politique d'éviction jusqu'à ce que le cache occupe au plus EVICTION_TARGET fois son
+     * budget. Le verrou du cache n'est tenu que pour copier l'index, puis pour en retirer les
+     * tuiles choisies ; le tri et la suppression des fichiers se font sans lui, et ne bloquent
+     * donc pas les lectures et écritures des autres fils. Une seule éviction a lieu à la fois.
+     */
+    private void evictIfNeeded() {
+        List<Candidate> candidates = new ArrayList<>();
+        synchronized (this) {
+            if (evicting || usedBytes <= maxBytes) return;
+            evicting = true;
+            for (Entry entry : index.values())
+                candidates.add(new Candidate(entry, entry.lastAccess, entry.accessCount));
+        }
+
+        List<Path> victims = new ArrayList<>();
+        try {
+            candidates.sort(policy.evictionOrder);
+            long target = (long) (maxBytes * EVICTION_TARGET);
+            synchronized (this) {
+                for (Candidate candidate : candidates) {
+                    if (usedBytes <= target) break;
+                    Entry entry = candidate.entry();
+                    //Une tuile réécrite ou lue depuis la copie n'est plus à sa place dans
+                    //l'ordre d'éviction, et est donc épargnée.
+                    if (index.get(entry.tileId) != entry
+                            || entry.lastAccess != candidate.lastAccess()) continue;
+                    index.remove(entry.tileId);
+                    usedBytes -= entry.size;
+                    victims.add(fileOf(entry.tileId));
+                }
+            }
+        } finally {
+            synchronized (this) {
+                evicting = false;
+            }
+        }
+
+        //Une lecture concurrente d'une tuile dont le fichier est supprimé ici la retire de
+        //l'index (voir read).
+        for (Path file : victims) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                //Un fichier impossible à supprimer est tout de même retiré de l'index, afin
+                //que le cache ne tente pas indéfiniment de l'évincer.
+            }
+        }
+    }
+
+    /**
+     * Classe privée représentant l'entrée d'une tuile dans l'index, protégée par le verrou du
+     * cache.
+     */
+    private static final class Entry {
+        private final TileManager.TileId tileId;
+        private long size;
+        private long fetched;
+        private long lastAccess;
+        private long accessCount;
+        private String etag;
+
+        private Entry(TileManager.TileId tileId) {
+            this.tileId = tileId;
+        }
+    }
+
+    /**
+     * Enregistrement privé représentant une tuile candidate à l'éviction, avec ses
+     * statistiques d'utilisation au moment de la copie de l'index.
+     * @param entry Entrée de la tuile dans l'index.
+     * @param lastAccess Instant du dernier accès à la tuile.
+     * @param accessCount Nombre de lectures de la tuile.
+     */
+    private record Candidate(Entry entry, long lastAccess, long accessCount) {}
+}
@@ -20,7 +20,6 @@ import javafx.scene.transform.NonInvertibleTransformException;
 import javafx.scene.transform.Transform;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -414,19 +413,45 @@ public final class ElevationProfileManager {
     }
 
     /**
-     * Méthode privée calculant le polygone représentant le profil.
+     * Méthode privée calculant le polygone représentant le profil. Chaque colonne de pixels
+     * reçoit l'altitude minimum et maximum du profil sur sa largeur, lues dans la pyramide du
+     * profil : le calcul est proportionnel à la largeur du rectangle bleu et aucun pic n'est
+     * perdu, quel que soit le nombre d'échantillons.
      */
     private void computePolygon() {
+        int width = (int) rectangle2D.get().getWidth();
+        if (width < 1) {
+            polygon.getPoints().clear();
+            return;
+        }
+        //Colonnes centrées sur chaque pixel, du bord gauche au bord droit du rectangle bleu.
+        double length = elevationProfile.get().length();
+        double halfColumn = length / width / 2;
+        double[] mins = new double[width + 1];
+        double[] maxs = new double[width + 1];
+        elevationProfile.get().envelope(-halfColumn, length + halfColumn, mins, maxs);
+
         //Le point du polygone à la coordonnée (0,0) est le coin haut gauche.
-        List<Double> coordinate = new LinkedList<>();
-        //Coordonnées des points de l'itinéraire.
-        for (int i = 0; i <= (int) rectangle2D.get().getWidth(); i++) {
-            double xOnScreen = insets.getLeft() + i;
-            double xOnWorld = screenToWorldTransform.get().transform(xOnScreen, 0).getX();
-            Point2D wayPointOnScreen = worldToScreenTransform.get().transform(xOnWorld,
-                    elevationProfile.get().elevationAt(xOnWorld));
-            coordinate.add(wayPointOnScreen.getX());
-            coordinate.add(wayPointOnScreen.getY());
+        List<Double> coordinate = new ArrayList<>(4 * (width + 1) + 4);
+        Transform worldToScreen = worldToScreenTransform.get();
+        double previous = mins[0];
+        //Coordonnées des points de l'itinéraire : l'extrémum le plus proche de la colonne
+        //précédente est placé en premier, afin que le tracé reste continu.
+        for (int i = 0; i <= width; i++) {
+            double xOnWorld = screenToWorldTransform.get().transform(insets.getLeft() + i, 0)
+                    .getX();
+            boolean minFirst = Math.abs(mins[i] - previous) <= Math.abs(maxs[i] - previous);
+            double first = minFirst ? mins[i] : maxs[i];
+            double second = minFirst ? maxs[i] : mins[i];
+            Point2D firstOnScreen = worldToScreen.transform(xOnWorld, first);
+            coordinate.add(firstOnScreen.getX());
+            coordinate.add(firstOnScreen.getY());
+            if (second != first) {
+                Point2D secondOnScreen = worldToScreen.transform(xOnWorld, second);
+                coordinate.add(secondOnScreen.getX());
+                coordinate.add(secondOnScreen.getY());
+            }
+            previous = second;
         }
         //Coordonnées des deux coins du bas.
         coordinate.add(rectangle2D.get().getMaxX());
@@ -0,0 +1,173 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Semaphore;
+
+/**
+ * HttpTileSource
+ * <p>
+ * Classe représentant une source de tuiles servies par un serveur HTTP sous les chemins
+ * zoom/x/y.png d'une adresse de base. Toutes les requêtes passent par un unique client HTTP,
+ * qui réutilise ses connexions et multiplexe les requêtes simultanées sur une seule connexion
+ * lorsque le serveur accepte HTTP/2.
+ * <p>
+ * Le nombre de requêtes simultanées est borné, chaque requête a un délai maximal, et une
+ * requête qui échoue pour une raison passagère (erreur réseau, délai dépassé, réponse 429 ou
+ * 5xx) est réessayée après une attente doublant à chaque tentative. Les revalidations
+ * utilisent les en-têtes If-None-Match et If-Modified-Since.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class HttpTileSource implements TileSource {
+
+    //Constantes représentant les valeurs par défaut des paramètres de la source.
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(250);
+
+    //Constantes représentant les codes de réponse HTTP utilisés.
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    /**
+     * Attribut représentant l'adresse de base des tuiles, sans barre oblique finale.
+     */
+    private final String baseUri;
+
+    /**
+     * Attribut représentant le client HTTP partagé par toutes les requêtes.
+     */
+    private final HttpClient client;
+
+    /**
+     * Attribut représentant les autorisations de requêtes simultanées.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Attributs représentant le délai maximal d'une requête, le nombre maximal de tentatives
+     * et l'attente avant la deuxième tentative.
+     */
+    private final Duration timeout;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+
+    /**
+     * Constructeur initialisant une source de tuiles servies sous l'adresse de base donnée,
+     * avec les paramètres par défaut.
+     * @param baseUri Adresse de base des tuiles, par exemple https://tile.openstreetmap.org.
+     */
+    HttpTileSource(String baseUri) {
+        this(baseUri, DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_TIMEOUT, DEFAULT_MAX_ATTEMPTS,
+                DEFAULT_INITIAL_BACKOFF);
+    }
+
+    /**
+     * Constructeur initialisant une source de tuiles servies sous l'adresse de base donnée ;
+     * lève IllegalArgumentException si le nombre de requêtes simultanées ou de tentatives n'est
+     * pas strictement positif, ou si le délai n'est pas strictement positif.
+     * @param baseUri Adresse de base des tuiles.
+     * @param maxConcurrentRequests Nombre maximal de requêtes simultanées.
+     * @param timeout Délai maximal d'établissement de connexion et de réponse d'une requête.
+     * @param maxAttempts Nombre maximal de tentatives d'une requête.
+     * @param initialBackoff Attente avant la deuxième tentative.
+     */
+    HttpTileSource(String baseUri, int maxConcurrentRequests, Duration timeout, int maxAttempts,
+                   Duration initialBackoff) {
+        Preconditions.checkArgument(maxConcurrentRequests > 0 && maxAttempts > 0
+                && !timeout.isNegative() && !timeout.isZero() && !initialBackoff.isNegative());
+        this.baseUri = baseUri.endsWith("/")
+                ? baseUri.substring(0, baseUri.length() - 1)
+                : baseUri;
+        this.permits = new Semaphore(maxConcurrentRequests);
+        this.timeout = timeout;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Override
+    public Tile fetch(TileManager.TileId tileId, String etag, long lastFetched)
+            throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUri + "/"
+                        + tileId.zoomLevel() + "/" + tileId.xTile() + "/" + tileId.yTile()
+                        + ".png"))
+                .timeout(timeout)
+                .header("User-Agent", "JaVelo");
+        if (etag != null) builder.header("If-None-Match", etag);
+        if (lastFetched > 0) {
+            builder.header("If-Modified-Since", DateTimeFormatter.RFC_1123_DATE_TIME
+                    .format(Instant.ofEpochMilli(lastFetched).atZone(ZoneOffset.UTC)));
+        }
+        HttpRequest request = builder.GET().build();
+
+        try {
+            permits.acquire();
+            try {
+                return send(request, tileId);
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while fetching tile " + tileId);
+        }
+    }
+
+    /**
+     * Méthode privée envoyant la requête donnée, en la réessayant après une attente croissante
+     * tant que l'échec est passager et que le nombre maximal de tentatives n'est pas atteint.
+     * @param request Requête de la tuile.
+     * @param tileId Identité de la tuile.
+     * @return La tuile, ou null si la version connue est toujours valide.
+     * @throws IOException Si la dernière tentative échoue, ou si l'échec n'est pas passager.
+     * @throws InterruptedException Si le fil est interrompu.
+     */
+    private Tile send(HttpRequest request, TileManager.TileId tileId)
+            throws IOException, InterruptedException {
+        long backoffMillis = initialBackoff.toMillis();
+        for (int attempt = 1; ; attempt++) {
+            IOException failure;
+            boolean transientFailure;
+            try {
+                HttpResponse<byte[]> response =
+                        client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                int status = response.statusCode();
+                if (status == HTTP_OK) {
+                    return new Tile(response.body(),
+                            response.headers().firstValue("ETag").orElse(null));
+                }
+                if (status == HTTP_NOT_MODIFIED) return null;
+                failure = new IOException("tile " + tileId + ": HTTP status " + status);
+                //Les autres erreurs du client, comme une tuile inexistante, sont définitives.
+                transientFailure = status == HTTP_TOO_MANY_REQUESTS || status >= HTTP_SERVER_ERROR;
+            } catch (IOException e) {
+                failure = e;
+                transientFailure = true;
+            }
+            if (!transientFailure || attempt >= maxAttempts) throw failure;
+            Thread.sleep(backoffMillis);
+            backoffMillis *= 2;
+        }
+    }
+}
@@ -11,7 +11,9 @@ import java.nio.file.Path;
 import javafx.application.Application;
 import javafx.beans.binding.Bindings;
 import javafx.geometry.Orientation;
+import javafx.scene.Cursor;
 import javafx.scene.Scene;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
@@ -57,12 +59,13 @@ public final class JaVelo extends Application {
         TileManager tileManager =
                 new TileManager(cacheBasePath, tileServerHost);
         ErrorManager errorManager = new ErrorManager();
-        RouteBean routeBean = new RouteBean(new RouteComputer(graph, new CityBikeCF(graph)));
+        CityBikeCF costFunction = new CityBikeCF(graph);
+        RouteBean routeBean = new RouteBean(new RouteComputer(graph, costFunction));
 
         //Création du gestionnaire de carte annotée, avec un consommateur d'erreur liée à la
         //méthode displayError de ErrorManager.
         AnnotatedMapManager annotatedMapManager = new AnnotatedMapManager(graph, tileManager,
-                routeBean, errorManager::displayError);
+                routeBean, errorManager::displayError, costFunction);
         ElevationProfileManager elevationProfileManager =
                 new ElevationProfileManager(routeBean.elevationProfileProperty(),
                         routeBean.highlightedPositionProperty());
@@ -77,6 +80,13 @@ public final class JaVelo extends Application {
                 .then(annotatedMapManager.mousePositionOnRouteProperty())
                 .otherwise(elevationProfileManager.mousePositionOnProfileProperty()));
 
+        //Le curseur de la carte indique qu'un itinéraire est en cours de calcul, la carte
+        //restant utilisable pendant ce temps.
+        annotatedMapManager.pane().cursorProperty().bind(Bindings
+                .when(routeBean.computingProperty())
+                .then(Cursor.WAIT)
+                .otherwise(Cursor.DEFAULT));
+
         //Auditeur permettant d'ajouter ou d'enlever le profil si la route existe ou non.
         routeBean.elevationProfileProperty().addListener((observable, oldValue, newValue) -> {
             //Dessine le nouveau profil si l'ancien profil était nul, et pas le nouveau.
@@ -100,6 +110,15 @@ public final class JaVelo extends Application {
         menu.getItems().add(menuItem);
         menuBar.getMenus().add(menu);
 
+        //Crée le menu "Affichage", dont l'item permet d'afficher ou de masquer les arêtes du
+        //graphe colorées selon leur coût.
+        CheckMenuItem networkItem = new CheckMenuItem("Réseau routable");
+        networkItem.selectedProperty()
+                .bindBidirectional(annotatedMapManager.networkOverlayVisibleProperty());
+        Menu viewMenu = new Menu("Affichage");
+        viewMenu.getItems().add(networkItem);
+        menuBar.getMenus().add(viewMenu);
+
         //La barre est rendue invisible si la route est nulle.
         menuItem.disableProperty().bind(routeBean.routeProperty().isNull());
 
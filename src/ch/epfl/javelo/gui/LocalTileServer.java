@@ -0,0 +1,181 @@
+package ch.epfl.javelo.gui;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * LocalTileServer
+ * <p>
+ * Classe représentant un serveur HTTP local servant, sous les chemins /zoom/x/y.png, les tuiles
+ * d'un répertoire organisé comme le cache disque. Il permet de tester le téléchargement des
+ * tuiles sans dépendre d'un serveur externe, et de déployer JaVelo hors ligne en lui donnant
+ * l'adresse de ce serveur. Les réponses portent une étiquette de version (ETag), et les
+ * requêtes conditionnelles (If-None-Match, If-Modified-Since) reçoivent une réponse 304 si la
+ * tuile n'a pas changé.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public final class LocalTileServer implements AutoCloseable {
+
+    //Constante représentant le nombre de fils d'exécution traitant les requêtes.
+    private static final int THREAD_COUNT = 4;
+
+    //Constante représentant le port utilisé par défaut par la méthode main.
+    private static final int DEFAULT_PORT = 8080;
+
+    //Constante représentant la forme du chemin d'une tuile.
+    private static final Pattern TILE_PATH =
+            Pattern.compile("/(\\d{1,2})/(\\d{1,7})/(\\d{1,7})\\.png");
+
+    /**
+     * Attribut représentant le serveur HTTP.
+     */
+    private final HttpServer server;
+
+    /**
+     * Attribut représentant les fils d'exécution traitant les requêtes.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Attribut représentant la source des tuiles servies.
+     */
+    private final DirectoryTileSource source;
+
+    /**
+     * Constructeur privé démarrant un serveur local servant les tuiles du répertoire donné.
+     * @param directory Répertoire des tuiles.
+     * @param port Port du serveur, ou 0 pour un port libre quelconque.
+     * @throws IOException Si le serveur ne peut pas être démarré.
+     */
+    private LocalTileServer(Path directory, int port) throws IOException {
+        this.source = new DirectoryTileSource(directory);
+        this.server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(THREAD_COUNT, r -> {
+            Thread thread = new Thread(r, "JaVelo local tile server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Démarre un serveur local, n'acceptant que les connexions de la machine locale, servant
+     * les tuiles du répertoire donné.
+     * @param directory Répertoire des tuiles.
+     * @param port Port du serveur, ou 0 pour un port libre quelconque.
+     * @return Le serveur démarré.
+     * @throws IOException Si le serveur ne peut pas être démarré.
+     */
+    public static LocalTileServer start(Path directory, int port) throws IOException {
+        return new LocalTileServer(directory, port);
+    }
+
+    /**
+     * Démarre un serveur local servant les tuiles du répertoire donné en premier argument, sur
+     * le port donné en second argument ou, à défaut, sur le port 8080.
+     * @param args Répertoire des tuiles et, éventuellement, port du serveur.
+     * @throws IOException Si le serveur ne peut pas être démarré.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        LocalTileServer server = start(Path.of(args[0]), port);
+        System.out.println("Serving tiles at " + server.baseUri());
+    }
+
+    /**
+     * Retourne l'adresse de base des tuiles servies.
+     * @return L'adresse de base des tuiles, par exemple http://127.0.0.1:8080.
+     */
+    public String baseUri() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    /**
+     * Arrête le serveur.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * Méthode privée répondant à une requête.
+     * @param exchange Échange HTTP.
+     * @throws IOException En cas d'erreur de communication.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Matcher matcher = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!exchange.getRequestMethod().equals("GET") || !matcher.matches()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            int zoomLevel = Integer.parseInt(matcher.group(1));
+            int x = Integer.parseInt(matcher.group(2));
+            int y = Integer.parseInt(matcher.group(3));
+            if (!TileManager.TileId.isValid(zoomLevel, x, y)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            TileSource.Tile tile;
+            try {
+                tile = source.fetch(new TileManager.TileId(zoomLevel, x, y),
+                        exchange.getRequestHeaders().getFirst("If-None-Match"),
+                        ifModifiedSince(
+                                exchange.getRequestHeaders().getFirst("If-Modified-Since")));
+            } catch (NoSuchFileException e) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (tile == null) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.getResponseHeaders().set("ETag", tile.etag());
+            exchange.sendResponseHeaders(200, tile.data().length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(tile.data());
+            }
+        }
+    }
+
+    /**
+     * Méthode privée retournant la date, en millisecondes depuis l'époque, de l'en-tête
+     * If-Modified-Since donné, ou 0 s'il est absent ou invalide.
+     * @param header Valeur de l'en-tête, ou null.
+     * @return La date de l'en-tête, ou 0.
+     */
+    private static long ifModifiedSince(String header) {
+        if (header == null) return 0;
+        try {
+            return ZonedDateTime.parse(header, DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+}
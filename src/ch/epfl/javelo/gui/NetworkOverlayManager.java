@@ -0,0 +1,256 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.routing.CostFunction;
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.geometry.Point2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Pane;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NetworkOverlayManager
+ * <p>
+ * Classe gérant l'affichage, par-dessus le fond de carte, des arêtes du graphe colorées selon
+ * leur coût (voir NetworkTileRenderer), afin de faciliter la mise au point des fonctions de
+ * coût. Cette couche est invisible par défaut.
+ * <p>
+ * Comme le fond de carte, la couche est découpée en tuiles, dessinées en arrière-plan par un
+ * nombre borné de fils d'exécution puis gardées dans un cache mémoire ; le fil JavaFX ne fait
+ * qu'afficher les tuiles prêtes. Une tuile qui n'est plus visible lorsque vient son tour n'est
+ * pas dessinée.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public final class NetworkOverlayManager {
+
+    //Constante représentant la taille en pixels d'une tuile.
+    private static final int TILE_SIZE = NetworkTileRenderer.TILE_SIZE;
+
+    //Constante représentant le nombre de fils d'exécution dessinant les tuiles.
+    private static final int RENDERER_THREAD_COUNT = 2;
+
+    //Constantes représentant la taille en octets du cache mémoire et son nombre de bandes.
+    private static final long MEMORY_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final int MEMORY_CACHE_STRIPES = 4;
+
+    //Constantes représentant le nombre d'octets comptés pour une tuile dessinée et pour une
+    //tuile ne contenant aucune arête, qui n'a pas d'image.
+    private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+    private static final long EMPTY_TILE_BYTES = 64;
+
+    /**
+     * Attribut représentant le dessinateur des tuiles.
+     */
+    private final NetworkTileRenderer renderer;
+
+    /**
+     * Attribut représentant une propriété JavaFX contenant les paramètres de la carte affichée.
+     */
+    private final ObjectProperty<MapViewParameters> mapViewParameters;
+
+    /**
+     * Attributs représentant le panneau et le canevas sur lequel les tuiles sont dessinées.
+     */
+    private final Pane pane;
+    private final Canvas canvas;
+
+    /**
+     * Attribut représentant le cache mémoire des tuiles dessinées.
+     */
+    private final TileMemoryCache<RenderedTile> cache;
+
+    /**
+     * Attribut représentant les fils d'exécution dessinant les tuiles.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Attribut représentant les tuiles en train d'être dessinées ou en attente de l'être.
+     */
+    private final Set<TileManager.TileId> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Attribut représentant les tuiles visibles lors du dernier affichage.
+     */
+    private volatile Set<TileManager.TileId> visibleTiles = Set.of();
+
+    /**
+     * Booléen dont la valeur représente si un nouveau dessin est nécessaire.
+     */
+    private boolean redrawNeeded;
+
+    /**
+     * Constructeur public initialisant une couche affichant les arêtes du graphe donné, colorées
+     * selon la fonction de coût donnée.
+     * @param graph Graphe dont les arêtes sont affichées.
+     * @param costFunction Fonction de coût déterminant la couleur des arêtes.
+     * @param mapViewParameters Propriété JavaFX contenant les paramètres de la carte affichée.
+     */
+    public NetworkOverlayManager(Graph graph, CostFunction costFunction,
+                                 ObjectProperty<MapViewParameters> mapViewParameters) {
+        this.renderer = new NetworkTileRenderer(graph, costFunction);
+        this.mapViewParameters = mapViewParameters;
+        this.canvas = new Canvas();
+        this.pane = new Pane(canvas);
+        this.cache = new TileMemoryCache<>(MEMORY_CACHE_BYTES, MEMORY_CACHE_STRIPES,
+                tile -> tile.image() == null ? EMPTY_TILE_BYTES : TILE_BYTES, tileId -> {});
+        this.executor = new ThreadPoolExecutor(RENDERER_THREAD_COUNT, RENDERER_THREAD_COUNT,
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "JaVelo network overlay renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        //La couche ne doit pas bloquer l'interaction avec les panneaux en arrière-plan.
+        pane.setPickOnBounds(false);
+        canvas.setMouseTransparent(true);
+        pane.setVisible(false);
+
+        //Lie les dimensions du canevas à celles du panneau.
+        canvas.widthProperty().bind(pane.widthProperty());
+        canvas.heightProperty().bind(pane.heightProperty());
+
+        //Configure les auditeurs.
+        setUpListeners();
+    }
+
+    /**
+     * Méthode publique retournant le panneau de la couche.
+     * @return Le panneau de la couche.
+     */
+    public Pane pane() {
+        return pane;
+    }
+
+    /**
+     * Méthode publique retournant la propriété indiquant si la couche est visible.
+     * @return La propriété de la visibilité de la couche.
+     */
+    public BooleanProperty visibleProperty() {
+        return pane.visibleProperty();
+    }
+
+    /**
+     * Méthode privée dessinant sur le canevas les tuiles visibles déjà prêtes, et demandant le
+     * dessin en arrière-plan des autres.
+     */
+    private void drawOverlay() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        if (!pane.isVisible()) {
+            visibleTiles = Set.of();
+            return;
+        }
+
+        MapViewParameters actualMVP = mapViewParameters.get();
+        Point2D topLeft = actualMVP.topLeft();
+        Point2D bottomRight = topLeft.add(canvas.getWidth(), canvas.getHeight());
+        int zoomLevel = actualMVP.zoomLevel();
+        int xMin = (int) topLeft.getX() / TILE_SIZE, xMax = (int) bottomRight.getX() / TILE_SIZE;
+        int yMin = (int) topLeft.getY() / TILE_SIZE, yMax = (int) bottomRight.getY() / TILE_SIZE;
+
+        //Les tuiles visibles sont publiées avant d'être demandées, afin que les dessins en
+        //attente de tuiles qui ne le sont plus soient abandonnés.
+        Set<TileManager.TileId> visible = new HashSet<>();
+        for (int y = yMin; y <= yMax; y++) {
+            for (int x = xMin; x <= xMax; x++) {
+                if (TileManager.TileId.isValid(zoomLevel, x, y))
+                    visible.add(new TileManager.TileId(zoomLevel, x, y));
+            }
+        }
+        visibleTiles = visible;
+
+        for (TileManager.TileId tileId : visible) {
+            RenderedTile tile = cache.get(tileId);
+            if (tile == null) {
+                requestTile(tileId);
+            } else if (tile.image() != null) {
+                gc.drawImage(tile.image(), tileId.xTile() * TILE_SIZE - topLeft.getX(),
+                        tileId.yTile() * TILE_SIZE - topLeft.getY());
+            }
+        }
+    }
+
+    /**
+     * Méthode privée demandant le dessin en arrière-plan de la tuile donnée, si elle n'est pas
+     * déjà demandée ; la couche est redessinée dès que la tuile est prête.
+     * @param tileId Identité de la tuile.
+     */
+    private void requestTile(TileManager.TileId tileId) {
+        if (!pending.add(tileId)) return;
+        executor.execute(() -> {
+            try {
+                if (!visibleTiles.contains(tileId)) return;
+                int[] pixels = renderer.render(tileId);
+                cache.put(tileId, new RenderedTile(pixels == null ? null : imageOf(pixels)));
+                Platform.runLater(this::redrawOnNextPulse);
+            } finally {
+                pending.remove(tileId);
+            }
+        });
+    }
+
+    /**
+     * Méthode privée construisant l'image d'une tuile à partir de ses pixels.
+     * @param pixels Pixels de la tuile, au format ARGB non prémultiplié.
+     * @return L'image de la tuile.
+     */
+    private static Image imageOf(int[] pixels) {
+        WritableImage image = new WritableImage(TILE_SIZE, TILE_SIZE);
+        image.getPixelWriter().setPixels(0, 0, TILE_SIZE, TILE_SIZE,
+                PixelFormat.getIntArgbInstance(), pixels, 0, TILE_SIZE);
+        return image;
+    }
+
+    /**
+     * Méthode privée configurant les auditeurs demandant un nouveau dessin de la couche.
+     */
+    private void setUpListeners() {
+        canvas.sceneProperty().addListener((p, oldS, newS) -> {
+            assert oldS == null;
+            newS.addPreLayoutPulseListener(this::redrawIfNeeded);
+        });
+        canvas.widthProperty().addListener((p, oldS, newS) -> redrawOnNextPulse());
+        canvas.heightProperty().addListener((p, oldS, newS) -> redrawOnNextPulse());
+        mapViewParameters.addListener((p, oldS, newS) -> redrawOnNextPulse());
+        pane.visibleProperty().addListener((p, oldS, newS) -> redrawOnNextPulse());
+    }
+
+    /**
+     * Méthode redessinant la couche si le booléen le demande.
+     */
+    private void redrawIfNeeded() {
+        if (!redrawNeeded) return;
+        redrawNeeded = false;
+        drawOverlay();
+    }
+
+    /**
+     * Méthode demandant que la couche soit redessinée lors de la prochaine pulsation.
+     */
+    private void redrawOnNextPulse() {
+        redrawNeeded = true;
+        Platform.requestNextPulse();
+    }
+
+    /**
+     * Enregistrement privé représentant une tuile dessinée.
+     * @param image Image de la tuile, ou null si elle ne contient aucune arête.
+     */
+    private record RenderedTile(Image image) {}
+}
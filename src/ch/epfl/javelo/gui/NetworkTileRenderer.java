@@ -0,0 +1,478 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.javelo.projection.WebMercator;
+import ch.epfl.javelo.routing.CostFunction;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import static ch.epfl.javelo.data.Attribute.*;
+
+/**
+ * NetworkTileRenderer
+ * <p>
+ * Classe dessinant les arêtes du graphe situées dans une tuile de la carte, colorées selon le
+ * facteur de coût que leur attribue une fonction de coût : du vert pour un facteur de 1 au
+ * rouge pour un facteur de MAX_COST_FACTOR ou plus, et en gris les arêtes interdites. Chaque
+ * voie est dessinée une fois, avec le plus petit des coûts de ses deux sens ; une voie
+ * praticable dans un seul sens est dessinée en traitillé. Les routes principales et les
+ * itinéraires cyclables balisés sont plus épais que les autres.
+ * <p>
+ * Seules les arêtes dont la catégorie est visible au niveau de zoom de la tuile sont
+ * dessinées : les rues résidentielles, par exemple, ne le sont qu'à partir du zoom 13. À
+ * partir du zoom où toutes les catégories sont visibles, une tuile est petite et ses arêtes
+ * sont obtenues au moyen de l'index des secteurs du graphe ; en dessous, une tuile peut couvrir
+ * une grande partie du pays, et ses arêtes sont obtenues au moyen d'un index des arêtes de
+ * chaque catégorie, construit une fois lors du premier dessin d'une telle tuile, si bien que
+ * seules les arêtes visibles sont parcourues. Le dessin se fait dans une image en mémoire,
+ * sans JavaFX, et peut donc avoir lieu sur n'importe quel fil d'exécution.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class NetworkTileRenderer {
+
+    //Constantes représentant la taille en pixels d'une tuile et son logarithme en base 2.
+    static final int TILE_SIZE = 256;
+    private static final int TILE_SIZE_LOG2 = 8;
+
+    //Constantes représentant les catégories d'arêtes, de la plus importante à la moins
+    //importante, et le niveau de zoom à partir duquel chacune d'elles est dessinée.
+    private static final int MAJOR = 0, MEDIUM = 1, RESIDENTIAL = 2, MINOR = 3;
+    private static final int[] MIN_ZOOM_LEVELS = {0, 11, 13, 14};
+
+    //Constante représentant la largeur, en pixels, des arêtes de chaque catégorie.
+    private static final float[] WIDTHS = {3f, 2f, 1.5f, 1f};
+
+    //Constante représentant la longueur, en largeurs d'arête, des traits et des espaces des
+    //voies praticables dans un seul sens.
+    private static final float ONE_WAY_DASH = 2.5f;
+
+    //Constantes représentant les attributs des trois premières catégories ; les arêtes qui
+    //n'en ont aucun sont de la dernière.
+    private static final AttributeSet MAJOR_ATTRIBUTES = AttributeSet.of(HIGHWAY_MOTORWAY,
+            HIGHWAY_TRUNK, HIGHWAY_PRIMARY, HIGHWAY_SECONDARY, ICN_YES, NCN_YES, RCN_YES);
+    private static final AttributeSet MEDIUM_ATTRIBUTES = AttributeSet.of(HIGHWAY_TERTIARY,
+            HIGHWAY_UNCLASSIFIED, HIGHWAY_CYCLEWAY, LCN_YES);
+    private static final AttributeSet RESIDENTIAL_ATTRIBUTES = AttributeSet.of(
+            HIGHWAY_RESIDENTIAL, HIGHWAY_LIVING_STREET, HIGHWAY_SERVICE);
+
+    //Constantes représentant le facteur de coût à partir duquel une arête est dessinée en
+    //rouge, et le nombre de couleurs entre le vert et le rouge.
+    private static final double MAX_COST_FACTOR = 3;
+    private static final int COST_LEVELS = 8;
+
+    //Constante représentant le nombre de subdivisions d'un pixel de la grille sur laquelle sont
+    //arrondies les extrémités des arêtes.
+    private static final double PIXEL_SUBDIVISIONS = 4;
+
+    //Constante représentant la couleur des arêtes interdites.
+    private static final Color FORBIDDEN_COLOR = new Color(0x60, 0x60, 0x60, 0xA0);
+
+    //Constante représentant la distance, en mètres, autour d'une tuile dans laquelle sont
+    //cherchés les nœuds de départ des arêtes, afin que les longues arêtes qui la traversent
+    //sans y avoir d'extrémité soient tout de même dessinées.
+    private static final double EDGE_MARGIN = 1000;
+
+    //Constante représentant le côté, en mètres, des cellules de l'index des arêtes.
+    private static final double CELL_SIZE = 5000;
+    private static final int CELL_COLUMNS = (int) Math.ceil(SwissBounds.WIDTH / CELL_SIZE);
+    private static final int CELL_ROWS = (int) Math.ceil(SwissBounds.HEIGHT / CELL_SIZE);
+
+    //Constante représentant les couleurs des différents niveaux de coût, le dernier étant
+    //celui des arêtes interdites.
+    private static final Color[] COLORS = new Color[COST_LEVELS + 1];
+
+    static {
+        for (int level = 0; level < COST_LEVELS; level += 1) {
+            float hue = (1f - (float) level / (COST_LEVELS - 1)) / 3f;
+            COLORS[level] = Color.getHSBColor(hue, 1f, 0.85f);
+        }
+        COLORS[COST_LEVELS] = FORBIDDEN_COLOR;
+    }
+
+    /**
+     * Attribut représentant le graphe dont les arêtes sont dessinées.
+     */
+    private final Graph graph;
+
+    /**
+     * Attribut représentant la fonction de coût déterminant la couleur des arêtes.
+     */
+    private final CostFunction costFunction;
+
+    /**
+     * Attribut représentant l'index des arêtes de chaque catégorie sauf la dernière, construit
+     * lors de son premier usage, ou null.
+     */
+    private EdgeIndex[] edgeIndexes;
+
+    /**
+     * Constructeur initialisant un dessinateur des arêtes du graphe donné, colorées selon la
+     * fonction de coût donnée.
+     * @param graph Graphe donné.
+     * @param costFunction Fonction de coût donnée.
+     */
+    NetworkTileRenderer(Graph graph, CostFunction costFunction) {
+        this.graph = graph;
+        this.costFunction = costFunction;
+    }
+
+    /**
+     * Retourne le niveau de zoom à partir duquel sont dessinées les arêtes ayant les attributs
+     * donnés.
+     * @param attributes Attributs d'une arête.
+     * @return Le niveau de zoom minimal auquel l'arête est dessinée.
+     */
+    static int minZoomLevel(AttributeSet attributes) {
+        return MIN_ZOOM_LEVELS[categoryOf(attributes)];
+    }
+
+    /**
+     * Dessine les arêtes du graphe situées dans la tuile donnée, et retourne les pixels de
+     * l'image obtenue, ligne par ligne, au format ARGB non prémultiplié ; retourne null si
+     * aucune arête n'est dessinée dans la tuile.
+     * @param tileId Identité de la tuile.
+     * @return Les TILE_SIZE * TILE_SIZE pixels de la tuile, ou null.
+     */
+    int[] render(TileManager.TileId tileId) {
+        int zoomLevel = tileId.zoomLevel();
+        double scale = Math.scalb(1d, TILE_SIZE_LOG2 + zoomLevel);
+        double originX = (double) tileId.xTile() * TILE_SIZE;
+        double originY = (double) tileId.yTile() * TILE_SIZE;
+
+        //Boîte englobante, en coordonnées suisses, de la tuile agrandie de la marge.
+        double minE = Double.POSITIVE_INFINITY, maxE = Double.NEGATIVE_INFINITY;
+        double minN = Double.POSITIVE_INFINITY, maxN = Double.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 4; corner += 1) {
+            double lon = WebMercator.lon((originX + (corner & 1) * TILE_SIZE) / scale);
+            double lat = WebMercator.lat((originY + (corner >> 1) * TILE_SIZE) / scale);
+            double e = Ch1903.e(lon, lat), n = Ch1903.n(lon, lat);
+            minE = Math.min(minE, e);
+            maxE = Math.max(maxE, e);
+            minN = Math.min(minN, n);
+            maxN = Math.max(maxN, n);
+        }
+        minE -= EDGE_MARGIN;
+        maxE += EDGE_MARGIN;
+        minN -= EDGE_MARGIN;
+        maxN += EDGE_MARGIN;
+        if (maxE < SwissBounds.MIN_E || minE > SwissBounds.MAX_E
+                || maxN < SwissBounds.MIN_N || minN > SwissBounds.MAX_N) return null;
+
+        Area area = new Area(Math.max(minE, SwissBounds.MIN_E), Math.min(maxE, SwissBounds.MAX_E),
+                Math.max(minN, SwissBounds.MIN_N), Math.min(maxN, SwissBounds.MAX_N));
+
+        TileEdges edges = new TileEdges(zoomLevel, scale, originX, originY, area);
+        if (zoomLevel >= MIN_ZOOM_LEVELS[MINOR]) {
+            PointCh center = new PointCh((area.minE + area.maxE) / 2, (area.minN + area.maxN) / 2);
+            double distance = Math.max(area.maxE - area.minE, area.maxN - area.minN) / 2;
+            for (GraphSectors.Sector sector : graph.sectorsInArea(center, distance)) {
+                for (int nodeId = sector.startNodeId(); nodeId < sector.endNodeId(); nodeId++) {
+                    for (int i = 0; i < graph.nodeOutDegree(nodeId); i += 1)
+                        edges.add(nodeId, graph.nodeOutEdgeId(nodeId, i));
+                }
+            }
+        } else {
+            EdgeIndex[] indexes = edgeIndexes();
+            for (int category = 0; zoomLevel >= MIN_ZOOM_LEVELS[category]; category += 1)
+                indexes[category].forEachIn(area, edges::add);
+        }
+        return edges.draw();
+    }
+
+    /**
+     * Méthode privée retournant la catégorie d'une arête ayant les attributs donnés.
+     * @param attributes Attributs de l'arête.
+     * @return Sa catégorie.
+     */
+    private static int categoryOf(AttributeSet attributes) {
+        if (attributes.intersects(MAJOR_ATTRIBUTES)) return MAJOR;
+        if (attributes.intersects(MEDIUM_ATTRIBUTES)) return MEDIUM;
+        if (attributes.intersects(RESIDENTIAL_ATTRIBUTES)) return RESIDENTIAL;
+        return MINOR;
+    }
+
+    /**
+     * Méthode privée retournant l'arête allant du nœud d'arrivée de l'arête donnée à son nœud
+     * de départ, et provenant de la même voie, ou -1 s'il n'y en a pas.
+     * @param nodeId Nœud de départ de l'arête.
+     * @param edgeId Identité de l'arête.
+     * @param toNodeId Nœud d'arrivée de l'arête.
+     * @return L'identité de l'arête jumelle, ou -1.
+     */
+    private int twinOf(int nodeId, int edgeId, int toNodeId) {
+        boolean inverted = graph.edgeIsInverted(edgeId);
+        AttributeSet attributes = graph.edgeAttributes(edgeId);
+        for (int i = 0; i < graph.nodeOutDegree(toNodeId); i += 1) {
+            int twinId = graph.nodeOutEdgeId(toNodeId, i);
+            if (graph.edgeTargetNodeId(twinId) == nodeId
+                    && graph.edgeIsInverted(twinId) != inverted
+                    && graph.edgeAttributes(twinId).equals(attributes)) return twinId;
+        }
+        return -1;
+    }
+
+    /**
+     * Méthode privée retournant l'index des arêtes de chaque catégorie sauf la dernière, en le
+     * construisant lors du premier appel, en un seul parcours du graphe.
+     * @return Les index des arêtes, par catégorie.
+     */
+    private synchronized EdgeIndex[] edgeIndexes() {
+        if (edgeIndexes != null) return edgeIndexes;
+        //Premier parcours : nombre d'arêtes de chaque catégorie dans chaque cellule.
+        int[][] cellStarts = new int[MINOR][CELL_COLUMNS * CELL_ROWS + 1];
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId += 1) {
+            int cell = cellOf(graph.nodePoint(nodeId));
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i += 1) {
+                int category = categoryOf(graph.edgeAttributes(graph.nodeOutEdgeId(nodeId, i)));
+                if (category != MINOR) cellStarts[category][cell + 1]++;
+            }
+        }
+        EdgeIndex[] indexes = new EdgeIndex[MINOR];
+        for (int category = 0; category < MINOR; category += 1) {
+            int[] starts = cellStarts[category];
+            for (int cell = 1; cell < starts.length; cell += 1) starts[cell] += starts[cell - 1];
+            int count = starts[starts.length - 1];
+            indexes[category] = new EdgeIndex(starts.clone(), new int[count], new int[count]);
+        }
+        //Second parcours : rangement des arêtes, les positions libres étant dans cellStarts.
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId += 1) {
+            int cell = cellOf(graph.nodePoint(nodeId));
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i += 1) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                int category = categoryOf(graph.edgeAttributes(edgeId));
+                if (category == MINOR) continue;
+                int position = cellStarts[category][cell]++;
+                indexes[category].nodeIds[position] = nodeId;
+                indexes[category].edgeIds[position] = edgeId;
+            }
+        }
+        return edgeIndexes = indexes;
+    }
+
+    /**
+     * Méthode privée retournant la cellule de l'index des arêtes contenant le point donné.
+     * @param point Point donné.
+     * @return L'index de la cellule.
+     */
+    private static int cellOf(PointCh point) {
+        return cellRow(point.n()) * CELL_COLUMNS + cellColumn(point.e());
+    }
+
+    /**
+     * Méthodes privées retournant la colonne, respectivement la ligne, de l'index des arêtes
+     * contenant la coordonnée donnée, ramenée dans les limites de la Suisse.
+     * @param e Coordonnée est.
+     * @return La colonne de la cellule.
+     */
+    private static int cellColumn(double e) {
+        return Math2.clamp(0, (int) ((e - SwissBounds.MIN_E) / CELL_SIZE), CELL_COLUMNS - 1);
+    }
+
+    private static int cellRow(double n) {
+        return Math2.clamp(0, (int) ((n - SwissBounds.MIN_N) / CELL_SIZE), CELL_ROWS - 1);
+    }
+
+    /**
+     * Méthode privée retournant le niveau de couleur correspondant au facteur de coût donné.
+     * @param costFactor Facteur de coût d'une arête.
+     * @return Son niveau de couleur, COST_LEVELS pour une arête interdite.
+     */
+    private static int costLevel(double costFactor) {
+        if (costFactor == Double.POSITIVE_INFINITY) return COST_LEVELS;
+        double t = Math2.clamp(0, (costFactor - 1) / (MAX_COST_FACTOR - 1), 1);
+        return (int) Math.round(t * (COST_LEVELS - 1));
+    }
+
+    /**
+     * Méthodes privées retournant les coordonnées en pixels, à l'échelle donnée, du point
+     * donné, arrondies à une fraction de pixel.
+     * @param point Point donné.
+     * @param scale Nombre de pixels de la carte entière au niveau de zoom voulu.
+     * @return La coordonnée x ou y du point, en pixels.
+     */
+    private static double pixelX(PointCh point, double scale) {
+        return snapped(WebMercator.x(Ch1903.lon(point.e(), point.n())) * scale);
+    }
+
+    private static double pixelY(PointCh point, double scale) {
+        return snapped(WebMercator.y(Ch1903.lat(point.e(), point.n())) * scale);
+    }
+
+    /**
+     * Méthode privée arrondissant la coordonnée donnée, en pixels, à la grille d'arrondi.
+     * @param pixels Coordonnée en pixels.
+     * @return La coordonnée arrondie.
+     */
+    private static double snapped(double pixels) {
+        return Math.rint(pixels * PIXEL_SUBDIVISIONS) / PIXEL_SUBDIVISIONS;
+    }
+
+    /**
+     * Interface privée représentant une action appliquée à une arête et à son nœud de départ.
+     */
+    @FunctionalInterface
+    private interface EdgeConsumer {
+        void accept(int nodeId, int edgeId);
+    }
+
+    /**
+     * Enregistrement privé représentant l'index des arêtes d'une catégorie : les arêtes de la
+     * cellule d'index c, rangées selon la position de leur nœud de départ, occupent les
+     * positions [cellStarts[c], cellStarts[c + 1]) des deux tableaux parallèles.
+     * @param cellStarts Position de la première arête de chaque cellule, suivie du total.
+     * @param nodeIds Nœuds de départ des arêtes.
+     * @param edgeIds Identités des arêtes.
+     */
+    private record EdgeIndex(int[] cellStarts, int[] nodeIds, int[] edgeIds) {
+
+        /**
+         * Applique l'action donnée à chacune des arêtes des cellules ayant une intersection
+         * avec la zone donnée.
+         * @param area Zone donnée.
+         * @param action Action appliquée aux arêtes.
+         */
+        private void forEachIn(Area area, EdgeConsumer action) {
+            for (int row = cellRow(area.minN); row <= cellRow(area.maxN); row += 1) {
+                for (int column = cellColumn(area.minE); column <= cellColumn(area.maxE);
+                     column += 1) {
+                    int cell = row * CELL_COLUMNS + column;
+                    for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i += 1)
+                        action.accept(nodeIds[i], edgeIds[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Classe privée représentant les arêtes d'une tuile en cours de dessin, regroupées par
+     * catégorie, par couleur et selon qu'elles sont praticables dans un seul sens, afin que
+     * chaque groupe soit dessiné en une seule fois, et les catégories importantes par-dessus
+     * les autres.
+     */
+    private final class TileEdges {
+        private final int zoomLevel;
+        private final double scale, originX, originY;
+        private final Area area;
+        private final Path2D.Double[][][] paths =
+                new Path2D.Double[MIN_ZOOM_LEVELS.length][COST_LEVELS + 1][2];
+        private boolean empty = true;
+
+        //Le dernier nœud de départ projeté, les arêtes d'un même nœud se suivant.
+        private int projectedNodeId = -1;
+        private double fromX, fromY;
+
+        private TileEdges(int zoomLevel, double scale, double originX, double originY,
+                          Area area) {
+            this.zoomLevel = zoomLevel;
+            this.scale = scale;
+            this.originX = originX;
+            this.originY = originY;
+            this.area = area;
+        }
+
+        /**
+         * Ajoute l'arête donnée au dessin si son nœud de départ est dans la zone de la tuile
+         * et si sa catégorie est visible au niveau de zoom de la tuile.
+         * @param nodeId Nœud de départ de l'arête.
+         * @param edgeId Identité de l'arête.
+         */
+        private void add(int nodeId, int edgeId) {
+            int category = categoryOf(graph.edgeAttributes(edgeId));
+            if (zoomLevel < MIN_ZOOM_LEVELS[category]) return;
+            PointCh from = graph.nodePoint(nodeId);
+            if (!area.contains(from)) return;
+            int toNodeId = graph.edgeTargetNodeId(edgeId);
+            PointCh to = graph.nodePoint(toNodeId);
+            //Chaque arête est aussi présente dans le sens inverse ; seule l'arête non inversée
+            //est dessinée, sauf si sa jumelle part d'un nœud hors de la zone.
+            if (graph.edgeIsInverted(edgeId) && area.contains(to)) return;
+
+            //Le nœud de départ n'est projeté qu'une fois pour toutes ses arêtes.
+            if (nodeId != projectedNodeId) {
+                projectedNodeId = nodeId;
+                fromX = pixelX(from, scale) - originX;
+                fromY = pixelY(from, scale) - originY;
+            }
+            double toX = pixelX(to, scale) - originX, toY = pixelY(to, scale) - originY;
+            //Une arête plus courte que la grille d'arrondi est invisible ; les arêtes voisines
+            //étant arrondies de la même manière, la ligne reste continue.
+            if (toX == fromX && toY == fromY) return;
+
+            //La voie prend la couleur de son sens le moins coûteux, et est marquée comme
+            //praticable dans un seul sens si l'autre est interdit.
+            double cost = costFunction.costFactor(nodeId, edgeId);
+            int twinId = twinOf(nodeId, edgeId, toNodeId);
+            double twinCost = twinId < 0
+                    ? Double.POSITIVE_INFINITY
+                    : costFunction.costFactor(toNodeId, twinId);
+            int level = costLevel(Math.min(cost, twinCost));
+            boolean forbidden = cost == Double.POSITIVE_INFINITY;
+            boolean twinForbidden = twinCost == Double.POSITIVE_INFINITY;
+            int oneWay = forbidden != twinForbidden ? 1 : 0;
+            Path2D.Double path = paths[category][level][oneWay];
+            if (path == null) path = paths[category][level][oneWay] = new Path2D.Double();
+            path.moveTo(fromX, fromY);
+            path.lineTo(toX, toY);
+            empty = false;
+        }
+
+        /**
+         * Dessine les arêtes ajoutées et retourne les pixels de l'image obtenue, ou null si
+         * aucune arête n'a été ajoutée.
+         * @return Les pixels de la tuile, ou null.
+         */
+        private int[] draw() {
+            if (empty) return null;
+            BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE,
+                    BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = image.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                        RenderingHints.VALUE_ANTIALIAS_ON);
+                for (int category = paths.length - 1; category >= 0; category -= 1) {
+                    float width = WIDTHS[category];
+                    BasicStroke[] strokes = {
+                            new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND),
+                            new BasicStroke(width, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND,
+                                    10f, new float[]{ONE_WAY_DASH * width}, 0f)};
+                    for (int level = 0; level <= COST_LEVELS; level += 1) {
+                        graphics.setColor(COLORS[level]);
+                        for (int oneWay = 0; oneWay < 2; oneWay += 1) {
+                            if (paths[category][level][oneWay] == null) continue;
+                            graphics.setStroke(strokes[oneWay]);
+                            graphics.draw(paths[category][level][oneWay]);
+                        }
+                    }
+                }
+            } finally {
+                graphics.dispose();
+            }
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    /**
+     * Enregistrement privé représentant une zone rectangulaire en coordonnées suisses.
+     */
+    private record Area(double minE, double maxE, double minN, double maxN) {
+        private boolean contains(PointCh point) {
+            return point.e() >= minE && point.e() <= maxE
+                    && point.n() >= minN && point.n() <= maxN;
+        }
+    }
+}
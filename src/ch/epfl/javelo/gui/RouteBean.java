@@ -1,6 +1,7 @@
 package ch.epfl.javelo.gui;
 
 import ch.epfl.javelo.routing.*;
+import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
@@ -10,6 +11,10 @@ import javafx.util.Pair;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * 9.3.2
@@ -17,6 +22,12 @@ import java.util.List;
  * <p>
  * Classe étant un bean JavaFX regroupant les propriétés relatives aux points
  * de passage et à l'itinéraire correspondant.
+ * <p>
+ * L'itinéraire et son profil sont calculés sur un fil d'exécution dédié, afin que le fil JavaFX
+ * ne soit jamais bloqué par la recherche d'itinéraire ; seul le dernier état des points de
+ * passage compte : un changement annule le calcul en cours, et des changements rapprochés ne
+ * donnent lieu qu'à un seul calcul. Les résultats sont publiés sur le fil JavaFX, et la
+ * propriété computing indique si un calcul est en cours.
  *
  * @author Jean Nordmann (344692)
  * @author Maxime Ducourau (329544)
@@ -54,6 +65,16 @@ public final class RouteBean {
      */
     private final ObjectProperty<ElevationProfile> elevationProfile;
 
+    /**
+     * Attribut représentant les montées catégorisées de l'itinéraire.
+     */
+    private final ObjectProperty<List<Climb>> climbs;
+
+    /**
+     * Attribut représentant la propriété indiquant si un calcul d'itinéraire est en cours.
+     */
+    private final BooleanProperty computing;
+
     /**
      * Attribut représentant le calculateur d'itinéraire.
      */
@@ -62,10 +83,32 @@ public final class RouteBean {
 
     /**
      * Attribut représentant une table associant à une paire de nœuds le meilleur itinéraire
-     * (simple) les reliant.
+     * (simple) les reliant ; elle n'est utilisée que par le fil de calcul.
      */
     private final LinkedHashMap<Pair<Integer, Integer>, Route> routeCacheMemory;
 
+    /**
+     * Attribut représentant le fil d'exécution calculant les itinéraires.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Attribut représentant le calcul en cours ou en attente, ou null.
+     */
+    private Future<?> computation;
+
+    /**
+     * Attribut représentant le numéro du dernier état des points de passage ; le résultat d'un
+     * calcul n'est publié que s'il correspond toujours au dernier état.
+     */
+    private long generation;
+
+    /**
+     * Attribut représentant les points de passage à partir desquels l'itinéraire actuel a été
+     * calculé.
+     */
+    private List<Waypoint> routeWaypoints;
+
     /**
      * Constructeur initialisant le calculateur d'itinéraire à celui passé en paramètres et les
      * autres attributs à leurs valeurs de base.
@@ -78,8 +121,16 @@ public final class RouteBean {
         this.highlightedPosition = new SimpleDoubleProperty();
         this.route = new SimpleObjectProperty<>();
         this.elevationProfile = new SimpleObjectProperty<>();
+        this.climbs = new SimpleObjectProperty<>(List.of());
+        this.computing = new SimpleBooleanProperty(false);
         this.routeCacheMemory = new LinkedHashMap<>(MEMORY_CACHE_SIZE, ROUTE_CACHE_LOAD_FACTOR,
                 true);
+        this.routeWaypoints = List.of();
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "JaVelo route computer");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         waypoints.addListener((ListChangeListener<? super Waypoint>) e ->
                 computeNewRouteAndProfile());
@@ -152,9 +203,45 @@ public final class RouteBean {
         return elevationProfile.get();
     }
 
+    /**
+     * Accesseur retournant la propriété des montées catégorisées de l'itinéraire, en lecture
+     * seule ; la liste est vide s'il n'y a pas d'itinéraire.
+     * @return La propriété des montées de l'itinéraire.
+     */
+    public ReadOnlyObjectProperty<List<Climb>> climbsProperty() {
+        return climbs;
+    }
+
+    /**
+     * Accesseur retournant les montées catégorisées de l'itinéraire.
+     * @return Les montées de l'itinéraire.
+     */
+    public List<Climb> getClimbs() {
+        return climbs.get();
+    }
+
+    /**
+     * Accesseur retournant la propriété, en lecture seule, indiquant si un calcul d'itinéraire
+     * est en cours ; l'itinéraire et son profil ne correspondent alors pas forcément aux
+     * derniers points de passage.
+     * @return La propriété indiquant si un calcul est en cours.
+     */
+    public ReadOnlyBooleanProperty computingProperty() {
+        return computing;
+    }
+
+    /**
+     * Accesseur retournant si un calcul d'itinéraire est en cours.
+     * @return Vrai si et seulement si un calcul est en cours.
+     */
+    public boolean isComputing() {
+        return computing.get();
+    }
+
     /**
      * Méthode privée (donnée sur l'énoncé), retournant l'index du segment contenant une position
-     * le long de l'itinéraire donnée en paramètre, en ignorant les segments vides.
+     * le long de l'itinéraire donnée en paramètre, en ignorant les segments vides. Les points de
+     * passage utilisés sont ceux à partir desquels l'itinéraire a été calculé.
      * @param position Position donnée le long de l'itinéraire.
      * @return Retourne l'index du segment contenant la position le long de l'itinéraire donnée
      * en paramètre, en ignorant les segments vides.
@@ -162,59 +249,89 @@ public final class RouteBean {
     public int indexOfNonEmptySegmentAt(double position) {
         int index = route.get().indexOfSegmentAt(position);
         for (int i = 0; i <= index; i += 1) {
-            int n1 = waypoints.get(i).nodeId();
-            int n2 = waypoints.get(i + 1).nodeId();
+            int n1 = routeWaypoints.get(i).nodeId();
+            int n2 = routeWaypoints.get(i + 1).nodeId();
             if (n1 == n2) index += 1;
         }
         return index;
     }
 
     /**
-     * Méthode privée calculant la nouvelle route et son profil, si la route est valide.
+     * Méthode privée demandant le calcul de l'itinéraire et de son profil correspondant aux
+     * points de passage actuels, en annulant le calcul précédent s'il n'est pas terminé. Un
+     * calcul en attente n'est ainsi jamais exécuté, et un calcul commencé est interrompu.
      */
     private void computeNewRouteAndProfile() {
-        List<Waypoint> waypoints = getWaypoints();
-        if (isValidRoute()) {
-            List<Route> routeList = new ArrayList<>();
-            for (int i = 0; i < waypoints.size() - 1; i++) {
-                if (waypoints.get(i).nodeId() != waypoints.get(i + 1).nodeId()) {
-                    Route route = getRouteFromCacheMemory(waypoints.get(i), waypoints.get(i + 1));
-                    routeList.add(route);
-                    computeElevationProfile(route);
-                }
-            }
-            route.set(new MultiRoute(routeList));
-            elevationProfile.set(computeElevationProfile(route.get()));
+        generation += 1;
+        if (computation != null) computation.cancel(true);
+        computation = null;
+
+        List<Waypoint> snapshot = List.copyOf(getWaypoints());
+        //S'il y a moins de deux points de passage, il n'y a aucun itinéraire à calculer.
+        if (snapshot.size() < 2) {
+            publish(generation, Result.empty(snapshot));
+            return;
         }
+
+        long requestGeneration = generation;
+        computing.set(true);
+        computation = executor.submit(() -> {
+            Result result;
+            try {
+                result = compute(snapshot);
+            } catch (CancellationException e) {
+                return;
+            } catch (RuntimeException e) {
+                //Un calcul ayant échoué ne laisse ni itinéraire ni calcul en cours.
+                Platform.runLater(() ->
+                        publish(requestGeneration, Result.empty(snapshot)));
+                throw e;
+            }
+            Platform.runLater(() -> publish(requestGeneration, result));
+        });
     }
 
     /**
-     * Méthode privée retournant si la route entre les points de passage est jugée valide.
-     * @return Retourne vrai si et seulement si la route est jugée valide.
+     * Méthode privée publiant, sur le fil JavaFX, le résultat d'un calcul, s'il correspond
+     * toujours au dernier état des points de passage.
+     * @param requestGeneration Numéro de l'état des points de passage du calcul.
+     * @param result Résultat du calcul.
      */
-    private boolean isValidRoute() {
-        List<Waypoint> waypointList = getWaypoints();
-        //Si la liste contient moins de deux points de passage, alors il n'y a aucune route et
-        //aucun profil. Ainsi, la route n'est pas valide.
-        if (waypointList.size() < 2) {
-            route.set(null);
-            elevationProfile.set(null);
-            return false;
-        }
+    private void publish(long requestGeneration, Result result) {
+        if (requestGeneration != generation) return;
+        //Les points de passage et les montées sont mis à jour avant l'itinéraire et le profil
+        //respectivement, afin que les auditeurs de ces derniers les trouvent cohérents.
+        routeWaypoints = result.waypoints();
+        route.set(result.route());
+        climbs.set(result.climbs());
+        elevationProfile.set(result.elevationProfile());
+        computing.set(false);
+    }
 
-        //Si aucune route n'existe entre deux points de passage consécutifs de la liste, alors
-        //l'attribut route et celui du profil sont mis à une valeur nulle. Ainsi, la route n'est
-        //toujours pas valide.
-        for (int i = 0; i < waypointList.size() - 1; i++) {
-            if (!isRouteExisting(waypointList.get(i), waypointList.get(i + 1))) {
-                route.set(null);
-                elevationProfile.set(null);
-                return false;
-            }
+    /**
+     * Méthode privée, exécutée par le fil de calcul, calculant l'itinéraire reliant les points
+     * de passage donnés, son profil et ses montées ; l'itinéraire et le profil sont nuls si
+     * deux points de passage consécutifs ne sont reliés par aucun itinéraire.
+     * @param waypoints Points de passage, au moins deux.
+     * @return Le résultat du calcul.
+     * @throws CancellationException Si le calcul a été annulé.
+     */
+    private Result compute(List<Waypoint> waypoints) {
+        List<Route> routeList = new ArrayList<>();
+        for (int i = 0; i < waypoints.size() - 1; i++) {
+            if (Thread.currentThread().isInterrupted()) throw new CancellationException();
+            //Cas où deux points de passage se suivent.
+            if (waypoints.get(i).nodeId() == waypoints.get(i + 1).nodeId()) continue;
+            Route route = getRouteFromCacheMemory(waypoints.get(i), waypoints.get(i + 1));
+            if (route == null) return Result.empty(waypoints);
+            routeList.add(route);
         }
-
-        //Si les deux précédents cas sont évités, alors la route est bien valide.
-        return true;
+        //Tous les points de passage sont au même nœud : il n'y a aucun itinéraire.
+        if (routeList.isEmpty()) return Result.empty(waypoints);
+        Route route = new MultiRoute(routeList);
+        ElevationProfile profile = computeElevationProfile(route);
+        //Les montées sont détectées ici, en temps linéaire, plutôt que sur le fil JavaFX.
+        return new Result(waypoints, route, profile, ClimbDetector.climbs(profile));
     }
 
     /**
@@ -232,20 +349,6 @@ public final class RouteBean {
                 s -> routeComputer.bestRouteBetween(s.getKey(), s.getValue()));
     }
 
-    /**
-     * Méthode privée vérifiant si la route entre les deux points de passage passés en paramètres
-     * est valide ou non.
-     * @param firstWaypoint Premier point de passage et point de départ de la route à vérifier.
-     * @param secondWaypoint Second point de passage et point d'arrivée de la route à vérifier.
-     * @return Retourne vrai si et seulement si la route entre les deux points de passage passés
-     * en paramètres est valide.
-     */
-    private boolean isRouteExisting(Waypoint firstWaypoint, Waypoint secondWaypoint) {
-        //Cas où deux points de passage se suivent.
-        if (firstWaypoint.nodeId() == secondWaypoint.nodeId()) return true;
-        return getRouteFromCacheMemory(firstWaypoint, secondWaypoint) != null;
-    }
-
     /**
      * Méthode privée calculant le profil d'une route passée en paramètre de la fonction.
      * @param route Route de laquelle il faut calculer le profil.
@@ -254,4 +357,24 @@ public final class RouteBean {
     private ElevationProfile computeElevationProfile(Route route) {
         return ElevationProfileComputer.elevationProfile(route, MAX_STEP_LENGTH);
     }
+
+    /**
+     * Enregistrement privé représentant le résultat d'un calcul d'itinéraire.
+     * @param waypoints Points de passage à partir desquels il a été calculé.
+     * @param route Itinéraire, ou null.
+     * @param elevationProfile Profil de l'itinéraire, ou null.
+     * @param climbs Montées catégorisées de l'itinéraire, vide s'il n'y en a pas.
+     */
+    private record Result(List<Waypoint> waypoints, Route route,
+                          ElevationProfile elevationProfile, List<Climb> climbs) {
+
+        /**
+         * Méthode retournant le résultat d'un calcul n'ayant donné aucun itinéraire.
+         * @param waypoints Points de passage à partir desquels il a été calculé.
+         * @return Le résultat sans itinéraire, profil ni montées.
+         */
+        static Result empty(List<Waypoint> waypoints) {
+            return new Result(waypoints, null, null, List.of());
+        }
+    }
 }
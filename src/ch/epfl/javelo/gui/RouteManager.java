@@ -1,14 +1,16 @@
 package ch.epfl.javelo.gui;
 
-import ch.epfl.javelo.projection.PointCh;
 import ch.epfl.javelo.projection.PointWebMercator;
+import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
-import javafx.scene.shape.Polyline;
+import javafx.scene.shape.StrokeLineJoin;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -16,6 +18,10 @@ import java.util.List;
  * RouteManager
  * <p>
  * Classe gérant l'affichage de l'itinéraire et (une partie de) l'interaction avec lui.
+ * <p>
+ * La ligne de l'itinéraire est dessinée sur un canevas, à partir de sa version simplifiée pour
+ * le niveau de zoom courant (voir RoutePolyline) ; seuls les segments touchant la portion de
+ * carte affichée sont dessinés.
  *
  * @author Jean Nordmann (344692)
  * @author Maxime Ducourau (329544)
@@ -26,6 +32,15 @@ public final class RouteManager {
     //Constante définissant le rayon du disque représentant la position mise en évidence.
     private static final double RADIUS_HIGHLIGHTED_POINT = 5;
 
+    //Constantes définissant la couleur et la largeur, en pixels, de la ligne de l'itinéraire.
+    private static final Color ROUTE_COLOR = Color.hsb(0, 1, 1, 0.6);
+    private static final double ROUTE_WIDTH = 4;
+
+    //Constante définissant la marge, en pixels, autour de la portion de carte affichée dans
+    //laquelle les segments de l'itinéraire sont tout de même dessinés, afin que l'épaisseur de
+    //la ligne ne soit jamais coupée au bord.
+    private static final double CLIP_MARGIN = ROUTE_WIDTH;
+
     /**
      * Attribut représentant le bean de l'itinéraire.
      */
@@ -38,9 +53,19 @@ public final class RouteManager {
     private final ReadOnlyObjectProperty<MapViewParameters> mapViewParameters;
 
     /**
-     * Attribut représentant la polyline.
+     * Attribut représentant le canevas sur lequel la ligne de l'itinéraire est dessinée.
+     */
+    private final Canvas canvas;
+
+    /**
+     * Attribut représentant la ligne de l'itinéraire affiché, ou null s'il n'y en a pas.
+     */
+    private RoutePolyline routePolyline;
+
+    /**
+     * Booléen dont la valeur représente si un nouveau dessin est nécessaire.
      */
-    private final Polyline polyline;
+    private boolean redrawNeeded;
 
     /**
      * Attribut représentant le disque de la position mise en évidence.
@@ -65,14 +90,20 @@ public final class RouteManager {
     public RouteManager(RouteBean routeBean, ObjectProperty<MapViewParameters> mapViewParameters) {
         this.routeBean = routeBean;
         this.mapViewParameters = mapViewParameters;
-        this.polyline = new Polyline();
-        polyline.setId("route");
+        this.canvas = new Canvas();
         this.highlightCircle = new Circle(RADIUS_HIGHLIGHTED_POINT);
         highlightCircle.setId("highlight");
-        pane = new Pane();
+        pane = new Pane(canvas);
 
         //Permet d'éviter de bloquer l'interaction avec les panneaux en arrière-plan.
         pane.setPickOnBounds(false);
+        canvas.setMouseTransparent(true);
+
+        //Lie les dimensions du canevas à celles du panneau.
+        canvas.widthProperty().bind(pane.widthProperty());
+        canvas.heightProperty().bind(pane.heightProperty());
+
+        if (routeBean.getRoute() != null) routePolyline = new RoutePolyline(routeBean.getRoute());
 
         //Construit le marqueur une première fois.
         constructMarker();
@@ -90,33 +121,39 @@ public final class RouteManager {
     }
 
     /**
-     * Méthode privée construisant la polyline.
+     * Méthode privée dessinant la ligne de l'itinéraire sur le canevas. Les segments dont la
+     * boîte englobante ne touche pas la portion de carte affichée sont ignorés, et le tracé est
+     * interrompu à leur place.
      */
-    private void constructPolyline() {
-        //Retire l'ancienne ligne.
-        pane.getChildren().remove(polyline);
-        List<Double> coordinates = new ArrayList<>();
-        List<PointCh> pointChList = routeBean.getRoute().points();
+    private void drawRoute() {
+        GraphicsContext graphicsContext = canvas.getGraphicsContext2D();
+        graphicsContext.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        if (routePolyline == null) return;
+
         MapViewParameters actualMVP = mapViewParameters.get();
-        //Permet de mettre le premier point de l'itinéraire à la coordonnée (0,0) de la
-        //polyline.
-        //Attention → il faut encore la placer à la bonne position sur l'écran.
-        double xOffset = actualMVP.viewX(PointWebMercator.ofPointCh(pointChList.get(0))),
-                yOffset = actualMVP.viewX(PointWebMercator.ofPointCh(pointChList.get(0)));
-        for (PointCh pointCh : pointChList) {
-            PointWebMercator pointWebMercator = PointWebMercator.ofPointCh(pointCh);
-            coordinates.add(actualMVP.viewX(pointWebMercator) - xOffset);
-            coordinates.add(actualMVP.viewY(pointWebMercator) - yOffset);
+        double[] points = routePolyline.coordinatesAt(actualMVP.zoomLevel());
+        double originX = actualMVP.x(), originY = actualMVP.y();
+        double minX = originX - CLIP_MARGIN, maxX = originX + canvas.getWidth() + CLIP_MARGIN;
+        double minY = originY - CLIP_MARGIN, maxY = originY + canvas.getHeight() + CLIP_MARGIN;
+
+        graphicsContext.setStroke(ROUTE_COLOR);
+        graphicsContext.setLineWidth(ROUTE_WIDTH);
+        graphicsContext.setLineJoin(StrokeLineJoin.ROUND);
+        graphicsContext.beginPath();
+        boolean drawing = false;
+        for (int i = 2; i < points.length; i += 2) {
+            double x0 = points[i - 2], y0 = points[i - 1], x1 = points[i], y1 = points[i + 1];
+            if (Math.max(x0, x1) < minX || Math.min(x0, x1) > maxX
+                    || Math.max(y0, y1) < minY || Math.min(y0, y1) > maxY) {
+                drawing = false;
+                continue;
+            }
+            //Un nouveau morceau de ligne commence après un segment invisible.
+            if (!drawing) graphicsContext.moveTo(x0 - originX, y0 - originY);
+            graphicsContext.lineTo(x1 - originX, y1 - originY);
+            drawing = true;
         }
-        //Modifie toutes les coordonnées de la polyline.
-        polyline.getPoints().setAll(coordinates);
-
-        //Modifie les coordonnées X et Y sur l'écran de la ligne à afficher.
-        polyline.setLayoutX(xOffset);
-        polyline.setLayoutY(yOffset);
-        //Ajoute la nouvelle ligne au panneau.
-        pane.getChildren().add(polyline);
-
+        graphicsContext.stroke();
     }
 
     /**
@@ -158,34 +195,32 @@ public final class RouteManager {
      * Méthode privée configurant les auditeurs, afin de positionner et/ou
      * rendre (in)visible le disque indiquant la position mise en évidence
      * lorsque celle-ci change, lorsque la route change, ou lorsque les
-     * paramètres de la carte changent, ensuite de reconstruire totalement
-     * et/ou rendre (in)visible la ligne représentant l'itinéraire
-     * lorsque ce dernier change, enfin de repositionner -sans la reconstruire-
-     * la polyline lorsque la carte a été glissée, mais que son niveau de zoom
-     * n'a pas changé.
+     * paramètres de la carte changent, ensuite de redessiner la ligne
+     * représentant l'itinéraire lorsque ce dernier, les paramètres de la
+     * carte ou les dimensions du canevas changent.
      */
     private void setUpListeners() {
 
         //Auditeur nous permettant d'ajouter un point si on clique sur le marqueur.
         highlightCircle.setOnMouseClicked(e -> clickOnHighlightMarker());
 
-        mapViewParameters.addListener((p, oldS, newS) -> {
-            if (oldS.zoomLevel() != newS.zoomLevel()) {
-                //Pour éviter de redessiner la ligne de l'itinéraire si la route est nulle.
-                if (routeBean.getRoute() != null) constructPolyline();
+        //Ajoute un auditeur pour redessiner la ligne que lorsque cela est nécessaire, au plus une
+        //fois par pulsation.
+        canvas.sceneProperty().addListener((p, oldS, newS) -> {
+            assert oldS == null;
+            newS.addPreLayoutPulseListener(this::redrawIfNeeded);
+        });
+        canvas.widthProperty().addListener((p, oldS, newS) -> redrawOnNextPulse());
+        canvas.heightProperty().addListener((p, oldS, newS) -> redrawOnNextPulse());
 
-                constructMarker();
-            }
+        mapViewParameters.addListener((p, oldS, newS) -> {
+            redrawOnNextPulse();
+            if (oldS.zoomLevel() != newS.zoomLevel()) constructMarker();
         });
-        //Auditeur nous permettant de déplacer la ligne de l'itinéraire et le marqueur si on bouge
-        //la carte (mais pas le niveau de zoom, car s'il est aussi modifié l'itinéraire est de
-        //toute façon redessiné).
+        //Auditeur nous permettant de déplacer le marqueur si on bouge la carte (mais pas le
+        //niveau de zoom, car s'il est aussi modifié le marqueur est de toute façon reconstruit).
         mapViewParameters.addListener((p, oldS, newS) -> {
             if (!oldS.topLeft().equals(newS.topLeft()) && oldS.zoomLevel() == newS.zoomLevel()) {
-                polyline.setLayoutX(polyline.getLayoutX() + oldS.topLeft().getX()
-                        - newS.topLeft().getX());
-                polyline.setLayoutY(polyline.getLayoutY() + oldS.topLeft().getY()
-                        - newS.topLeft().getY());
                 highlightCircle.setLayoutX(highlightCircle.getLayoutX() + oldS.topLeft().getX()
                         - newS.topLeft().getX());
                 highlightCircle.setLayoutY(highlightCircle.getLayoutY() + oldS.topLeft().getY()
@@ -193,22 +228,14 @@ public final class RouteManager {
             }
         });
 
-        //Auditeur nous permettant de d'actualiser la visibilité de la ligne et du marqueur,
-        //afin qu'ils deviennent invisibles s'il n'y a pas d'itinéraire.
+        //Auditeur nous permettant de redessiner la ligne et d'actualiser la visibilité du
+        //marqueur, afin qu'il devienne invisible s'il n'y a pas d'itinéraire.
         routeBean.routeProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue != null) {
-                //Permet de rendre visible la ligne et le marqueur si le nouvel itinéraire n'est
-                //plus nul.
-                constructPolyline();
-                polyline.setVisible(true);
-                highlightCircle.setVisible(true);
-            }
-            if (oldValue != null && newValue == null) {
-                //Permet de rendre invisible la ligne et le marqueur si le nouvel itinéraire est
-                //devenu nul.
-                polyline.setVisible(false);
-                highlightCircle.setVisible(false);
-            }
+            //La ligne simplifiée n'est calculée qu'une fois par itinéraire et niveau de zoom.
+            routePolyline = newValue == null ? null : new RoutePolyline(newValue);
+            redrawOnNextPulse();
+            if (newValue != null) highlightCircle.setVisible(true);
+            if (oldValue != null && newValue == null) highlightCircle.setVisible(false);
         });
 
         //Auditeur permettant de rendre la route invisible si sa valeur est NaN.
@@ -225,4 +252,22 @@ public final class RouteManager {
         //Auditeur nous permettant de redessiner le marqueur si la route change.
         routeBean.routeProperty().addListener((p, oldS, newS) -> constructMarker());
     }
+
+    /**
+     * Méthode redessinant la ligne de l'itinéraire si le booléen le demande.
+     */
+    private void redrawIfNeeded() {
+        if (!redrawNeeded) return;
+        redrawNeeded = false;
+        drawRoute();
+    }
+
+    /**
+     * Méthode demandant que la ligne de l'itinéraire soit redessinée lors de la prochaine
+     * pulsation.
+     */
+    private void redrawOnNextPulse() {
+        redrawNeeded = true;
+        Platform.requestNextPulse();
+    }
 }
@@ -0,0 +1,158 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.WebMercator;
+import ch.epfl.javelo.routing.Route;
+
+/**
+ * RoutePolyline
+ * <p>
+ * Classe représentant la ligne d'un itinéraire telle qu'elle est dessinée sur la carte. Les
+ * points de l'itinéraire sont projetés une seule fois en coordonnées Web Mercator ; pour chaque
+ * niveau de zoom, la ligne est ensuite simplifiée au moyen de l'algorithme de Douglas-Peucker,
+ * en ne gardant que les points qui s'écartent de plus d'une fraction de pixel de la ligne
+ * simplifiée, puis conservée dans un cache. Un long itinéraire affiché à un faible niveau de
+ * zoom est ainsi dessiné avec un nombre de points proportionnel à sa taille à l'écran.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class RoutePolyline {
+
+    //Constante représentant le niveau de zoom maximal pour lequel une ligne peut être obtenue.
+    private static final int MAX_ZOOM_LEVEL = 20;
+
+    //Constante représentant l'écart maximal, en pixels, entre la ligne simplifiée et la ligne
+    //complète.
+    private static final double TOLERANCE_PIXELS = 0.5;
+
+    //Constante représentant le logarithme en base 2 de la taille en pixels d'une tuile.
+    private static final int TILE_SIZE_LOG2 = 8;
+
+    /**
+     * Attribut représentant les coordonnées Web Mercator de tous les points de l'itinéraire,
+     * x et y alternées.
+     */
+    private final double[] coordinates;
+
+    /**
+     * Attribut représentant, pour chaque niveau de zoom, les coordonnées en pixels de la ligne
+     * simplifiée, x et y alternées, ou null si elles n'ont pas encore été calculées.
+     */
+    private final double[][] simplified = new double[MAX_ZOOM_LEVEL + 1][];
+
+    /**
+     * Constructeur projetant les points de l'itinéraire donné.
+     * @param route Itinéraire donné.
+     */
+    RoutePolyline(Route route) {
+        int count = route.pointCount();
+        coordinates = new double[2 * count];
+        for (int i = 0; i < count; i += 1) {
+            double e = route.pointE(i), n = route.pointN(i);
+            coordinates[2 * i] = WebMercator.x(Ch1903.lon(e, n));
+            coordinates[2 * i + 1] = WebMercator.y(Ch1903.lat(e, n));
+        }
+    }
+
+    /**
+     * Retourne les coordonnées en pixels, au niveau de zoom donné, des points de la ligne
+     * simplifiée pour ce niveau, x et y alternées ; le tableau retourné est partagé et ne doit
+     * pas être modifié. Lève IllegalArgumentException si le niveau de zoom est invalide.
+     * @param zoomLevel Niveau de zoom.
+     * @return Les coordonnées des points de la ligne simplifiée.
+     */
+    double[] coordinatesAt(int zoomLevel) {
+        Preconditions.checkArgument(zoomLevel >= 0 && zoomLevel <= MAX_ZOOM_LEVEL);
+        double[] points = simplified[zoomLevel];
+        if (points == null) points = simplified[zoomLevel] = simplify(zoomLevel);
+        return points;
+    }
+
+    /**
+     * Retourne le nombre de points de la ligne complète.
+     * @return Le nombre de points de l'itinéraire.
+     */
+    int pointCount() {
+        return coordinates.length / 2;
+    }
+
+    /**
+     * Méthode privée simplifiant la ligne pour le niveau de zoom donné. La version itérative de
+     * l'algorithme de Douglas-Peucker est utilisée, afin que la profondeur de la pile ne dépende
+     * pas du nombre de points.
+     * @param zoomLevel Niveau de zoom.
+     * @return Les coordonnées en pixels des points gardés.
+     */
+    private double[] simplify(int zoomLevel) {
+        double scale = Math.scalb(1d, TILE_SIZE_LOG2 + zoomLevel);
+        double tolerance = TOLERANCE_PIXELS / scale;
+        double squaredTolerance = tolerance * tolerance;
+        int count = pointCount();
+        boolean[] kept = new boolean[count];
+        kept[0] = kept[count - 1] = true;
+        int keptCount = count > 1 ? 2 : 1;
+
+        //Pile des plages [first, last] restant à simplifier.
+        int[] stack = new int[2 * count];
+        int top = 0;
+        if (count > 2) {
+            stack[top++] = 0;
+            stack[top++] = count - 1;
+        }
+        while (top > 0) {
+            int last = stack[--top], first = stack[--top];
+            int farthest = -1;
+            double farthestDistance = squaredTolerance;
+            for (int i = first + 1; i < last; i += 1) {
+                double distance = squaredDistanceToSegment(i, first, last);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest < 0) continue;
+            kept[farthest] = true;
+            keptCount += 1;
+            if (farthest - first > 1) {
+                stack[top++] = first;
+                stack[top++] = farthest;
+            }
+            if (last - farthest > 1) {
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        double[] points = new double[2 * keptCount];
+        int index = 0;
+        for (int i = 0; i < count; i += 1) {
+            if (!kept[i]) continue;
+            points[index++] = coordinates[2 * i] * scale;
+            points[index++] = coordinates[2 * i + 1] * scale;
+        }
+        return points;
+    }
+
+    /**
+     * Méthode privée retournant le carré de la distance entre le point d'index donné et le
+     * segment reliant les deux autres points donnés.
+     * @param point Index du point.
+     * @param from Index du début du segment.
+     * @param to Index de la fin du segment.
+     * @return Le carré de la distance du point au segment.
+     */
+    private double squaredDistanceToSegment(int point, int from, int to) {
+        double x = coordinates[2 * point], y = coordinates[2 * point + 1];
+        double x1 = coordinates[2 * from], y1 = coordinates[2 * from + 1];
+        double dx = coordinates[2 * to] - x1, dy = coordinates[2 * to + 1] - y1;
+        double squaredLength = dx * dx + dy * dy;
+        double t = squaredLength == 0
+                ? 0
+                : Math2.clamp(0, ((x - x1) * dx + (y - y1) * dy) / squaredLength, 1);
+        return Math2.squaredNorm(x1 + t * dx - x, y1 + t * dy - y);
+    }
+}
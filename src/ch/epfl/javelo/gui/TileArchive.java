@@ -0,0 +1,376 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.projection.WebMercator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * TileArchive
+ * <p>
+ * Classe représentant une archive de tuiles en lecture seule, contenant dans un unique fichier
+ * les images d'un ensemble de tuiles, afin de disposer de cartes hors ligne faciles à copier.
+ * Le fichier, lu par projection en mémoire, est composé :
+ * <ul>
+ *     <li>d'un en-tête de 16 octets : nombre magique, version, nombre n de tuiles et un
+ *     entier nul d'alignement ;</li>
+ *     <li>des n clefs des tuiles (voir keyOf), de type long, triées par ordre croissant ;</li>
+ *     <li>des n + 1 positions, dans le fichier, du début du contenu de chaque tuile, la dernière
+ *     étant la taille du fichier ;</li>
+ *     <li>des contenus des tuiles, concaténés dans l'ordre des clefs.</li>
+ * </ul>
+ * Trouver une tuile est donc une recherche dichotomique dans les clefs, et son contenu est une
+ * tranche du fichier projeté, sans copie. Les archives sont limitées à 2 Gio, taille maximale
+ * d'une projection.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class TileArchive {
+
+    //Constantes représentant le nombre magique ("JVTA") et la version du format.
+    private static final int MAGIC = 0x4A565441;
+    private static final int VERSION = 1;
+
+    //Constante représentant la taille en octets de l'en-tête.
+    private static final int HEADER_BYTES = 16;
+
+    //Constantes représentant le nombre de bits des coordonnées X et Y dans une clef.
+    private static final int COORDINATE_BITS = 21;
+
+    /**
+     * Interface fonctionnelle privée représentant l'écriture du contenu de la tuile d'index
+     * donné dans le canal donné.
+     */
+    @FunctionalInterface
+    private interface TileContent {
+        void writeTo(int index, FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Attribut représentant le fichier projeté en mémoire.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Attribut représentant les clefs triées des tuiles.
+     */
+    private final LongBuffer keys;
+
+    /**
+     * Attribut représentant les positions du contenu des tuiles.
+     */
+    private final LongBuffer offsets;
+
+    /**
+     * Constructeur privé initialisant l'archive dont le contenu est donné, après en avoir
+     * vérifié l'en-tête et l'index.
+     * @param buffer Contenu du fichier de l'archive.
+     * @throws IOException Si le contenu n'est pas celui d'une archive valide.
+     */
+    private TileArchive(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION) {
+            throw new IOException("not a tile archive");
+        }
+        int count = buffer.getInt(8);
+        long indexBytes = HEADER_BYTES + 16L * count + 8;
+        if (count < 0 || indexBytes > buffer.capacity()) throw new IOException("corrupt index");
+        this.buffer = buffer;
+        this.keys = buffer.slice(HEADER_BYTES, 8 * count).asLongBuffer();
+        this.offsets = buffer.slice(HEADER_BYTES + 8 * count, 8 * (count + 1)).asLongBuffer();
+
+        //Les clefs doivent être strictement croissantes, et les contenus se suivre jusqu'à la
+        //fin du fichier.
+        if (offsets.get(0) != indexBytes || offsets.get(count) != buffer.capacity())
+            throw new IOException("corrupt index");
+        for (int i = 0; i < count; i++) {
+            if (offsets.get(i + 1) < offsets.get(i) || i > 0 && keys.get(i) <= keys.get(i - 1))
+                throw new IOException("corrupt index");
+        }
+    }
+
+    /**
+     * Ouvre l'archive stockée dans le fichier donné, en le projetant en mémoire.
+     * @param file Fichier de l'archive.
+     * @return L'archive.
+     * @throws IOException Si le fichier ne peut pas être lu, est trop grand, ou n'est pas une
+     * archive valide.
+     */
+    static TileArchive open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("archive too large");
+            return new TileArchive(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Crée une archive de tuiles. Usage :
+     * <ul>
+     *     <li>TileArchive import répertoire archive.jvta : archive toutes les tuiles d'un
+     *     répertoire organisé comme le cache disque ;</li>
+     *     <li>TileArchive export archive.jvta extrait.jvta lonMin latMin lonMax latMax zoomMin
+     *     zoomMax : extrait d'une archive les tuiles recouvrant le rectangle donné (en degrés,
+     *     WGS 84) aux niveaux de zoom donnés.</li>
+     * </ul>
+     * @param args Arguments de la ligne de commande.
+     * @throws IOException En cas d'erreur de lecture ou d'écriture.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("import")) {
+            int count = importDirectory(Path.of(args[1]), Path.of(args[2]));
+            System.out.println(count + " tuiles archivées");
+        } else if (args.length == 9 && args[0].equals("export")) {
+            double lonMin = Math.toRadians(Double.parseDouble(args[3]));
+            double latMin = Math.toRadians(Double.parseDouble(args[4]));
+            double lonMax = Math.toRadians(Double.parseDouble(args[5]));
+            double latMax = Math.toRadians(Double.parseDouble(args[6]));
+            //L'axe y de Web Mercator est dirigé vers le sud : le coin haut-gauche a la latitude
+            //maximale.
+            PointWebMercator topLeft =
+                    new PointWebMercator(WebMercator.x(lonMin), WebMercator.y(latMax));
+            PointWebMercator bottomRight =
+                    new PointWebMercator(WebMercator.x(lonMax), WebMercator.y(latMin));
+            int count = open(Path.of(args[1])).export(Path.of(args[2]), topLeft, bottomRight,
+                    Integer.parseInt(args[7]), Integer.parseInt(args[8]));
+            System.out.println(count + " tuiles exportées");
+        } else {
+            System.err.println("usage: TileArchive import <répertoire> <archive.jvta>");
+            System.err.println("       TileArchive export <archive.jvta> <extrait.jvta> "
+                    + "<lonMin> <latMin> <lonMax> <latMax> <zoomMin> <zoomMax>");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Retourne le nombre de tuiles de l'archive.
+     * @return Le nombre de tuiles de l'archive.
+     */
+    int size() {
+        return keys.capacity();
+    }
+
+    /**
+     * Retourne vrai si et seulement si l'archive contient la tuile donnée.
+     * @param tileId Identité de la tuile.
+     * @return Vrai si l'archive contient la tuile.
+     */
+    boolean contains(TileManager.TileId tileId) {
+        return indexOf(keyOf(tileId)) >= 0;
+    }
+
+    /**
+     * Retourne le contenu de la tuile donnée, sous la forme d'une tranche en lecture seule du
+     * fichier projeté, ou null si l'archive ne contient pas la tuile.
+     * @param tileId Identité de la tuile.
+     * @return Le contenu de la tuile, ou null.
+     */
+    ByteBuffer tileData(TileManager.TileId tileId) {
+        int index = indexOf(keyOf(tileId));
+        return index < 0 ? null : tileData(index);
+    }
+
+    /**
+     * Crée, dans le fichier donné, une archive contenant toutes les tuiles du répertoire donné,
+     * organisé comme le cache disque (zoom/x/y.png) ; les autres fichiers sont ignorés.
+     * @param directory Répertoire des tuiles.
+     * @param archive Fichier de l'archive à créer, remplacé s'il existe.
+     * @return Le nombre de tuiles de l'archive.
+     * @throws IOException En cas d'erreur de lecture ou d'écriture.
+     */
+    static int importDirectory(Path directory, Path archive) throws IOException {
+        List<Path> files = new ArrayList<>();
+        List<TileManager.TileId> tileIds = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(directory, 3)) {
+            for (Path file : (Iterable<Path>) paths::iterator) {
+                TileManager.TileId tileId = DiskTileCache.tileIdOf(directory, file);
+                if (tileId == null || !Files.isRegularFile(file)) continue;
+                files.add(file);
+                tileIds.add(tileId);
+            }
+        }
+
+        //Tri des tuiles par clef, au travers d'une permutation de leurs index.
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (i, j) -> Long.compare(keyOf(tileIds.get(i)), keyOf(tileIds.get(j))));
+        long[] sortedKeys = new long[order.length];
+        long[] lengths = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = keyOf(tileIds.get(order[i]));
+            lengths[i] = Files.size(files.get(order[i]));
+        }
+        write(archive, sortedKeys, lengths, (index, channel) -> {
+            try (FileChannel source = FileChannel.open(files.get(order[index]), READ)) {
+                long position = 0, size = lengths[index];
+                while (position < size) {
+                    long transferred = source.transferTo(position, size - position, channel);
+                    if (transferred == 0) throw new IOException("tile changed size");
+                    position += transferred;
+                }
+            }
+        });
+        return order.length;
+    }
+
+    /**
+     * Crée, dans le fichier donné, une archive contenant les tuiles de cette archive dont le
+     * niveau de zoom est compris dans l'intervalle donné et qui recouvrent, au moins en partie,
+     * le rectangle donné. Lève IllegalArgumentException si l'intervalle ou le rectangle est
+     * vide.
+     * @param archive Fichier de l'archive à créer, remplacé s'il existe.
+     * @param topLeft Coin haut-gauche du rectangle.
+     * @param bottomRight Coin bas-droite du rectangle.
+     * @param minZoom Niveau de zoom minimum.
+     * @param maxZoom Niveau de zoom maximum.
+     * @return Le nombre de tuiles de l'archive créée.
+     * @throws IOException En cas d'erreur d'écriture.
+     */
+    int export(Path archive, PointWebMercator topLeft, PointWebMercator bottomRight,
+               int minZoom, int maxZoom) throws IOException {
+        Preconditions.checkArgument(minZoom <= maxZoom && topLeft.x() <= bottomRight.x()
+                && topLeft.y() <= bottomRight.y());
+        List<Integer> selected = new ArrayList<>();
+        for (int i = 0; i < size(); i++) {
+            long key = keys.get(i);
+            int zoom = (int) (key >>> 2 * COORDINATE_BITS);
+            if (zoom < minZoom || zoom > maxZoom) continue;
+            int x = (int) (key >>> COORDINATE_BITS) & ((1 << COORDINATE_BITS) - 1);
+            int y = (int) key & ((1 << COORDINATE_BITS) - 1);
+            if (x >= tileIndex(topLeft.xAtZoomLevel(zoom))
+                    && x <= tileIndex(bottomRight.xAtZoomLevel(zoom))
+                    && y >= tileIndex(topLeft.yAtZoomLevel(zoom))
+                    && y <= tileIndex(bottomRight.yAtZoomLevel(zoom))) {
+                selected.add(i);
+            }
+        }
+
+        long[] selectedKeys = new long[selected.size()];
+        long[] lengths = new long[selected.size()];
+        for (int i = 0; i < selectedKeys.length; i++) {
+            selectedKeys[i] = keys.get(selected.get(i));
+            lengths[i] = tileData(selected.get(i)).remaining();
+        }
+        write(archive, selectedKeys, lengths, (index, channel) -> {
+            ByteBuffer data = tileData(selected.get(index));
+            while (data.hasRemaining()) channel.write(data);
+        });
+        return selectedKeys.length;
+    }
+
+    /**
+     * Méthode privée retournant la clef de la tuile donnée, formée de son niveau de zoom et de
+     * ses coordonnées X et Y, de sorte que l'ordre des clefs soit celui des niveaux de zoom,
+     * puis des coordonnées X, puis des coordonnées Y.
+     * @param tileId Identité de la tuile.
+     * @return La clef de la tuile.
+     */
+    private static long keyOf(TileManager.TileId tileId) {
+        return (long) tileId.zoomLevel() << 2 * COORDINATE_BITS
+                | (long) tileId.xTile() << COORDINATE_BITS
+                | tileId.yTile();
+    }
+
+    /**
+     * Méthode privée retournant l'index de la tuile contenant la coordonnée donnée, en pixels.
+     * @param pixel Coordonnée en pixels.
+     * @return L'index de la tuile.
+     */
+    private static int tileIndex(double pixel) {
+        return (int) Math.floor(pixel / 256);
+    }
+
+    /**
+     * Méthode privée retournant, par recherche dichotomique, l'index de la clef donnée, ou -1
+     * si l'archive ne la contient pas.
+     * @param key Clef d'une tuile.
+     * @return L'index de la clef, ou -1.
+     */
+    private int indexOf(long key) {
+        int low = 0, high = keys.capacity() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = keys.get(middle);
+            if (middleKey < key) low = middle + 1;
+            else if (middleKey > key) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Méthode privée retournant le contenu de la tuile d'index donné, sous la forme d'une
+     * tranche en lecture seule du fichier projeté.
+     * @param index Index de la tuile.
+     * @return Le contenu de la tuile.
+     */
+    private ByteBuffer tileData(int index) {
+        int start = (int) offsets.get(index);
+        int end = (int) offsets.get(index + 1);
+        return buffer.slice(start, end - start).asReadOnlyBuffer();
+    }
+
+    /**
+     * Méthode privée écrivant une archive dans le fichier donné. L'archive est d'abord écrite
+     * dans un fichier temporaire puis renommée, afin de ne jamais laisser d'archive partielle.
+     * @param archive Fichier de l'archive.
+     * @param keys Clefs triées des tuiles.
+     * @param lengths Taille du contenu de chaque tuile.
+     * @param content Écriture du contenu de chaque tuile.
+     * @throws IOException En cas d'erreur d'écriture, ou si l'archive dépasse 2 Gio.
+     */
+    private static void write(Path archive, long[] keys, long[] lengths, TileContent content)
+            throws IOException {
+        int count = keys.length;
+        long indexBytes = HEADER_BYTES + 16L * count + 8;
+        long totalBytes = indexBytes + Arrays.stream(lengths).sum();
+        if (totalBytes > Integer.MAX_VALUE) throw new IOException("archive too large");
+
+        ByteBuffer index = ByteBuffer.allocate((int) indexBytes);
+        index.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0);
+        for (long key : keys) index.putLong(key);
+        long offset = indexBytes;
+        for (long length : lengths) {
+            index.putLong(offset);
+            offset += length;
+        }
+        index.putLong(offset).flip();
+
+        Path absolute = archive.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temporary = Files.createTempFile(absolute.getParent(),
+                absolute.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, WRITE)) {
+                while (index.hasRemaining()) channel.write(index);
+                for (int i = 0; i < count; i++) content.writeTo(i, channel);
+                if (channel.size() != totalBytes) throw new IOException("tile changed size");
+            }
+            try {
+                Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -2,13 +2,20 @@ package ch.epfl.javelo.gui;
 
 import ch.epfl.javelo.Preconditions;
 import java.io.*;
-import java.net.URL;
-import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import javafx.scene.image.Image;
 
 
@@ -19,6 +26,23 @@ import javafx.scene.image.Image;
  * Classe publique et finale, représentant un gestionnaire de tuiles OSM. Son rôle est d'obtenir
  * les tuiles depuis un serveur de tuiles et de les stocker dans un cache mémoire et dans un cache
  * disque.
+ * <p>
+ * Les tuiles absentes du cache mémoire sont chargées en arrière-plan par un nombre borné de fils
+ * d'exécution, afin que le fil JavaFX ne soit jamais bloqué par le disque ou le réseau ; les
+ * demandes simultanées d'une même tuile partagent un unique chargement.
+ * <p>
+ * Le gestionnaire peut aussi précharger, avec une priorité inférieure, les tuiles qui seront
+ * probablement affichées prochainement : celles entourant la vue, en particulier dans la
+ * direction du déplacement, et celles des niveaux de zoom voisins. Un préchargement qui n'est
+ * plus pertinent lorsqu'il arrive en tête de file est abandonné.
+ * <p>
+ * Le cache disque est borné en octets ; une tuile qui y est périmée est affichée telle quelle,
+ * puis revalidée auprès du serveur en arrière-plan. Les tuiles d'une éventuelle archive de
+ * tuiles (voir TileArchive) placée dans le répertoire du cache sont lues avant celles du cache
+ * disque et ne sont jamais téléchargées.
+ * <p>
+ * Les tuiles absentes des caches sont demandées à une source de tuiles (voir TileSource), par
+ * défaut un serveur HTTP interrogé au travers d'un unique client réutilisant ses connexions.
  *
  * @author Jean Nordmann (344692)
  * @author Maxime Ducourau (329544)
@@ -26,27 +50,168 @@ import javafx.scene.image.Image;
 
 public final class TileManager {
 
-    //Constante représentant la taille du cache mémoire.
-    private static final int MEMORY_CACHE_SIZE = 100;
+    //Constante représentant la fraction de la mémoire maximale de la machine virtuelle
+    //attribuée au cache mémoire, et les bornes en octets de la taille de ce dernier.
+    private static final double MEMORY_CACHE_HEAP_FRACTION = 0.125;
+    private static final long MIN_MEMORY_CACHE_BYTES = 32L * 1024 * 1024;
+    private static final long MAX_MEMORY_CACHE_BYTES = 512L * 1024 * 1024;
 
-    //Constante représentant le facteur de chargement du cache mémoire à donner à la
-    //construction de ce cache.
-    private static final float MEMORY_CACHE_LOAD_FACTOR = 0.75f;
+    //Constante représentant le nombre de bandes du cache mémoire.
+    private static final int MEMORY_CACHE_STRIPES = 8;
+
+    //Constante représentant le nombre d'octets occupés par un pixel d'une image décodée.
+    private static final int BYTES_PER_PIXEL = 4;
+
+    //Constante représentant le nombre maximal de niveaux de zoom remontés pour trouver, dans le
+    //cache mémoire, une tuile ancêtre dont une partie remplace une tuile manquante.
+    private static final int MAX_ANCESTOR_LEVELS = 4;
+
+    //Constante représentant le nombre de fils d'exécution chargeant les tuiles.
+    private static final int LOADER_THREAD_COUNT = 4;
+
+    //Constantes représentant la priorité des chargements de tuiles affichées et celle des
+    //préchargements (la plus petite valeur passant en premier).
+    private static final int VISIBLE_PRIORITY = 0;
+    private static final int PREFETCH_PRIORITY = 1;
+
+    //Constante représentant la priorité des revalidations de tuiles périmées du cache disque.
+    private static final int REVALIDATION_PRIORITY = 2;
+
+    //Constante représentant le nombre maximal d'octets occupés par défaut par le cache disque.
+    private static final long DEFAULT_DISK_CACHE_BYTES = 512L * 1024 * 1024;
+
+    //Constante représentant le nom du fichier de l'archive de tuiles, dans le répertoire donné
+    //à la construction.
+    private static final String ARCHIVE_FILE_NAME = "tiles.jvta";
+
+    //Constante représentant la durée après laquelle une tuile du cache disque est périmée.
+    private static final Duration DISK_CACHE_TIME_TO_LIVE = Duration.ofDays(7);
+
+    //Constante représentant la taille en pixels d'une tuile.
+    private static final int TILE_SIZE = 256;
+
+    //Constante représentant le nombre maximal de tuiles préchargées pour une vue.
+    private static final int MAX_PREFETCH_TILES = 200;
+
+    //Constante représentant la durée, en secondes, de déplacement anticipée par le
+    //préchargement.
+    private static final double PREFETCH_LOOKAHEAD_SECONDS = 0.5;
 
     /**
-     * Attribut représentant le chemin d'accès au cache disque.
+     * Attribut représentant la source des tuiles absentes des caches.
      */
-    private final Path path;
+    private final TileSource tileSource;
 
     /**
-     * Attribut représentant le nom du serveur de tuiles.
+     * Attribut représentant le cache mémoire des tuiles.
      */
-    private final String name;
+    private final TileMemoryCache<CachedImage> memoryCache;
 
     /**
-     * Attribut représentant le cache mémoire des tuiles.
+     * Enregistrement privé représentant une image du cache mémoire et le nombre d'octets
+     * qu'elle occupe une fois décodée.
+     * @param image Image de la tuile.
+     * @param bytes Nombre d'octets occupés par l'image.
+     */
+    private record CachedImage(Image image, long bytes) {
+
+        /**
+         * Retourne l'entrée du cache mémoire de l'image donnée.
+         * @param image Image de la tuile.
+         * @return L'entrée du cache mémoire de l'image.
+         */
+        private static CachedImage of(Image image) {
+            return new CachedImage(image,
+                    (long) image.getWidth() * (long) image.getHeight() * BYTES_PER_PIXEL);
+        }
+    }
+
+    /**
+     * Attribut représentant le cache disque des tuiles.
+     */
+    private final DiskTileCache diskCache;
+
+    /**
+     * Attribut représentant l'archive de tuiles, ou null s'il n'y en a pas.
+     */
+    private final TileArchive archive;
+
+    /**
+     * Attribut représentant les tuiles périmées en cours de revalidation.
+     */
+    private final Set<TileId> revalidating = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Attribut représentant les fils d'exécution chargeant les tuiles en arrière-plan, dont la
+     * file est ordonnée par priorité puis par ordre de demande.
+     */
+    private final ThreadPoolExecutor loader;
+
+    /**
+     * Attribut associant à chaque tuile en cours de chargement son chargement.
+     */
+    private final ConcurrentHashMap<TileId, Load> inFlight;
+
+    /**
+     * Attribut représentant le numéro de la prochaine tâche de chargement.
+     */
+    private final AtomicLong taskSequence = new AtomicLong();
+
+    /**
+     * Attribut représentant les tuiles que le dernier appel à prefetch juge utiles.
+     */
+    private volatile Set<TileId> prefetchTargets = Set.of();
+
+    /**
+     * Attribut représentant les tuiles préchargées pas encore demandées pour être affichées.
+     */
+    private final Set<TileId> prefetchedUnused = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Attributs représentant les compteurs des statistiques du gestionnaire.
+     */
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder prefetchHits = new LongAdder();
+    private final LongAdder archiveLoads = new LongAdder();
+    private final LongAdder diskLoads = new LongAdder();
+    private final LongAdder networkLoads = new LongAdder();
+    private final LongAdder prefetchesQueued = new LongAdder();
+    private final LongAdder prefetchesCancelled = new LongAdder();
+
+    /**
+     * Enregistrement représentant les statistiques d'un gestionnaire de tuiles.
+     * @param requests Nombre de demandes d'images de tuiles à afficher.
+     * @param memoryHits Nombre de ces demandes satisfaites par le cache mémoire.
+     * @param prefetchHits Nombre de ces demandes satisfaites par une tuile préchargée.
+     * @param archiveLoads Nombre de tuiles chargées depuis l'archive de tuiles.
+     * @param diskLoads Nombre de tuiles chargées depuis le cache disque.
+     * @param networkLoads Nombre de tuiles téléchargées depuis le serveur.
+     * @param prefetchesQueued Nombre de préchargements lancés.
+     * @param prefetchesCancelled Nombre de préchargements abandonnés.
+     */
+    public record Statistics(long requests, long memoryHits, long prefetchHits,
+                             long archiveLoads, long diskLoads, long networkLoads,
+                             long prefetchesQueued, long prefetchesCancelled) {
+
+        /**
+         * Retourne la proportion des demandes satisfaites par le cache mémoire.
+         * @return Le taux de succès du cache mémoire, entre 0 et 1.
+         */
+        public double hitRate() {
+            return requests == 0 ? 0 : (double) memoryHits / requests;
+        }
+    }
+
+    /**
+     * Enregistrement représentant la partie carrée d'une image de tuile ancêtre recouverte par
+     * une tuile manquante, qu'il suffit d'agrandir à la taille d'une tuile pour la remplacer.
+     * @param image Image de la tuile ancêtre.
+     * @param x Coordonnée X, en pixels, du coin haut-gauche de la partie dans l'image.
+     * @param y Coordonnée Y, en pixels, du coin haut-gauche de la partie dans l'image.
+     * @param size Côté, en pixels, de la partie.
      */
-    private final LinkedHashMap<TileId, Image> memoryCache;
+    public record AncestorPart(Image image, int x, int y, int size) {}
 
     /**
      * Enregistrement contenant une unique méthode statique nous permettant de vérifier si la tuile
@@ -100,117 +265,473 @@ public final class TileManager {
      */
 
     public TileManager(Path path, String name) {
-        this.path = path;
-        this.name = name;
-        this.memoryCache = new LinkedHashMap<>(MEMORY_CACHE_SIZE, MEMORY_CACHE_LOAD_FACTOR, true);
+        this(path, new HttpTileSource("https://" + name), DEFAULT_DISK_CACHE_BYTES,
+                DiskTileCache.EvictionPolicy.LRU);
     }
 
     /**
-     * Méthode publique retournant l'image associée à la tuile donnée en paramètre de la méthode.
+     * Constructeur fabriquant un TileManager dont le cache disque est borné au nombre d'octets
+     * donné et évincé selon la politique donnée ; l'index du cache disque est construit en
+     * parcourant une fois son répertoire, et l'archive de tuiles est ouverte si elle existe.
+     * Lève UncheckedIOException si ce parcours échoue ou si l'archive n'est pas valide.
+     * @param path Chemin d'accès au répertoire, contenant le cache disque, de type Path.
+     * @param tileSource Source des tuiles absentes des caches.
+     * @param diskCacheBytes Nombre maximal d'octets occupés par le cache disque.
+     * @param evictionPolicy Politique d'éviction du cache disque.
+     */
+
+    TileManager(Path path, TileSource tileSource, long diskCacheBytes,
+                DiskTileCache.EvictionPolicy evictionPolicy) {
+        this.tileSource = tileSource;
+        try {
+            this.diskCache = new DiskTileCache(path.resolve("osm-cache"), diskCacheBytes,
+                    DISK_CACHE_TIME_TO_LIVE, evictionPolicy);
+            Path archivePath = path.resolve(ARCHIVE_FILE_NAME);
+            this.archive = Files.exists(archivePath) ? TileArchive.open(archivePath) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long memoryCacheBytes = Math.max(MIN_MEMORY_CACHE_BYTES, Math.min(MAX_MEMORY_CACHE_BYTES,
+                (long) (Runtime.getRuntime().maxMemory() * MEMORY_CACHE_HEAP_FRACTION)));
+        this.memoryCache = new TileMemoryCache<>(memoryCacheBytes, MEMORY_CACHE_STRIPES,
+                CachedImage::bytes, prefetchedUnused::remove);
+        this.inFlight = new ConcurrentHashMap<>();
+        //Fils démons, afin qu'un chargement en cours n'empêche pas l'application de se terminer.
+        this.loader = new ThreadPoolExecutor(LOADER_THREAD_COUNT, LOADER_THREAD_COUNT,
+                0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "JaVelo tile loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Méthode publique retournant l'image associée à la tuile donnée en paramètre de la méthode,
+     * en attendant au besoin la fin de son chargement.
      * @param tileId Identité de la tuile.
      * @return Retourne l'image associée à la tuile donnée.
      * @throws IOException En cas de flot corrompu, ou si une erreur liée aux flots se produit.
      */
 
     public Image imageForTileAt(TileId tileId) throws IOException {
-        //Cas où l'image est dans le cache mémoire.
-        if (memoryCache.containsKey(tileId)) return memoryCache.get(tileId);
-        Path directoryPath = pathOfTileId(tileId);
-        Path filePath = directoryPath.resolve(tileId.yTile + ".png");
+        try {
+            return imageFutureForTileAt(tileId).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) throw ioException;
+            throw e;
+        }
+    }
 
-        //Cas où l'image est dans le cache disque.
-        if (Files.exists(filePath)) {
-            return getImageFromDisk(tileId, filePath);
+    /**
+     * Méthode publique retournant le futur de l'image associée à la tuile donnée, déjà complété
+     * si elle se trouve dans le cache mémoire, et sinon complété, sur un fil de chargement, à
+     * la fin de son chargement en arrière-plan ; une tuile manquante n'est chargée qu'une fois,
+     * quels que soient le nombre et les fils des demandes. Le futur est complété
+     * exceptionnellement si le chargement échoue ; l'annuler n'annule pas le chargement.
+     * @param tileId Identité de la tuile.
+     * @return Le futur de l'image de la tuile.
+     */
 
-        } else {
-            //Cas où l'image doit être récupérée sur le serveur, car non-présente dans le cache
-            //disque.
-            URL u = new URL(linkOfTileId(tileId));
-            URLConnection c = u.openConnection();
-            c.setRequestProperty("User-Agent", "JaVelo");
-            Files.createDirectories(directoryPath);
-            //De nouveau, un bloc try-with-resource est utilisé pour fermer les flots.
-            //Crée un flot de sortie écrivant dans le fichier désiré.
-            try (InputStream i = c.getInputStream();
-                OutputStream outputStream = new FileOutputStream(filePath.toFile())) {
-                //Transfère les données du flot d'entrée, vers le flot de sortie.
-                i.transferTo(outputStream);
-                return getImageFromDisk(tileId, filePath);
+    public CompletableFuture<Image> imageFutureForTileAt(TileId tileId) {
+        Image image = requestedImage(tileId);
+        if (image != null) return CompletableFuture.completedFuture(image);
+        //Une copie, afin que l'annulation par un appelant n'affecte pas les autres.
+        return load(tileId, true, () -> {}).copy();
+    }
+
+    /**
+     * Méthode publique retournant l'image associée à la tuile donnée si elle se trouve dans le
+     * cache mémoire, et sinon lançant son chargement en arrière-plan et retournant null. Dans ce
+     * second cas, l'action donnée est exécutée, sur le fil de chargement, une fois l'image dans
+     * le cache mémoire ; elle ne l'est pas si la tuile était déjà demandée pour être affichée,
+     * ni si le chargement échoue.
+     * @param tileId Identité de la tuile.
+     * @param onLoaded Action à exécuter une fois l'image chargée.
+     * @return L'image de la tuile, ou null si elle n'est pas encore chargée.
+     */
+
+    public Image imageForTileAtIfLoaded(TileId tileId, Runnable onLoaded) {
+        Image image = requestedImage(tileId);
+        if (image == null) load(tileId, true, onLoaded);
+        return image;
+    }
+
+    /**
+     * Méthode publique retournant l'image associée à la tuile donnée si elle se trouve dans le
+     * cache mémoire, ou null sinon, sans jamais la charger.
+     * @param tileId Identité de la tuile.
+     * @return L'image de la tuile, ou null.
+     */
+
+    public Image cachedImageForTileAt(TileId tileId) {
+        CachedImage cached = memoryCache.get(tileId);
+        return cached == null ? null : cached.image();
+    }
+
+    /**
+     * Méthode publique retournant, pour remplacer la tuile donnée pas encore chargée, la partie
+     * qu'elle recouvre de sa plus proche tuile ancêtre présente dans le cache mémoire, ou null
+     * s'il n'y en a pas. Aucune image n'est créée : la partie est destinée à être agrandie lors
+     * de son dessin, et rien n'est ajouté au cache mémoire.
+     * @param tileId Identité de la tuile.
+     * @return La partie de l'image de la tuile ancêtre, ou null.
+     */
+
+    public AncestorPart ancestorPartForTileAt(TileId tileId) {
+        int maxLevels = Math.min(MAX_ANCESTOR_LEVELS, tileId.zoomLevel());
+        for (int levels = 1; levels <= maxLevels; levels++) {
+            Image ancestor = cachedImageForTileAt(new TileId(tileId.zoomLevel() - levels,
+                    tileId.xTile() >> levels, tileId.yTile() >> levels));
+            if (ancestor == null) continue;
+            int size = (int) ancestor.getWidth() >> levels;
+            int mask = (1 << levels) - 1;
+            return new AncestorPart(ancestor, (tileId.xTile() & mask) * size,
+                    (tileId.yTile() & mask) * size, size);
+        }
+        return null;
+    }
+
+    /**
+     * Méthode publique préchargeant en arrière-plan, avec une priorité inférieure à celle des
+     * tuiles affichées, les tuiles probablement nécessaires prochainement pour la vue donnée :
+     * un anneau d'une tuile autour de la vue, étendu du déplacement prévu d'après la vitesse
+     * donnée, la moitié centrale de la vue au niveau de zoom suivant, et une vue deux fois plus
+     * grande au niveau précédent. Les préchargements encore en attente qui ne font plus partie
+     * de cet ensemble sont abandonnés.
+     * @param view Paramètres de la vue affichée.
+     * @param width Largeur de la vue, en pixels.
+     * @param height Hauteur de la vue, en pixels.
+     * @param velocityX Vitesse de déplacement horizontal de la vue, en pixels par seconde.
+     * @param velocityY Vitesse de déplacement vertical de la vue, en pixels par seconde.
+     */
+
+    public void prefetch(MapViewParameters view, double width, double height,
+                         double velocityX, double velocityY) {
+        int zoom = view.zoomLevel();
+        double x = view.x(), y = view.y();
+        double aheadX = velocityX * PREFETCH_LOOKAHEAD_SECONDS;
+        double aheadY = velocityY * PREFETCH_LOOKAHEAD_SECONDS;
+        Set<TileId> targets = new LinkedHashSet<>();
+        addTiles(targets, zoom,
+                x + Math.min(0, aheadX) - TILE_SIZE, y + Math.min(0, aheadY) - TILE_SIZE,
+                x + width + Math.max(0, aheadX) + TILE_SIZE,
+                y + height + Math.max(0, aheadY) + TILE_SIZE);
+        if (TileId.isValid(zoom + 1, 0, 0)) {
+            addTiles(targets, zoom + 1, 2 * x + width / 2, 2 * y + height / 2,
+                    2 * x + 3 * width / 2, 2 * y + 3 * height / 2);
+        }
+        if (TileId.isValid(zoom - 1, 0, 0)) {
+            addTiles(targets, zoom - 1, (x - width / 2) / 2, (y - height / 2) / 2,
+                    (x + 3 * width / 2) / 2, (y + 3 * height / 2) / 2);
+        }
+        prefetchTargets = Set.copyOf(targets);
+        for (TileId tileId : targets) {
+            if (!isCached(tileId)) load(tileId, false, null);
+        }
+    }
+
+    /**
+     * Méthode publique retournant les statistiques actuelles du gestionnaire.
+     * @return Les statistiques du gestionnaire.
+     */
+
+    public Statistics statistics() {
+        return new Statistics(requests.sum(), memoryHits.sum(), prefetchHits.sum(),
+                archiveLoads.sum(), diskLoads.sum(), networkLoads.sum(), prefetchesQueued.sum(),
+                prefetchesCancelled.sum());
+    }
+
+    /**
+     * Méthode privée retournant l'image, en cache mémoire, d'une tuile demandée pour être
+     * affichée, ou null, en tenant à jour les statistiques.
+     * @param tileId Identité de la tuile.
+     * @return L'image de la tuile, ou null.
+     */
+
+    private Image requestedImage(TileId tileId) {
+        requests.increment();
+        Image image = cachedImageForTileAt(tileId);
+        if (image != null) {
+            memoryHits.increment();
+            if (prefetchedUnused.remove(tileId)) prefetchHits.increment();
+        }
+        return image;
+    }
+
+    /**
+     * Méthode privée retournant vrai si et seulement si l'image de la tuile donnée est dans le
+     * cache mémoire, sans modifier l'ordre d'accès de ce dernier.
+     * @param tileId Identité de la tuile.
+     * @return Vrai si l'image de la tuile est en cache mémoire.
+     */
+
+    private boolean isCached(TileId tileId) {
+        return memoryCache.peek(tileId) != null;
+    }
+
+    /**
+     * Méthode privée ajoutant à l'ensemble donné, dans l'ordre des lignes, les tuiles valides du
+     * niveau de zoom donné recouvrant le rectangle donné, tant que l'ensemble contient moins de
+     * MAX_PREFETCH_TILES tuiles.
+     * @param tiles Ensemble de tuiles.
+     * @param zoom Niveau de zoom.
+     * @param minX Coordonnée X minimale du rectangle, en pixels à ce niveau de zoom.
+     * @param minY Coordonnée Y minimale du rectangle.
+     * @param maxX Coordonnée X maximale du rectangle.
+     * @param maxY Coordonnée Y maximale du rectangle.
+     */
+
+    private static void addTiles(Set<TileId> tiles, int zoom, double minX, double minY,
+                                 double maxX, double maxY) {
+        int maxIndex = (1 << zoom) - 1;
+        int xMin = Math.max(0, (int) Math.floor(minX / TILE_SIZE));
+        int xMax = Math.min(maxIndex, (int) Math.floor(maxX / TILE_SIZE));
+        int yMin = Math.max(0, (int) Math.floor(minY / TILE_SIZE));
+        int yMax = Math.min(maxIndex, (int) Math.floor(maxY / TILE_SIZE));
+        for (int y = yMin; y <= yMax; y++) {
+            for (int x = xMin; x <= xMax; x++) {
+                if (tiles.size() >= MAX_PREFETCH_TILES) return;
+                tiles.add(new TileId(zoom, x, y));
             }
         }
     }
 
     /**
-     * Méthode privée permettant d'obtenir une image en fonction d'une identité de tuile donnée
-     * et du chemin d'accès au fichier.
-     * @param tileId Identité de la tuile donnée.
-     * @param filePath Chemin d'accès au fichier donné.
-     * @return Retourne l'image correspondant à l'identité de la tuile donnée en paramètre,
-     * présente dans le cache disque.
-     * @throws IOException Lance une exception en cas d'erreur liée à l'obtention de l'image
-     * dans le flot.
+     * Méthode privée retournant le futur de l'image de la tuile donnée, en mettant son
+     * chargement en file s'il n'y est pas déjà avec une priorité suffisante. Lorsqu'une tuile
+     * en cours de préchargement est demandée pour être affichée, une tâche prioritaire est
+     * ajoutée, la première des deux tâches à s'exécuter effectuant le chargement.
+     * @param tileId Identité de la tuile.
+     * @param visible Vrai si la tuile est demandée pour être affichée, faux pour un
+     *                préchargement.
+     * @param onLoaded Action à exécuter une fois l'image chargée, si la tuile est demandée pour
+     *                 être affichée pour la première fois.
+     * @return Le futur de l'image de la tuile.
      */
-    private Image getImageFromDisk(TileId tileId, Path filePath) throws IOException {
-        //Bloc Try-with-resource pour fermer le flot à la sortie.
-        try (InputStream inputStream = new FileInputStream(filePath.toFile())) {
-            Image image = new Image(inputStream);
-            //Méthode privée gérant le cache-mémoire et supprimant celui utilisé le moins
-            //récemment, pour le remplacer par celui utilisé le plus récemment (l'image
-            //actuelle).
-            addMRUAndRemoveLRU(tileId, image);
-            return image;
+
+    private CompletableFuture<Image> load(TileId tileId, boolean visible, Runnable onLoaded) {
+        while (true) {
+            Load load = inFlight.computeIfAbsent(tileId, id -> new Load());
+            synchronized (load) {
+                //Un préchargement abandonné est sur le point d'être retiré : on recommence.
+                if (load.cancelled) {
+                    inFlight.remove(tileId, load);
+                    continue;
+                }
+                if (visible && !load.visible) {
+                    load.visible = true;
+                    load.future.thenRun(onLoaded);
+                    if (!load.started) loader.execute(new LoadTask(tileId, load, VISIBLE_PRIORITY));
+                } else if (!visible && !load.visible && !load.prefetchQueued) {
+                    load.prefetchQueued = true;
+                    prefetchesQueued.increment();
+                    loader.execute(new LoadTask(tileId, load, PREFETCH_PRIORITY));
+                }
+                return load.future;
+            }
         }
     }
 
     /**
-     * Ajoute l'identité de la tuile et l'image données au cache-mémoire, tout en supprimant la
-     * paire utilisée la moins récemment (LRU).
-     * @param tileId Identité de la tuile donnée.
-     * @param image Image donnée.
+     * Classe privée représentant le chargement d'une tuile, partagé par toutes ses demandes ;
+     * son état est protégé par son propre verrou.
      */
 
-    private void addMRUAndRemoveLRU(TileId tileId, Image image) {
-        memoryCache.put(tileId, image);
-         if (memoryCache.entrySet().size() > MEMORY_CACHE_SIZE) {
-                    Iterator<Map.Entry<TileId, Image>> it = memoryCache.entrySet().iterator();
-                    it.next();
-                    it.remove();
-         }
+    private static final class Load {
+        private final CompletableFuture<Image> future = new CompletableFuture<>();
+        private boolean visible, prefetchQueued, started, cancelled;
     }
 
     /**
-     * Méthode utile pour ajouter le suffixe à une tuile donnée, notamment pour avoir plus
-     * facilement l'URL où il faut chercher pour une tuile donnée.
-     * @param tileId Identité de la tuile donnée.
-     * @return Le suffixe propre à chaque tuile, sous forme de chaîne de caractère.
+     * Classe privée représentant une tâche en file des fils de chargement, ordonnée par
+     * priorité puis par ordre de création.
      */
 
-    private String suffixOfTileId(TileId tileId) {
-        return "/" + tileId.zoomLevel + '/' + tileId.xTile + '/'
-                + tileId.yTile + ".png";
+    private abstract class QueuedTask implements Runnable, Comparable<QueuedTask> {
+        private final int priority;
+        private final long sequence;
+
+        private QueuedTask(int priority) {
+            this.priority = priority;
+            this.sequence = taskSequence.getAndIncrement();
+        }
+
+        @Override
+        public int compareTo(QueuedTask that) {
+            return priority != that.priority ? Integer.compare(priority, that.priority)
+                    : Long.compare(sequence, that.sequence);
+        }
     }
 
     /**
-     * Retourne le chemin sous forme de Path, du fichier correspondant à une tuile. (Utile
-     * pour créer ce fichier).
-     * @param tileId Identité de la tuile donnée.
-     * @return Retourne le chemin sous forme de Path, du fichier correspondant à une tuile.
+     * Classe privée représentant une tâche de chargement d'une tuile.
+     */
+
+    private final class LoadTask extends QueuedTask {
+        private final TileId tileId;
+        private final Load load;
+
+        private LoadTask(TileId tileId, Load load, int priority) {
+            super(priority);
+            this.tileId = tileId;
+            this.load = load;
+        }
+
+        @Override
+        public void run() {
+            boolean prefetched;
+            synchronized (load) {
+                if (load.started || load.cancelled) return;
+                //Un préchargement devenu inutile est abandonné.
+                load.cancelled = !load.visible && !prefetchTargets.contains(tileId);
+                load.started = !load.cancelled;
+                prefetched = !load.visible;
+            }
+            if (!load.started) {
+                inFlight.remove(tileId, load);
+                prefetchesCancelled.increment();
+                load.future.cancel(false);
+                return;
+            }
+            //La tuile préchargée est marquée avant d'apparaître dans le cache mémoire, afin
+            //qu'une demande qui l'y trouve soit toujours comptée comme satisfaite par le
+            //préchargement.
+            if (prefetched) prefetchedUnused.add(tileId);
+            try {
+                load.future.complete(loadImage(tileId));
+            } catch (IOException | RuntimeException e) {
+                prefetchedUnused.remove(tileId);
+                load.future.completeExceptionally(e);
+            } finally {
+                inFlight.remove(tileId, load);
+            }
+        }
+    }
+
+    /**
+     * Classe privée représentant une tâche de revalidation d'une tuile périmée du cache disque.
+     */
+
+    private final class RevalidationTask extends QueuedTask {
+        private final TileId tileId;
+
+        private RevalidationTask(TileId tileId) {
+            super(REVALIDATION_PRIORITY);
+            this.tileId = tileId;
+        }
+
+        @Override
+        public void run() {
+            try {
+                revalidate(tileId);
+            } catch (IOException e) {
+                //La tuile périmée reste utilisable ; elle sera revalidée lors d'une
+                //prochaine lecture.
+            } finally {
+                revalidating.remove(tileId);
+            }
+        }
+    }
+
+    /**
+     * Méthode privée chargeant l'image de la tuile donnée depuis le cache disque, ou depuis le
+     * serveur si elle n'y est pas, et l'ajoutant au cache mémoire.
+     * @param tileId Identité de la tuile.
+     * @return L'image de la tuile.
+     * @throws IOException En cas de flot corrompu, ou si une erreur liée aux flots se produit.
+     */
+
+    private Image loadImage(TileId tileId) throws IOException {
+        //Cas où l'image est dans l'archive : elle est décodée directement depuis le fichier
+        //projeté en mémoire.
+        ByteBuffer archived = archive == null ? null : archive.tileData(tileId);
+        if (archived != null) {
+            archiveLoads.increment();
+            return getImage(tileId, new ByteBufferInputStream(archived));
+        }
+
+        //Cas où l'image est dans le cache disque ; une image périmée est revalidée en
+        //arrière-plan.
+        byte[] data = diskCache.read(tileId);
+        if (data != null) {
+            diskLoads.increment();
+            if (diskCache.isExpired(tileId) && revalidating.add(tileId))
+                loader.execute(new RevalidationTask(tileId));
+        } else {
+            //Cas où l'image doit être récupérée sur le serveur, car non-présente dans le cache
+            //disque.
+            TileSource.Tile tile = tileSource.fetch(tileId, null, 0);
+            networkLoads.increment();
+            data = tile.data();
+            diskCache.write(tileId, data, tile.etag());
+        }
+        return getImage(tileId, new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Méthode privée demandant au serveur la tuile donnée si elle a changé depuis son dernier
+     * téléchargement : si c'est le cas, elle remplace la tuile dans le cache disque et, s'il la
+     * contient, dans le cache mémoire ; sinon, la tuile est marquée comme à nouveau valide.
+     * @param tileId Identité de la tuile.
+     * @throws IOException En cas d'erreur liée au serveur ou au cache disque.
      */
 
-    private Path pathOfTileId(TileId tileId) {
-        return Path.of(path.toString()).resolve("osm-cache").resolve(Integer
-                        .toString(tileId.zoomLevel))
-                        .resolve(Integer.toString(tileId.xTile));
+    private void revalidate(TileId tileId) throws IOException {
+        TileSource.Tile tile = tileSource.fetch(tileId, diskCache.etag(tileId),
+                diskCache.lastFetched(tileId));
+        if (tile == null) {
+            diskCache.refresh(tileId);
+            return;
+        }
+        networkLoads.increment();
+        diskCache.write(tileId, tile.data(), tile.etag());
+        if (isCached(tileId)) getImage(tileId, new ByteArrayInputStream(tile.data()));
     }
 
     /**
-     * Retourne le lien sous forme de String correspondant à la tuile, avec le serveur donné à la
-     * construction du TileManager.
+     * Méthode privée permettant d'obtenir une image en fonction d'une identité de tuile donnée
+     * et d'un flot contenant son fichier, et l'ajoutant au cache mémoire.
      * @param tileId Identité de la tuile donnée.
-     * @return Retourne le lien sous forme de String correspondant à la tuile, avec le serveur
-     * donné à la construction du TileManager.
+     * @param inputStream Flot contenant le fichier de la tuile.
+     * @return Retourne l'image correspondant à l'identité de la tuile donnée en paramètre.
      */
-    private String linkOfTileId(TileId tileId) {
-         return "https://" + name + suffixOfTileId(tileId);
+    private Image getImage(TileId tileId, InputStream inputStream) {
+        Image image = new Image(inputStream);
+        //Ajoute l'image au cache mémoire, qui supprime au besoin les images utilisées le
+        //moins récemment.
+        memoryCache.put(tileId, CachedImage.of(image));
+        return image;
+    }
+
+    /**
+     * Classe privée représentant un flot d'entrée lisant le contenu d'un tampon d'octets, sans
+     * le copier au préalable.
+     */
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
     }
 }
@@ -0,0 +1,198 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * TileMemoryCache
+ * <p>
+ * Classe représentant un cache mémoire de valeurs associées à des tuiles, borné en octets et
+ * utilisable depuis plusieurs fils d'exécution à la fois. Le cache est découpé en bandes
+ * indépendantes, chacune protégée par son propre verrou et disposant d'une part égale du
+ * budget ; chaque bande évince les valeurs qu'elle a utilisées le moins récemment (LRU). Deux
+ * fils n'accèdent donc en même temps à la même bande que si leurs tuiles y sont rangées
+ * toutes les deux.
+ *
+ * @param <V> Type des valeurs du cache.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class TileMemoryCache<V> {
+
+    /**
+     * Attribut représentant les bandes du cache.
+     */
+    private final Stripe<V>[] stripes;
+
+    /**
+     * Attribut représentant la fonction donnant le nombre d'octets occupés par une valeur.
+     */
+    private final ToLongFunction<V> weigher;
+
+    /**
+     * Attribut représentant l'action exécutée avec l'identité de chaque tuile évincée.
+     */
+    private final Consumer<TileManager.TileId> onEviction;
+
+    /**
+     * Constructeur initialisant un cache dont les valeurs occupent au plus le nombre d'octets
+     * donné, réparti en le nombre de bandes donné ; lève IllegalArgumentException si le nombre
+     * d'octets est négatif, ou si le nombre de bandes n'est pas une puissance de deux.
+     * @param maxBytes Nombre maximal total d'octets des valeurs.
+     * @param stripeCount Nombre de bandes, puissance de deux.
+     * @param weigher Fonction donnant le nombre d'octets occupés par une valeur.
+     * @param onEviction Action exécutée, avec le verrou de sa bande, avec l'identité de chaque
+     *                   tuile évincée.
+     */
+    @SuppressWarnings("unchecked")
+    TileMemoryCache(long maxBytes, int stripeCount, ToLongFunction<V> weigher,
+                    Consumer<TileManager.TileId> onEviction) {
+        Preconditions.checkArgument(maxBytes >= 0 && stripeCount > 0
+                && Integer.bitCount(stripeCount) == 1);
+        this.weigher = weigher;
+        this.onEviction = onEviction;
+        this.stripes = (Stripe<V>[]) new Stripe<?>[stripeCount];
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe<>(maxBytes / stripeCount);
+    }
+
+    /**
+     * Retourne la valeur associée à la tuile donnée, ou null, en la marquant comme la plus
+     * récemment utilisée de sa bande.
+     * @param tileId Identité de la tuile.
+     * @return La valeur associée à la tuile, ou null.
+     */
+    V get(TileManager.TileId tileId) {
+        Stripe<V> stripe = stripeOf(tileId);
+        synchronized (stripe) {
+            //La valeur est replacée en fin d'ordre d'insertion, qui est l'ordre d'accès.
+            V value = stripe.values.remove(tileId);
+            if (value != null) stripe.values.put(tileId, value);
+            return value;
+        }
+    }
+
+    /**
+     * Retourne la valeur associée à la tuile donnée, ou null, sans modifier l'ordre d'accès.
+     * @param tileId Identité de la tuile.
+     * @return La valeur associée à la tuile, ou null.
+     */
+    V peek(TileManager.TileId tileId) {
+        Stripe<V> stripe = stripeOf(tileId);
+        synchronized (stripe) {
+            return stripe.values.get(tileId);
+        }
+    }
+
+    /**
+     * Associe la valeur donnée à la tuile donnée, en remplaçant l'éventuelle valeur précédente
+     * et en évinçant au besoin les valeurs utilisées le moins récemment de sa bande ; la valeur
+     * ajoutée, elle, n'est jamais évincée immédiatement.
+     * @param tileId Identité de la tuile.
+     * @param value Valeur associée à la tuile.
+     */
+    void put(TileManager.TileId tileId, V value) {
+        Stripe<V> stripe = stripeOf(tileId);
+        synchronized (stripe) {
+            putLocked(stripe, tileId, value);
+        }
+    }
+
+    /**
+     * Associe la valeur donnée à la tuile donnée si aucune valeur ne lui est associée.
+     * @param tileId Identité de la tuile.
+     * @param value Valeur associée à la tuile.
+     * @return Vrai si et seulement si la valeur a été ajoutée.
+     */
+    boolean putIfAbsent(TileManager.TileId tileId, V value) {
+        Stripe<V> stripe = stripeOf(tileId);
+        synchronized (stripe) {
+            if (stripe.values.containsKey(tileId)) return false;
+            putLocked(stripe, tileId, value);
+            return true;
+        }
+    }
+
+    /**
+     * Retourne le nombre total d'octets des valeurs du cache.
+     * @return Le nombre d'octets des valeurs du cache.
+     */
+    long usedBytes() {
+        long total = 0;
+        for (Stripe<V> stripe : stripes) {
+            synchronized (stripe) {
+                total += stripe.usedBytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Retourne le nombre de valeurs du cache.
+     * @return Le nombre de valeurs du cache.
+     */
+    int size() {
+        int total = 0;
+        for (Stripe<V> stripe : stripes) {
+            synchronized (stripe) {
+                total += stripe.values.size();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Méthode privée ajoutant la valeur donnée à la bande donnée, dont le verrou est tenu, puis
+     * évinçant ses valeurs les moins récemment utilisées tant qu'elle dépasse son budget.
+     * @param stripe Bande de la tuile.
+     * @param tileId Identité de la tuile.
+     * @param value Valeur associée à la tuile.
+     */
+    private void putLocked(Stripe<V> stripe, TileManager.TileId tileId, V value) {
+        V previous = stripe.values.remove(tileId);
+        stripe.values.put(tileId, value);
+        if (previous != null) stripe.usedBytes -= weigher.applyAsLong(previous);
+        stripe.usedBytes += weigher.applyAsLong(value);
+        Iterator<Map.Entry<TileManager.TileId, V>> it = stripe.values.entrySet().iterator();
+        while (stripe.usedBytes > stripe.maxBytes && stripe.values.size() > 1) {
+            Map.Entry<TileManager.TileId, V> eldest = it.next();
+            stripe.usedBytes -= weigher.applyAsLong(eldest.getValue());
+            it.remove();
+            onEviction.accept(eldest.getKey());
+        }
+    }
+
+    /**
+     * Méthode privée retournant la bande de la tuile donnée ; le code de hachage de l'identité
+     * est mélangé afin que les tuiles voisines, souvent utilisées ensemble, soient réparties
+     * sur des bandes différentes.
+     * @param tileId Identité de la tuile.
+     * @return Sa bande.
+     */
+    private Stripe<V> stripeOf(TileManager.TileId tileId) {
+        int hash = tileId.hashCode() * 0x9E3779B9;
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Classe privée représentant une bande du cache, dont l'état est protégé par son propre
+     * verrou. Ses valeurs sont dans l'ordre de leur dernier accès, une valeur utilisée étant
+     * retirée puis réinsérée ; consulter la table sans la modifier laisse donc cet ordre
+     * inchangé.
+     */
+    private static final class Stripe<V> {
+        private final long maxBytes;
+        private final LinkedHashMap<TileManager.TileId, V> values = new LinkedHashMap<>();
+        private long usedBytes;
+
+        private Stripe(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ch.epfl.javelo.gui;
+
+import java.io.IOException;
+
+/**
+ * TileSource
+ * <p>
+ * Interface représentant une source de tuiles, depuis laquelle le gestionnaire de tuiles
+ * obtient les tuiles absentes de ses caches, et auprès de laquelle il revalide les tuiles
+ * périmées. Les méthodes d'une source peuvent être appelées depuis plusieurs fils d'exécution à
+ * la fois.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+interface TileSource {
+
+    /**
+     * Enregistrement représentant une tuile obtenue d'une source.
+     * @param data Contenu du fichier de la tuile.
+     * @param etag Étiquette de version de la tuile donnée par la source, ou null.
+     */
+    record Tile(byte[] data, String etag) {}
+
+    /**
+     * Retourne la tuile donnée, ou null si elle n'a pas changé depuis la version décrite par
+     * l'étiquette et la date données ; une étiquette nulle et une date nulle demandent la
+     * tuile sans condition.
+     * @param tileId Identité de la tuile.
+     * @param etag Étiquette de la version connue de la tuile, ou null.
+     * @param lastFetched Date, en millisecondes depuis l'époque, à laquelle la version connue
+     *                    a été obtenue, ou 0.
+     * @return La tuile, ou null si la version connue est toujours valide.
+     * @throws IOException Si la tuile ne peut pas être obtenue.
+     */
+    Tile fetch(TileManager.TileId tileId, String etag, long lastFetched) throws IOException;
+}
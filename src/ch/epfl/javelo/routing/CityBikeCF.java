@@ -1,7 +1,7 @@
 package ch.epfl.javelo.routing;
 
 import ch.epfl.javelo.data.AttributeSet;
-import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.RoutingGraph;
 
 import java.util.Optional;
 
@@ -11,7 +11,7 @@ import static ch.epfl.javelo.data.Attribute.*;
 // https://github.com/abrensch/brouter/blob/15e84c81ea23408abde8605bd57a87a777003ce2/misc/profiles2/trekking.brf
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
-public record CityBikeCF(Graph graph) implements CostFunction {
+public record CityBikeCF(RoutingGraph graph) implements CostFunction {
     // Any kind of marked cycle route (international, national, regional or local)
     private static final AttributeSet CYCLE_ROUTE =
             AttributeSet.of(ICN_YES, NCN_YES, RCN_YES, LCN_YES);
@@ -0,0 +1,71 @@
+package ch.epfl.javelo.routing;
+
+/**
+ * Climb
+ * <p>
+ * Enregistrement représentant une montée d'un itinéraire, telle que listée dans un carnet de
+ * route : sa position de début et de fin le long de l'itinéraire, son dénivelé, ses pentes
+ * moyenne et maximum, et sa catégorie.
+ *
+ * @param startPosition Position du pied de la montée, en mètres.
+ * @param endPosition Position du sommet de la montée, en mètres.
+ * @param elevationGain Différence d'altitude entre le sommet et le pied, en mètres.
+ * @param averageGradient Pente moyenne, en mètres par mètre.
+ * @param maxGradient Pente maximum, en mètres par mètre.
+ * @param category Catégorie de la montée.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public record Climb(double startPosition, double endPosition, double elevationGain,
+                    double averageGradient, double maxGradient, Category category) {
+
+    /**
+     * Retourne la longueur de la montée, en mètres.
+     * @return La longueur de la montée, en mètres.
+     */
+    public double length() {
+        return endPosition - startPosition;
+    }
+
+    /**
+     * Type énuméré représentant la catégorie d'une montée, de la plus difficile à la plus
+     * facile, chacune étant associée au score minimum qu'une montée doit atteindre pour en
+     * faire partie.
+     */
+    public enum Category {
+        HORS_CATEGORIE("HC", 7000),
+        FIRST("1", 4000),
+        SECOND("2", 2000),
+        THIRD("3", 800),
+        FOURTH("4", 250);
+
+        private final String label;
+        private final double minScore;
+
+        Category(String label, double minScore) {
+            this.label = label;
+            this.minScore = minScore;
+        }
+
+        /**
+         * Retourne le nom court de la catégorie, tel qu'affiché dans un carnet de route.
+         * @return Le nom court de la catégorie.
+         */
+        public String label() {
+            return label;
+        }
+
+        /**
+         * Retourne la catégorie d'une montée ayant le score donné, ou null si ce score est
+         * insuffisant pour qu'elle soit catégorisée.
+         * @param score Score de la montée.
+         * @return Sa catégorie, ou null.
+         */
+        public static Category of(double score) {
+            for (Category category : values()) if (score >= category.minScore) return category;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ch.epfl.javelo.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ClimbDetector
+ * <p>
+ * Classe représentant un détecteur de montées, qui découpe le profil en long d'un itinéraire
+ * en montées catégorisées comme dans un carnet de route. Le profil est rééchantillonné à
+ * intervalles réguliers puis lissé par une moyenne glissante ; les montées sont ensuite les
+ * plus longues portions ascendantes du profil lissé, une montée ne commençant qu'après un gain
+ * suffisant depuis le point le plus bas et ne se terminant qu'après une perte suffisante depuis
+ * le sommet (hystérésis), afin que les replats et les courtes descentes ne la coupent pas.
+ * Chaque étape est linéaire en la longueur de l'itinéraire.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public final class ClimbDetector {
+
+    //Constante représentant la distance, en mètres, entre deux échantillons du profil
+    //rééchantillonné.
+    private static final double SAMPLE_SPACING = 10;
+
+    //Constante représentant la longueur, en mètres, de la fenêtre de la moyenne glissante.
+    private static final double SMOOTHING_LENGTH = 100;
+
+    //Constantes représentant le gain d'altitude, en mètres, à partir duquel une montée
+    //commence, et la perte d'altitude depuis le sommet à partir de laquelle elle se termine.
+    private static final double START_HYSTERESIS = 10;
+    private static final double END_HYSTERESIS = 15;
+
+    //Constante représentant la longueur, en mètres, sur laquelle la pente maximum est mesurée.
+    private static final double MAX_GRADIENT_LENGTH = 100;
+
+    //Constante représentant la pente moyenne minimum d'une montée.
+    private static final double MIN_AVERAGE_GRADIENT = 0.02;
+
+    /**
+     * Constructeur privé, car cette classe n'est pas censée être instantiable.
+     */
+
+    private ClimbDetector() {}
+
+    /**
+     * Retourne les montées catégorisées du profil donné, dans l'ordre de l'itinéraire. Le
+     * score d'une montée, qui détermine sa catégorie, est le produit de son dénivelé (en
+     * mètres) par sa pente moyenne (en pourcents).
+     * @param profile Profil en long de l'itinéraire.
+     * @return La liste non modifiable des montées catégorisées du profil.
+     */
+
+    public static List<Climb> climbs(ElevationProfile profile) {
+        int count = (int) Math.ceil(profile.length() / SAMPLE_SPACING) + 1;
+        double spacing = profile.length() / (count - 1);
+        double[] elevations = new double[count];
+        for (int i = 0; i < count; i++) elevations[i] = profile.elevationAt(i * spacing);
+        double[] smoothed = smoothed(elevations,
+                (int) Math.round(SMOOTHING_LENGTH / 2 / spacing));
+
+        //Tant qu'aucune montée n'est en cours, foot suit le point le plus bas (le dernier en
+        //cas d'égalité, afin d'exclure le replat qui précède) ; pendant une montée, summit
+        //suit son point le plus haut (le premier en cas d'égalité).
+        List<Climb> climbs = new ArrayList<>();
+        int foot = 0, summit = -1;
+        for (int i = 1; i < count; i++) {
+            if (summit < 0) {
+                if (smoothed[i] <= smoothed[foot]) foot = i;
+                else if (smoothed[i] - smoothed[foot] >= START_HYSTERESIS) summit = i;
+            } else if (smoothed[i] > smoothed[summit]) {
+                summit = i;
+            } else if (smoothed[summit] - smoothed[i] >= END_HYSTERESIS) {
+                addClimb(climbs, elevations, smoothed, spacing, foot, summit);
+                //Le point courant est le plus bas depuis le sommet.
+                foot = i;
+                summit = -1;
+            }
+        }
+        if (summit >= 0) addClimb(climbs, elevations, smoothed, spacing, foot, summit);
+        return List.copyOf(climbs);
+    }
+
+    /**
+     * Méthode privée ajoutant à la liste donnée la montée allant du pied au sommet donnés,
+     * débarrassée des replats de ses extrémités, si elle est assez raide et assez difficile
+     * pour être catégorisée.
+     * @param climbs Liste des montées.
+     * @param elevations Profil rééchantillonné.
+     * @param smoothed Profil lissé.
+     * @param spacing Distance entre deux échantillons.
+     * @param foot Index du pied de la montée.
+     * @param summit Index du sommet de la montée.
+     */
+
+    private static void addClimb(List<Climb> climbs, double[] elevations, double[] smoothed,
+                                 double spacing, int foot, int summit) {
+        int window = Math.max(1, (int) Math.round(MAX_GRADIENT_LENGTH / spacing));
+        double minRise = MIN_AVERAGE_GRADIENT * window * spacing;
+        //Le pied avance, et le sommet recule, tant que la fenêtre qui les suit, respectivement
+        //les précède, est moins raide que la pente moyenne minimum.
+        while (foot + window <= summit && smoothed[foot + window] - smoothed[foot] < minRise)
+            foot++;
+        while (summit - window >= foot && smoothed[summit] - smoothed[summit - window] < minRise)
+            summit--;
+        if (summit <= foot) return;
+
+        double length = (summit - foot) * spacing;
+        double gain = elevations[summit] - elevations[foot];
+        double averageGradient = gain / length;
+        if (!(averageGradient >= MIN_AVERAGE_GRADIENT)) return;
+        Climb.Category category = Climb.Category.of(gain * averageGradient * 100);
+        if (category == null) return;
+
+        //Pente maximum du profil lissé sur une fenêtre glissante, limitée à la longueur de la
+        //montée, afin que le bruit des altitudes ne produise pas de pentes fictives.
+        int gradientWindow = Math.min(window, summit - foot);
+        double maxGradient = Double.NEGATIVE_INFINITY;
+        for (int i = foot; i + gradientWindow <= summit; i++) {
+            maxGradient = Math.max(maxGradient,
+                    (smoothed[i + gradientWindow] - smoothed[i]) / (gradientWindow * spacing));
+        }
+        climbs.add(new Climb(foot * spacing, summit * spacing, gain, averageGradient,
+                maxGradient, category));
+    }
+
+    /**
+     * Méthode privée retournant les valeurs données lissées par une moyenne glissante centrée,
+     * la fenêtre étant tronquée aux extrémités ; la somme de la fenêtre est mise à jour à
+     * chaque pas plutôt que recalculée.
+     * @param values Valeurs données.
+     * @param halfWindow Nombre de valeurs de part et d'autre de chaque valeur.
+     * @return Les valeurs lissées.
+     */
+
+    private static double[] smoothed(double[] values, int halfWindow) {
+        double[] smoothed = new double[values.length];
+        double sum = 0;
+        int low = 0, high = -1;
+        for (int i = 0; i < values.length; i++) {
+            int newHigh = Math.min(values.length - 1, i + halfWindow);
+            int newLow = Math.max(0, i - halfWindow);
+            while (high < newHigh) sum += values[++high];
+            while (low < newLow) sum -= values[low++];
+            smoothed[i] = sum / (high - low + 1);
+        }
+        return smoothed;
+    }
+}
@@ -1,7 +1,7 @@
 package ch.epfl.javelo.routing;
 
 import ch.epfl.javelo.Math2;
-import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.RoutingGraph;
 import ch.epfl.javelo.projection.PointCh;
 
 import java.util.Objects;
@@ -32,7 +32,7 @@ public record Edge(int fromNodeId, int toNodeId, PointCh fromPoint, PointCh toPo
      * @return Une nouvelle instance avec ces attributs.
      */
 
-    public static Edge of(Graph graph, int edgeId, int fromNodeId, int toNodeId) {
+    public static Edge of(RoutingGraph graph, int edgeId, int fromNodeId, int toNodeId) {
         return new Edge(fromNodeId, toNodeId, graph.nodePoint(fromNodeId), graph.nodePoint(toNodeId),
                 graph.edgeLength(edgeId), graph.edgeProfile(edgeId));
     }
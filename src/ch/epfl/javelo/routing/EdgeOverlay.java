@@ -0,0 +1,202 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * EdgeOverlay
+ * <p>
+ * Classe représentant une surcouche dynamique des coûts des arêtes, permettant de fermer des
+ * arêtes (travaux, manifestations) ou de multiplier leur coût sans reconstruire le graphe. Elle
+ * peut être modifiée pendant que des itinéraires sont calculés : chaque modification produit un
+ * nouvel instantané immuable (copie à l'écriture), publié atomiquement, de sorte que les
+ * lectures faites par le calculateur d'itinéraire ne prennent aucun verrou.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public final class EdgeOverlay {
+
+    /**
+     * Attribut représentant l'instantané courant de la surcouche.
+     */
+    private final AtomicReference<Snapshot> snapshot;
+
+    /**
+     * Constructeur public créant une surcouche vide (aucune arête fermée ni pénalisée).
+     */
+    public EdgeOverlay() {
+        this.snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    }
+
+    /**
+     * Retourne l'instantané courant, qu'un calcul d'itinéraire utilise du début à la fin afin de
+     * voir un état cohérent de la surcouche.
+     * @return L'instantané courant.
+     */
+    public Snapshot snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Ferme les arêtes d'identités données.
+     * @param edgeIds Identités des arêtes à fermer.
+     */
+    public void close(int... edgeIds) {
+        snapshot.updateAndGet(s -> s.withClosed(edgeIds, true));
+    }
+
+    /**
+     * Rouvre les arêtes d'identités données.
+     * @param edgeIds Identités des arêtes à rouvrir.
+     */
+    public void reopen(int... edgeIds) {
+        snapshot.updateAndGet(s -> s.withClosed(edgeIds, false));
+    }
+
+    /**
+     * Associe le multiplicateur de coût donné à l'arête d'identité donnée ; un multiplicateur
+     * de 1 supprime la pénalité. Lève IllegalArgumentException si le multiplicateur est
+     * inférieur à 1, car le calculateur d'itinéraire (A*) suppose que les coûts ne sont jamais
+     * inférieurs à la longueur des arêtes.
+     * @param edgeId Identité de l'arête.
+     * @param multiplier Multiplicateur de coût, supérieur ou égal à 1.
+     */
+    public void setCostMultiplier(int edgeId, double multiplier) {
+        Preconditions.checkArgument(edgeId >= 0 && multiplier >= 1);
+        snapshot.updateAndGet(s -> s.withCostMultiplier(edgeId, multiplier));
+    }
+
+    /**
+     * Supprime toutes les fermetures et pénalités.
+     */
+    public void clear() {
+        snapshot.set(Snapshot.EMPTY);
+    }
+
+    /**
+     * Classe imbriquée représentant un état immuable de la surcouche : un ensemble de bits
+     * compact pour les arêtes fermées, et une table creuse (identités triées et multiplicateurs
+     * associés) pour les arêtes pénalisées.
+     */
+    public static final class Snapshot {
+
+        //Constante représentant l'instantané vide.
+        private static final Snapshot EMPTY = new Snapshot(new long[0], new int[0], new double[0]);
+
+        //Constante représentant le nombre de bits contenus dans un mot de l'ensemble de bits.
+        private static final int WORD_BITS_LOG2 = 6;
+
+        /**
+         * Attributs représentant les mots de l'ensemble des arêtes fermées, ainsi que les
+         * identités triées des arêtes pénalisées et leurs multiplicateurs.
+         */
+        private final long[] closedWords;
+        private final int[] penalizedEdgeIds;
+        private final double[] multipliers;
+
+        /**
+         * Constructeur privé, les instantanés n'étant créés que par la surcouche.
+         * @param closedWords Mots de l'ensemble des arêtes fermées.
+         * @param penalizedEdgeIds Identités triées des arêtes pénalisées.
+         * @param multipliers Multiplicateurs des arêtes pénalisées.
+         */
+        private Snapshot(long[] closedWords, int[] penalizedEdgeIds, double[] multipliers) {
+            this.closedWords = closedWords;
+            this.penalizedEdgeIds = penalizedEdgeIds;
+            this.multipliers = multipliers;
+        }
+
+        /**
+         * Retourne vrai si et seulement si l'arête d'identité donnée est fermée.
+         * @param edgeId Identité de l'arête.
+         * @return Vrai si et seulement si l'arête est fermée.
+         */
+        public boolean isClosed(int edgeId) {
+            int word = edgeId >>> WORD_BITS_LOG2;
+            return word < closedWords.length && (closedWords[word] & (1L << edgeId)) != 0;
+        }
+
+        /**
+         * Retourne le multiplicateur de coût de l'arête d'identité donnée (1 si elle n'est pas
+         * pénalisée).
+         * @param edgeId Identité de l'arête.
+         * @return Le multiplicateur de coût de l'arête.
+         */
+        public double costMultiplier(int edgeId) {
+            if (penalizedEdgeIds.length == 0) return 1;
+            int index = Arrays.binarySearch(penalizedEdgeIds, edgeId);
+            return index >= 0 ? multipliers[index] : 1;
+        }
+
+        /**
+         * Retourne vrai si et seulement si l'instantané ne ferme ni ne pénalise aucune arête.
+         * @return Vrai si et seulement si l'instantané est vide.
+         */
+        public boolean isEmpty() {
+            return penalizedEdgeIds.length == 0 && Arrays.stream(closedWords).allMatch(w -> w == 0);
+        }
+
+        /**
+         * Méthode privée retournant une copie de l'instantané dans laquelle les arêtes données
+         * sont fermées (ou rouvertes).
+         * @param edgeIds Identités des arêtes.
+         * @param closed Vrai pour fermer les arêtes, faux pour les rouvrir.
+         * @return Le nouvel instantané.
+         */
+        private Snapshot withClosed(int[] edgeIds, boolean closed) {
+            int maxEdgeId = Arrays.stream(edgeIds).max().orElse(-1);
+            Preconditions.checkArgument(Arrays.stream(edgeIds).allMatch(e -> e >= 0));
+            long[] words = Arrays.copyOf(closedWords,
+                    Math.max(closedWords.length, (maxEdgeId >>> WORD_BITS_LOG2) + 1));
+            for (int edgeId : edgeIds) {
+                if (closed) words[edgeId >>> WORD_BITS_LOG2] |= 1L << edgeId;
+                else words[edgeId >>> WORD_BITS_LOG2] &= ~(1L << edgeId);
+            }
+            return new Snapshot(words, penalizedEdgeIds, multipliers);
+        }
+
+        /**
+         * Méthode privée retournant une copie de l'instantané dans laquelle le multiplicateur de
+         * l'arête donnée est remplacé (ou supprimé s'il vaut 1).
+         * @param edgeId Identité de l'arête.
+         * @param multiplier Nouveau multiplicateur.
+         * @return Le nouvel instantané.
+         */
+        private Snapshot withCostMultiplier(int edgeId, double multiplier) {
+            int index = Arrays.binarySearch(penalizedEdgeIds, edgeId);
+            int length = penalizedEdgeIds.length;
+            if (index >= 0 && multiplier == 1) {
+                //Suppression de la pénalité existante.
+                int[] ids = new int[length - 1];
+                double[] values = new double[length - 1];
+                System.arraycopy(penalizedEdgeIds, 0, ids, 0, index);
+                System.arraycopy(penalizedEdgeIds, index + 1, ids, index, length - index - 1);
+                System.arraycopy(multipliers, 0, values, 0, index);
+                System.arraycopy(multipliers, index + 1, values, index, length - index - 1);
+                return new Snapshot(closedWords, ids, values);
+            }
+            if (index >= 0) {
+                //Remplacement de la pénalité existante.
+                double[] values = multipliers.clone();
+                values[index] = multiplier;
+                return new Snapshot(closedWords, penalizedEdgeIds, values);
+            }
+            if (multiplier == 1) return this;
+            //Insertion d'une nouvelle pénalité, à sa place dans l'ordre trié.
+            int insertion = -index - 1;
+            int[] ids = new int[length + 1];
+            double[] values = new double[length + 1];
+            System.arraycopy(penalizedEdgeIds, 0, ids, 0, insertion);
+            System.arraycopy(penalizedEdgeIds, insertion, ids, insertion + 1, length - insertion);
+            System.arraycopy(multipliers, 0, values, 0, insertion);
+            System.arraycopy(multipliers, insertion, values, insertion + 1, length - insertion);
+            ids[insertion] = edgeId;
+            values[insertion] = multiplier;
+            return new Snapshot(closedWords, ids, values);
+        }
+    }
+}
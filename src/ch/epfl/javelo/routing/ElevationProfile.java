@@ -4,7 +4,7 @@ import ch.epfl.javelo.Functions;
 import ch.epfl.javelo.Preconditions;
 
 import java.util.Arrays;
-import java.util.DoubleSummaryStatistics;
+import java.util.function.DoubleUnaryOperator;
 
 
 /**
@@ -20,15 +20,41 @@ import java.util.DoubleSummaryStatistics;
 public final class ElevationProfile {
 
     /**
-     * Attributs représentant la longueur du profil et les échantillons d'élévation.
+     * Attributs représentant la longueur du profil, les échantillons d'élévation, la distance
+     * entre deux échantillons et la fonction échantillonnée, construite une fois pour toutes.
      */
 
     private final double length;
     private final float[] elevationSamples;
-    private final double MIN_ELE;
-    private final double MAX_ELE;
-    private final double TOTAL_ASCENT;
-    private final double TOTAL_DESCENT;
+    private final double sampleSpacing;
+    private final DoubleUnaryOperator profile;
+
+    /**
+     * Attributs représentant les dénivelés positif et négatif cumulés depuis le début du
+     * profil jusqu'à chaque échantillon.
+     */
+
+    private final double[] cumulativeAscents;
+    private final double[] cumulativeDescents;
+
+    /**
+     * Attributs représentant les arbres donnant le maximum, sur une plage d'index, des
+     * échantillons, des échantillons opposés (donc leur minimum), et des pentes entre deux
+     * échantillons consécutifs.
+     */
+
+    private final MaxTree maxElevations;
+    private final MaxTree minElevations;
+    private final MaxTree maxGradients;
+
+    /**
+     * Attributs représentant la pyramide des altitudes minimum et maximum : au niveau k, le
+     * bloc j couvre les intervalles entre échantillons d'index [j * 2^k, (j + 1) * 2^k), le
+     * profil étant linéaire sur chaque intervalle.
+     */
+
+    private final float[][] minLevels;
+    private final float[][] maxLevels;
 
     /**
      * Constructeur public.
@@ -41,30 +67,53 @@ public final class ElevationProfile {
         Preconditions.checkArgument(length > 0 && elevationSamples.length >= 2);
         this.length = length;
         this.elevationSamples = Arrays.copyOf(elevationSamples, elevationSamples.length);
-        DoubleSummaryStatistics s = new DoubleSummaryStatistics();
-        for (float i : elevationSamples) s.accept(i);
-        // Calcul du max, min elevation et du total de monté et descente.
-        MIN_ELE = s.getMin();
-        MAX_ELE = s.getMax();
-        double totalA = 0;
-        double memoryA = elevationSamples[0];
-        double deltaA;
-        for (float i : elevationSamples) {
-            deltaA = (double) i - memoryA;
-            totalA = deltaA > 0 ? totalA + deltaA : totalA;
-            memoryA = i;
+        this.sampleSpacing = length / (elevationSamples.length - 1);
+        this.profile = Functions.sampled(this.elevationSamples, length);
+
+        //Calcul, en un seul parcours, des dénivelés cumulés et des pentes.
+        int count = elevationSamples.length;
+        cumulativeAscents = new double[count];
+        cumulativeDescents = new double[count];
+        double[] elevations = new double[count];
+        double[] oppositeElevations = new double[count];
+        double[] gradients = new double[count - 1];
+        elevations[0] = elevationSamples[0];
+        oppositeElevations[0] = -elevations[0];
+        for (int i = 1; i < count; i++) {
+            elevations[i] = elevationSamples[i];
+            oppositeElevations[i] = -elevations[i];
+            double delta = elevations[i] - elevations[i - 1];
+            cumulativeAscents[i] = delta > 0 ? cumulativeAscents[i - 1] + delta
+                    : cumulativeAscents[i - 1];
+            cumulativeDescents[i] = delta < 0 ? cumulativeDescents[i - 1] - delta
+                    : cumulativeDescents[i - 1];
+            gradients[i - 1] = delta / sampleSpacing;
+        }
+        maxElevations = new MaxTree(elevations);
+        minElevations = new MaxTree(oppositeElevations);
+        maxGradients = new MaxTree(gradients);
+
+        //Calcul de la pyramide, chaque niveau regroupant les blocs du précédent par paires.
+        int levelCount = 1;
+        while ((1 << (levelCount - 1)) < count - 1) levelCount++;
+        minLevels = new float[levelCount][];
+        maxLevels = new float[levelCount][];
+        minLevels[0] = new float[count - 1];
+        maxLevels[0] = new float[count - 1];
+        for (int i = 0; i < count - 1; i++) {
+            minLevels[0][i] = Math.min(elevationSamples[i], elevationSamples[i + 1]);
+            maxLevels[0][i] = Math.max(elevationSamples[i], elevationSamples[i + 1]);
         }
-        TOTAL_ASCENT = totalA;
-
-        double totalD = 0;
-        double memoryD = elevationSamples[0];
-        double deltaD;
-        for (float i : elevationSamples) {
-            deltaD = (double) i - memoryD;
-            totalD = deltaD < 0 ? totalD - deltaD : totalD;
-            memoryD = i;
+        for (int k = 1; k < levelCount; k++) {
+            float[] mins = minLevels[k - 1], maxs = maxLevels[k - 1];
+            minLevels[k] = new float[(mins.length + 1) / 2];
+            maxLevels[k] = new float[(maxs.length + 1) / 2];
+            for (int j = 0; j < minLevels[k].length; j++) {
+                boolean pair = 2 * j + 1 < mins.length;
+                minLevels[k][j] = pair ? Math.min(mins[2 * j], mins[2 * j + 1]) : mins[2 * j];
+                maxLevels[k][j] = pair ? Math.max(maxs[2 * j], maxs[2 * j + 1]) : maxs[2 * j];
+            }
         }
-        TOTAL_DESCENT = totalD;
     }
 
     /**
@@ -82,7 +131,7 @@ public final class ElevationProfile {
      */
 
     public double minElevation() {
-        return MIN_ELE;
+        return -minElevations.max();
     }
 
     /**
@@ -91,7 +140,7 @@ public final class ElevationProfile {
      */
 
     public double maxElevation() {
-        return MAX_ELE;
+        return maxElevations.max();
     }
 
     /**
@@ -100,7 +149,7 @@ public final class ElevationProfile {
      */
 
     public double totalAscent() {
-        return TOTAL_ASCENT;
+        return cumulativeAscents[cumulativeAscents.length - 1];
     }
 
     /**
@@ -109,7 +158,7 @@ public final class ElevationProfile {
      */
 
     public double totalDescent() {
-       return TOTAL_DESCENT;
+       return cumulativeDescents[cumulativeDescents.length - 1];
     }
 
     /**
@@ -122,6 +171,219 @@ public final class ElevationProfile {
      */
 
     public double elevationAt(double position) {
-        return Functions.sampled(elevationSamples, length).applyAsDouble(position);
+        return profile.applyAsDouble(position);
+    }
+
+    /**
+     * Retourne le dénivelé positif du profil entre les deux positions données, ramenées entre 0
+     * et la longueur du profil ; lève IllegalArgumentException si la première position est
+     * supérieure à la seconde.
+     * @param from Position de début de la plage, en mètres.
+     * @param to Position de fin de la plage, en mètres.
+     * @return Le dénivelé positif de la plage, en mètres.
+     */
+
+    public double ascent(double from, double to) {
+        Preconditions.checkArgument(from <= to);
+        return cumulative(cumulativeAscents, to, 1) - cumulative(cumulativeAscents, from, 1);
+    }
+
+    /**
+     * Retourne le dénivelé négatif du profil entre les deux positions données, ramenées entre 0
+     * et la longueur du profil ; lève IllegalArgumentException si la première position est
+     * supérieure à la seconde. La valeur est toujours positive.
+     * @param from Position de début de la plage, en mètres.
+     * @param to Position de fin de la plage, en mètres.
+     * @return Le dénivelé négatif de la plage, en mètres.
+     */
+
+    public double descent(double from, double to) {
+        Preconditions.checkArgument(from <= to);
+        return cumulative(cumulativeDescents, to, -1) - cumulative(cumulativeDescents, from, -1);
+    }
+
+    /**
+     * Retourne l'altitude minimum du profil entre les deux positions données, ramenées entre 0
+     * et la longueur du profil ; lève IllegalArgumentException si la première position est
+     * supérieure à la seconde.
+     * @param from Position de début de la plage, en mètres.
+     * @param to Position de fin de la plage, en mètres.
+     * @return L'altitude minimum de la plage, en mètres.
+     */
+
+    public double minElevation(double from, double to) {
+        Preconditions.checkArgument(from <= to);
+        double min = Math.min(elevationAt(from), elevationAt(to));
+        int first = firstSampleFrom(from), last = lastSampleUntil(to);
+        return first <= last ? Math.min(min, -minElevations.max(first, last)) : min;
+    }
+
+    /**
+     * Retourne l'altitude maximum du profil entre les deux positions données, ramenées entre 0
+     * et la longueur du profil ; lève IllegalArgumentException si la première position est
+     * supérieure à la seconde.
+     * @param from Position de début de la plage, en mètres.
+     * @param to Position de fin de la plage, en mètres.
+     * @return L'altitude maximum de la plage, en mètres.
+     */
+
+    public double maxElevation(double from, double to) {
+        Preconditions.checkArgument(from <= to);
+        double max = Math.max(elevationAt(from), elevationAt(to));
+        int first = firstSampleFrom(from), last = lastSampleUntil(to);
+        return first <= last ? Math.max(max, maxElevations.max(first, last)) : max;
+    }
+
+    /**
+     * Retourne la pente maximum du profil entre les deux positions données, ramenées entre 0
+     * et la longueur du profil, c'est-à-dire la plus forte montée (positive) ou, à défaut, la
+     * plus faible descente (négative) ; lève IllegalArgumentException si la première position
+     * est supérieure à la seconde. Si les deux positions sont égales, la pente en ce point est
+     * retournée.
+     * @param from Position de début de la plage, en mètres.
+     * @param to Position de fin de la plage, en mètres.
+     * @return La pente maximum de la plage, en mètres par mètre.
+     */
+
+    public double maxGradient(double from, double to) {
+        Preconditions.checkArgument(from <= to);
+        int lastInterval = elevationSamples.length - 2;
+        int first = Math.min(lastSampleUntil(from), lastInterval);
+        int last = Math.max(Math.min(firstSampleFrom(to) - 1, lastInterval), first);
+        return maxGradients.max(first, last);
+    }
+
+    /**
+     * Remplit les tableaux donnés avec l'enveloppe du profil entre les deux positions données,
+     * divisée en autant de colonnes de même largeur que les tableaux ont d'éléments : l'altitude
+     * minimum et maximum de chaque colonne, de sorte qu'aucun pic ni creux ne disparaisse à
+     * l'affichage. Le niveau de la pyramide utilisé est le plus grossier dont les blocs ne sont
+     * pas plus larges qu'une colonne, chaque bloc étant attribué à la colonne contenant son
+     * milieu ; le coût est ainsi proportionnel au nombre de colonnes, et non d'échantillons.
+     * Lorsqu'une colonne est plus étroite qu'un intervalle entre deux échantillons, l'altitude
+     * en son milieu est utilisée. Lève IllegalArgumentException si la première position n'est
+     * pas strictement inférieure à la seconde, ou si les tableaux sont vides ou de tailles
+     * différentes.
+     * @param from Position du bord gauche de la première colonne, en mètres.
+     * @param to Position du bord droit de la dernière colonne, en mètres.
+     * @param mins Tableau recevant l'altitude minimum de chaque colonne.
+     * @param maxs Tableau recevant l'altitude maximum de chaque colonne.
+     */
+
+    public void envelope(double from, double to, double[] mins, double[] maxs) {
+        Preconditions.checkArgument(from < to && mins.length > 0 && mins.length == maxs.length);
+        int columns = mins.length;
+        double columnWidth = (to - from) / columns;
+        double intervalsPerColumn = columnWidth / sampleSpacing;
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+
+        if (intervalsPerColumn >= 1) {
+            int level = 0;
+            while (level + 1 < minLevels.length && (1 << (level + 1)) <= intervalsPerColumn)
+                level++;
+            float[] levelMins = minLevels[level], levelMaxs = maxLevels[level];
+            double blockLength = sampleSpacing * (1 << level);
+            int firstBlock = (int) Math.max(0, Math.floor(from / blockLength));
+            int lastBlock = (int) Math.min(levelMins.length - 1, Math.ceil(to / blockLength));
+            for (int block = firstBlock; block <= lastBlock; block++) {
+                double middle = (block + 0.5) * blockLength;
+                if (middle < from || middle >= to) continue;
+                int column = Math.min((int) ((middle - from) / columnWidth), columns - 1);
+                mins[column] = Math.min(mins[column], levelMins[block]);
+                maxs[column] = Math.max(maxs[column], levelMaxs[block]);
+            }
+        }
+        //Colonnes sans bloc : altitude en leur milieu.
+        for (int column = 0; column < columns; column++) {
+            if (mins[column] <= maxs[column]) continue;
+            mins[column] = maxs[column] = elevationAt(from + (column + 0.5) * columnWidth);
+        }
+    }
+
+    /**
+     * Méthode privée retournant la valeur, à la position donnée, d'un dénivelé cumulé depuis le
+     * début du profil : celui-ci étant linéaire entre deux échantillons, il s'obtient à partir
+     * de sa valeur à l'échantillon précédent.
+     * @param cumulatives Dénivelés cumulés à chaque échantillon.
+     * @param position Position donnée.
+     * @param sign 1 pour le dénivelé positif, -1 pour le négatif.
+     * @return Le dénivelé cumulé à la position donnée.
+     */
+
+    private double cumulative(double[] cumulatives, double position, int sign) {
+        if (position <= 0) return 0;
+        if (position >= length) return cumulatives[cumulatives.length - 1];
+        int previous = Math.min(lastSampleUntil(position), elevationSamples.length - 2);
+        double delta = sign * (elevationAt(position) - elevationSamples[previous]);
+        return cumulatives[previous] + Math.max(delta, 0);
+    }
+
+    /**
+     * Méthode privée retournant l'index du premier échantillon situé à la position donnée ou
+     * au-delà.
+     * @param position Position donnée.
+     * @return L'index de cet échantillon, qui peut valoir le nombre d'échantillons.
+     */
+
+    private int firstSampleFrom(double position) {
+        if (position <= 0) return 0;
+        if (position > length) return elevationSamples.length;
+        return (int) Math.ceil(position / sampleSpacing);
+    }
+
+    /**
+     * Méthode privée retournant l'index du dernier échantillon situé à la position donnée ou
+     * avant.
+     * @param position Position donnée.
+     * @return L'index de cet échantillon, qui peut valoir -1.
+     */
+
+    private int lastSampleUntil(double position) {
+        if (position < 0) return -1;
+        if (position >= length) return elevationSamples.length - 1;
+        return (int) Math.floor(position / sampleSpacing);
+    }
+
+    /**
+     * Classe privée représentant un arbre de segments donnant, en temps logarithmique, le
+     * maximum d'une plage de valeurs. Les feuilles occupent les cases [n, 2n) du tableau, et le
+     * nœud d'index i a pour enfants les nœuds 2i et 2i + 1.
+     */
+
+    private static final class MaxTree {
+
+        private final double[] tree;
+        private final int size;
+
+        MaxTree(double[] values) {
+            this.size = values.length;
+            this.tree = new double[2 * size];
+            System.arraycopy(values, 0, tree, size, size);
+            for (int i = size - 1; i > 0; i--) tree[i] = Math.max(tree[2 * i], tree[2 * i + 1]);
+        }
+
+        /**
+         * Retourne le maximum de toutes les valeurs.
+         * @return Le maximum de toutes les valeurs.
+         */
+        double max() {
+            return tree[1];
+        }
+
+        /**
+         * Retourne le maximum des valeurs d'index compris entre les deux index donnés, inclus.
+         * @param first Premier index.
+         * @param last Dernier index.
+         * @return Le maximum de ces valeurs.
+         */
+        double max(int first, int last) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int l = first + size, r = last + size + 1; l < r; l >>>= 1, r >>>= 1) {
+                if ((l & 1) == 1) max = Math.max(max, tree[l++]);
+                if ((r & 1) == 1) max = Math.max(max, tree[--r]);
+            }
+            return max;
+        }
     }
 }
@@ -4,6 +4,7 @@ import ch.epfl.javelo.Math2;
 import ch.epfl.javelo.Preconditions;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * 5.3.1
@@ -28,6 +29,11 @@ public final class ElevationProfileComputer {
      * entre les échantillons du profil est d'au maximum maxStepLength mètres; lève
      * IllegalArgumentException si cet espacement n'est pas strictement n'est pas strictement
      * positif.
+     * <p>
+     * Les arêtes de l'itinéraire sont parcourues une seule fois, dans l'ordre, par un curseur
+     * qui avance avec les échantillons, et chaque trou est comblé dès que l'échantillon connu
+     * qui le termine est calculé : le temps de calcul est proportionnel au nombre
+     * d'échantillons et d'arêtes.
      * @param route L'itinéraire route de type Route.
      * @param maxStepLength L'espace maximum entre les échantillons du profil.
      * @return Le profil en long de l'itinéraire route, en garantissant que l'espacement entre les
@@ -38,53 +44,45 @@ public final class ElevationProfileComputer {
     public static ElevationProfile elevationProfile(Route route, double maxStepLength) {
         Preconditions.checkArgument(maxStepLength > 0);
         int samplesNumber = (int) Math.ceil(route.length() / maxStepLength) + 1;
-        maxStepLength = route.length() / (samplesNumber - 1.0);
+        double stepLength = route.length() / (samplesNumber - 1.0);
         float[] floatsProfile = new float[samplesNumber];
-        for (int i = 0; i < samplesNumber; i++) {
-            floatsProfile[i] = (float) route.elevationAt(maxStepLength * i);
-
-        }
 
-        //Remplir les trous du début du tableau.
+        //Curseur : arête courante, arête précédente et position du début de l'arête courante.
+        List<Edge> edges = route.edges();
+        int edgeIndex = 0;
+        Edge edge = edges.get(0), previousEdge = null;
+        double edgeStart = 0;
+        //Index du dernier échantillon connu, -1 s'il n'y en a pas encore.
+        int lastKnown = -1;
         for (int i = 0; i < samplesNumber; i++) {
-            if (!Float.isNaN(floatsProfile[i])) {
-                Arrays.fill(floatsProfile, 0, i, floatsProfile[i]);
-                break;
-            }
-            if (i == samplesNumber - 1) Arrays.fill(floatsProfile, 0, i + 1, 0);
-        }
-
-        //Remplir les trous de la fin du tableau.
-        for (int i = samplesNumber - 1; i >= 0; i--) {
-            if (!Float.isNaN(floatsProfile[i])) {
-                Arrays.fill(floatsProfile, i + 1, samplesNumber, floatsProfile[i]);
-                break;
+            double position = Math2.clamp(0, stepLength * i, route.length());
+            while (edgeIndex + 1 < edges.size() && position >= edgeStart + edge.length()) {
+                edgeStart += edge.length();
+                previousEdge = edge;
+                edge = edges.get(++edgeIndex);
             }
-        }
+            float elevation = (float) edge.elevationAt(position - edgeStart);
+            //Sur un nœud, l'arête précédente prend le relais si la suivante n'a pas de profil.
+            if (Float.isNaN(elevation) && previousEdge != null && position == edgeStart)
+                elevation = (float) previousEdge.elevationAt(previousEdge.length());
+            if (Float.isNaN(elevation)) continue;
 
-        //Remplir les trous intermédiaires.
-        for (int i = 1; i < samplesNumber; i++) {
-            if (Float.isNaN(floatsProfile[i])) {
-                float interpolationLimit = 0.f;
-                int endIndex = 0;
-                for (int j = i + 1; j < samplesNumber; j++) {
-                    //Pour la première valeur à partir de la i-ème qui n'est pas un NaN
-                    //On interpole toutes les valeurs entre deux valeurs "sûres", et
-                    //non entre une valeur sûre et une valeur déjà interpolée, donc
-                    //potentiellement approximative.
-                    if (!Float.isNaN(floatsProfile[j])) {
-                        interpolationLimit = floatsProfile[j];
-                        endIndex = j - i + 1;
-                        break;
-                    }
-                }
-                for (int j = 1; j < endIndex; j++) {
-                    floatsProfile[i + j - 1] = (float) Math2.interpolate(floatsProfile[i - 1],
-                            interpolationLimit, (double) j / (endIndex));
+            floatsProfile[i] = elevation;
+            if (lastKnown < 0) {
+                //Remplir le trou du début du tableau.
+                Arrays.fill(floatsProfile, 0, i, elevation);
+            } else {
+                //Remplir le trou intermédiaire, en interpolant entre deux valeurs "sûres".
+                for (int j = lastKnown + 1; j < i; j++) {
+                    floatsProfile[j] = (float) Math2.interpolate(floatsProfile[lastKnown],
+                            elevation, (double) (j - lastKnown) / (i - lastKnown));
                 }
-                i = endIndex;
             }
+            lastKnown = i;
         }
+        //Remplir le trou de la fin du tableau, ou tout le tableau si aucune valeur n'est connue.
+        Arrays.fill(floatsProfile, lastKnown + 1, samplesNumber,
+                lastKnown < 0 ? 0 : floatsProfile[lastKnown]);
         return new ElevationProfile(route.length(), floatsProfile);
     }
 }
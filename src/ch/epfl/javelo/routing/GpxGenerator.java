@@ -1,11 +1,10 @@
 package ch.epfl.javelo.routing;
 
-import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.Ch1903;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Iterator;
-import java.util.List;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
@@ -70,19 +69,19 @@ public class GpxGenerator {
         Element rte = doc.createElement("rte");
         root.appendChild(rte);
 
-        List<PointCh> pointChList = route.points();
-
         //Position actuelle, utile pour la méthode retournant l'élévation à une certaine position.
         double actualPos = 0;
 
         //Itérateur sur la liste des arêtes permettant d'incrémenter la position actuelle.
         Iterator<Edge> edgeIterator = route.edges().iterator();
 
-        for (PointCh pointCh : pointChList) {
+        //Les coordonnées sont lues directement, sans construire la liste des points.
+        for (int i = 0; i < route.pointCount(); i++) {
+            double e = route.pointE(i), n = route.pointN(i);
             //Ajout des coordonnées.
             Element rtept = doc.createElement("rtept");
-            rtept.setAttribute("lat", Double.toString(Math.toDegrees(pointCh.lat())));
-            rtept.setAttribute("lon", Double.toString(Math.toDegrees(pointCh.lon())));
+            rtept.setAttribute("lat", Double.toString(Math.toDegrees(Ch1903.lat(e, n))));
+            rtept.setAttribute("lon", Double.toString(Math.toDegrees(Ch1903.lon(e, n))));
             rte.appendChild(rtept);
 
             //Ajout de l'altitude.
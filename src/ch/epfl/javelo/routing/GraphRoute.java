@@ -0,0 +1,216 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.RoutingGraph;
+import ch.epfl.javelo.projection.PointCh;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * GraphRoute
+ * <p>
+ * Classe représentant un itinéraire simple décrit par les seules identités de ses arêtes dans
+ * un graphe. Contrairement à SingleRoute, aucune arête n'est matérialisée à la construction,
+ * qui ne lit que les coordonnées des nœuds : les arêtes ne sont construites, et les profils
+ * décodés, que lorsqu'ils sont demandés. La liste retournée par edges est une vue sur le
+ * graphe.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+public final class GraphRoute implements Route {
+
+    /**
+     * Attribut représentant le graphe dans lequel se trouvent les arêtes.
+     */
+    private final RoutingGraph graph;
+
+    /**
+     * Attributs représentant les identités des arêtes de l'itinéraire, et celles de ses nœuds
+     * (un de plus que d'arêtes).
+     */
+    private final int[] edgeIds;
+    private final int[] nodeIds;
+
+    /**
+     * Attribut représentant la position de chaque nœud depuis le début de l'itinéraire.
+     */
+    private final double[] positions;
+
+    /**
+     * Attributs représentant les points de l'itinéraire, lus une fois pour toutes dans le
+     * graphe, et la vue de ses arêtes.
+     */
+    private final PackedPoints points;
+    private final List<Edge> edges;
+
+    /**
+     * Attribut représentant l'index spatial des arêtes, construit lors de la première recherche
+     * du point le plus proche.
+     */
+    private SegmentIndex segmentIndex;
+
+    /**
+     * Constructeur initialisant l'itinéraire partant du nœud donné et suivant les arêtes
+     * données ; lève IllegalArgumentException si la liste d'arêtes est vide.
+     * @param graph Graphe donné.
+     * @param fromNodeId Identité du nœud de départ.
+     * @param edgeIds Identités des arêtes, dans l'ordre.
+     */
+    public GraphRoute(RoutingGraph graph, int fromNodeId, int[] edgeIds) {
+        Preconditions.checkArgument(edgeIds.length > 0);
+        this.graph = graph;
+        this.edgeIds = edgeIds.clone();
+        this.nodeIds = new int[edgeIds.length + 1];
+        this.positions = new double[edgeIds.length + 1];
+        double[] coordinates = new double[2 * (edgeIds.length + 1)];
+        nodeIds[0] = fromNodeId;
+        for (int i = 0; i < edgeIds.length; i++) {
+            nodeIds[i + 1] = graph.edgeTargetNodeId(edgeIds[i]);
+            positions[i + 1] = positions[i] + graph.edgeLength(edgeIds[i]);
+        }
+        for (int i = 0; i < nodeIds.length; i++) {
+            PointCh point = graph.nodePoint(nodeIds[i]);
+            coordinates[2 * i] = point.e();
+            coordinates[2 * i + 1] = point.n();
+        }
+        this.points = new PackedPoints(coordinates);
+        this.edges = new EdgeView();
+    }
+
+    @Override
+    public int indexOfSegmentAt(double position) {
+        return 0;
+    }
+
+    @Override
+    public double length() {
+        return positions[edgeIds.length];
+    }
+
+    /**
+     * Retourne une vue des arêtes de l'itinéraire, chaque arête n'étant construite qu'à son
+     * accès.
+     * @return Les arêtes de l'itinéraire.
+     */
+    @Override
+    public List<Edge> edges() {
+        return edges;
+    }
+
+    @Override
+    public List<PointCh> points() {
+        return points;
+    }
+
+    @Override
+    public int pointCount() {
+        return points.size();
+    }
+
+    @Override
+    public double pointE(int index) {
+        return points.e(index);
+    }
+
+    @Override
+    public double pointN(int index) {
+        return points.n(index);
+    }
+
+    @Override
+    public PointCh pointAt(double position) {
+        double clampedPosition = Math2.clamp(0, position, length());
+        int index = Arrays.binarySearch(positions, clampedPosition);
+        //Cas où on tombe pile sur un nœud.
+        if (index >= 0) return points.get(index);
+        int edgeIndex = -index - 2;
+        double x = (clampedPosition - positions[edgeIndex]) / edgeLength(edgeIndex);
+        return new PointCh(Math2.interpolate(points.e(edgeIndex), points.e(edgeIndex + 1), x),
+                Math2.interpolate(points.n(edgeIndex), points.n(edgeIndex + 1), x));
+    }
+
+    @Override
+    public double elevationAt(double position) {
+        double clampedPosition = Math2.clamp(0, position, length());
+        int index = Arrays.binarySearch(positions, clampedPosition);
+        //Cas où on est entre 2 nœuds.
+        if (index < 0) {
+            int edgeIndex = -index - 2;
+            return elevationOnEdge(edgeIndex, clampedPosition - positions[edgeIndex]);
+        }
+        //Cas où on tombe pile sur le dernier nœud.
+        if (index == edgeIds.length) return elevationOnEdge(index - 1, edgeLength(index - 1));
+        //Sur un nœud intérieur, l'arête précédente prend le relais si la suivante n'a pas de
+        //profil.
+        double elevation = elevationOnEdge(index, 0);
+        if (index > 0 && Float.isNaN((float) elevation))
+            return elevationOnEdge(index - 1, edgeLength(index - 1));
+        return elevation;
+    }
+
+    @Override
+    public int nodeClosestTo(double position) {
+        double clampedPosition = Math2.clamp(0, position, length());
+        int index = Arrays.binarySearch(positions, clampedPosition);
+        if (index >= 0) return nodeIds[index];
+        int edgeIndex = -index - 2;
+        double fstNodePos = positions[edgeIndex];
+        double sndNodePos = positions[edgeIndex + 1];
+        return (clampedPosition - fstNodePos) <= ((sndNodePos - fstNodePos) / 2.0)
+                ? nodeIds[edgeIndex] : nodeIds[edgeIndex + 1];
+    }
+
+    @Override
+    public RoutePoint pointClosestTo(PointCh point) {
+        //Une construction concurrente produirait simplement un index équivalent.
+        SegmentIndex index = segmentIndex;
+        if (index == null) {
+            double[] lengths = new double[edgeIds.length];
+            for (int i = 0; i < lengths.length; i++) lengths[i] = edgeLength(i);
+            index = segmentIndex = new SegmentIndex(points, positions, lengths);
+        }
+        return index.pointClosestTo(point);
+    }
+
+    /**
+     * Méthode privée retournant la longueur de l'arête d'index donné.
+     * @param edgeIndex Index de l'arête dans l'itinéraire.
+     * @return Sa longueur.
+     */
+    private double edgeLength(int edgeIndex) {
+        return graph.edgeLength(edgeIds[edgeIndex]);
+    }
+
+    /**
+     * Méthode privée retournant l'altitude à la position donnée sur l'arête d'index donné, seul
+     * son profil étant décodé.
+     * @param edgeIndex Index de l'arête dans l'itinéraire.
+     * @param position Position sur l'arête.
+     * @return L'altitude à cette position.
+     */
+    private double elevationOnEdge(int edgeIndex, double position) {
+        return graph.edgeProfile(edgeIds[edgeIndex]).applyAsDouble(position);
+    }
+
+    /**
+     * Classe privée représentant la vue non modifiable, à accès direct, des arêtes de
+     * l'itinéraire.
+     */
+    private final class EdgeView extends AbstractList<Edge> implements RandomAccess {
+        @Override
+        public Edge get(int index) {
+            return Edge.of(graph, edgeIds[index], nodeIds[index], nodeIds[index + 1]);
+        }
+
+        @Override
+        public int size() {
+            return edgeIds.length;
+        }
+    }
+}
@@ -23,13 +23,39 @@ import java.util.List;
 public final class MultiRoute implements Route {
 
     /**
-     * Attribut représentant une liste de Route. Les éléments peuvent
-     * être d'autres MultiRoute ou des SingleRoute, c'est pourquoi nous
-     * ne pouvons pas être plus précis que la classe Route.
+     * Attribut représentant la liste des segments de l'itinéraire, aplatie : les segments des
+     * MultiRoute imbriquées y sont directement placés, de sorte qu'aucun élément n'est une
+     * MultiRoute.
      */
 
     private final List<Route> segments;
 
+    /**
+     * Attribut représentant la position du début de chaque segment depuis le début de
+     * l'itinéraire, suivie de la longueur totale.
+     */
+
+    private final double[] offsets;
+
+    /**
+     * Attribut représentant l'index du premier segment élémentaire de chaque segment.
+     */
+
+    private final int[] firstSegmentIndices;
+
+    /**
+     * Attribut représentant les points de l'itinéraire, calculés une fois pour toutes.
+     */
+
+    private final PackedPoints points;
+
+    /**
+     * Attribut représentant les arêtes de l'itinéraire, calculées lors du premier appel à edges
+     * afin que les segments paresseux ne soient pas matérialisés inutilement.
+     */
+
+    private List<Edge> edges;
+
     /**
      * @param segments Segments donnés.
      *                 Constructeur qui instancie un itinéraire multiple composé des
@@ -39,7 +65,40 @@ public final class MultiRoute implements Route {
 
     public MultiRoute(List<Route> segments) {
         Preconditions.checkArgument(!segments.isEmpty());
-        this.segments = List.copyOf(segments);
+        List<Route> flattened = new ArrayList<>();
+        for (Route segment : segments) {
+            if (segment instanceof MultiRoute multiRoute) flattened.addAll(multiRoute.segments);
+            else flattened.add(segment);
+        }
+        this.segments = List.copyOf(flattened);
+        //Précalcule les positions cumulées et les index de segments, afin que toutes les
+        //recherches par position soient dichotomiques.
+        this.offsets = new double[flattened.size() + 1];
+        this.firstSegmentIndices = new int[flattened.size()];
+        for (int i = 0; i < flattened.size(); i++) {
+            Route segment = flattened.get(i);
+            offsets[i + 1] = offsets[i] + segment.length();
+            if (i + 1 < flattened.size()) {
+                firstSegmentIndices[i + 1] = firstSegmentIndices[i]
+                        + segment.indexOfSegmentAt(segment.length()) + 1;
+            }
+        }
+        //Points de chaque segment, sans le dernier qui est le premier du segment suivant,
+        //puis dernier point de l'itinéraire.
+        int pointCount = 1;
+        for (Route segment : flattened) pointCount += segment.pointCount() - 1;
+        double[] coordinates = new double[2 * pointCount];
+        int index = 0;
+        for (Route segment : flattened) {
+            for (int i = 0; i < segment.pointCount() - 1; i++) {
+                coordinates[index++] = segment.pointE(i);
+                coordinates[index++] = segment.pointN(i);
+            }
+        }
+        Route last = flattened.get(flattened.size() - 1);
+        coordinates[index++] = last.pointE(last.pointCount() - 1);
+        coordinates[index] = last.pointN(last.pointCount() - 1);
+        this.points = new PackedPoints(coordinates);
     }
 
     /**
@@ -52,23 +111,10 @@ public final class MultiRoute implements Route {
 
     @Override
     public int indexOfSegmentAt(double position) {
-        double actualPosition = 0, previousPosition = 0;
-        int index = 0;
         position = Math2.clamp(0, position, this.length());
-
-        //On itère sur tous les segments de la route (soit des SingleRoute, soit des MultiRoute).
-        for (Route segment : segments) {
-            //Le but est de repérer sur quelle portion de SingleRoute le paramètre position est situé.
-            actualPosition += segment.length();
-            if (position <= actualPosition) {
-                //Il s'agit d'un appel récursif jusqu'à obtenir le bon segment.
-                index += segment.indexOfSegmentAt(position - previousPosition);
-                return index;
-            }
-            index += segment.indexOfSegmentAt(actualPosition) + 1;
-            previousPosition += segment.length();
-        }
-        return 0;
+        int index = segmentAt(position);
+        return firstSegmentIndices[index]
+                + segments.get(index).indexOfSegmentAt(position - offsets[index]);
     }
 
 
@@ -79,11 +125,7 @@ public final class MultiRoute implements Route {
 
     @Override
     public double length() {
-        double length = 0;
-        for (Route segment : segments) {
-            length += segment.length();
-        }
-        return length;
+        return offsets[segments.size()];
     }
 
     /**
@@ -94,11 +136,14 @@ public final class MultiRoute implements Route {
 
     @Override
     public List<Edge> edges() {
-        List<Edge> edgeList = new ArrayList<>();
-        for (Route segment : segments) {
-            edgeList.addAll(segment.edges());
+        //L'ordre de calcul étant déterministe et la liste immuable, un calcul concurrent
+        //produirait simplement une liste égale.
+        List<Edge> edgeList = edges;
+        if (edgeList == null) {
+            List<Edge> allEdges = new ArrayList<>();
+            for (Route segment : segments) allEdges.addAll(segment.edges());
+            edgeList = edges = List.copyOf(allEdges);
         }
-        //Renvoie une copie de la liste d'arêtes pour protéger l'immuabilité.
         return edgeList;
     }
 
@@ -111,17 +156,39 @@ public final class MultiRoute implements Route {
 
     @Override
     public List<PointCh> points() {
-        List<PointCh> pointChList = new ArrayList<>();
-        //On ajoute tous les points d'un segment, et on supprime à chaque fois les derniers, pour
-        //éviter les doublons.
-        for (Route segment : segments) {
-            pointChList.addAll(segment.points());
-            pointChList.remove(pointChList.size() - 1);
-        }
-        //On rajoute le dernier point de l'itinéraire.
-        pointChList.add(segments.get(segments.size() - 1).pointAt(segments
-                .get(segments.size() - 1).length()));
-        return pointChList;
+        return points;
+    }
+
+    /**
+     * Retourne le nombre de points de l'itinéraire.
+     * @return Le nombre de points de l'itinéraire.
+     */
+
+    @Override
+    public int pointCount() {
+        return points.size();
+    }
+
+    /**
+     * Retourne la coordonnée E du point d'index donné, sans construire ce point.
+     * @param index Index du point.
+     * @return La coordonnée E du point d'index donné.
+     */
+
+    @Override
+    public double pointE(int index) {
+        return points.e(index);
+    }
+
+    /**
+     * Retourne la coordonnée N du point d'index donné, sans construire ce point.
+     * @param index Index du point.
+     * @return La coordonnée N du point d'index donné.
+     */
+
+    @Override
+    public double pointN(int index) {
+        return points.n(index);
     }
 
     /**
@@ -134,17 +201,9 @@ public final class MultiRoute implements Route {
 
     @Override
     public PointCh pointAt(double position) {
-        double actualPosition = 0, previousPosition = 0;
         position = Math2.clamp(0, position, this.length());
-        //Méthode utilisant le même principe d'appel récursif à elle-même, tout comme
-        //d'autres méthodes de la classe (appel à elle-même jusqu'à l'appeler sur
-        //uniquement des SingleRoute).
-        for (Route segment : segments) {
-            actualPosition += segment.length();
-            if (position <= actualPosition) return segment.pointAt(position - previousPosition);
-            previousPosition += segment.length();
-        }
-        return null;
+        int index = segmentAt(position);
+        return segments.get(index).pointAt(position - offsets[index]);
     }
 
     /**
@@ -159,17 +218,9 @@ public final class MultiRoute implements Route {
 
     @Override
     public double elevationAt(double position) {
-        double actualPosition = 0, previousPosition = 0;
         position = Math2.clamp(0, position, this.length());
-        //Méthode utilisant le même principe d'appel récursif à elle-même, tout comme
-        //d'autres méthodes de la classe (appel à elle-même jusqu'à l'appeler sur
-        //uniquement des SingleRoute).
-        for (Route segment : segments) {
-            actualPosition += segment.length();
-            if (position <= actualPosition) return segment.elevationAt(position - previousPosition);
-            previousPosition += segment.length();
-        }
-        return 0;
+        int index = segmentAt(position);
+        return segments.get(index).elevationAt(position - offsets[index]);
     }
 
     /**
@@ -182,18 +233,9 @@ public final class MultiRoute implements Route {
 
     @Override
     public int nodeClosestTo(double position) {
-        double nextPosition = 0, previousPosition = 0;
         double clampedPosition = Math2.clamp(0, position, this.length());
-        //Méthode utilisant le même principe d'appel récursif à elle-même, tout comme
-        //d'autres méthodes de la classe (appel à elle-même jusqu'à l'appeler sur
-        //uniquement des SingleRoute).
-        for (Route segment : segments) {
-            nextPosition += segment.length();
-            if (clampedPosition - nextPosition <= 0)
-                return segment.nodeClosestTo(clampedPosition - previousPosition);
-            previousPosition += segment.length();
-        }
-        return 0;
+        int index = segmentAt(clampedPosition);
+        return segments.get(index).nodeClosestTo(clampedPosition - offsets[index]);
     }
 
     /**
@@ -207,16 +249,31 @@ public final class MultiRoute implements Route {
     @Override
     public RoutePoint pointClosestTo(PointCh point) {
         RoutePoint routePointTemp, routePoint = RoutePoint.NONE;
-        double actualPosition = 0;
-        //Méthode utilisant le même principe d'appel récursif à elle-même, tout comme
-        //d'autres méthodes de la classe (appel à elle-même jusqu'à l'appeler sur
-        //uniquement des SingleRoute, ainsi que la méthode min de RoutePoint).
-        for (Route segment : segments) {
-            routePointTemp = segment.pointClosestTo(point);
-            routePoint = routePoint.min(routePointTemp.point(), actualPosition + routePointTemp.position(),
-                    routePointTemp.distanceToReference());
-            actualPosition += segment.length();
+        //Les segments étant élémentaires, la position de chaque point trouvé est simplement
+        //décalée du début de son segment.
+        for (int i = 0; i < segments.size(); i++) {
+            routePointTemp = segments.get(i).pointClosestTo(point);
+            routePoint = routePoint.min(routePointTemp.point(),
+                    offsets[i] + routePointTemp.position(), routePointTemp.distanceToReference());
         }
         return routePoint;
     }
+
+    /**
+     * Méthode privée retournant, par recherche dichotomique, l'index du premier segment dont la
+     * fin se trouve à la position donnée ou au-delà ; une position située exactement entre
+     * deux segments appartient donc au premier d'entre eux.
+     * @param position Position donnée, comprise entre 0 et la longueur de l'itinéraire.
+     * @return L'index du segment contenant la position.
+     */
+
+    private int segmentAt(double position) {
+        int low = 1, high = segments.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (offsets[middle] >= position) high = middle;
+            else low = middle + 1;
+        }
+        return low - 1;
+    }
 }
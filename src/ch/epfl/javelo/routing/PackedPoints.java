@@ -0,0 +1,62 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.projection.PointCh;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * PackedPoints
+ * <p>
+ * Classe représentant une liste immuable de points, stockés sous la forme d'un unique tableau
+ * de coordonnées (E et N alternées). Les points ne sont construits qu'à leur accès, et les
+ * coordonnées peuvent être lues directement, sans allocation, au moyen des méthodes e et n.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class PackedPoints extends AbstractList<PointCh> implements RandomAccess {
+
+    /**
+     * Attribut représentant les coordonnées des points, E et N alternées.
+     */
+    private final double[] coordinates;
+
+    /**
+     * Constructeur initialisant la liste des points dont les coordonnées sont données ; le
+     * tableau n'est pas copié, et ne doit donc plus être modifié.
+     * @param coordinates Coordonnées des points, E et N alternées.
+     */
+    PackedPoints(double[] coordinates) {
+        this.coordinates = coordinates;
+    }
+
+    @Override
+    public PointCh get(int index) {
+        return new PointCh(e(index), n(index));
+    }
+
+    @Override
+    public int size() {
+        return coordinates.length / 2;
+    }
+
+    /**
+     * Retourne la coordonnée E du point d'index donné.
+     * @param index Index du point.
+     * @return Sa coordonnée E.
+     */
+    double e(int index) {
+        return coordinates[2 * index];
+    }
+
+    /**
+     * Retourne la coordonnée N du point d'index donné.
+     * @param index Index du point.
+     * @return Sa coordonnée N.
+     */
+    double n(int index) {
+        return coordinates[2 * index + 1];
+    }
+}
@@ -49,6 +49,39 @@ public interface Route {
 
     List<PointCh> points();
 
+    /**
+     * Retourne le nombre de points situés aux extrémités des arêtes de l'itinéraire, c.-à-d. la
+     * taille de la liste retournée par points.
+     * @return Retourne le nombre de points de l'itinéraire.
+     */
+
+    default int pointCount() {
+        return points().size();
+    }
+
+    /**
+     * Retourne la coordonnée E du point d'index donné de la liste retournée par points, sans
+     * nécessairement construire ce point ; utile aux méthodes de dessin parcourant tous les
+     * points.
+     * @param index Index du point.
+     * @return Retourne la coordonnée E du point d'index donné.
+     */
+
+    default double pointE(int index) {
+        return points().get(index).e();
+    }
+
+    /**
+     * Retourne la coordonnée N du point d'index donné de la liste retournée par points, sans
+     * nécessairement construire ce point.
+     * @param index Index du point.
+     * @return Retourne la coordonnée N du point d'index donné.
+     */
+
+    default double pointN(int index) {
+        return points().get(index).n();
+    }
+
     /**
      * Retourne le point se trouvant à la position donnée le long
      * de l'itinéraire.
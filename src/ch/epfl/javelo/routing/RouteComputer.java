@@ -1,10 +1,11 @@
 package ch.epfl.javelo.routing;
 
 import ch.epfl.javelo.Preconditions;
-import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.RoutingGraph;
 import ch.epfl.javelo.projection.PointCh;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 
 /**
@@ -25,7 +26,7 @@ public class RouteComputer {
     /**
      * Attribut représentant le graphe du calculateur d'itinéraire.
      */
-    private final Graph graph;
+    private final RoutingGraph graph;
 
     /**
      * Attribut représentant la fonction de coût du calculateur d'itinéraire.
@@ -33,14 +34,32 @@ public class RouteComputer {
     private final CostFunction costFunction;
 
     /**
-     * Constructeur initialisant une RouteComputer.
+     * Attribut représentant la surcouche dynamique (fermetures et pénalités) des arêtes.
+     */
+    private final EdgeOverlay overlay;
+
+    /**
+     * Constructeur initialisant une RouteComputer, sans surcouche.
      * @param graph Le graph donné.
      * @param costFunction La fonction de coût donnée.
      */
 
-    public RouteComputer(Graph graph, CostFunction costFunction) {
+    public RouteComputer(RoutingGraph graph, CostFunction costFunction) {
+        this(graph, costFunction, new EdgeOverlay());
+    }
+
+    /**
+     * Constructeur initialisant une RouteComputer consultant la surcouche donnée, qui peut être
+     * modifiée pendant les calculs d'itinéraires.
+     * @param graph Le graph donné.
+     * @param costFunction La fonction de coût donnée.
+     * @param overlay La surcouche des arêtes donnée.
+     */
+
+    public RouteComputer(RoutingGraph graph, CostFunction costFunction, EdgeOverlay overlay) {
         this.graph = graph;
         this.costFunction = costFunction;
+        this.overlay = overlay;
     }
 
     /**
@@ -48,7 +67,8 @@ public class RouteComputer {
      * d'identité endNodeId dans le graphe passé au constructeur, ou null si aucun itinéraire
      * n'existe. Si le nœud de départ et d'arrivée sont identiques, lève IllegalArgumentException.
      * Si plusieurs itinéraires de coût total minimal existent, bestRouteBetween retourne
-     * n'importe lequel d'entre eux.
+     * n'importe lequel d'entre eux. Si le fil d'exécution est interrompu pendant la recherche,
+     * celle-ci est abandonnée et CancellationException est levée.
      * @param startNodeId Nœud de départ.
      * @param endNodeId Nœud de fin.
      * @return L'itinéraire de coût total minimal allant du nœud d'identité startNodeId au nœud
@@ -73,6 +93,9 @@ public class RouteComputer {
         //Vérifie si l'itinéraire est valide.
         Preconditions.checkArgument(startNodeId != endNodeId);
 
+        //Instantané de la surcouche, utilisé tout au long du calcul pour un état cohérent.
+        EdgeOverlay.Snapshot overlaySnapshot = overlay.snapshot();
+
         //Remplissage de la liste des WeightedNodes, avec leurs valeurs par défaut.
         List<WeightedNode> weightedNodeList = new ArrayList<>();
         for (int i = 0; i < graph.nodeCount(); i++) {
@@ -94,6 +117,10 @@ public class RouteComputer {
         //précédent. (Information utile à la reconstruction de l'itinéraire)
         int[] previousNodeIds = new int[graph.nodeCount()];
 
+        //Tableau contenant pour chaque nœud l'identité de l'arête par laquelle il a été atteint,
+        //ce qui distingue les arêtes parallèles reliant les deux mêmes nœuds.
+        int[] previousEdgeIds = new int[graph.nodeCount()];
+
         //Initialisation de la distance du nœud de départ du tableau à 0.
         lengthAStar[startNodeId] = 0;
 
@@ -107,38 +134,35 @@ public class RouteComputer {
         WeightedNode actualWeightNode;
         int actNodeId, actEdgeId, targetNodeId;
         while (!weightedNodeQueue.isEmpty()) {
+            //Abandonne la recherche si le calcul a été annulé par interruption du fil.
+            if (Thread.currentThread().isInterrupted()) throw new CancellationException();
+
             //Remove le nœud dont la distance selon A* est la plus petite et récupérer son nodeId.
             actualWeightNode = weightedNodeQueue.remove();
             actNodeId = actualWeightNode.nodeId;
 
             //Condition permettant de passer tous les nœuds déjà explorés.
-            if (actualWeightNode.distance == NODE_ALREADY_CHECKED_VALUE) continue;
+            if (lengthAStar[actNodeId] == NODE_ALREADY_CHECKED_VALUE) continue;
 
             //Vérification si le nœud en exploration actuellement est endNode.
             //Si oui, on commence à construire l'itinéraire.
             if (actNodeId == endNodeId) {
-                //Initialisation de la liste d'arête utile à la création de la route à retourner
-                LinkedList<Edge> edgeList = new LinkedList<>();
-                int previousNodeId = previousNodeIds[actNodeId];
-
-                //Construction de l'itinéraire dans l'ordre inverse.
+                //Nombre d'arêtes de l'itinéraire, obtenu en remontant les nœuds précédents.
+                int edgeCount = 0;
+                for (int nodeId = endNodeId; nodeId != startNodeId;
+                     nodeId = previousNodeIds[nodeId]) edgeCount++;
+                //Seules les identités des arêtes sont gardées, l'itinéraire étant construit
+                //paresseusement à partir du graphe.
+                int[] edgeIds = new int[edgeCount];
+
+                //Construction de l'itinéraire dans l'ordre inverse, à partir des arêtes
+                //retenues lors des relâchements.
                 //Condition d'arrêt : le noeud actuel == startNode
                 while (actNodeId != startNodeId) {
-                    //Récupération de l'index de l'arête sortante du nœud précédant allant jusqu'au nœud actuel.
-                    for (int j = 0; j < graph.nodeOutDegree(previousNodeId); j++) {
-                        //Ajout de l'arête à la liste si il s'agit de l'arête trouvée par le reste de
-                        //l'algorithme.
-                        if (graph.edgeTargetNodeId(graph.nodeOutEdgeId(previousNodeId, j)) == actNodeId) {
-                            edgeList.addFirst(Edge.of(graph, graph.nodeOutEdgeId(
-                                    previousNodeId, j), previousNodeId, actNodeId));
-                            break;
-                        }
-                    }
-                    //Actualisation des variables actNodeId et previousNodeId.
-                    actNodeId = previousNodeId;
-                    previousNodeId = previousNodeIds[previousNodeId];
+                    edgeIds[--edgeCount] = previousEdgeIds[actNodeId];
+                    actNodeId = previousNodeIds[actNodeId];
                 }
-                return new SingleRoute(edgeList);
+                return new GraphRoute(graph, startNodeId, edgeIds);
             }
 
 
@@ -147,6 +171,8 @@ public class RouteComputer {
             //Ajout des tous les nœuds connectés au nœud en exploration
             for (int i = 0; i < graph.nodeOutDegree(actNodeId); i++) {
                 actEdgeId = graph.nodeOutEdgeId(actNodeId, i);
+                //Les arêtes fermées par la surcouche ne sont pas explorées.
+                if (overlaySnapshot.isClosed(actEdgeId)) continue;
                 targetNodeId = graph.edgeTargetNodeId(actEdgeId);
 
                 //Mise à jour de l'attribut previous node du tableau. (Qui est l'ID du nœud actuel à la position de
@@ -155,7 +181,8 @@ public class RouteComputer {
 
                 //Calcul de la distance Selon A* (incluant CostFunction)
                 float distance = (float) (lengthAStar[actNodeId] - crowFlies[actNodeId] + crowFlies[targetNodeId])
-                        + (float) graph.edgeLength(actEdgeId) * (float) costFunction.costFactor(actNodeId, actEdgeId);
+                        + (float) graph.edgeLength(actEdgeId) * (float) (costFunction.costFactor(
+                        actNodeId, actEdgeId) * overlaySnapshot.costMultiplier(actEdgeId));
 
                 //Si le nœud connecté à la i-ème arête sortante n'a pas encore a été exploré via un itinéraire optimal,
                 //alors on l'ajoute à la liste des nœuds en exploration.
@@ -165,8 +192,9 @@ public class RouteComputer {
                     weightedNodeList.set(targetNodeId, new WeightedNode(targetNodeId, distance));
                     //Ajout de ce WeightedNode à la liste en Exploration
                     weightedNodeQueue.add(weightedNodeList.get(targetNodeId));
-                    //Mise à jour du nœud précédent.
+                    //Mise à jour du nœud et de l'arête précédents.
                     previousNodeIds[targetNodeId] = actNodeId;
+                    previousEdgeIds[targetNodeId] = actEdgeId;
                 }
             }
             //Marquage des nœuds explorés, pour ne pas les explorer à nouveau.
@@ -0,0 +1,196 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.projection.PointCh;
+
+/**
+ * SegmentIndex
+ * <p>
+ * Classe représentant un index spatial des arêtes d'un itinéraire simple, sous la forme d'une
+ * hiérarchie de boîtes englobantes : chaque nœud de l'arbre couvre une plage contiguë d'arêtes,
+ * que ses deux enfants se partagent par moitiés. Les arêtes d'un itinéraire étant consécutives,
+ * ces plages sont spatialement compactes, et la recherche du point le plus proche n'examine en
+ * pratique qu'un nombre logarithmique de boîtes.
+ * <p>
+ * Le résultat est exactement celui d'un parcours de toutes les arêtes : en cas d'égalité des
+ * distances, l'arête de plus petit index l'emporte.
+ *
+ * @author Jean Nordmann (344692)
+ * @author Maxime Ducourau (329544)
+ */
+
+final class SegmentIndex {
+
+    //Nombre maximal d'arêtes d'une feuille.
+    private static final int LEAF_SIZE = 4;
+
+    //Marge (en mètres) ajoutée aux boîtes, afin que les erreurs d'arrondi de l'interpolation
+    //ne fassent jamais sortir un point de sa boîte.
+    private static final double MARGIN = 1e-6;
+
+    /**
+     * Attributs représentant les points de l'itinéraire, la position de chacun d'eux et la
+     * longueur de chaque arête.
+     */
+    private final PackedPoints points;
+    private final double[] positions;
+    private final double[] lengths;
+
+    /**
+     * Attributs représentant les nœuds de l'arbre : boîte englobante, plage d'arêtes
+     * [firstEdge, lastEdge) et index du premier enfant (le second le suit), ou -1 pour une
+     * feuille.
+     */
+    private final double[] minE, minN, maxE, maxN;
+    private final int[] firstEdge, lastEdge, firstChild;
+    private int nodeCount;
+
+    /**
+     * Constructeur construisant l'index des arêtes reliant les points donnés.
+     * @param points Points de l'itinéraire (un de plus que d'arêtes).
+     * @param positions Position de chaque point depuis le début de l'itinéraire.
+     * @param lengths Longueur de chaque arête.
+     */
+    SegmentIndex(PackedPoints points, double[] positions, double[] lengths) {
+        this.points = points;
+        this.positions = positions;
+        this.lengths = lengths;
+        int capacity = 2 * lengths.length + 1;
+        minE = new double[capacity];
+        minN = new double[capacity];
+        maxE = new double[capacity];
+        maxN = new double[capacity];
+        firstEdge = new int[capacity];
+        lastEdge = new int[capacity];
+        firstChild = new int[capacity];
+        nodeCount = 1;
+        build(0, 0, lengths.length);
+    }
+
+    /**
+     * Retourne le point de l'itinéraire le plus proche du point donné, avec sa position le
+     * long de l'itinéraire et sa distance au point donné.
+     * @param point Point de référence.
+     * @return Le point de l'itinéraire le plus proche.
+     */
+    RoutePoint pointClosestTo(PointCh point) {
+        Nearest nearest = new Nearest();
+        search(0, point.e(), point.n(), nearest);
+        if (nearest.edge < 0) return RoutePoint.NONE;
+        return new RoutePoint(new PointCh(nearest.e, nearest.n),
+                nearest.position + positions[nearest.edge], nearest.distance);
+    }
+
+    /**
+     * Classe privée représentant le meilleur candidat trouvé au cours d'une recherche.
+     */
+    private static final class Nearest {
+        private int edge = -1;
+        private double distance = Double.POSITIVE_INFINITY;
+        private double position, e, n;
+    }
+
+    /**
+     * Méthode privée construisant le nœud donné, couvrant la plage d'arêtes donnée, ainsi que
+     * ses descendants.
+     * @param node Index du nœud.
+     * @param from Première arête de la plage.
+     * @param to Fin (exclue) de la plage.
+     */
+    private void build(int node, int from, int to) {
+        firstEdge[node] = from;
+        lastEdge[node] = to;
+        double eMin = Double.POSITIVE_INFINITY, nMin = Double.POSITIVE_INFINITY;
+        double eMax = Double.NEGATIVE_INFINITY, nMax = Double.NEGATIVE_INFINITY;
+        for (int i = from; i <= to; i++) {
+            eMin = Math.min(eMin, points.e(i));
+            nMin = Math.min(nMin, points.n(i));
+            eMax = Math.max(eMax, points.e(i));
+            nMax = Math.max(nMax, points.n(i));
+        }
+        minE[node] = eMin - MARGIN;
+        minN[node] = nMin - MARGIN;
+        maxE[node] = eMax + MARGIN;
+        maxN[node] = nMax + MARGIN;
+        if (to - from <= LEAF_SIZE) {
+            firstChild[node] = -1;
+            return;
+        }
+        int child = nodeCount;
+        nodeCount += 2;
+        firstChild[node] = child;
+        int middle = (from + to) >>> 1;
+        build(child, from, middle);
+        build(child + 1, middle, to);
+    }
+
+    /**
+     * Méthode privée cherchant, dans le sous-arbre du nœud donné, un point plus proche que le
+     * meilleur candidat actuel ; l'enfant dont la boîte est la plus proche est visité en
+     * premier, et une boîte plus éloignée que le meilleur candidat n'est pas visitée.
+     * @param node Index du nœud.
+     * @param e Coordonnée E du point de référence.
+     * @param n Coordonnée N du point de référence.
+     * @param nearest Meilleur candidat actuel.
+     */
+    private void search(int node, double e, double n, Nearest nearest) {
+        int child = firstChild[node];
+        if (child < 0) {
+            for (int i = firstEdge[node]; i < lastEdge[node]; i++) examine(i, e, n, nearest);
+            return;
+        }
+        double firstDistance = boxDistance(child, e, n);
+        double secondDistance = boxDistance(child + 1, e, n);
+        boolean firstIsNear = firstDistance <= secondDistance;
+        int near = firstIsNear ? child : child + 1;
+        double nearDistance = firstIsNear ? firstDistance : secondDistance;
+        double farDistance = firstIsNear ? secondDistance : firstDistance;
+        if (nearDistance <= nearest.distance) search(near, e, n, nearest);
+        if (farDistance <= nearest.distance) search(2 * child + 1 - near, e, n, nearest);
+    }
+
+    /**
+     * Méthode privée calculant le point le plus proche sur l'arête d'index donné, exactement
+     * comme le fait Edge, et le retenant s'il améliore le meilleur candidat.
+     * @param edge Index de l'arête.
+     * @param e Coordonnée E du point de référence.
+     * @param n Coordonnée N du point de référence.
+     * @param nearest Meilleur candidat actuel.
+     */
+    private void examine(int edge, double e, double n, Nearest nearest) {
+        double fromE = points.e(edge), fromN = points.n(edge);
+        double toE = points.e(edge + 1), toN = points.n(edge + 1);
+        double length = lengths[edge];
+        double position = Math2.clamp(0,
+                Math2.projectionLength(fromE, fromN, toE, toN, e, n), length);
+        double closestE = fromE, closestN = fromN;
+        if (length != 0) {
+            double x = position / length;
+            closestE = Math2.interpolate(fromE, toE, x);
+            closestN = Math2.interpolate(fromN, toN, x);
+        }
+        double distance = Math2.norm(e - closestE, n - closestN);
+        if (distance < nearest.distance
+                || (distance == nearest.distance && edge < nearest.edge)) {
+            nearest.edge = edge;
+            nearest.distance = distance;
+            nearest.position = position;
+            nearest.e = closestE;
+            nearest.n = closestN;
+        }
+    }
+
+    /**
+     * Méthode privée retournant la distance entre le point donné et la boîte du nœud donné
+     * (nulle si le point s'y trouve).
+     * @param node Index du nœud.
+     * @param e Coordonnée E du point.
+     * @param n Coordonnée N du point.
+     * @return La distance à la boîte.
+     */
+    private double boxDistance(int node, double e, double n) {
+        double dE = Math.max(Math.max(minE[node] - e, e - maxE[node]), 0);
+        double dN = Math.max(Math.max(minN[node] - n, n - maxN[node]), 0);
+        return Math2.norm(dE, dN);
+    }
+}
@@ -4,7 +4,6 @@ import ch.epfl.javelo.Math2;
 import ch.epfl.javelo.Preconditions;
 import ch.epfl.javelo.projection.PointCh;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -33,6 +32,17 @@ public final class SingleRoute implements Route {
      */
     private final double[] positionsTab;
 
+    /**
+     * Attribut représentant les points de la route, calculés une fois pour toutes.
+     */
+    private final PackedPoints points;
+
+    /**
+     * Attribut représentant l'index spatial des arêtes, construit lors de la première recherche
+     * du point le plus proche.
+     */
+    private SegmentIndex segmentIndex;
+
     /**
      * Constructeur public, initialisant une SingleRoute,
      * donc sa liste d'arêtes et son tableau de positions.
@@ -49,6 +59,15 @@ public final class SingleRoute implements Route {
         for (int i = 1; i <= edges.size(); i++) {
             positionsTab[i] = edges.get(i - 1).length() + positionsTab[i - 1];
         }
+        //Coordonnées du point de départ de chaque arête, puis du point d'arrivée de la dernière.
+        double[] coordinates = new double[2 * (edges.size() + 1)];
+        for (int i = 0; i < edges.size(); i++) {
+            coordinates[2 * i] = edges.get(i).fromPoint().e();
+            coordinates[2 * i + 1] = edges.get(i).fromPoint().n();
+        }
+        coordinates[2 * edges.size()] = edges.get(edges.size() - 1).toPoint().e();
+        coordinates[2 * edges.size() + 1] = edges.get(edges.size() - 1).toPoint().n();
+        points = new PackedPoints(coordinates);
     }
 
     /**
@@ -94,14 +113,39 @@ public final class SingleRoute implements Route {
 
     @Override
     public List<PointCh> points() {
-        List<PointCh> pointChList = new ArrayList<>();
-        for (Edge edge : edges) {
-            //Ajout pour chaque arête du point à la distance 0 => point de départ de l'arête.
-            pointChList.add(edge.fromPoint());
-        }
-        //Ajout du dernier point
-        pointChList.add(edges.get(edges.size() - 1).toPoint());
-        return pointChList;
+        return points;
+    }
+
+    /**
+     * Retourne le nombre de points de l'itinéraire.
+     * @return Le nombre de points de l'itinéraire.
+     */
+
+    @Override
+    public int pointCount() {
+        return points.size();
+    }
+
+    /**
+     * Retourne la coordonnée E du point d'index donné, sans construire ce point.
+     * @param index Index du point.
+     * @return La coordonnée E du point d'index donné.
+     */
+
+    @Override
+    public double pointE(int index) {
+        return points.e(index);
+    }
+
+    /**
+     * Retourne la coordonnée N du point d'index donné, sans construire ce point.
+     * @param index Index du point.
+     * @return La coordonnée N du point d'index donné.
+     */
+
+    @Override
+    public double pointN(int index) {
+        return points.n(index);
     }
 
     /**
@@ -200,20 +244,13 @@ public final class SingleRoute implements Route {
 
     @Override
     public RoutePoint pointClosestTo(PointCh point) {
-        RoutePoint routePointTemp, routePoint = RoutePoint.NONE;
-        double position, clampedPosition, previousLengths = 0;
-        for (Edge edge : edges) {
-            //Calcul de la distance avec chaque arête.
-            position = edge.positionClosestTo(point);
-            clampedPosition = Math2.clamp(0, position, edge.length());
-            PointCh pointChAt = edge.pointAt(clampedPosition);
-            PointCh pointCh = new PointCh(pointChAt.e(), pointChAt.n());
-            routePointTemp = new RoutePoint(pointCh, clampedPosition
-                    + previousLengths, pointCh.distanceTo(point));
-            //Utilisation de la méthode min qui nous permet de garder dans "routePoint" le RoutePoint le plus proche.
-            routePoint = routePoint.min(routePointTemp);
-            previousLengths += edge.length();
+        //Une construction concurrente produirait simplement un index équivalent.
+        SegmentIndex index = segmentIndex;
+        if (index == null) {
+            double[] lengths = new double[edges.size()];
+            for (int i = 0; i < lengths.length; i++) lengths[i] = edges.get(i).length();
+            index = segmentIndex = new SegmentIndex(points, positionsTab, lengths);
         }
-        return routePoint;
+        return index.pointClosestTo(point);
     }
 }